@@ -0,0 +1,175 @@
+package Benchmarks;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code BenchmarkExchange} class is an {@link HttpExchange} without a connection, so that
+ * handlers and response helpers can be benchmarked without the HTTP server.
+ * <p>
+ * The request body is read from a byte array and the response body is counted and discarded.
+ * An exchange is reset with {@link #reset(byte[])} before every invocation.
+ */
+public class BenchmarkExchange extends HttpExchange {
+
+    /**
+     * An output stream counting the bytes written to it.
+     */
+    public static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        /**
+         * Retrieves the number of bytes written.
+         *
+         * @return the byte count.
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final CountingOutputStream responseBody = new CountingOutputStream();
+    private InputStream requestBody = InputStream.nullInputStream();
+    private int responseCode = -1;
+    private long responseLength;
+
+    /**
+     * Prepares the exchange for the next invocation.
+     *
+     * @param body the request body.
+     */
+    public void reset(byte[] body) {
+        requestBody = new ByteArrayInputStream(body);
+        responseHeaders.clear();
+        responseCode = -1;
+        responseLength = 0;
+    }
+
+    /**
+     * Retrieves the number of response body bytes written since the exchange was created.
+     *
+     * @return the byte count.
+     */
+    public long getResponseBytes() {
+        return responseBody.getCount();
+    }
+
+    /**
+     * Retrieves the length passed to {@link #sendResponseHeaders(int, long)}.
+     *
+     * @return the response length.
+     */
+    public long getResponseLength() {
+        return responseLength;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return URI.create("/api/benchmark");
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return "POST";
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        this.responseCode = rCode;
+        this.responseLength = responseLength;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return new InetSocketAddress("127.0.0.1", 50000);
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return new InetSocketAddress("127.0.0.1", 9191);
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package Benchmarks;
+
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code Payloads} class builds the request and response bodies the benchmarks work on.
+ * <p>
+ * The generated text is deterministic and mixes ASCII with umlauts, quotes and line breaks,
+ * so that UTF-8 encoding and JSON escaping are exercised the way real generations do.
+ */
+public final class Payloads {
+
+    /**
+     * The words the generated text is made of.
+     */
+    private static final String[] WORDS = {
+            "Die", "Antwort", "des", "Modells", "enthält", "\"Zitate\"", "und", "Umlaute", "wie", "äöü",
+            "sowie", "Zahlen", "42", "oder", "Code:", "x", "=", "y;", "über", "mehrere", "Zeilen.\n"
+    };
+
+    private Payloads() {
+    }
+
+    /**
+     * Builds a text of the given length.
+     *
+     * @param chars the number of characters.
+     * @return the text.
+     */
+    public static String text(int chars) {
+        StringBuilder text = new StringBuilder(chars + 16);
+        for (int i = 0; text.length() < chars; i++) {
+            String word = WORDS[i % WORDS.length];
+            text.append(word);
+            if (!word.endsWith("\n")) {
+                text.append(' ');
+            }
+        }
+        text.setLength(chars);
+        return text.toString();
+    }
+
+    /**
+     * Builds the body of a {@code /api/generateResponse} request.
+     *
+     * @param promptChars the length of the prompt.
+     * @return the UTF-8 encoded request body.
+     */
+    public static byte[] generateRequest(int promptChars) {
+        JSONObject options = new JSONObject();
+        options.put("temperature", 0.7);
+        options.put("maxTokens", 512);
+
+        JSONObject request = new JSONObject();
+        request.put("prompt", text(promptChars));
+        request.put("options", options);
+        return request.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the body of a non-streaming Ollama {@code /api/generate} response. As in the
+     * pretty-printed responses of some servers, the JSON itself spans several lines.
+     *
+     * @param responseChars the length of the generated text.
+     * @return the UTF-8 encoded response body.
+     */
+    public static byte[] ollamaResponse(int responseChars) {
+        JSONObject response = doneChunk();
+        response.put("response", text(responseChars));
+        return response.toString(2).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a streaming Ollama {@code /api/generate} response: one chunk per token followed by
+     * the final chunk with the timings.
+     *
+     * @param tokens the number of token chunks.
+     * @return the UTF-8 encoded newline-delimited JSON stream.
+     */
+    public static byte[] ollamaStream(int tokens) {
+        StringBuilder stream = new StringBuilder(tokens * 96);
+        for (int i = 0; i < tokens; i++) {
+            stream.append(ollamaChunk(i)).append('\n');
+        }
+        stream.append(doneChunk()).append('\n');
+        return stream.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds one token chunk of a streaming Ollama response.
+     *
+     * @param index the index of the token.
+     * @return the chunk, without line break.
+     */
+    public static String ollamaChunk(int index) {
+        JSONObject chunk = new JSONObject();
+        chunk.put("model", "llama3.2:3b");
+        chunk.put("created_at", "2024-10-18T07:00:00.000000000Z");
+        chunk.put("response", WORDS[index % WORDS.length] + " ");
+        chunk.put("done", false);
+        return chunk.toString();
+    }
+
+    /**
+     * Builds the final chunk of an Ollama generation.
+     *
+     * @return the chunk.
+     */
+    private static JSONObject doneChunk() {
+        JSONObject chunk = new JSONObject();
+        chunk.put("model", "llama3.2:3b");
+        chunk.put("created_at", "2024-10-18T07:00:00.000000000Z");
+        chunk.put("response", "");
+        chunk.put("done", true);
+        chunk.put("done_reason", "stop");
+        chunk.put("total_duration", 1_250_000_000L);
+        chunk.put("load_duration", 2_000_000L);
+        chunk.put("prompt_eval_count", 26);
+        chunk.put("prompt_eval_duration", 130_000_000L);
+        chunk.put("eval_count", 290);
+        chunk.put("eval_duration", 1_100_000_000L);
+        return chunk;
+    }
+}
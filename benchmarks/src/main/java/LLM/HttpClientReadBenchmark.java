@@ -0,0 +1,60 @@
+package LLM;
+
+import Benchmarks.Payloads;
+import LLM.LocalClient.OllamaResponse;
+import LLM.Transport.JsonReader;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks how {@link HttpClient} reads a non-streaming Ollama response, as done by
+ * {@code Ollama#generateResponseNonStreaming}: {@code readResponse} reads the whole body as a
+ * string and parses it into a {@link JSONObject} to extract the {@code response} field,
+ * {@code pullResponse} extracts the field with a {@link JsonReader} directly from the body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpClientReadBenchmark {
+
+    /**
+     * The length of the generated text in characters.
+     */
+    @Param({"256", "4096", "65536"})
+    public int responseChars;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.ollamaResponse(responseChars);
+    }
+
+    @Benchmark
+    public String readResponse() throws IOException {
+        String response = HttpClient.readResponse(new ByteArrayInputStream(body));
+        return new JSONObject(response).getString("response");
+    }
+
+    @Benchmark
+    public String pullResponse() throws IOException {
+        return JsonReader.read(new ByteArrayInputStream(body), OllamaResponse::read).response();
+    }
+}
@@ -0,0 +1,75 @@
+package Server.Handler;
+
+import Benchmarks.BenchmarkExchange;
+import Benchmarks.Payloads;
+import Server.Cache.EvictionPolicy;
+import Server.Cache.ResponseCache;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks how the handlers read a request: the whole body with {@code readAllBytes}, decoded
+ * to a {@link String} and parsed into a {@link JSONObject}.
+ * <p>
+ * {@link #parseRequest()} measures this sequence alone, as it appears in every handler taking a
+ * JSON body. {@link #invalidateCacheHandler()} runs it inside a real handler, including the
+ * cache key computation and the response, to show its share of a cheap request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParsingBenchmark {
+
+    /**
+     * The length of the prompt in characters.
+     */
+    @Param({"256", "4096", "65536"})
+    public int promptChars;
+
+    private byte[] body;
+    private BenchmarkExchange exchange;
+    private InvalidateCacheHandler handler;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.generateRequest(promptChars);
+        exchange = new BenchmarkExchange();
+        handler = new InvalidateCacheHandler(new ResponseCache(true, 1 << 20, 60_000, EvictionPolicy.LRU, false));
+    }
+
+    @Setup(Level.Invocation)
+    public void resetExchange() {
+        exchange.reset(body);
+    }
+
+    @Benchmark
+    public String parseRequest() throws IOException {
+        String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        JSONObject requestJson = new JSONObject(requestBody);
+        return requestJson.getString("prompt");
+    }
+
+    @Benchmark
+    public int invalidateCacheHandler() throws IOException {
+        handler.handle(exchange);
+        return exchange.getResponseCode();
+    }
+}
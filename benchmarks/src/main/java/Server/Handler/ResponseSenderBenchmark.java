@@ -0,0 +1,58 @@
+package Server.Handler;
+
+import Benchmarks.BenchmarkExchange;
+import Benchmarks.Payloads;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ResponseSender#sendResponse}, which encodes the response to UTF-8 once for
+ * the {@code Content-Length} header and once more for the body. The response is a JSON object
+ * with a generated text of the given length, as sent by {@code /api/generateResponse}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSenderBenchmark {
+
+    /**
+     * The length of the generated text in characters.
+     */
+    @Param({"256", "4096", "65536"})
+    public int responseChars;
+
+    private String response;
+    private BenchmarkExchange exchange;
+    private ResponseSender sender;
+
+    @Setup
+    public void setUp() {
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("response", Payloads.text(responseChars));
+        response = responseJson.toString();
+        exchange = new BenchmarkExchange();
+        sender = new ResponseSender();
+    }
+
+    @Benchmark
+    public long sendResponse() throws IOException {
+        sender.sendResponse(exchange, response, 200);
+        return exchange.getResponseLength();
+    }
+}
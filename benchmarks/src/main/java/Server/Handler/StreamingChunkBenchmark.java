@@ -0,0 +1,67 @@
+package Server.Handler;
+
+import Benchmarks.BenchmarkExchange;
+import Benchmarks.Payloads;
+import Server.Streaming.BufferPool;
+import Server.Streaming.StreamRelay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-token work of {@link GenerateResponseStreamingHandler}.
+ * <p>
+ * {@link #toTokenLine()} parses one Ollama chunk and serializes its {@code response} field
+ * again, as done for every token in the {@code tokens} format. {@link #relayStream()} relays a
+ * whole stream byte for byte, as done in the {@code ndjson} format, for comparison; its time
+ * per stream is divided by {@code tokens} to get the cost per token.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingChunkBenchmark {
+
+    /**
+     * The number of token chunks in the relayed stream.
+     */
+    @Param({"256"})
+    public int tokens;
+
+    private String chunk;
+    private byte[] stream;
+    private StreamRelay streamRelay;
+    private BenchmarkExchange.CountingOutputStream client;
+
+    @Setup
+    public void setUp() {
+        chunk = Payloads.ollamaChunk(1);
+        stream = Payloads.ollamaStream(tokens);
+        streamRelay = new StreamRelay(new BufferPool());
+        client = new BenchmarkExchange.CountingOutputStream();
+    }
+
+    @Benchmark
+    public String toTokenLine() {
+        return GenerateResponseStreamingHandler.toTokenLine(chunk);
+    }
+
+    @Benchmark
+    public String relayStream() throws IOException {
+        return streamRelay.relay(new ByteArrayInputStream(stream), client);
+    }
+}
@@ -1,15 +1,23 @@
 package LLM.ExternalClient;
 
+import LLM.GenerationMetrics;
+import LLM.GenerationOptions;
 import LLM.HttpClient;
+import LLM.Transport.JsonReader;
+import LLM.Transport.UpstreamResponse;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * The {@code Groq} class provides an interface to interact with the Groq API.
@@ -18,7 +26,7 @@ import java.util.Map;
  * for HTTP communication.
  *
  * <p>This class depends on the {@link ApiKeyLoader} to retrieve the API key and
- * interacts with the Groq API to generate non-streaming chat completions.
+ * interacts with the Groq API to generate streaming and non-streaming chat completions.
  */
 public class Groq {
 
@@ -32,6 +40,26 @@ public class Groq {
      */
     private final String apiKey;
 
+    /**
+     * The endpoint of the chat completions API.
+     */
+    private static final String CHAT_COMPLETIONS_ENDPOINT = "/openai/v1/chat/completions";
+
+    /**
+     * The prefix of a data line in the event stream of the API.
+     */
+    private static final String DATA_PREFIX = "data:";
+
+    /**
+     * The data marking the end of the event stream.
+     */
+    private static final String DONE_MARKER = "[DONE]";
+
+    /**
+     * The base URL of the Groq API.
+     */
+    public static final String DEFAULT_URL = "https://api.groq.com";
+
     /**
      * Constructs a new {@code Groq} instance.
      * <p>
@@ -42,7 +70,18 @@ public class Groq {
      * @throws IOException if an error occurs while retrieving the API key or initializing the HTTP client.
      */
     public Groq() throws IOException {
-        this.httpClient = new HttpClient("https://api.groq.com");
+        this(DEFAULT_URL);
+    }
+
+    /**
+     * Constructs a new {@code Groq} instance for an OpenAI-compatible API at the given URL, e.g.
+     * a local stand-in for load tests. The API key is retrieved as in {@link #Groq()}.
+     *
+     * @param baseUrl the base URL of the API, without the {@code /openai/v1} path.
+     * @throws IOException if an error occurs while retrieving the API key or initializing the HTTP client.
+     */
+    public Groq(String baseUrl) throws IOException {
+        this.httpClient = new HttpClient(baseUrl);
 
         String jarPath = new File(ApiKeyLoader.class.getProtectionDomain().getCodeSource().getLocation().getPath())
                 .getParentFile()
@@ -54,6 +93,30 @@ public class Groq {
         this.apiKey = apiKeyLoader.getApiKey(filePath.toString());
     }
 
+    /**
+     * Creates a {@code Groq} instance if an API key is configured.
+     *
+     * @return the {@code Groq} client, or {@code null} if it could not be initialized.
+     */
+    public static Groq createIfAvailable() {
+        return createIfAvailable(DEFAULT_URL);
+    }
+
+    /**
+     * Creates a {@code Groq} instance for the API at the given URL if an API key is configured.
+     *
+     * @param baseUrl the base URL of the API.
+     * @return the {@code Groq} client, or {@code null} if it could not be initialized.
+     */
+    public static Groq createIfAvailable(String baseUrl) {
+        try {
+            return new Groq(baseUrl);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Groq service could not be initialized");
+            return null;
+        }
+    }
+
     /**
      * Sends a prompt to the Groq API and retrieves the non-streaming response.
      * <p>
@@ -65,14 +128,159 @@ public class Groq {
      * @throws Exception if an error occurs while making the request or parsing the response.
      */
     public String generateResponseNonStreaming(String prompt) throws Exception {
-        String endpoint = "/openai/v1/chat/completions";
+        return generateResponseNonStreaming(prompt, GenerationOptions.DEFAULT);
+    }
+
+    /**
+     * Sends a prompt to the Groq API and retrieves the non-streaming response.
+     * <p>
+     * Parameters that are not set in {@code options} fall back to the predefined values
+     * (temperature 1.0, top_p 1.0, 4500 max tokens).
+     *
+     * @param prompt  the user prompt to send to the Groq API.
+     * @param options the {@link GenerationOptions} for this request.
+     * @return the generated response as a {@link String}.
+     * @throws Exception if an error occurs while making the request or parsing the response.
+     */
+    public String generateResponseNonStreaming(String prompt, GenerationOptions options) throws Exception {
+        return httpClient.postRequestWithHeaders(CHAT_COMPLETIONS_ENDPOINT, buildPayload(prompt, options, false).toString(),
+                buildHeaders(), Groq::readContent);
+    }
+
+    /**
+     * Extracts the generated content, {@code choices[0].message.content}, from a chat completion
+     * and skips the rest of the response.
+     *
+     * @param json the {@link JsonReader} positioned at the start of the response.
+     * @return the generated content.
+     * @throws IOException if the response is malformed or contains no content.
+     */
+    private static String readContent(JsonReader json) throws IOException {
+        json.beginObject();
+        if (json.seek("choices") && json.peek() == JsonReader.Token.BEGIN_ARRAY) {
+            json.beginArray();
+            if (json.hasNext() && json.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                json.beginObject();
+                if (json.seek("message") && json.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    json.beginObject();
+                    if (json.seek("content") && json.peek() == JsonReader.Token.STRING) {
+                        return json.nextString();
+                    }
+                }
+            }
+        }
+        throw new IOException("The API response does not contain 'choices[0].message.content'");
+    }
+
+    /**
+     * Sends a prompt to the Groq API and streams the response.
+     *
+     * @param prompt            the user prompt to send to the Groq API.
+     * @param onPartialResponse receives every piece of generated text as soon as it arrives.
+     * @param onError           receives the error if the request or the stream fails.
+     * @param onComplete        is called after the last piece of text has been delivered.
+     * @return the {@link GenerationMetrics} reported by Groq, or {@code null} if the stream failed
+     *         or reported none.
+     * @see #generateResponseStreaming(String, GenerationOptions, Consumer, Consumer, Runnable)
+     */
+    public GenerationMetrics generateResponseStreaming(String prompt, Consumer<String> onPartialResponse,
+                                                       Consumer<Exception> onError, Runnable onComplete) {
+        return generateResponseStreaming(prompt, GenerationOptions.DEFAULT, onPartialResponse, onError, onComplete);
+    }
+
+    /**
+     * Sends a prompt to the Groq API and streams the response.
+     * <p>
+     * The API sends the completion as Server-Sent Events, each {@code data:} line holding a JSON
+     * chunk whose {@code choices[0].delta.content} is the next piece of text, until the line
+     * {@code data: [DONE]}. The chunks are parsed as they arrive and their text is passed to
+     * {@code onPartialResponse} right away. A stream that ends before that line is reported to
+     * {@code onError}, as the response is incomplete. Unlike the callbacks of the Ollama streaming client,
+     * the callbacks are invoked on the calling thread, and the method returns after
+     * {@code onComplete} or {@code onError} has been called.
+     *
+     * @param prompt            the user prompt to send to the Groq API.
+     * @param options           the {@link GenerationOptions} for this request.
+     * @param onPartialResponse receives every piece of generated text as soon as it arrives.
+     * @param onError           receives the error if the request or the stream fails.
+     * @param onComplete        is called after the last piece of text has been delivered.
+     * @return the {@link GenerationMetrics} reported by Groq, or {@code null} if the stream failed
+     *         or reported none.
+     */
+    public GenerationMetrics generateResponseStreaming(String prompt, GenerationOptions options, Consumer<String> onPartialResponse,
+                                                       Consumer<Exception> onError, Runnable onComplete) {
+        try (UpstreamResponse response = httpClient.postRequestStreaming(
+                CHAT_COMPLETIONS_ENDPOINT, buildPayload(prompt, options, true).toString(), buildHeaders())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            GenerationMetrics metrics = null;
+            String finishReason = null;
+            boolean done = false;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith(DATA_PREFIX)) {
+                    continue; // Empty separator lines and comments
+                }
+                String data = line.substring(DATA_PREFIX.length()).trim();
+                if (data.equals(DONE_MARKER)) {
+                    done = true;
+                    break;
+                }
 
-        // Hardcoded parameters
+                JSONObject chunk = new JSONObject(data);
+                if (chunk.has("error")) {
+                    throw new IOException("Groq stream failed: " + chunk.get("error"));
+                }
+
+                JSONArray choices = chunk.optJSONArray("choices");
+                if (choices != null && !choices.isEmpty()) {
+                    JSONObject choice = choices.getJSONObject(0);
+                    String content = choice.optJSONObject("delta", new JSONObject()).optString("content", "");
+                    if (!content.isEmpty()) {
+                        onPartialResponse.accept(content);
+                    }
+                    if (!choice.isNull("finish_reason")) {
+                        finishReason = choice.optString("finish_reason", null);
+                    }
+                }
+
+                // The last chunk carries the token counts and timings
+                JSONObject usage = chunk.has("x_groq") ? chunk.getJSONObject("x_groq").optJSONObject("usage") : chunk.optJSONObject("usage");
+                if (usage != null) {
+                    metrics = GenerationMetrics.fromOpenAiUsage(usage, finishReason);
+                }
+            }
+
+            // A stream cut off by the server or the network must not pass for a complete response
+            if (!done) {
+                throw new IOException("Groq stream ended without " + DONE_MARKER);
+            }
+
+            onComplete.run();
+            return metrics;
+        } catch (Exception e) {
+            onError.accept(e);
+            return null;
+        }
+    }
+
+    /**
+     * Builds the request payload of a chat completion.
+     * <p>
+     * Parameters that are not set in {@code options} fall back to the predefined values
+     * (temperature 1.0, top_p 1.0, 4500 max tokens).
+     *
+     * @param prompt  the user prompt.
+     * @param options the {@link GenerationOptions} for this request.
+     * @param stream  whether the completion is streamed.
+     * @return the payload as {@link JSONObject}.
+     */
+    private JSONObject buildPayload(String prompt, GenerationOptions options, boolean stream) {
+        // Hardcoded parameters, unless overridden by the options
         String model = "llama-3.3-70b-versatile";
-        double temperature = 1.0;
-        int maxTokens = 4500;
-        double topP = 1.0;
-        boolean stream = false;
+        double temperature = options.getTemperature() != null ? options.getTemperature() : 1.0;
+        int maxTokens = options.getMaxTokens() != null ? options.getMaxTokens() : 4500;
+        double topP = options.getTopP() != null ? options.getTopP() : 1.0;
 
         // Create the messages JSON array
         JSONArray messagesArray = new JSONArray();
@@ -86,23 +294,21 @@ public class Groq {
         payload.put("max_tokens", maxTokens);
         payload.put("top_p", topP);
         payload.put("stream", stream);
+        if (options.getSeed() != null) {
+            payload.put("seed", options.getSeed());
+        }
+        return payload;
+    }
 
-        // Prepare headers
+    /**
+     * Builds the headers of an API request.
+     *
+     * @return the headers including the authorization.
+     */
+    private Map<String, String> buildHeaders() {
         Map<String, String> headers = new HashMap<>();
         headers.put("Content-Type", "application/json");
         headers.put("Authorization", "Bearer " + apiKey);
-
-        // Send the request
-        String response = httpClient.postRequestWithHeaders(endpoint, payload.toString(), headers);
-
-        JSONObject jsonObject = new JSONObject(response);
-
-        // Extract the generated content
-        JSONArray choices = jsonObject.getJSONArray("choices");
-        JSONObject firstChoice = choices.getJSONObject(0);
-        JSONObject message = firstChoice.getJSONObject("message");
-        String content = message.getString("content");
-
-        return content;
+        return headers;
     }
 }
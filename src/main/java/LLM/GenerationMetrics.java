@@ -0,0 +1,247 @@
+package LLM;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code GenerationMetrics} class holds the timings and token counts that Ollama reports in
+ * the final chunk of a generation (the chunk with {@code "done": true}). The usage reported by
+ * Groq is mapped to the same fields.
+ * <p>
+ * All durations are in nanoseconds, as reported by Ollama. Fields missing in the chunk are
+ * {@code 0}.
+ */
+public class GenerationMetrics {
+
+    /**
+     * The reason the generation stopped, e.g. {@code stop} or {@code length}.
+     */
+    private final String doneReason;
+
+    /**
+     * The time spent on the whole request.
+     */
+    private final long totalDurationNanos;
+
+    /**
+     * The time spent loading the model.
+     */
+    private final long loadDurationNanos;
+
+    /**
+     * The number of tokens in the prompt.
+     */
+    private final long promptEvalCount;
+
+    /**
+     * The time spent evaluating the prompt.
+     */
+    private final long promptEvalDurationNanos;
+
+    /**
+     * The number of generated tokens.
+     */
+    private final long evalCount;
+
+    /**
+     * The time spent generating the response.
+     */
+    private final long evalDurationNanos;
+
+    /**
+     * Constructs a {@code GenerationMetrics} instance.
+     *
+     * @param doneReason              the reason the generation stopped, or {@code null}.
+     * @param totalDurationNanos      the time spent on the whole request.
+     * @param loadDurationNanos       the time spent loading the model.
+     * @param promptEvalCount         the number of tokens in the prompt.
+     * @param promptEvalDurationNanos the time spent evaluating the prompt.
+     * @param evalCount               the number of generated tokens.
+     * @param evalDurationNanos       the time spent generating the response.
+     */
+    public GenerationMetrics(String doneReason, long totalDurationNanos, long loadDurationNanos, long promptEvalCount,
+                             long promptEvalDurationNanos, long evalCount, long evalDurationNanos) {
+        this.doneReason = doneReason;
+        this.totalDurationNanos = totalDurationNanos;
+        this.loadDurationNanos = loadDurationNanos;
+        this.promptEvalCount = promptEvalCount;
+        this.promptEvalDurationNanos = promptEvalDurationNanos;
+        this.evalCount = evalCount;
+        this.evalDurationNanos = evalDurationNanos;
+    }
+
+    /**
+     * Reads the metrics from the final chunk of an Ollama generation.
+     *
+     * @param doneChunk the chunk with {@code "done": true}.
+     * @return the {@code GenerationMetrics} of the generation.
+     */
+    public static GenerationMetrics fromOllamaJson(JSONObject doneChunk) {
+        return new GenerationMetrics(
+                doneChunk.optString("done_reason", null),
+                doneChunk.optLong("total_duration"),
+                doneChunk.optLong("load_duration"),
+                doneChunk.optLong("prompt_eval_count"),
+                doneChunk.optLong("prompt_eval_duration"),
+                doneChunk.optLong("eval_count"),
+                doneChunk.optLong("eval_duration"));
+    }
+
+    /**
+     * Reads the metrics from the {@code usage} object of an OpenAI-compatible API such as Groq,
+     * which reports durations in seconds.
+     *
+     * @param usage        the usage object.
+     * @param finishReason the {@code finish_reason} of the completion, or {@code null}.
+     * @return the {@code GenerationMetrics} of the generation.
+     */
+    public static GenerationMetrics fromOpenAiUsage(JSONObject usage, String finishReason) {
+        return new GenerationMetrics(
+                finishReason,
+                secondsToNanos(usage.optDouble("total_time", 0)),
+                0,
+                usage.optLong("prompt_tokens"),
+                secondsToNanos(usage.optDouble("prompt_time", 0)),
+                usage.optLong("completion_tokens"),
+                secondsToNanos(usage.optDouble("completion_time", 0)));
+    }
+
+    /**
+     * Converts a duration in seconds to nanoseconds.
+     *
+     * @param seconds the duration in seconds.
+     * @return the duration in nanoseconds.
+     */
+    private static long secondsToNanos(double seconds) {
+        return Math.round(seconds * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Retrieves the reason the generation stopped.
+     *
+     * @return the done reason, or {@code null} if it was not reported.
+     */
+    public String getDoneReason() {
+        return doneReason;
+    }
+
+    /**
+     * Retrieves the time spent on the whole request.
+     *
+     * @return the total duration in nanoseconds.
+     */
+    public long getTotalDurationNanos() {
+        return totalDurationNanos;
+    }
+
+    /**
+     * Retrieves the time spent loading the model.
+     *
+     * @return the load duration in nanoseconds.
+     */
+    public long getLoadDurationNanos() {
+        return loadDurationNanos;
+    }
+
+    /**
+     * Retrieves the number of tokens in the prompt.
+     *
+     * @return the prompt token count.
+     */
+    public long getPromptEvalCount() {
+        return promptEvalCount;
+    }
+
+    /**
+     * Retrieves the time spent evaluating the prompt.
+     *
+     * @return the prompt evaluation duration in nanoseconds.
+     */
+    public long getPromptEvalDurationNanos() {
+        return promptEvalDurationNanos;
+    }
+
+    /**
+     * Retrieves the number of generated tokens.
+     *
+     * @return the generated token count.
+     */
+    public long getEvalCount() {
+        return evalCount;
+    }
+
+    /**
+     * Retrieves the time spent generating the response.
+     *
+     * @return the generation duration in nanoseconds.
+     */
+    public long getEvalDurationNanos() {
+        return evalDurationNanos;
+    }
+
+    /**
+     * Computes the generation speed.
+     *
+     * @return the generated tokens per second, or {@code 0} if no duration was reported.
+     */
+    public double getTokensPerSecond() {
+        return evalDurationNanos == 0 ? 0.0 : evalCount * (double) TimeUnit.SECONDS.toNanos(1) / evalDurationNanos;
+    }
+
+    /**
+     * Computes the prompt processing speed.
+     *
+     * @return the prompt tokens per second, or {@code 0} if no duration was reported.
+     */
+    public double getPromptTokensPerSecond() {
+        return promptEvalDurationNanos == 0 ? 0.0 : promptEvalCount * (double) TimeUnit.SECONDS.toNanos(1) / promptEvalDurationNanos;
+    }
+
+    /**
+     * Converts the metrics to a JSON object.
+     *
+     * @return the metrics as {@link JSONObject}.
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("doneReason", doneReason);
+        json.put("totalDurationMillis", TimeUnit.NANOSECONDS.toMillis(totalDurationNanos));
+        json.put("loadDurationMillis", TimeUnit.NANOSECONDS.toMillis(loadDurationNanos));
+        json.put("promptTokens", promptEvalCount);
+        json.put("promptEvalDurationMillis", TimeUnit.NANOSECONDS.toMillis(promptEvalDurationNanos));
+        json.put("generatedTokens", evalCount);
+        json.put("evalDurationMillis", TimeUnit.NANOSECONDS.toMillis(evalDurationNanos));
+        json.put("tokensPerSecond", getTokensPerSecond());
+        return json;
+    }
+
+    /**
+     * Converts the metrics to the fields of an Ollama chunk with {@code "done": true}, so that
+     * streams of other backends can end the same way as Ollama streams.
+     *
+     * @return the final chunk as {@link JSONObject}, with an empty {@code response}.
+     */
+    public JSONObject toOllamaDoneChunk() {
+        JSONObject json = new JSONObject();
+        json.put("response", "");
+        json.put("done", true);
+        if (doneReason != null) {
+            json.put("done_reason", doneReason);
+        }
+        json.put("total_duration", totalDurationNanos);
+        json.put("load_duration", loadDurationNanos);
+        json.put("prompt_eval_count", promptEvalCount);
+        json.put("prompt_eval_duration", promptEvalDurationNanos);
+        json.put("eval_count", evalCount);
+        json.put("eval_duration", evalDurationNanos);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d prompt tokens, %d generated tokens (%.1f tokens/s), total %d ms, load %d ms",
+                promptEvalCount, evalCount, getTokensPerSecond(),
+                TimeUnit.NANOSECONDS.toMillis(totalDurationNanos), TimeUnit.NANOSECONDS.toMillis(loadDurationNanos));
+    }
+}
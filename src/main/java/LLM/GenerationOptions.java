@@ -0,0 +1,166 @@
+package LLM;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The {@code GenerationOptions} class holds the optional sampling parameters of a generation
+ * request. Parameters that are not set are left to the defaults of the respective backend.
+ * <p>
+ * The options are read from a JSON object using the keys {@code temperature}, {@code seed},
+ * {@code top_p} and {@code max_tokens}, and can be translated into the option formats of the
+ * Ollama and Groq APIs.
+ */
+public class GenerationOptions {
+
+    /**
+     * Options without any parameter set.
+     */
+    public static final GenerationOptions DEFAULT = new GenerationOptions(null, null, null, null);
+
+    /**
+     * The sampling temperature, or {@code null} if not set.
+     */
+    private final Double temperature;
+
+    /**
+     * The random seed, or {@code null} if not set.
+     */
+    private final Long seed;
+
+    /**
+     * The nucleus sampling probability, or {@code null} if not set.
+     */
+    private final Double topP;
+
+    /**
+     * The maximum number of tokens to generate, or {@code null} if not set.
+     */
+    private final Integer maxTokens;
+
+    /**
+     * Constructs a {@code GenerationOptions} instance.
+     *
+     * @param temperature the sampling temperature, or {@code null}.
+     * @param seed        the random seed, or {@code null}.
+     * @param topP        the nucleus sampling probability, or {@code null}.
+     * @param maxTokens   the maximum number of tokens to generate, or {@code null}.
+     */
+    public GenerationOptions(Double temperature, Long seed, Double topP, Integer maxTokens) {
+        this.temperature = temperature;
+        this.seed = seed;
+        this.topP = topP;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Creates {@code GenerationOptions} from a JSON object.
+     *
+     * @param json the JSON object, or {@code null}.
+     * @return the parsed options, or {@link #DEFAULT} if {@code json} is {@code null}.
+     * @throws IllegalArgumentException if a parameter has an invalid type or value.
+     */
+    public static GenerationOptions fromJson(JSONObject json) {
+        if (json == null) {
+            return DEFAULT;
+        }
+
+        try {
+            Double temperature = json.has("temperature") ? json.getDouble("temperature") : null;
+            Long seed = json.has("seed") ? json.getLong("seed") : null;
+            Double topP = json.has("top_p") ? json.getDouble("top_p") : null;
+            Integer maxTokens = json.has("max_tokens") ? json.getInt("max_tokens") : null;
+
+            if (temperature != null && temperature < 0) {
+                throw new IllegalArgumentException("'temperature' must not be negative");
+            }
+            if (maxTokens != null && maxTokens < 1) {
+                throw new IllegalArgumentException("'max_tokens' must be positive");
+            }
+            return new GenerationOptions(temperature, seed, topP, maxTokens);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid generation options: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks whether the options produce reproducible output, i.e. the temperature is
+     * {@code 0} or a fixed seed is set.
+     *
+     * @return {@code true} if the generated text is deterministic.
+     */
+    public boolean isDeterministic() {
+        return (temperature != null && temperature == 0.0) || seed != null;
+    }
+
+    /**
+     * Translates the options into the {@code options} object of the Ollama API.
+     *
+     * @return the Ollama options; empty if no parameter is set.
+     */
+    public JSONObject toOllamaOptions() {
+        JSONObject options = new JSONObject();
+        if (temperature != null) {
+            options.put("temperature", temperature);
+        }
+        if (seed != null) {
+            options.put("seed", seed);
+        }
+        if (topP != null) {
+            options.put("top_p", topP);
+        }
+        if (maxTokens != null) {
+            options.put("num_predict", maxTokens);
+        }
+        return options;
+    }
+
+    /**
+     * Builds a canonical textual representation in which equal options always produce
+     * the same string, regardless of how they were specified.
+     *
+     * @return the canonical representation.
+     */
+    public String toCanonicalString() {
+        return "temperature=" + (temperature == null ? "" : Double.toString(temperature))
+                + ";seed=" + (seed == null ? "" : Long.toString(seed))
+                + ";top_p=" + (topP == null ? "" : Double.toString(topP))
+                + ";max_tokens=" + (maxTokens == null ? "" : Integer.toString(maxTokens));
+    }
+
+    /**
+     * Retrieves the sampling temperature.
+     *
+     * @return the temperature, or {@code null} if not set.
+     */
+    public Double getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * Retrieves the random seed.
+     *
+     * @return the seed, or {@code null} if not set.
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Retrieves the nucleus sampling probability.
+     *
+     * @return the top-p value, or {@code null} if not set.
+     */
+    public Double getTopP() {
+        return topP;
+    }
+
+    /**
+     * Retrieves the maximum number of tokens to generate.
+     *
+     * @return the token limit, or {@code null} if not set.
+     */
+    public Integer getMaxTokens() {
+        return maxTokens;
+    }
+}
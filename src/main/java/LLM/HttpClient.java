@@ -1,12 +1,14 @@
 package LLM;
 
-import java.io.BufferedReader;
+import LLM.Transport.JsonReader;
+import LLM.Transport.UpstreamResponse;
+import LLM.Transport.UpstreamStatusException;
+import LLM.Transport.UpstreamTransport;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -15,7 +17,9 @@ import java.util.Map;
  * ability to add custom headers and send JSON payloads.
  * <p>
  * This class is designed for interaction with RESTful APIs and can be used
- * as a utility for other components requiring HTTP communication.
+ * as a utility for other components requiring HTTP communication. All requests are
+ * sent through the shared {@link UpstreamTransport}, so connections to the host are
+ * kept alive and reused across requests.
  */
 public class HttpClient {
 
@@ -24,6 +28,11 @@ public class HttpClient {
      */
     private String host;
 
+    /**
+     * The {@link UpstreamTransport} used to perform the requests.
+     */
+    private final UpstreamTransport transport = UpstreamTransport.shared();
+
     /**
      * Constructs an {@code HttpClient} with the specified host.
      *
@@ -55,53 +64,114 @@ public class HttpClient {
      * @throws IOException if an I/O error occurs during the request or if the response code is not 200.
      */
     public String postRequestWithHeaders(String endpoint, String jsonPayload, Map<String, String> headers) throws IOException {
-        URL url = new URL(host + endpoint);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json; utf-8");
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setDoOutput(true);
+        try (UpstreamResponse response = post(endpoint, jsonPayload, headers)) {
+            return readResponse(response.getBody());
+        }
+    }
+
+    /**
+     * Sends a POST request to the specified endpoint with the given JSON payload and reads only
+     * the needed parts of the JSON response, without assembling the body as a string.
+     *
+     * @param endpoint    the endpoint relative to the host.
+     * @param jsonPayload the JSON payload to include in the POST request.
+     * @param reader      the {@link JsonReader.ValueReader} extracting the result from the response.
+     * @param <T>         the type of the result.
+     * @return the result of the reader.
+     * @throws IOException if an I/O error occurs during the request, if the response code is not 200
+     *                     or if the reader fails.
+     */
+    public <T> T postRequest(String endpoint, String jsonPayload, JsonReader.ValueReader<T> reader) throws IOException {
+        return postRequestWithHeaders(endpoint, jsonPayload, null, reader);
+    }
+
+    /**
+     * Sends a POST request to the specified endpoint with the given JSON payload and headers and
+     * reads only the needed parts of the JSON response.
+     *
+     * @param endpoint    the endpoint relative to the host.
+     * @param jsonPayload the JSON payload to include in the POST request.
+     * @param headers     a map of additional headers to include in the request.
+     * @param reader      the {@link JsonReader.ValueReader} extracting the result from the response.
+     * @param <T>         the type of the result.
+     * @return the result of the reader.
+     * @throws IOException if an I/O error occurs during the request, if the response code is not 200
+     *                     or if the reader fails.
+     */
+    public <T> T postRequestWithHeaders(String endpoint, String jsonPayload, Map<String, String> headers,
+                                        JsonReader.ValueReader<T> reader) throws IOException {
+        try (UpstreamResponse response = post(endpoint, jsonPayload, headers)) {
+            return JsonReader.read(response.getBody(), reader);
+        }
+    }
+
+    /**
+     * Sends a POST request expecting a JSON response. The caller must close the returned response.
+     *
+     * @param endpoint    the endpoint relative to the host.
+     * @param jsonPayload the JSON payload to include in the POST request.
+     * @param headers     a map of additional headers to include in the request, or {@code null}.
+     * @return the open {@link UpstreamResponse}.
+     * @throws IOException if an I/O error occurs during the request or if the response code is not 200.
+     */
+    private UpstreamResponse post(String endpoint, String jsonPayload, Map<String, String> headers) throws IOException {
+        Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Content-Type", "application/json; utf-8");
+        requestHeaders.put("Accept", "application/json");
 
         // Set additional headers
         if (headers != null) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                conn.setRequestProperty(entry.getKey(), entry.getValue());
-            }
+            requestHeaders.putAll(headers);
         }
 
-        // Write the JSON payload
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = jsonPayload.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+        UpstreamResponse response = transport.send("POST", host + endpoint, jsonPayload, requestHeaders);
+        if (response.getStatusCode() != 200) {
+            response.close();
+            throw new UpstreamStatusException("Response code: " + response.getStatusCode(), response.getStatusCode());
         }
+        return response;
+    }
+
+    /**
+     * Sends a POST request to the specified endpoint and returns the response without reading
+     * its body, so that a streamed body can be consumed while the server is still sending it.
+     * The caller must close the returned response.
+     *
+     * @param endpoint    the endpoint relative to the host.
+     * @param jsonPayload the JSON payload to include in the POST request.
+     * @return the open {@link UpstreamResponse}.
+     * @throws IOException if an I/O error occurs during the request or if the response code is not 200.
+     */
+    public UpstreamResponse postRequestStreaming(String endpoint, String jsonPayload) throws IOException {
+        return postRequestStreaming(endpoint, jsonPayload, null);
+    }
 
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("Response code: " + responseCode);
+    /**
+     * Sends a POST request with the given headers to the specified endpoint and returns the
+     * response without reading its body. The caller must close the returned response.
+     *
+     * @param endpoint    the endpoint relative to the host.
+     * @param jsonPayload the JSON payload to include in the POST request.
+     * @param headers     a map of additional headers to include in the request.
+     * @return the open {@link UpstreamResponse}.
+     * @throws IOException if an I/O error occurs during the request or if the response code is not 200.
+     */
+    public UpstreamResponse postRequestStreaming(String endpoint, String jsonPayload, Map<String, String> headers) throws IOException {
+        Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Content-Type", "application/json; utf-8");
+        requestHeaders.put("Accept", "application/x-ndjson, text/event-stream");
+        if (headers != null) {
+            requestHeaders.putAll(headers);
         }
 
-        // Read the response
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(
-                conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-        } catch (IOException e) {
-            // Handle error streams
-            try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(
-                    conn.getErrorStream(), StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = errorReader.readLine()) != null) {
-                    response.append(line);
-                }
+        UpstreamResponse response = transport.send("POST", host + endpoint, jsonPayload, requestHeaders);
+        if (response.getStatusCode() != 200) {
+            try (response) {
+                throw new UpstreamStatusException("Response code: " + response.getStatusCode() + " " + readResponse(response.getBody()),
+                        response.getStatusCode());
             }
-        } finally {
-            conn.disconnect();
         }
-
-        return response.toString();
+        return response;
     }
 
     /**
@@ -109,25 +179,26 @@ public class HttpClient {
      *
      * @param endpoint the endpoint relative to the host.
      * @return the response as a string.
-     * @throws IOException if an I/O error occurs during the request.
+     * @throws IOException if an I/O error occurs during the request or if the response code is not 200.
      */
     public String getRequest(String endpoint) throws IOException {
-        URL url = new URL(host + endpoint);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "application/json");
-
-        // Read the response
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(
-                conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
+        try (UpstreamResponse response = transport.send("GET", host + endpoint, null, Map.of("Accept", "application/json"))) {
+            if (response.getStatusCode() != 200) {
+                throw new UpstreamStatusException("Response code: " + response.getStatusCode(), response.getStatusCode());
             }
+            return readResponse(response.getBody());
         }
+    }
 
-        conn.disconnect();
-        return response.toString();
+    /**
+     * Reads a response body completely. The body is read to its end, which allows the
+     * connection to be reused for the next request. Package-private for the benchmarks.
+     *
+     * @param body the response body.
+     * @return the response as a string, exactly as sent.
+     * @throws IOException if an I/O error occurs while reading.
+     */
+    static String readResponse(InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
     }
 }
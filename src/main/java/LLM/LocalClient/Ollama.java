@@ -1,12 +1,18 @@
 package LLM.LocalClient;
 
+import LLM.GenerationMetrics;
+import LLM.GenerationOptions;
 import LLM.HttpClient;
+import LLM.Metrics.GenerationStats;
+import LLM.Transport.UpstreamResponse;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The {@code Ollama} class provides an interface to manage and interact with local
@@ -14,28 +20,47 @@ import java.util.List;
  * unloading, and querying available or active models.
  * <p>
  * This class depends on {@link HttpClient} for HTTP communication with the local
- * Ollama server.
+ * Ollama server. The timings Ollama reports at the end of every generation are kept in its
+ * {@link GenerationStats}.
  */
 public class Ollama {
 
     private final HttpClient httpClient;
     private String serverUrl;
-    private final String OllamaServerURL = "http://localhost:11434";
-    private Model model;
+    private static final String OllamaServerURL = "http://localhost:11434";
+    private volatile Model model;
+    private volatile String keepAlive;
+    private final GenerationStats generationStats = new GenerationStats();
 
     /**
-     * Enum representing the available language models on the Ollama server.
+     * A model running on the Ollama server as reported by {@code /api/ps}.
+     *
+     * @param model     the {@link Model}.
+     * @param name      the model name as reported by the server.
+     * @param sizeBytes the memory the model occupies, in bytes.
+     * @param vramBytes the part of the memory that is video memory, in bytes.
+     */
+    public record RunningModel(Model model, String name, long sizeBytes, long vramBytes) {
+    }
+
+    /**
+     * A language model on the Ollama server. The models available depend on the server, so any
+     * name is accepted; the constants name the models this client was written for. Instances
+     * are interned by name, ignoring case and the default tag {@code :latest}, so models can be
+     * compared with {@code ==} and used as map keys.
      */
-    public enum Model {
-        TINY_LLAMA("tinyllama"),
-        LLAMA3_1("llama3.1:8b"),
-        LLAMA3_2_3B("llama3.2:3b"),
-        LLAMA2_UNCENSORED("llama2-uncensored:7b"),
-        MOONDREAM("moondream");
+    public static final class Model {
+        private static final Map<String, Model> MODELS = new ConcurrentHashMap<>();
+
+        public static final Model TINY_LLAMA = of("tinyllama");
+        public static final Model LLAMA3_1 = of("llama3.1:8b");
+        public static final Model LLAMA3_2_3B = of("llama3.2:3b");
+        public static final Model LLAMA2_UNCENSORED = of("llama2-uncensored:7b");
+        public static final Model MOONDREAM = of("moondream");
 
         private final String modelName;
 
-        Model(String modelName) {
+        private Model(String modelName) {
             this.modelName = modelName;
         }
 
@@ -47,21 +72,120 @@ public class Ollama {
         public String getModelName() {
             return modelName;
         }
+
+        /**
+         * Retrieves the model with the given name, ignoring case and the tag {@code :latest}.
+         *
+         * @param modelName the model name, e.g. {@code "llama3.2:3b"}.
+         * @return the {@code Model}.
+         * @throws IllegalArgumentException if the name is blank.
+         */
+        public static Model of(String modelName) {
+            String name = stripLatest(modelName);
+            return MODELS.computeIfAbsent(name.toLowerCase(), key -> new Model(name));
+        }
+
+        /**
+         * Retrieves the key under which a model name is interned, without interning it. Two names
+         * denote the same {@code Model} if and only if their keys are equal.
+         *
+         * @param modelName the model name, e.g. {@code "llama3.2:3b"}.
+         * @return the lowercase name without the tag {@code :latest}.
+         * @throws IllegalArgumentException if the name is blank.
+         */
+        public static String keyOf(String modelName) {
+            return stripLatest(modelName).toLowerCase();
+        }
+
+        /**
+         * Trims a model name and removes the tag {@code :latest}.
+         *
+         * @param modelName the model name.
+         * @return the name as it is interned.
+         * @throws IllegalArgumentException if the name is blank.
+         */
+        private static String stripLatest(String modelName) {
+            if (modelName == null || modelName.isBlank()) {
+                throw new IllegalArgumentException("Model name must not be blank");
+            }
+            String name = modelName.trim();
+            if (name.toLowerCase().endsWith(":latest")) {
+                name = name.substring(0, name.length() - ":latest".length());
+            }
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return modelName;
+        }
     }
 
     /**
      * Constructs an {@code Ollama} instance and initializes it with a default server URL
-     * and model.
+     * and model. If the model is not already loaded, it will be loaded.
      */
     public Ollama() {
-        serverUrl = OllamaServerURL;
-        this.httpClient = new HttpClient(serverUrl);
+        this(Model.LLAMA3_2_3B);
         setModel(Model.LLAMA3_2_3B);
     }
 
+    /**
+     * Constructs an {@code Ollama} instance with a default server URL that uses the given
+     * model. No request is sent to the server; loading the model is left to the caller.
+     *
+     * @param model the {@link Model} to use for generation.
+     */
+    public Ollama(Model model) {
+        this(OllamaServerURL, model);
+    }
+
+    /**
+     * Constructs an {@code Ollama} instance for the given server that uses the given model.
+     * No request is sent to the server; loading the model is left to the caller.
+     *
+     * @param serverUrl the base URL of the Ollama server, e.g. {@code http://localhost:11434}.
+     * @param model     the {@link Model} to use for generation.
+     */
+    public Ollama(String serverUrl, Model model) {
+        this.serverUrl = serverUrl;
+        this.httpClient = new HttpClient(serverUrl);
+        this.model = model;
+    }
+
+    /**
+     * Sets how long the server keeps a model loaded after a request, sent as {@code keep_alive}
+     * with every generation and load request. Numbers are seconds ({@code -1} keeps the model
+     * loaded until it is unloaded explicitly); other values are durations such as {@code 30m}.
+     *
+     * @param keepAlive the keep-alive value, or {@code null} to use the default of the server.
+     */
+    public void setKeepAlive(String keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Retrieves the base URL of the Ollama server.
+     *
+     * @return the server URL.
+     */
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    /**
+     * Retrieves the model used for generation.
+     *
+     * @return the active {@link Model}.
+     */
+    public Model getModel() {
+        return model;
+    }
+
     /**
      * Sets the active model for the Ollama server. If the model is not already loaded,
-     * it will be loaded.
+     * it will be loaded. Other running models are left loaded; the server unloads them
+     * according to their {@code keep_alive}.
      *
      * @param model the {@link Model} to be set as active.
      */
@@ -69,7 +193,7 @@ public class Ollama {
         this.model = model;
 
         try {
-            if (!unloadAllExcept(model)) {
+            if (!listRunningModels().contains(model)) {
                 loadModel(model);
             }
         } catch (IOException e) {
@@ -85,20 +209,130 @@ public class Ollama {
      * @throws IOException if an error occurs during communication with the server or response processing.
      */
     public String generateResponseNonStreaming(String prompt) throws IOException {
+        return generateResponseNonStreaming(prompt, GenerationOptions.DEFAULT);
+    }
+
+    /**
+     * Generates a non-streaming response from the active model based on the provided prompt
+     * and sampling options.
+     *
+     * @param prompt  the input prompt for the model.
+     * @param options the {@link GenerationOptions} for this request.
+     * @return the generated response as a string.
+     * @throws IOException if an error occurs during communication with the server or response processing.
+     */
+    public String generateResponseNonStreaming(String prompt, GenerationOptions options) throws IOException {
+        return generateResponseNonStreaming(prompt, options, model);
+    }
+
+    /**
+     * Generates a non-streaming response from the given model based on the provided prompt
+     * and sampling options. Ollama loads the model first if it is not loaded yet.
+     *
+     * @param prompt  the input prompt for the model.
+     * @param options the {@link GenerationOptions} for this request.
+     * @param model   the {@link Model} generating the response.
+     * @return the generated response as a string.
+     * @throws IOException if an error occurs during communication with the server or response processing.
+     */
+    public String generateResponseNonStreaming(String prompt, GenerationOptions options, Model model) throws IOException {
         JSONObject payload = new JSONObject();
         payload.put("model", model.getModelName());
         payload.put("prompt", prompt);
         payload.put("stream", false);
+        putKeepAlive(payload);
 
-        String response = httpClient.postRequest("/api/generate", payload.toString());
+        JSONObject ollamaOptions = options.toOllamaOptions();
+        if (!ollamaOptions.isEmpty()) {
+            payload.put("options", ollamaOptions);
+        }
 
-        JSONObject jsonResponse = new JSONObject(response);
+        long start = System.nanoTime();
+        OllamaResponse response = httpClient.postRequest("/api/generate", payload.toString(), OllamaResponse::read);
+
+        if (response.response() == null) {
+            throw new IOException("The API response does not contain a 'response' field");
+        }
 
-        if (!jsonResponse.has("response")) {
-            throw new IOException("The API response does not contain a 'response' field: " + response);
+        if (response.done()) {
+            recordGeneration(model, response.metrics(), System.nanoTime() - start);
         }
+        return response.response();
+    }
 
-        return jsonResponse.getString("response");
+    /**
+     * Starts a streaming generation on the active model. The returned response carries the
+     * newline-delimited JSON chunks of Ollama exactly as they arrive; the last chunk has
+     * {@code "done": true} and holds the timings of the generation (see {@link GenerationMetrics}).
+     * As the stream is read by the caller, the caller reports these timings through
+     * {@link #recordGeneration(Model, GenerationMetrics, long)}.
+     *
+     * @param prompt  the input prompt for the model.
+     * @param options the {@link GenerationOptions} for this request.
+     * @return the open {@link UpstreamResponse}, which must be closed by the caller.
+     * @throws IOException if the request could not be sent or the server rejected it.
+     */
+    public UpstreamResponse generateResponseStreaming(String prompt, GenerationOptions options) throws IOException {
+        return generateResponseStreaming(prompt, options, model);
+    }
+
+    /**
+     * Starts a streaming generation on the given model. Ollama loads the model first if it is
+     * not loaded yet.
+     *
+     * @param prompt  the input prompt for the model.
+     * @param options the {@link GenerationOptions} for this request.
+     * @param model   the {@link Model} generating the response.
+     * @return the open {@link UpstreamResponse}, which must be closed by the caller.
+     * @throws IOException if the request could not be sent or the server rejected it.
+     * @see #generateResponseStreaming(String, GenerationOptions)
+     */
+    public UpstreamResponse generateResponseStreaming(String prompt, GenerationOptions options, Model model) throws IOException {
+        JSONObject payload = new JSONObject();
+        payload.put("model", model.getModelName());
+        payload.put("prompt", prompt);
+        payload.put("stream", true);
+        putKeepAlive(payload);
+
+        JSONObject ollamaOptions = options.toOllamaOptions();
+        if (!ollamaOptions.isEmpty()) {
+            payload.put("options", ollamaOptions);
+        }
+
+        return httpClient.postRequestStreaming("/api/generate", payload.toString());
+    }
+
+    /**
+     * Records the timings of a finished generation in the {@link GenerationStats} of this client.
+     * Non-streaming generations are recorded automatically.
+     *
+     * @param model     the {@link Model} that generated the response.
+     * @param metrics   the {@link GenerationMetrics} of the final chunk.
+     * @param wallNanos the time from sending the request to receiving the final chunk in nanoseconds.
+     */
+    public void recordGeneration(Model model, GenerationMetrics metrics, long wallNanos) {
+        generationStats.record(model.getModelName(), metrics, wallNanos);
+    }
+
+    /**
+     * Retrieves the timings of the generations of this client per model.
+     *
+     * @return the {@link GenerationStats}.
+     */
+    public GenerationStats getGenerationStats() {
+        return generationStats;
+    }
+
+    /**
+     * Retrieves the version of the Ollama server. This is a cheap request that can be used to
+     * check whether the server is reachable.
+     *
+     * @return the version reported by the server.
+     * @throws IOException if the server could not be reached or answered with an error.
+     */
+    public String getVersion() throws IOException {
+        String response = httpClient.getRequest("/api/version");
+        return new JSONObject(response).optString("version", "unknown");
     }
 
     /**
@@ -124,6 +358,16 @@ public class Ollama {
      * @throws IOException if an error occurs while fetching the running models.
      */
     public List<Model> listRunningModels() throws IOException {
+        return listRunningModelDetails().stream().map(RunningModel::model).toList();
+    }
+
+    /**
+     * Lists all currently running models on the server together with the memory they occupy.
+     *
+     * @return a list of {@link RunningModel} instances.
+     * @throws IOException if an error occurs while fetching the running models.
+     */
+    public List<RunningModel> listRunningModelDetails() throws IOException {
         String response = httpClient.getRequest("/api/ps");
 
         JSONObject jsonResponse = new JSONObject(response);
@@ -131,31 +375,17 @@ public class Ollama {
             throw new IOException("The API response does not contain a 'models' field: " + response);
         }
 
-        List<Model> runningModels = new ArrayList<>();
+        List<RunningModel> runningModels = new ArrayList<>();
         for (Object modelObject : jsonResponse.getJSONArray("models")) {
             JSONObject modelJson = (JSONObject) modelObject;
             String modelName = modelJson.getString("model");
-
-            Model enumModel = getModelFromName(modelName);
-            if (enumModel != null) {
-                runningModels.add(enumModel);
-            } else {
-                System.out.println("Unknown model: " + modelName);
-            }
+            runningModels.add(new RunningModel(Model.of(modelName), modelName,
+                    modelJson.optLong("size", 0), modelJson.optLong("size_vram", 0)));
         }
 
         return runningModels;
     }
 
-    private Model getModelFromName(String modelName) {
-        for (Model model : Model.values()) {
-            if (model.getModelName().equalsIgnoreCase(modelName)) {
-                return model;
-            }
-        }
-        return null;
-    }
-
     /**
      * Loads the specified model on the server.
      *
@@ -166,6 +396,7 @@ public class Ollama {
     public boolean loadModel(Model model) throws IOException {
         JSONObject payload = new JSONObject();
         payload.put("model", model.getModelName());
+        putKeepAlive(payload);
 
         String response = httpClient.postRequest("/api/generate", payload.toString());
 
@@ -228,4 +459,21 @@ public class Ollama {
         }
         return isWantedModelActive;
     }
+
+    /**
+     * Adds the configured {@code keep_alive} to a request payload.
+     *
+     * @param payload the request payload.
+     */
+    private void putKeepAlive(JSONObject payload) {
+        String value = keepAlive;
+        if (value == null) {
+            return;
+        }
+        if (value.matches("-?\\d+")) {
+            payload.put("keep_alive", Long.parseLong(value));
+        } else {
+            payload.put("keep_alive", value);
+        }
+    }
 }
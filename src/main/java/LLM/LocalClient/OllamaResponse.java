@@ -0,0 +1,86 @@
+package LLM.LocalClient;
+
+import LLM.GenerationMetrics;
+import LLM.Transport.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * The {@code OllamaResponse} record holds the fields of an {@code /api/generate} response that
+ * the clients use: the generated text and the timings of the final chunk.
+ * <p>
+ * It is read with a {@link JsonReader} directly from the response body, skipping all other
+ * fields such as the token {@code context}. A streamed body of several chunks is read as well;
+ * the texts of the chunks are then concatenated.
+ *
+ * @param response the generated text, or {@code null} if the body contained none.
+ * @param done     whether the body contained the final chunk.
+ * @param metrics  the {@link GenerationMetrics} of the final chunk, or {@code null} if there was none.
+ */
+public record OllamaResponse(String response, boolean done, GenerationMetrics metrics) {
+
+    /**
+     * Reads the response from the body of an {@code /api/generate} request.
+     *
+     * @param json the {@link JsonReader} positioned at the start of the body.
+     * @return the {@code OllamaResponse}.
+     * @throws IOException if the body is malformed or contains an {@code error} field.
+     */
+    public static OllamaResponse read(JsonReader json) throws IOException {
+        String response = null;
+        StringBuilder chunks = null;
+        GenerationMetrics metrics = null;
+
+        while (json.hasNext()) {
+            String text = null;
+            boolean done = false;
+            String doneReason = null;
+            long totalDuration = 0;
+            long loadDuration = 0;
+            long promptEvalCount = 0;
+            long promptEvalDuration = 0;
+            long evalCount = 0;
+            long evalDuration = 0;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonReader.Token.NULL) {
+                    json.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "response" -> text = json.nextString();
+                    case "done" -> done = json.nextBoolean();
+                    case "done_reason" -> doneReason = json.nextString();
+                    case "total_duration" -> totalDuration = json.nextLong();
+                    case "load_duration" -> loadDuration = json.nextLong();
+                    case "prompt_eval_count" -> promptEvalCount = json.nextLong();
+                    case "prompt_eval_duration" -> promptEvalDuration = json.nextLong();
+                    case "eval_count" -> evalCount = json.nextLong();
+                    case "eval_duration" -> evalDuration = json.nextLong();
+                    case "error" -> throw new IOException("Ollama returned an error: " + json.nextString());
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if (text != null) {
+                if (response == null) {
+                    response = text;
+                } else {
+                    if (chunks == null) {
+                        chunks = new StringBuilder(response);
+                    }
+                    chunks.append(text);
+                }
+            }
+            if (done) {
+                metrics = new GenerationMetrics(doneReason, totalDuration, loadDuration, promptEvalCount,
+                        promptEvalDuration, evalCount, evalDuration);
+            }
+        }
+
+        return new OllamaResponse(chunks != null ? chunks.toString() : response, metrics != null, metrics);
+    }
+}
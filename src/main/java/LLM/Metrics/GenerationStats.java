@@ -0,0 +1,193 @@
+package LLM.Metrics;
+
+import LLM.GenerationMetrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code GenerationStats} class accumulates the timings that Ollama reports in the final
+ * chunk of every generation, per model.
+ * <p>
+ * Prompt evaluation (prefill) and token generation (decode) are summed as token counts and
+ * durations, so their speeds are exact averages over all recorded generations rather than
+ * averages of averages. The model load time and the queue time are recorded as
+ * {@link LatencyHistogram}s. The queue time is the wall time of a request minus the total
+ * duration reported by Ollama: the time the request waited in the server or client before
+ * Ollama started on it, plus the network round trip. A rising queue time on one node means it
+ * is overloaded; a rising load time means its models are evicted and loaded again.
+ */
+public class GenerationStats {
+
+    /**
+     * The accumulated timings of one model.
+     */
+    public static final class ModelStats {
+
+        /**
+         * The number of recorded generations.
+         */
+        private final LongAdder generations = new LongAdder();
+
+        /**
+         * The number of evaluated prompt tokens.
+         */
+        private final LongAdder promptTokens = new LongAdder();
+
+        /**
+         * The time spent evaluating prompts, in nanoseconds.
+         */
+        private final LongAdder promptEvalNanos = new LongAdder();
+
+        /**
+         * The number of generated tokens.
+         */
+        private final LongAdder generatedTokens = new LongAdder();
+
+        /**
+         * The time spent generating tokens, in nanoseconds.
+         */
+        private final LongAdder evalNanos = new LongAdder();
+
+        /**
+         * The time spent loading the model per generation.
+         */
+        private final LatencyHistogram loadTime = new LatencyHistogram();
+
+        /**
+         * The time per generation not accounted for by Ollama.
+         */
+        private final LatencyHistogram queueTime = new LatencyHistogram();
+
+        /**
+         * Retrieves the number of recorded generations.
+         *
+         * @return the generation count.
+         */
+        public long getGenerations() {
+            return generations.sum();
+        }
+
+        /**
+         * Retrieves the number of evaluated prompt tokens.
+         *
+         * @return the prompt token count.
+         */
+        public long getPromptTokens() {
+            return promptTokens.sum();
+        }
+
+        /**
+         * Retrieves the time spent evaluating prompts.
+         *
+         * @return the prompt evaluation time in nanoseconds.
+         */
+        public long getPromptEvalNanos() {
+            return promptEvalNanos.sum();
+        }
+
+        /**
+         * Retrieves the number of generated tokens.
+         *
+         * @return the generated token count.
+         */
+        public long getGeneratedTokens() {
+            return generatedTokens.sum();
+        }
+
+        /**
+         * Retrieves the time spent generating tokens.
+         *
+         * @return the generation time in nanoseconds.
+         */
+        public long getEvalNanos() {
+            return evalNanos.sum();
+        }
+
+        /**
+         * Computes the average prompt evaluation speed.
+         *
+         * @return the prompt tokens per second, or {@code 0} if nothing was recorded.
+         */
+        public double getPrefillTokensPerSecond() {
+            return perSecond(getPromptTokens(), getPromptEvalNanos());
+        }
+
+        /**
+         * Computes the average generation speed.
+         *
+         * @return the generated tokens per second, or {@code 0} if nothing was recorded.
+         */
+        public double getDecodeTokensPerSecond() {
+            return perSecond(getGeneratedTokens(), getEvalNanos());
+        }
+
+        /**
+         * Retrieves the time spent loading the model per generation.
+         *
+         * @return the {@link LatencyHistogram} of the load durations.
+         */
+        public LatencyHistogram getLoadTime() {
+            return loadTime;
+        }
+
+        /**
+         * Retrieves the time per generation not accounted for by Ollama.
+         *
+         * @return the {@link LatencyHistogram} of the queue times.
+         */
+        public LatencyHistogram getQueueTime() {
+            return queueTime;
+        }
+
+        /**
+         * Computes a rate per second.
+         *
+         * @param count the number of events.
+         * @param nanos the time the events took in nanoseconds.
+         * @return the events per second, or {@code 0} if no time was recorded.
+         */
+        private static double perSecond(long count, long nanos) {
+            return nanos == 0 ? 0.0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+    }
+
+    /**
+     * The accumulated timings per model name.
+     */
+    private final Map<String, ModelStats> models = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records the timings of a finished generation.
+     *
+     * @param model     the name of the model that generated the response.
+     * @param metrics   the {@link GenerationMetrics} of the final chunk.
+     * @param wallNanos the time from sending the request to receiving the final chunk in
+     *                  nanoseconds.
+     */
+    public void record(String model, GenerationMetrics metrics, long wallNanos) {
+        ModelStats stats = models.computeIfAbsent(model, key -> new ModelStats());
+        stats.generations.increment();
+        stats.promptTokens.add(metrics.getPromptEvalCount());
+        stats.promptEvalNanos.add(metrics.getPromptEvalDurationNanos());
+        stats.generatedTokens.add(metrics.getEvalCount());
+        stats.evalNanos.add(metrics.getEvalDurationNanos());
+        stats.loadTime.record(metrics.getLoadDurationNanos());
+
+        long reportedNanos = metrics.getTotalDurationNanos() > 0
+                ? metrics.getTotalDurationNanos()
+                : metrics.getLoadDurationNanos() + metrics.getPromptEvalDurationNanos() + metrics.getEvalDurationNanos();
+        stats.queueTime.record(Math.max(0, wallNanos - reportedNanos));
+    }
+
+    /**
+     * Retrieves the accumulated timings of all models.
+     *
+     * @return the {@link ModelStats}, keyed by model name in ascending order.
+     */
+    public Map<String, ModelStats> getModels() {
+        return models;
+    }
+}
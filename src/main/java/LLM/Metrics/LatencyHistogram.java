@@ -0,0 +1,220 @@
+package LLM.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LatencyHistogram} class records durations in a lock-free, log-linear histogram.
+ * <p>
+ * Durations are stored with microsecond resolution. Values below 16&nbsp;µs get a bucket each;
+ * above that, every power of two is split into 16 buckets, which bounds the relative error of a
+ * reported percentile to about 6%. Recording a value is a single atomic increment, so many
+ * threads can record concurrently without contention on a lock. Histograms can be merged,
+ * e.g. to combine the latencies of several clients or time windows.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets per power of two (and the number of linear buckets at the start).
+     */
+    private static final int SUB_BUCKETS = 16;
+
+    /**
+     * The base-2 logarithm of {@link #SUB_BUCKETS}.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * The largest power of two covered; larger values are counted in the last bucket.
+     * 2^41 µs is roughly 25 days.
+     */
+    private static final int MAX_EXPONENT = 41;
+
+    /**
+     * The total number of buckets.
+     */
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The number of values per bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of all recorded values in nanoseconds.
+     */
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * The largest recorded value in nanoseconds.
+     */
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds; negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMicros(value)));
+        count.increment();
+        sumNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this histogram.
+     *
+     * @param other the histogram to merge into this one.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount != 0) {
+                counts.addAndGet(i, bucketCount);
+            }
+        }
+        count.add(other.count.sum());
+        sumNanos.add(other.sumNanos.sum());
+        maxNanos.accumulate(other.maxNanos.get());
+    }
+
+    /**
+     * Retrieves the number of recorded values.
+     *
+     * @return the value count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Retrieves the sum of all recorded values.
+     *
+     * @return the sum in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Retrieves the largest recorded value.
+     *
+     * @return the maximum in nanoseconds, or {@code 0} if nothing was recorded.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Retrieves the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds, or {@code 0} if nothing was recorded.
+     */
+    public double getMeanNanos() {
+        long total = count.sum();
+        return total == 0 ? 0.0 : (double) sumNanos.sum() / total;
+    }
+
+    /**
+     * Retrieves the value below which the given percentage of recorded values falls.
+     *
+     * @param percentile the percentile between 0 and 100, e.g. {@code 99.9}.
+     * @return the upper bound of the matching bucket in nanoseconds, or {@code 0} if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(i)), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Retrieves the number of recorded values that are less than or equal to the given bound,
+     * e.g. for the cumulative buckets of a Prometheus histogram. Values are compared at bucket
+     * granularity.
+     *
+     * @param boundNanos the inclusive upper bound in nanoseconds.
+     * @return the number of values up to the bound.
+     */
+    public long getCountAtOrBelow(long boundNanos) {
+        long boundMicros = TimeUnit.NANOSECONDS.toMicros(boundNanos);
+        long result = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (bucketUpperBound(i) > boundMicros) {
+                break;
+            }
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sumNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Computes the bucket of a value.
+     *
+     * @param micros the value in microseconds.
+     * @return the bucket index.
+     */
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Computes the largest value that falls into a bucket.
+     *
+     * @param index the bucket index.
+     * @return the inclusive upper bound in microseconds.
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
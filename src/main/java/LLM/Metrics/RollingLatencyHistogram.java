@@ -0,0 +1,94 @@
+package LLM.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code RollingLatencyHistogram} class records durations over a sliding time range.
+ * <p>
+ * Values are recorded into the {@link LatencyHistogram} of the current observation window. When
+ * the window ends, it becomes the previous window and a new one starts; older values are dropped.
+ * A snapshot merges the current and the previous window, so it covers the last one to two
+ * windows: it follows changes in latency without losing all samples whenever a window starts.
+ */
+public class RollingLatencyHistogram {
+
+    /**
+     * The length of an observation window in nanoseconds.
+     */
+    private final long windowNanos;
+
+    /**
+     * Guards the rotation of the windows.
+     */
+    private final ReentrantLock rotationLock = new ReentrantLock();
+
+    /**
+     * The values of the current window.
+     */
+    private volatile LatencyHistogram current = new LatencyHistogram();
+
+    /**
+     * The values of the previous window.
+     */
+    private volatile LatencyHistogram previous = new LatencyHistogram();
+
+    /**
+     * The time at which the current window ends, as returned by {@link System#nanoTime()}.
+     */
+    private volatile long windowEndNanos;
+
+    /**
+     * Constructs a {@code RollingLatencyHistogram}.
+     *
+     * @param windowSeconds the length of an observation window in seconds.
+     */
+    public RollingLatencyHistogram(long windowSeconds) {
+        this.windowNanos = TimeUnit.SECONDS.toNanos(Math.max(1, windowSeconds));
+        this.windowEndNanos = System.nanoTime() + windowNanos;
+    }
+
+    /**
+     * Records a duration in the current window.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        rotateIfDue();
+        current.record(nanos);
+    }
+
+    /**
+     * Retrieves the values of the current and the previous window.
+     *
+     * @return a new {@link LatencyHistogram} holding the values of both windows.
+     */
+    public LatencyHistogram snapshot() {
+        rotateIfDue();
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.merge(previous);
+        merged.merge(current);
+        return merged;
+    }
+
+    /**
+     * Starts a new window if the current one has ended. If no value was recorded for more than
+     * a whole window, both windows are cleared.
+     */
+    private void rotateIfDue() {
+        long now = System.nanoTime();
+        if (now - windowEndNanos < 0) {
+            return;
+        }
+        rotationLock.lock();
+        try {
+            if (now - windowEndNanos >= 0) {
+                previous = now - windowEndNanos < windowNanos ? current : new LatencyHistogram();
+                current = new LatencyHistogram();
+                windowEndNanos = now + windowNanos;
+            }
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package LLM.Transport;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code HostPool} class bounds and tracks the connections of the {@link UpstreamTransport}
+ * to a single upstream host.
+ * <p>
+ * The JDK HTTP client keeps the actual sockets in its own pool and does not expose their state.
+ * This class therefore counts active and pending exchanges exactly and derives the number of
+ * idle keep-alive connections from the peak concurrency observed within the keep-alive window:
+ * every connection that was needed at the peak is assumed to stay open until the window expires.
+ * Hosts that negotiated HTTP/2 multiplex all exchanges over a single connection.
+ */
+public class HostPool {
+
+    /**
+     * The host this pool belongs to, in the form {@code scheme://host:port}.
+     */
+    private final String host;
+
+    /**
+     * Limits the number of concurrent exchanges with the host.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The keep-alive timeout of idle connections in nanoseconds.
+     */
+    private final long keepAliveNanos;
+
+    /**
+     * The number of exchanges currently holding a connection.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * The number of exchanges waiting for a connection.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The estimated number of open connections (active and idle).
+     */
+    private int warm;
+
+    /**
+     * The time of the last released connection, as returned by {@link System#nanoTime()}.
+     */
+    private long lastReleaseNanos;
+
+    /**
+     * Whether the host answered with HTTP/2.
+     */
+    private volatile boolean http2;
+
+    /**
+     * Constructs a {@code HostPool}.
+     *
+     * @param host           the host in the form {@code scheme://host:port}.
+     * @param maxConnections the maximum number of concurrent exchanges with the host.
+     * @param keepAliveNanos the keep-alive timeout of idle connections in nanoseconds.
+     */
+    HostPool(String host, int maxConnections, long keepAliveNanos) {
+        this.host = host;
+        this.permits = new Semaphore(maxConnections, true);
+        this.keepAliveNanos = keepAliveNanos;
+    }
+
+    /**
+     * Waits for a free connection slot.
+     *
+     * @param timeoutMillis the maximum waiting time in milliseconds.
+     * @return {@code true} if a slot was obtained; {@code false} if the timeout elapsed.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    boolean acquire(long timeoutMillis) throws InterruptedException {
+        pending.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } finally {
+            pending.decrementAndGet();
+        }
+
+        int nowActive = active.incrementAndGet();
+        synchronized (this) {
+            if (idleExpired(System.nanoTime())) {
+                warm = 0;
+            }
+            warm = Math.max(warm, http2 ? 1 : nowActive);
+        }
+        return true;
+    }
+
+    /**
+     * Releases a connection slot obtained by {@link #acquire(long)}.
+     */
+    void release() {
+        synchronized (this) {
+            lastReleaseNanos = System.nanoTime();
+        }
+        active.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * Records whether the host negotiated HTTP/2.
+     *
+     * @param http2 {@code true} if the last response used HTTP/2.
+     */
+    void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    /**
+     * Checks whether all connections have been idle longer than the keep-alive timeout.
+     *
+     * @param now the current time as returned by {@link System#nanoTime()}.
+     * @return {@code true} if the idle connections have expired.
+     */
+    private boolean idleExpired(long now) {
+        return active.get() <= 1 && lastReleaseNanos != 0 && now - lastReleaseNanos > keepAliveNanos;
+    }
+
+    /**
+     * Retrieves the host this pool belongs to.
+     *
+     * @return the host in the form {@code scheme://host:port}.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Retrieves the number of exchanges currently holding a connection.
+     *
+     * @return the active connection count.
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Retrieves the estimated number of idle keep-alive connections.
+     *
+     * @return the idle connection count.
+     */
+    public synchronized int getIdle() {
+        int currentActive = active.get();
+        if (currentActive == 0 && lastReleaseNanos != 0 && System.nanoTime() - lastReleaseNanos > keepAliveNanos) {
+            return 0;
+        }
+        return Math.max(0, warm - (http2 ? Math.min(currentActive, 1) : currentActive));
+    }
+
+    /**
+     * Retrieves the number of exchanges waiting for a connection.
+     *
+     * @return the pending exchange count.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Checks whether the host negotiated HTTP/2.
+     *
+     * @return {@code true} if the last response from the host used HTTP/2.
+     */
+    public boolean isHttp2() {
+        return http2;
+    }
+}
@@ -0,0 +1,101 @@
+package LLM.Transport;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code IdleWatchdog} class aborts upstream response bodies whose reads have been blocked
+ * for longer than the idle timeout, e.g. because a backend stalls in the middle of a stream.
+ * <p>
+ * The request timeout of the JDK client only covers the time until the response headers
+ * arrive, so without the watchdog a stalled stream would pin the reading thread indefinitely.
+ * Bodies register while they are open; a single daemon thread sweeps them periodically and
+ * hands each abort to a virtual thread, so that no abort can delay the sweep. Only time spent
+ * inside a read counts, so a caller that consumes the body slowly is not affected.
+ */
+final class IdleWatchdog {
+
+    /**
+     * A response body observed by the watchdog.
+     */
+    interface Watched {
+
+        /**
+         * Retrieves the {@link System#nanoTime()} at which the current read started.
+         *
+         * @return the start of the blocked read, or {@code 0} if no read is in progress.
+         */
+        long getReadingSinceNanos();
+
+        /**
+         * Aborts the body because a read has been blocked for too long. Pending and later reads
+         * fail with an {@link java.net.http.HttpTimeoutException}.
+         */
+        void abortIdle();
+    }
+
+    /**
+     * The time in nanoseconds a read may be blocked before the body is aborted.
+     */
+    private final long idleTimeoutNanos;
+
+    /**
+     * The open bodies.
+     */
+    private final Set<Watched> watched = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The thread sweeping the open bodies.
+     */
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Constructs an {@code IdleWatchdog} and starts its sweeper.
+     *
+     * @param idleTimeoutMillis the time in milliseconds a read may be blocked; must be positive.
+     */
+    IdleWatchdog(long idleTimeoutMillis) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upstream-idle-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(10, Math.min(1000, idleTimeoutMillis / 4));
+        sweeper.scheduleAtFixedRate(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts observing a body.
+     *
+     * @param body the {@link Watched} body.
+     */
+    void watch(Watched body) {
+        watched.add(body);
+    }
+
+    /**
+     * Stops observing a body, e.g. because it was closed.
+     *
+     * @param body the {@link Watched} body.
+     */
+    void unwatch(Watched body) {
+        watched.remove(body);
+    }
+
+    /**
+     * Aborts every body whose current read has been blocked for longer than the idle timeout.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Watched body : watched) {
+            long readingSince = body.getReadingSinceNanos();
+            if (readingSince != 0 && now - readingSince > idleTimeoutNanos && watched.remove(body)) {
+                Thread.startVirtualThread(body::abortIdle);
+            }
+        }
+    }
+}
@@ -0,0 +1,756 @@
+package LLM.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The {@code JsonReader} class is an incremental, pull-style reader for JSON read directly from
+ * an upstream response body.
+ * <p>
+ * The caller walks the document token by token ({@link #beginObject()}, {@link #nextName()},
+ * {@link #nextString()}, ...) and skips everything it does not need with {@link #skipValue()},
+ * which neither builds strings nor objects. The body is read through a fixed-size byte buffer
+ * and decoded from UTF-8 only inside the strings that are actually requested, so extracting
+ * the generated text of a response costs a single copy of that text instead of assembling the
+ * whole body and parsing it into a DOM. Strings are returned exactly as encoded, including
+ * newlines and other escaped characters.
+ * <p>
+ * Several top-level values may follow each other, separated by whitespace, as in the
+ * newline-delimited JSON streamed by Ollama; {@link #hasNext()} returns {@code false} at the
+ * end of the body. The reader does not close the stream. Instances are not thread-safe.
+ */
+public class JsonReader {
+
+    /**
+     * Reads the parts of a JSON body a caller needs.
+     *
+     * @param <T> the type of the result.
+     */
+    @FunctionalInterface
+    public interface ValueReader<T> {
+
+        /**
+         * Reads the result from the JSON.
+         *
+         * @param json the {@code JsonReader} positioned at the start of the body.
+         * @return the result.
+         * @throws IOException if the JSON is malformed or lacks a required field.
+         */
+        T read(JsonReader json) throws IOException;
+    }
+
+    /**
+     * The kinds of tokens returned by {@link #peek()}.
+     */
+    public enum Token {
+        /**
+         * The start of an object.
+         */
+        BEGIN_OBJECT,
+
+        /**
+         * The end of an object.
+         */
+        END_OBJECT,
+
+        /**
+         * The start of an array.
+         */
+        BEGIN_ARRAY,
+
+        /**
+         * The end of an array.
+         */
+        END_ARRAY,
+
+        /**
+         * The name of an object member.
+         */
+        NAME,
+
+        /**
+         * A string value.
+         */
+        STRING,
+
+        /**
+         * A number value.
+         */
+        NUMBER,
+
+        /**
+         * A boolean value.
+         */
+        BOOLEAN,
+
+        /**
+         * A {@code null} value.
+         */
+        NULL,
+
+        /**
+         * The end of the body.
+         */
+        END_DOCUMENT
+    }
+
+    /**
+     * The scope of the top level, where any number of values may follow each other.
+     */
+    private static final int DOCUMENT = 0;
+
+    /**
+     * The scope of an object before its first member.
+     */
+    private static final int OBJECT_START = 1;
+
+    /**
+     * The scope of an object after a member name, before the colon.
+     */
+    private static final int OBJECT_NAME = 2;
+
+    /**
+     * The scope of an object after a member value.
+     */
+    private static final int OBJECT_AFTER_VALUE = 3;
+
+    /**
+     * The scope of an array before its first element.
+     */
+    private static final int ARRAY_START = 4;
+
+    /**
+     * The scope of an array after an element.
+     */
+    private static final int ARRAY_AFTER_VALUE = 5;
+
+    /**
+     * The character substituted for malformed UTF-8 sequences.
+     */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /**
+     * The size of the read buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The stream the JSON is read from.
+     */
+    private final InputStream in;
+
+    /**
+     * The read buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * The position of the next unread byte in the buffer.
+     */
+    private int pos;
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int limit;
+
+    /**
+     * The number of bytes consumed before the current buffer, for error messages.
+     */
+    private long bufferOffset;
+
+    /**
+     * The scopes of the enclosing containers, innermost last.
+     */
+    private int[] stack = new int[32];
+
+    /**
+     * The number of scopes on the stack.
+     */
+    private int depth = 1;
+
+    /**
+     * The next token if it has been peeked but not consumed, otherwise {@code null}. The first
+     * character of the token has been consumed, except for numbers.
+     */
+    private Token peeked;
+
+    /**
+     * The buffer the requested strings are decoded into, reused for every string.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Constructs a {@code JsonReader} on the given stream.
+     *
+     * @param in the stream to read the JSON from.
+     */
+    public JsonReader(InputStream in) {
+        this.in = in;
+        stack[0] = DOCUMENT;
+    }
+
+    /**
+     * Reads a response body with the given {@link ValueReader} and then discards the rest of the
+     * body, which allows the connection to be reused for the next request.
+     *
+     * @param body   the response body.
+     * @param reader the {@link ValueReader} extracting the result.
+     * @param <T>    the type of the result.
+     * @return the result of the reader.
+     * @throws IOException if the body cannot be read or the reader fails.
+     */
+    public static <T> T read(InputStream body, ValueReader<T> reader) throws IOException {
+        T result = reader.read(new JsonReader(body));
+        body.transferTo(OutputStream.nullOutputStream());
+        return result;
+    }
+
+    /**
+     * Retrieves the kind of the next token without consuming it.
+     *
+     * @return the next {@link Token}.
+     * @throws IOException if the stream cannot be read or the JSON is malformed.
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    /**
+     * Checks whether the current object or array has another member, or whether the body has
+     * another top-level value.
+     *
+     * @return {@code true} if another name or value follows.
+     * @throws IOException if the stream cannot be read or the JSON is malformed.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the start of an object.
+     *
+     * @throws IOException if the next token is not the start of an object.
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(OBJECT_START);
+    }
+
+    /**
+     * Consumes the end of the current object.
+     *
+     * @throws IOException if the next token is not the end of an object.
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    /**
+     * Consumes the start of an array.
+     *
+     * @throws IOException if the next token is not the start of an array.
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(ARRAY_START);
+    }
+
+    /**
+     * Consumes the end of the current array.
+     *
+     * @throws IOException if the next token is not the end of an array.
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Consumes the name of the next member of the current object.
+     *
+     * @return the member name.
+     * @throws IOException if the next token is not a name.
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Consumes a string value and decodes it.
+     *
+     * @return the string, exactly as encoded.
+     * @throws IOException if the next token is not a string.
+     */
+    public String nextString() throws IOException {
+        expect(Token.STRING);
+        return readString();
+    }
+
+    /**
+     * Consumes a number as {@code long}. Numbers with a fraction or exponent are truncated.
+     *
+     * @return the number.
+     * @throws IOException if the next token is not a number.
+     */
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        String number = readNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            return (long) parseDouble(number);
+        }
+    }
+
+    /**
+     * Consumes a number as {@code double}.
+     *
+     * @return the number.
+     * @throws IOException if the next token is not a number.
+     */
+    public double nextDouble() throws IOException {
+        expect(Token.NUMBER);
+        return parseDouble(readNumber());
+    }
+
+    /**
+     * Consumes a boolean value.
+     *
+     * @return the boolean.
+     * @throws IOException if the next token is not a boolean.
+     */
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        boolean value = buffer[pos - 1] == 't';
+        consumeLiteral(value ? "rue" : "alse");
+        return value;
+    }
+
+    /**
+     * Consumes a {@code null} value.
+     *
+     * @throws IOException if the next token is not {@code null}.
+     */
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        consumeLiteral("ull");
+    }
+
+    /**
+     * Skips the next value, including all nested values, without decoding it. If the next token
+     * is a name, the name and its value are skipped.
+     *
+     * @throws IOException if the stream cannot be read, the JSON is malformed or the current
+     *                     object or array has no further value.
+     */
+    public void skipValue() throws IOException {
+        int nesting = 0;
+        do {
+            Token token = peek();
+            peeked = null;
+            switch (token) {
+                case BEGIN_OBJECT -> {
+                    push(OBJECT_START);
+                    nesting++;
+                }
+                case BEGIN_ARRAY -> {
+                    push(ARRAY_START);
+                    nesting++;
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    if (nesting == 0) {
+                        peeked = token;
+                        throw syntaxError("No value to skip");
+                    }
+                    depth--;
+                    nesting--;
+                }
+                case NAME, STRING -> skipString();
+                case NUMBER -> skipNumber();
+                case BOOLEAN -> consumeLiteral(buffer[pos - 1] == 't' ? "rue" : "alse");
+                case NULL -> consumeLiteral("ull");
+                case END_DOCUMENT -> throw syntaxError("No value to skip");
+            }
+        } while (nesting > 0 || stack[depth - 1] == OBJECT_NAME);
+    }
+
+    /**
+     * Advances to the member with the given name in the current object, skipping all members
+     * before it.
+     *
+     * @param name the member name.
+     * @return {@code true} if the member was found and its value is next, {@code false} if the
+     *         object ended first; the end of the object is not consumed.
+     * @throws IOException if the stream cannot be read or the JSON is malformed.
+     */
+    public boolean seek(String name) throws IOException {
+        while (hasNext()) {
+            if (nextName().equals(name)) {
+                return true;
+            }
+            skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Reads the next token from the stream, following the grammar of the current scope.
+     *
+     * @return the next {@link Token}.
+     * @throws IOException if the stream cannot be read or the JSON is malformed.
+     */
+    private Token doPeek() throws IOException {
+        int scope = stack[depth - 1];
+        int c;
+        switch (scope) {
+            case DOCUMENT -> {
+                c = nextNonWhitespace();
+                if (c == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                return valueToken(c);
+            }
+            case ARRAY_START, ARRAY_AFTER_VALUE -> {
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                if (scope == ARRAY_AFTER_VALUE) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or ']'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                stack[depth - 1] = ARRAY_AFTER_VALUE;
+                return valueToken(c);
+            }
+            case OBJECT_START, OBJECT_AFTER_VALUE -> {
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (scope == OBJECT_AFTER_VALUE) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a member name");
+                }
+                stack[depth - 1] = OBJECT_NAME;
+                return Token.NAME;
+            }
+            default -> {
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                stack[depth - 1] = OBJECT_AFTER_VALUE;
+                return valueToken(nextNonWhitespace());
+            }
+        }
+    }
+
+    /**
+     * Determines the token of a value from its first character. Numbers are pushed back so that
+     * they can be read as a whole.
+     *
+     * @param c the first character of the value.
+     * @return the {@link Token} of the value.
+     * @throws IOException if the character cannot start a value.
+     */
+    private Token valueToken(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c == -1 ? "Unexpected end of input" : "Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Consumes the peeked token if it is of the expected kind.
+     *
+     * @param expected the expected {@link Token}.
+     * @throws IOException if the next token is of another kind.
+     */
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    /**
+     * Pushes a scope onto the stack.
+     *
+     * @param scope the scope of the container just entered.
+     */
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote has been consumed, decoding UTF-8 and
+     * escape sequences.
+     *
+     * @return the decoded string.
+     * @throws IOException if the stream ends inside the string or an escape is malformed.
+     */
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return text.toString();
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c < 0x80) {
+                if (c == -1) {
+                    throw syntaxError("Unterminated string");
+                }
+                text.append((char) c);
+            } else {
+                readMultiByte(c);
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a string whose opening quote has been consumed, without decoding it.
+     *
+     * @throws IOException if the stream ends inside the string.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            } else if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Decodes an escape sequence whose backslash has been consumed.
+     *
+     * @throws IOException if the escape is malformed.
+     */
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"', '\\', '/' -> text.append((char) c);
+            case 'b' -> text.append('\b');
+            case 'f' -> text.append('\f');
+            case 'n' -> text.append('\n');
+            case 'r' -> text.append('\r');
+            case 't' -> text.append('\t');
+            case 'u' -> {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                text.append((char) value);
+            }
+            default -> throw syntaxError("Malformed escape");
+        }
+    }
+
+    /**
+     * Decodes a UTF-8 sequence of two to four bytes whose first byte has been consumed.
+     * Malformed sequences are replaced by U+FFFD.
+     *
+     * @param first the first byte of the sequence.
+     * @throws IOException if the stream cannot be read.
+     */
+    private void readMultiByte(int first) throws IOException {
+        int continuationBytes;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            continuationBytes = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            continuationBytes = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            continuationBytes = 3;
+            codePoint = first & 0x07;
+        } else {
+            text.append(REPLACEMENT);
+            return;
+        }
+        for (int i = 0; i < continuationBytes; i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int next = buffer[pos] & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                text.append(REPLACEMENT);
+                return;
+            }
+            pos++;
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (Character.isValidCodePoint(codePoint)) {
+            text.appendCodePoint(codePoint);
+        } else {
+            text.append(REPLACEMENT);
+        }
+    }
+
+    /**
+     * Reads the characters of a number.
+     *
+     * @return the number as written.
+     * @throws IOException if the stream cannot be read.
+     */
+    private String readNumber() throws IOException {
+        text.setLength(0);
+        while ((pos < limit || fill()) && isNumberChar(buffer[pos])) {
+            text.append((char) buffer[pos++]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Skips the characters of a number.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    private void skipNumber() throws IOException {
+        while ((pos < limit || fill()) && isNumberChar(buffer[pos])) {
+            pos++;
+        }
+    }
+
+    /**
+     * Checks whether a byte can be part of a number.
+     *
+     * @param b the byte.
+     * @return {@code true} for digits, signs, the decimal point and exponent markers.
+     */
+    private static boolean isNumberChar(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    /**
+     * Parses a number read by {@link #readNumber()}.
+     *
+     * @param number the number as written.
+     * @return the number.
+     * @throws IOException if the number is malformed.
+     */
+    private double parseDouble(String number) throws IOException {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number '" + number + "'");
+        }
+    }
+
+    /**
+     * Consumes the rest of a literal such as {@code true}.
+     *
+     * @param rest the characters following the first one.
+     * @throws IOException if the input does not match.
+     */
+    private void consumeLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Malformed literal");
+            }
+        }
+    }
+
+    /**
+     * Reads the next byte that is not whitespace.
+     *
+     * @return the byte, or {@code -1} at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return the byte as unsigned value, or {@code -1} at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * Refills the exhausted buffer from the stream.
+     *
+     * @return {@code false} at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    private boolean fill() throws IOException {
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Creates the exception for malformed JSON.
+     *
+     * @param message the description of the problem.
+     * @return the {@link IOException} with the position in the body.
+     */
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at byte " + (bufferOffset + pos) + " of the JSON body");
+    }
+}
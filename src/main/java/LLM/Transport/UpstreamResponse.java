@@ -0,0 +1,216 @@
+package LLM.Transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code UpstreamResponse} class represents the response of an upstream exchange performed
+ * by the {@link UpstreamTransport}.
+ * <p>
+ * The response body is exposed as a stream so that callers can process it incrementally.
+ * The connection slot of the exchange stays reserved until the response is closed, which
+ * returns the underlying connection to the keep-alive pool. Callers must therefore always
+ * close the response, preferably with try-with-resources.
+ */
+public class UpstreamResponse implements AutoCloseable {
+
+    /**
+     * The HTTP status code of the response.
+     */
+    private final int statusCode;
+
+    /**
+     * The response body.
+     */
+    private final InputStream body;
+
+    /**
+     * Constructs an {@code UpstreamResponse}.
+     *
+     * @param statusCode  the HTTP status code.
+     * @param body        the response body.
+     * @param pool        the {@link HostPool} whose slot is released when the response is closed.
+     * @param watchdog    the {@link IdleWatchdog} aborting stalled reads, or {@code null} for none.
+     * @param description the method and URL of the exchange, for error messages.
+     */
+    UpstreamResponse(int statusCode, InputStream body, HostPool pool, IdleWatchdog watchdog, String description) {
+        this.statusCode = statusCode;
+        this.body = new Body(body, pool, watchdog, description);
+    }
+
+    /**
+     * Retrieves the HTTP status code of the response.
+     *
+     * @return the status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Retrieves the response body. Closing the stream is equivalent to closing the response.
+     *
+     * @return the body as an {@link InputStream}.
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Closes the response body and releases the connection slot.
+     *
+     * @throws IOException if an I/O error occurs while closing the body.
+     */
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+    /**
+     * The response body, which releases the connection slot when it is closed and fails with
+     * an {@link HttpTimeoutException} once the {@link IdleWatchdog} has aborted it.
+     */
+    private static final class Body extends FilterInputStream implements IdleWatchdog.Watched {
+
+        /**
+         * The {@link HostPool} whose slot is released on close.
+         */
+        private final HostPool pool;
+
+        /**
+         * The {@link IdleWatchdog} observing the body, or {@code null}.
+         */
+        private final IdleWatchdog watchdog;
+
+        /**
+         * The method and URL of the exchange, for error messages.
+         */
+        private final String description;
+
+        /**
+         * Whether the body has been closed; the slot is released only once.
+         */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * Whether the body was aborted by the watchdog.
+         */
+        private volatile boolean timedOut;
+
+        /**
+         * The {@link System#nanoTime()} at which the current read started, or {@code 0}.
+         */
+        private volatile long readingSinceNanos;
+
+        /**
+         * Constructs a {@code Body}.
+         *
+         * @param in          the body of the JDK response.
+         * @param pool        the {@link HostPool} whose slot is released on close.
+         * @param watchdog    the {@link IdleWatchdog} aborting stalled reads, or {@code null}.
+         * @param description the method and URL of the exchange.
+         */
+        Body(InputStream in, HostPool pool, IdleWatchdog watchdog, String description) {
+            super(in);
+            this.pool = pool;
+            this.watchdog = watchdog;
+            this.description = description;
+            if (watchdog != null) {
+                watchdog.watch(this);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            startRead();
+            try {
+                return checkTimeout(super.read());
+            } catch (IOException e) {
+                throw timedOut ? timeout() : e;
+            } finally {
+                readingSinceNanos = 0;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            startRead();
+            try {
+                return checkTimeout(super.read(b, off, len));
+            } catch (IOException e) {
+                throw timedOut ? timeout() : e;
+            } finally {
+                readingSinceNanos = 0;
+            }
+        }
+
+        @Override
+        public long getReadingSinceNanos() {
+            return readingSinceNanos;
+        }
+
+        @Override
+        public void abortIdle() {
+            timedOut = true;
+            try {
+                close();
+            } catch (IOException ignored) {
+                // The pending read fails with the timeout either way
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (watchdog != null) {
+                watchdog.unwatch(this);
+            }
+            try {
+                super.close();
+            } finally {
+                pool.release();
+            }
+        }
+
+        /**
+         * Marks the start of a read for the watchdog.
+         *
+         * @throws IOException if the body has already been aborted.
+         */
+        private void startRead() throws IOException {
+            if (timedOut) {
+                throw timeout();
+            }
+            long now = System.nanoTime();
+            readingSinceNanos = now == 0 ? 1 : now;
+        }
+
+        /**
+         * Turns the end of stream seen after an abort into a timeout.
+         *
+         * @param result the result of the read.
+         * @return the result if the body was not aborted.
+         * @throws IOException if the body was aborted by the watchdog.
+         */
+        private int checkTimeout(int result) throws IOException {
+            if (timedOut) {
+                throw timeout();
+            }
+            return result;
+        }
+
+        /**
+         * Creates the exception for an aborted body.
+         *
+         * @return the {@link HttpTimeoutException}.
+         */
+        private HttpTimeoutException timeout() {
+            return new HttpTimeoutException("No data received from " + description + " within the idle timeout");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package LLM.Transport;
+
+import java.io.IOException;
+
+/**
+ * Signals that an upstream server answered a request with a status code other than the expected
+ * one. Unlike other {@link IOException}s, the server was reachable, so callers can tell rejected
+ * requests ({@code 4xx}) from failing servers ({@code 5xx}).
+ */
+public class UpstreamStatusException extends IOException {
+
+    /**
+     * The serialization version of this exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The HTTP status code of the response.
+     */
+    private final int statusCode;
+
+    /**
+     * Constructs an {@code UpstreamStatusException} with the specified detail message.
+     *
+     * @param message    the detail message.
+     * @param statusCode the HTTP status code of the response.
+     */
+    public UpstreamStatusException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Retrieves the HTTP status code of the response.
+     *
+     * @return the status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Checks whether the status code reports an error of the server.
+     *
+     * @return {@code true} if the status code is {@code 5xx}.
+     */
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+}
@@ -0,0 +1,233 @@
+package LLM.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code UpstreamTransport} class is the single HTTP transport shared by all clients that
+ * talk to language model backends ({@link LLM.HttpClient} and {@code LlmClient.HttpClient}).
+ * <p>
+ * It is built on the JDK {@link HttpClient}, which keeps connections alive between exchanges,
+ * reuses TLS sessions and negotiates HTTP/2 over TLS where the upstream supports it. Plain
+ * {@code http://} upstreams such as Ollama are spoken to with HTTP/1.1 to avoid upgrade
+ * attempts. Concurrent exchanges per host are bounded by a {@link HostPool}, which also provides
+ * the pool statistics.
+ * <p>
+ * The shared instance is created on first use. Call {@link #configure(int, int, int, int, int)}
+ * before that to change the default timeouts and limits.
+ */
+public class UpstreamTransport {
+
+    /**
+     * The default connect timeout in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * The default read timeout in milliseconds, the time to wait for the response headers.
+     * Non-streaming generations only send their response headers once the whole text is
+     * generated, so this value is generous.
+     */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 600_000;
+
+    /**
+     * The default idle timeout of response bodies in milliseconds: the longest a single read
+     * of a body, e.g. waiting for the next chunk of a stream, may block.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 120_000;
+
+    /**
+     * The default maximum number of concurrent exchanges per host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 64;
+
+    /**
+     * The default keep-alive timeout of idle connections in seconds.
+     */
+    public static final int DEFAULT_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The shared instance, created lazily by {@link #shared()}.
+     */
+    private static UpstreamTransport shared;
+
+    /**
+     * The underlying JDK HTTP client.
+     */
+    private final HttpClient client;
+
+    /**
+     * The time to wait for the response headers of every exchange.
+     */
+    private final Duration readTimeout;
+
+    /**
+     * The watchdog aborting stalled response bodies, or {@code null} if the idle timeout is off.
+     */
+    private final IdleWatchdog idleWatchdog;
+
+    /**
+     * The maximum number of concurrent exchanges per host.
+     */
+    private final int maxConnectionsPerHost;
+
+    /**
+     * The keep-alive timeout of idle connections in nanoseconds.
+     */
+    private final long keepAliveNanos;
+
+    /**
+     * The connection pools, keyed by {@code scheme://host:port}.
+     */
+    private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an {@code UpstreamTransport}.
+     *
+     * @param connectTimeoutMillis  the connect timeout in milliseconds.
+     * @param readTimeoutMillis     the time in milliseconds to wait for the response headers.
+     * @param idleTimeoutMillis     the time in milliseconds a read of a response body may block,
+     *                              or {@code 0} for no limit.
+     * @param maxConnectionsPerHost the maximum number of concurrent exchanges per host.
+     * @param keepAliveSeconds      the keep-alive timeout of idle connections in seconds.
+     */
+    public UpstreamTransport(int connectTimeoutMillis, int readTimeoutMillis, int idleTimeoutMillis, int maxConnectionsPerHost,
+                             int keepAliveSeconds) {
+        // Read by the JDK client when its connection pool is initialised
+        System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.idleWatchdog = idleTimeoutMillis > 0 ? new IdleWatchdog(idleTimeoutMillis) : null;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.keepAliveNanos = TimeUnit.SECONDS.toNanos(keepAliveSeconds);
+    }
+
+    /**
+     * Configures the shared instance. Has no effect on an instance that has already been
+     * created by {@link #shared()}.
+     *
+     * @param connectTimeoutMillis  the connect timeout in milliseconds.
+     * @param readTimeoutMillis     the time in milliseconds to wait for the response headers.
+     * @param idleTimeoutMillis     the time in milliseconds a read of a response body may block,
+     *                              or {@code 0} for no limit.
+     * @param maxConnectionsPerHost the maximum number of concurrent exchanges per host.
+     * @param keepAliveSeconds      the keep-alive timeout of idle connections in seconds.
+     */
+    public static synchronized void configure(int connectTimeoutMillis, int readTimeoutMillis, int idleTimeoutMillis,
+                                              int maxConnectionsPerHost, int keepAliveSeconds) {
+        if (shared != null) {
+            System.err.println("Upstream transport already in use, configuration ignored");
+            return;
+        }
+        shared = new UpstreamTransport(connectTimeoutMillis, readTimeoutMillis, idleTimeoutMillis, maxConnectionsPerHost, keepAliveSeconds);
+    }
+
+    /**
+     * Retrieves the shared instance, creating it with default settings if necessary.
+     *
+     * @return the shared {@code UpstreamTransport}.
+     */
+    public static synchronized UpstreamTransport shared() {
+        if (shared == null) {
+            shared = new UpstreamTransport(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                    DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_KEEP_ALIVE_SECONDS);
+        }
+        return shared;
+    }
+
+    /**
+     * Performs an HTTP exchange with an upstream host.
+     * <p>
+     * The returned {@link UpstreamResponse} must be closed by the caller. The call can be
+     * cancelled by interrupting the calling thread, which aborts the exchange. The read timeout
+     * only covers the time until the response headers arrive; afterwards every read of the body
+     * is bounded by the idle timeout, so a backend stalling in the middle of a stream fails the
+     * read with an {@link HttpTimeoutException}.
+     *
+     * @param method  the HTTP method, e.g. {@code GET} or {@code POST}.
+     * @param url     the absolute URL.
+     * @param body    the request body, or {@code null} for requests without body.
+     * @param headers the request headers, or {@code null}.
+     * @return the {@link UpstreamResponse}.
+     * @throws IOException if the exchange fails, times out or is interrupted.
+     */
+    public UpstreamResponse send(String method, String url, String body, Map<String, String> headers) throws IOException {
+        URI uri = URI.create(url);
+        HostPool pool = pools.computeIfAbsent(hostKey(uri),
+                host -> new HostPool(host, maxConnectionsPerHost, keepAliveNanos));
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if ("http".equalsIgnoreCase(uri.getScheme())) {
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        if (headers != null) {
+            headers.forEach(builder::header);
+        }
+
+        try {
+            if (!pool.acquire(readTimeout.toMillis())) {
+                throw new HttpTimeoutException("No connection to " + pool.getHost() + " available");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + pool.getHost());
+        }
+
+        try {
+            HttpResponse<InputStream> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            pool.setHttp2(response.version() == HttpClient.Version.HTTP_2);
+            return new UpstreamResponse(response.statusCode(), response.body(), pool, idleWatchdog, method + " " + url);
+        } catch (InterruptedException e) {
+            pool.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to " + url + " was interrupted");
+        } catch (IOException | RuntimeException e) {
+            pool.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the statistics of all host pools.
+     *
+     * @return the {@link HostPool} instances of all hosts contacted so far.
+     */
+    public List<HostPool> getPools() {
+        return new ArrayList<>(pools.values());
+    }
+
+    /**
+     * Builds the pool key of a URI.
+     *
+     * @param uri the request URI.
+     * @return the key in the form {@code scheme://host:port}.
+     */
+    private static String hostKey(URI uri) {
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getScheme().toLowerCase() + "://" + uri.getHost() + ":" + port;
+    }
+}
@@ -1,26 +1,47 @@
 package LlmClient;
 
+import LLM.Metrics.LatencyHistogram;
+import LLM.Transport.JsonReader;
+import LLM.Transport.UpstreamResponse;
+import LLM.Transport.UpstreamTransport;
+
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class HttpClient {
 
+    private static final Map<String, String> JSON_HEADERS = Map.of(
+            "Content-Type", "application/json; utf-8",
+            "Accept", "application/json");
+    private static final Map<String, String> ACCEPT_HEADERS = Map.of("Accept", "application/json");
+    private static final int LOG_SIZE = 20;
+
+    // Gemeinsamer Transport mit Keep-Alive-Verbindungen für alle Clients
+    private final UpstreamTransport transport = UpstreamTransport.shared();
     private String host;
-    private final List<RequestLog> logs = new ArrayList<>();
+    // Ringpuffer der letzten Anfragen: jeder Schreiber reserviert sich einen Platz über logIndex
+    private final AtomicReferenceArray<RequestLog> logs = new AtomicReferenceArray<>(LOG_SIZE);
+    private final AtomicLong logIndex = new AtomicLong();
+    // Latenz je Endpunkt, zusammenführbar über LatencyHistogram.merge
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
     private final ExecutorService executor = Executors.newCachedThreadPool();
-    private long totalRequests = 0;
-    private long successfulRequests = 0;
-    private long failedRequests = 0;
+    private final LongAdder totalRequests = new LongAdder();
+    private final LongAdder successfulRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
 
     public HttpClient(String host) {
         this.host = host;
@@ -31,33 +52,38 @@ public class HttpClient {
     }
 
     public String postRequest(String endpoint, String jsonPayload) throws IOException {
-        long startTime = System.currentTimeMillis();
-        URL url = new URL(host + endpoint);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json; utf-8");
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = jsonPayload.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        }
+        long startTime = System.nanoTime();
 
-        int responseCode = conn.getResponseCode();
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
+        try (UpstreamResponse upstreamResponse = transport.send("POST", host + endpoint, jsonPayload, JSON_HEADERS)) {
+            int responseCode = upstreamResponse.getStatusCode();
+            String response = readResponse(upstreamResponse.getBody());
+
+            logRequest("POST", endpoint, jsonPayload, responseCode, response, System.nanoTime() - startTime);
+            updateStatistics(responseCode);
+            checkResponseCode(endpoint, responseCode);
+            return response;
         }
+    }
 
-        logRequest("POST", endpoint, jsonPayload,responseCode, response.toString(), System.currentTimeMillis() - startTime);
-        updateStatistics(responseCode);
+    // Liest nur die benötigten Felder der JSON-Antwort, ohne den Body als String zusammenzusetzen
+    public <T> T postRequest(String endpoint, String jsonPayload, JsonReader.ValueReader<T> reader) throws IOException {
+        long startTime = System.nanoTime();
 
-        conn.disconnect();
-        return response.toString();
+        try (UpstreamResponse upstreamResponse = transport.send("POST", host + endpoint, jsonPayload, JSON_HEADERS)) {
+            int responseCode = upstreamResponse.getStatusCode();
+            if (responseCode >= 400) {
+                // Fehlerantworten sind klein und werden für das Log vollständig gelesen
+                String response = readResponse(upstreamResponse.getBody());
+                logRequest("POST", endpoint, jsonPayload, responseCode, response, System.nanoTime() - startTime);
+                updateStatistics(responseCode);
+                checkResponseCode(endpoint, responseCode);
+            }
+            T result = JsonReader.read(upstreamResponse.getBody(), reader);
+
+            logRequest("POST", endpoint, jsonPayload, responseCode, "JSON response", System.nanoTime() - startTime);
+            updateStatistics(responseCode);
+            return result;
+        }
     }
 
     public void postRequestAsync(String endpoint, String jsonPayload, Callback callback) {
@@ -72,28 +98,17 @@ public class HttpClient {
     }
 
     public String getRequest(String endpoint) throws IOException {
-        long startTime = System.currentTimeMillis();
-        URL url = new URL(host + endpoint);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "application/json");
-
-        int responseCode = conn.getResponseCode();
-        StringBuilder response = new StringBuilder();
-
-        // Lesen der Antwort
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-        }
+        long startTime = System.nanoTime();
 
-        logRequest("GET", endpoint, null, responseCode, response.toString(), System.currentTimeMillis() - startTime);
-        updateStatistics(responseCode);
+        try (UpstreamResponse upstreamResponse = transport.send("GET", host + endpoint, null, ACCEPT_HEADERS)) {
+            int responseCode = upstreamResponse.getStatusCode();
+            String response = readResponse(upstreamResponse.getBody());
 
-        conn.disconnect();
-        return response.toString();
+            logRequest("GET", endpoint, null, responseCode, response, System.nanoTime() - startTime);
+            updateStatistics(responseCode);
+            checkResponseCode(endpoint, responseCode);
+            return response;
+        }
     }
 
     public void getRequestAsync(String endpoint, Callback callback) {
@@ -108,33 +123,27 @@ public class HttpClient {
     }
 
     public void postRequestStreaming(String endpoint, String jsonPayload, Consumer<String> onPartialResponse, Consumer<Exception> onError) {
+        postRequestStreaming(endpoint, jsonPayload, onPartialResponse, onError, () -> {});
+    }
+
+    // onComplete wird aufgerufen, sobald der Stream vollständig gelesen wurde
+    public void postRequestStreaming(String endpoint, String jsonPayload, Consumer<String> onPartialResponse, Consumer<Exception> onError, Runnable onComplete) {
         executor.submit(() -> {
-            long startTime = System.currentTimeMillis();
-            try {
-                URL url = new URL(host + endpoint);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json; utf-8");
-                conn.setRequestProperty("Accept", "application/json");
-                conn.setDoOutput(true);
-
-                // Senden des JSON-Payloads
-                try (OutputStream os = conn.getOutputStream()) {
-                    byte[] input = jsonPayload.getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
+            long startTime = System.nanoTime();
+            try (UpstreamResponse upstreamResponse = transport.send("POST", host + endpoint, jsonPayload, JSON_HEADERS)) {
+                int responseCode = upstreamResponse.getStatusCode();
+                checkResponseCode(endpoint, responseCode);
 
                 // Lesen des Streams
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        onPartialResponse.accept(line); // Rückgabe der Teilantwort
-                    }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(upstreamResponse.getBody(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    onPartialResponse.accept(line); // Rückgabe der Teilantwort
                 }
 
-                int responseCode = conn.getResponseCode();
-                logRequest("POST (Streaming)", endpoint, jsonPayload, responseCode, "Streaming response", System.currentTimeMillis() - startTime);
+                logRequest("POST (Streaming)", endpoint, jsonPayload, responseCode, "Streaming response", System.nanoTime() - startTime);
                 updateStatistics(responseCode);
+                onComplete.run();
 
             } catch (Exception e) {
                 onError.accept(e); // Fehler weitergeben
@@ -142,39 +151,71 @@ public class HttpClient {
         });
     }
 
+    // Liest die Antwort vollständig und unverändert (inklusive Zeilenumbrüchen), damit die Verbindung wiederverwendet werden kann (paketweit sichtbar für die Benchmarks)
+    static String readResponse(InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private void checkResponseCode(String endpoint, int responseCode) throws IOException {
+        if (responseCode >= 400) {
+            throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + host + endpoint);
+        }
+    }
+
+    // Liefert die Einträge von alt nach neu; bei gleichzeitigen Schreibzugriffen kann ein Eintrag bereits überschrieben sein
     public List<RequestLog> getLogs() {
-        return new ArrayList<>(logs);
+        long end = logIndex.get();
+        List<RequestLog> result = new ArrayList<>(LOG_SIZE);
+        for (long i = Math.max(0, end - LOG_SIZE); i < end; i++) {
+            RequestLog log = logs.get((int) (i % LOG_SIZE));
+            if (log != null) {
+                result.add(log);
+            }
+        }
+        return result;
     }
 
     public long getTotalRequests() {
-        return totalRequests;
+        return totalRequests.sum();
     }
 
     public long getSuccessfulRequests() {
-        return successfulRequests;
+        return successfulRequests.sum();
     }
 
     public long getFailedRequests() {
-        return failedRequests;
+        return failedRequests.sum();
     }
 
     public double getSuccessRate() {
-        return totalRequests == 0 ? 0 : (double) successfulRequests / totalRequests * 100;
+        long total = totalRequests.sum();
+        return total == 0 ? 0 : (double) successfulRequests.sum() / total * 100;
     }
 
-    private synchronized void logRequest(String method, String endpoint, String request, int responseCode, String response, long duration) {
-        if (logs.size() == 20) {
-            logs.remove(0); // FIFO: Entferne die älteste Anfrage
-        }
-        logs.add(new RequestLog(method, endpoint, request,responseCode, response, duration));
+    public LatencyHistogram getLatency(String endpoint) {
+        LatencyHistogram latency = latencies.get(endpoint);
+        return latency != null ? latency : new LatencyHistogram();
+    }
+
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Map.copyOf(latencies);
+    }
+
+    private void logRequest(String method, String endpoint, String request, int responseCode, String response, long durationNanos) {
+        latencies.computeIfAbsent(endpoint, key -> new LatencyHistogram()).record(durationNanos);
+
+        // FIFO ohne Verschieben: der älteste Eintrag wird einfach überschrieben
+        long index = logIndex.getAndIncrement();
+        logs.set((int) (index % LOG_SIZE), new RequestLog(method, endpoint, request, responseCode, response,
+                TimeUnit.NANOSECONDS.toMillis(durationNanos)));
     }
 
-    private synchronized void updateStatistics(int responseCode) {
-        totalRequests++;
+    private void updateStatistics(int responseCode) {
+        totalRequests.increment();
         if (responseCode >= 200 && responseCode < 300) {
-            successfulRequests++;
+            successfulRequests.increment();
         } else {
-            failedRequests++;
+            failedRequests.increment();
         }
     }
 
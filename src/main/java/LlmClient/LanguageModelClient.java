@@ -1,11 +1,19 @@
 package LlmClient;
 
+import LLM.GenerationMetrics;
+import LLM.LocalClient.OllamaResponse;
+import LLM.Metrics.GenerationStats;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class LanguageModelClient {
@@ -15,6 +23,13 @@ public class LanguageModelClient {
     private final String OllamaServerURL = "http://209.38.252.155:11434";
     private Model model;
 
+    // Laufende Streams nach Modell und Prompt, damit identische Anfragen nur einmal generiert werden
+    private final Map<String, SharedStream> activeStreams = new ConcurrentHashMap<>();
+    private final ExecutorService deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder coalescedStreams = new LongAdder();
+    // Zeiten aus dem letzten Chunk jeder Generierung, je Modell
+    private final GenerationStats generationStats = new GenerationStats();
+
     public enum Model {
         TINY_LLAMA("tinyllama"),
         LLAMA3_1("llama3.1:8b"),
@@ -77,17 +92,18 @@ public class LanguageModelClient {
         payload.put("stream", false);
 
         // Senden der Anfrage und Verarbeitung der Antwort
-        String response = httpClient.postRequest("/api/generate", payload.toString());
-
-        // Verarbeitung der JSON-Antwort
-        JSONObject jsonResponse = new JSONObject(response);
+        long start = System.nanoTime();
+        OllamaResponse response = httpClient.postRequest("/api/generate", payload.toString(), OllamaResponse::read);
 
         // Überprüfen, ob das Feld "response" existiert
-        if (!jsonResponse.has("response")) {
-            throw new IOException("Die API-Antwort enthält kein 'response'-Feld: " + response);
+        if (response.response() == null) {
+            throw new IOException("Die API-Antwort enthält kein 'response'-Feld");
         }
 
-        return jsonResponse.getString("response");
+        if (response.done()) {
+            generationStats.record(model.getModelName(), response.metrics(), System.nanoTime() - start);
+        }
+        return response.response();
     }
 
     public List<String> listModels() throws IOException {
@@ -109,16 +125,42 @@ public class LanguageModelClient {
         payload.put("options", options);
         payload.put("stream", stream);
 
-        String response = httpClient.postRequest("/api/generate", payload.toString());
-        JSONObject jsonResponse = new JSONObject(response);
-        return jsonResponse.getString("response");
+        long start = System.nanoTime();
+        // Bei stream=true werden die Texte aller Chunks zusammengefügt
+        OllamaResponse response = httpClient.postRequest("/api/generate", payload.toString(), OllamaResponse::read);
+        if (response.done()) {
+            generationStats.record(model.getModelName(), response.metrics(), System.nanoTime() - start);
+        }
+        if (response.response() == null) {
+            throw new IOException("Die API-Antwort enthält kein 'response'-Feld");
+        }
+        return response.response();
     }
 
     public void generateResponseStreaming(String prompt, Consumer<String> onPartialResponse, Consumer<Exception> onError) {
+        generateResponseStreaming(prompt, onPartialResponse, onError, () -> {});
+    }
+
+    // Identische Anfragen, die eintreffen, während der Stream noch läuft, hängen sich an diesen an:
+    // sie erhalten zuerst die bisherigen Tokens und anschließend den Live-Rest
+    public void generateResponseStreaming(String prompt, Consumer<String> onPartialResponse, Consumer<Exception> onError, Runnable onComplete) {
+        String key = model.getModelName() + '\u0000' + prompt;
+
+        SharedStream stream = new SharedStream();
+        SharedStream existing = activeStreams.putIfAbsent(key, stream);
+        if (existing != null) {
+            coalescedStreams.increment();
+            deliveryExecutor.submit(() -> existing.deliver(onPartialResponse, onError, onComplete));
+            return;
+        }
+        deliveryExecutor.submit(() -> stream.deliver(onPartialResponse, onError, onComplete));
+
         JSONObject payload = new JSONObject();
         payload.put("model", model.getModelName());
         payload.put("prompt", prompt);
 
+        String modelName = model.getModelName();
+        long start = System.nanoTime();
         httpClient.postRequestStreaming(
                 "/api/generate",
                 payload.toString(),
@@ -126,16 +168,40 @@ public class LanguageModelClient {
                     try {
                         JSONObject json = new JSONObject(partialResponse);
                         if (json.has("response")) {
-                            onPartialResponse.accept(json.getString("response")); // Teilantwort zurückgeben
+                            stream.publish(json.getString("response")); // Teilantwort an alle Abonnenten
+                        }
+                        if (json.optBoolean("done")) {
+                            // Der letzte Chunk enthält die Zeiten der Generierung
+                            generationStats.record(modelName, GenerationMetrics.fromOllamaJson(json), System.nanoTime() - start);
                         }
                     } catch (Exception e) {
-                        onError.accept(e); // Fehler in der JSON-Verarbeitung
+                        stream.fail(e); // Fehler in der JSON-Verarbeitung
+                        activeStreams.remove(key, stream);
                     }
                 },
-                onError
+                error -> {
+                    stream.fail(error);
+                    activeStreams.remove(key, stream);
+                },
+                () -> {
+                    stream.complete();
+                    activeStreams.remove(key, stream);
+                }
         );
     }
 
+    public int getActiveStreams() {
+        return activeStreams.size();
+    }
+
+    public long getCoalescedStreams() {
+        return coalescedStreams.sum();
+    }
+
+    public GenerationStats getGenerationStats() {
+        return generationStats;
+    }
+
     public List<Model> listRunningModels() throws IOException {
         // Senden der GET-Anfrage
         String response = httpClient.getRequest("/api/ps");
@@ -0,0 +1,90 @@
+package LlmClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Ein Upstream-Stream, den sich alle Aufrufer mit identischer Anfrage teilen (Single-Flight).
+// Jeder Abonnent erhält zuerst die bereits erzeugten Tokens und danach den Live-Rest,
+// jeweils in seinem eigenen Tempo, damit ein langsamer Client die anderen nicht aufhält.
+class SharedStream {
+
+    private final List<String> tokens = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private boolean done;
+    private Exception error;
+
+    void publish(String token) {
+        lock.lock();
+        try {
+            if (!done) {
+                tokens.add(token);
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void complete() {
+        finish(null);
+    }
+
+    void fail(Exception e) {
+        finish(e);
+    }
+
+    private void finish(Exception e) {
+        lock.lock();
+        try {
+            if (!done) {
+                error = e;
+                done = true;
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Liefert alle Tokens an einen Abonnenten aus und blockiert, bis der Stream endet.
+    // Die Callbacks werden außerhalb der Sperre aufgerufen.
+    void deliver(Consumer<String> onPartialResponse, Consumer<Exception> onError, Runnable onComplete) {
+        int cursor = 0;
+        while (true) {
+            List<String> batch;
+            boolean finished;
+            Exception failure;
+
+            lock.lock();
+            try {
+                while (cursor == tokens.size() && !done) {
+                    changed.awaitUninterruptibly();
+                }
+                batch = new ArrayList<>(tokens.subList(cursor, tokens.size()));
+                cursor = tokens.size();
+                finished = done;
+                failure = error;
+            } finally {
+                lock.unlock();
+            }
+
+            for (String token : batch) {
+                onPartialResponse.accept(token);
+            }
+
+            // Nach "done" kommen keine Tokens mehr hinzu, der Abonnent hat also alles erhalten
+            if (finished) {
+                if (failure != null) {
+                    onError.accept(failure);
+                } else {
+                    onComplete.run();
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package Server.Backend;
+
+import LLM.ExternalClient.Groq;
+import LLM.LocalClient.Ollama;
+import LLM.LocalClient.Ollama.Model;
+import Server.ServerConfig;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code BackendRegistry} class holds the clients of all backends and the models loaded on
+ * the {@link Ollama} nodes, so that all handlers share one client per backend and one view of
+ * the model state.
+ * <p>
+ * The Ollama backend consists of one or more nodes in an {@link OllamaNodePool}. Creating the
+ * registry does not contact any backend. {@link #initialize()} makes one round of calls to each
+ * node at server startup: it asks the node for the running models and loads the pinned models of
+ * the {@link ResidencyManager}, including the model used for generation, if necessary. Other
+ * running models stay loaded until the memory budget of the node requires unloading them.
+ * Afterwards, models are loaded and unloaded explicitly through the registry, on all nodes in
+ * rotation; loading a model makes room for it first. These changes are serialized, so
+ * concurrent requests cannot undo each other's model state, and the view of loaded models of
+ * every node is updated with every change. Since Ollama also unloads idle models on its own,
+ * {@link #refreshLoadedModels()} replaces the views with the models actually running. Listeners
+ * registered with {@link #addModelChangeListener(Runnable)} are notified whenever a model is
+ * loaded or unloaded, including evictions by the {@link ResidencyManager}, e.g. to invalidate
+ * cached model lists.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>ollama.model:</b> the name of the model used for generation, e.g. {@code llama3.2:3b}.</li>
+ *     <li><b>groq.url:</b> the base URL of the Groq API (default: {@link Groq#DEFAULT_URL}).</li>
+ * </ul>
+ * See {@link OllamaNodePool} for the keys configuring the Ollama nodes.
+ */
+public class BackendRegistry {
+
+    /**
+     * A task performed on a single node.
+     *
+     * @param <T> the type of the task result.
+     */
+    @FunctionalInterface
+    private interface NodeTask<T> {
+        T run(OllamaNode node) throws IOException;
+    }
+
+    /**
+     * The pool of Ollama nodes.
+     */
+    private final OllamaNodePool ollamaPool;
+
+    /**
+     * The client of the Groq API, or {@code null} if Groq is not available.
+     */
+    private final Groq groq;
+
+    /**
+     * The model used for generation.
+     */
+    private final Model model;
+
+    /**
+     * Serializes loading and unloading of models. A {@link ReentrantLock} rather than a monitor,
+     * since the holder waits for the virtual threads calling the nodes and must not pin its
+     * carrier thread while doing so.
+     */
+    private final ReentrantLock modelLock = new ReentrantLock();
+
+    /**
+     * The listeners notified when a model is loaded or unloaded.
+     */
+    private final List<Runnable> modelChangeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a {@code BackendRegistry}.
+     *
+     * @param ollamaPool the {@link OllamaNodePool} of the Ollama backend.
+     * @param groq       the {@link Groq} client, or {@code null} if Groq is not available.
+     * @param model      the {@link Model} used for generation.
+     */
+    public BackendRegistry(OllamaNodePool ollamaPool, Groq groq, Model model) {
+        this.ollamaPool = ollamaPool;
+        this.groq = groq;
+        this.model = model;
+        ollamaPool.getResidencyManager().addEvictionListener(this::notifyModelChange);
+    }
+
+    /**
+     * Creates a {@code BackendRegistry} from the given configuration. An empty model name
+     * falls back to {@link Model#LLAMA3_2_3B}.
+     *
+     * @param config the {@link ServerConfig} to read the settings from.
+     * @return the configured {@code BackendRegistry}.
+     */
+    public static BackendRegistry fromConfig(ServerConfig config) {
+        String modelName = config.getString("ollama.model", "");
+        Model model = modelName.isBlank() ? Model.LLAMA3_2_3B : Model.of(modelName);
+        return new BackendRegistry(OllamaNodePool.fromConfig(config, model), Groq.createIfAvailable(config.getString("groq.url", Groq.DEFAULT_URL)), model);
+    }
+
+    /**
+     * Brings every Ollama node into the expected state: the pinned models, including the one
+     * used for generation, are loaded. The nodes are initialized at the same time. If a node
+     * cannot be reached, the server still starts; the node is taken out of rotation by its
+     * health checks.
+     */
+    public void initialize() {
+        modelLock.lock();
+        try {
+            onNodes(ollamaPool.getNodes(), this::initializeNode);
+        } catch (IOException e) {
+            System.err.println("Ollama konnte nicht initialisiert werden: " + e.getMessage());
+        } finally {
+            modelLock.unlock();
+        }
+    }
+
+    /**
+     * Registers a listener that is called after a model was loaded or unloaded.
+     *
+     * @param listener the listener to call.
+     */
+    public void addModelChangeListener(Runnable listener) {
+        modelChangeListeners.add(listener);
+    }
+
+    /**
+     * Retrieves the pool of Ollama nodes.
+     *
+     * @return the {@link OllamaNodePool}.
+     */
+    public OllamaNodePool getOllamaPool() {
+        return ollamaPool;
+    }
+
+    /**
+     * Retrieves the client of the Groq API.
+     *
+     * @return the {@link Groq} client, or {@code null} if Groq is not available.
+     */
+    public Groq getGroq() {
+        return groq;
+    }
+
+    /**
+     * Retrieves the model used for generation.
+     *
+     * @return the {@link Model}.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Retrieves the models loaded on any Ollama node as last seen by the registry.
+     *
+     * @return the set of loaded {@link Model} instances.
+     */
+    public Set<Model> getLoadedModels() {
+        Set<Model> loaded = new LinkedHashSet<>();
+        ollamaPool.getNodes().forEach(node -> loaded.addAll(node.getLoadedModels()));
+        return loaded;
+    }
+
+    /**
+     * Lists the models available on the Ollama nodes in rotation.
+     *
+     * @return the names of the models available on at least one node.
+     * @throws IOException if no node could be asked.
+     */
+    public List<String> listModels() throws IOException {
+        Set<String> models = new LinkedHashSet<>();
+        onNodes(ollamaPool.getAvailableNodes(), node -> node.getClient().listModels()).values().forEach(models::addAll);
+        return List.copyOf(models);
+    }
+
+    /**
+     * Loads a model on all Ollama nodes in rotation.
+     *
+     * @param model the {@link Model} to load.
+     * @return {@code true} if the model was loaded on at least one node.
+     * @throws IOException if the model could not be loaded on any node.
+     */
+    public boolean loadModel(Model model) throws IOException {
+        modelLock.lock();
+        try {
+            Map<OllamaNode, Boolean> results = onNodes(ollamaPool.getAvailableNodes(), node -> {
+                ollamaPool.getResidencyManager().makeRoom(node, model);
+                try {
+                    boolean loaded = node.getClient().loadModel(model);
+                    if (loaded) {
+                        node.addLoadedModel(model);
+                    }
+                    return loaded;
+                } finally {
+                    node.onLoadFinished(model);
+                }
+            });
+            notifyModelChange();
+            return results.containsValue(true);
+        } finally {
+            modelLock.unlock();
+        }
+    }
+
+    /**
+     * Unloads a model from all Ollama nodes in rotation.
+     *
+     * @param model the {@link Model} to unload.
+     * @return {@code true} if the model was unloaded from at least one node.
+     * @throws IOException if the model could not be unloaded from any node.
+     */
+    public boolean unloadModel(Model model) throws IOException {
+        modelLock.lock();
+        try {
+            Map<OllamaNode, Boolean> results = onNodes(ollamaPool.getAvailableNodes(), node -> {
+                boolean unloaded = node.getClient().unloadModel(model);
+                if (unloaded) {
+                    node.removeLoadedModel(model);
+                }
+                return unloaded;
+            });
+            notifyModelChange();
+            return results.containsValue(true);
+        } finally {
+            modelLock.unlock();
+        }
+    }
+
+    /**
+     * Asks the Ollama nodes in rotation for their running models and updates their views of
+     * loaded models. If a model is loaded or unloaded on a node while the request is running,
+     * the result is returned but the view of that node is left unchanged, since it may already
+     * be outdated.
+     *
+     * @return the models running on at least one node.
+     * @throws IOException if no node could be asked.
+     */
+    public List<Model> refreshLoadedModels() throws IOException {
+        Set<Model> running = new LinkedHashSet<>();
+        onNodes(ollamaPool.getAvailableNodes(), OllamaNode::refreshLoadedModels).values().forEach(running::addAll);
+        return List.copyOf(running);
+    }
+
+    /**
+     * Loads the pinned models on a node if necessary, making room for them within the memory
+     * budget of the node. The sizes of the loaded models are refreshed afterwards.
+     *
+     * @param node the node to initialize.
+     * @return the models loaded on the node afterwards.
+     * @throws IOException if the node could not be reached.
+     */
+    private List<Model> initializeNode(OllamaNode node) throws IOException {
+        ResidencyManager residencyManager = ollamaPool.getResidencyManager();
+        node.refreshLoadedModels();
+        for (Model pinned : residencyManager.getPinnedModels()) {
+            if (node.hasLoaded(pinned)) {
+                continue;
+            }
+            residencyManager.makeRoom(node, pinned);
+            try {
+                if (node.getClient().loadModel(pinned)) {
+                    node.addLoadedModel(pinned);
+                    System.out.println("Modell geladen: " + pinned.getModelName() + " (" + node.getUrl() + ")");
+                }
+            } finally {
+                node.onLoadFinished(pinned);
+            }
+        }
+        return node.refreshLoadedModels();
+    }
+
+    /**
+     * Runs a task on several nodes at the same time. Nodes on which the task fails are left
+     * out of the result.
+     *
+     * @param targets the nodes to run the task on.
+     * @param task    the task.
+     * @param <T>     the type of the task result.
+     * @return the results of the nodes on which the task succeeded, in node order.
+     * @throws IOException if the task failed on every node.
+     */
+    private static <T> Map<OllamaNode, T> onNodes(List<OllamaNode> targets, NodeTask<T> task) throws IOException {
+        Map<OllamaNode, Future<T>> futures = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (OllamaNode node : targets) {
+                futures.put(node, executor.submit(() -> task.run(node)));
+            }
+        }
+
+        Map<OllamaNode, T> results = new LinkedHashMap<>();
+        IOException lastError = null;
+        for (Map.Entry<OllamaNode, Future<T>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                lastError = cause instanceof IOException ioException
+                        ? ioException
+                        : new IOException(cause.getMessage(), cause);
+                System.err.println("Ollama-Knoten " + entry.getKey().getUrl() + ": "
+                        + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for Ollama nodes", e);
+            }
+        }
+
+        if (results.isEmpty() && lastError != null) {
+            throw lastError;
+        }
+        return results;
+    }
+
+    /**
+     * Notifies the registered listeners that the loaded models changed.
+     */
+    private void notifyModelChange() {
+        modelChangeListeners.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,169 @@
+package Server.Backend;
+
+import LLM.LocalClient.Ollama.Model;
+import Server.Cache.SingleFlight;
+import Server.ServerConfig;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code ModelCatalog} class resolves the model names of requests against the models
+ * installed on the Ollama nodes ({@code /api/tags}), so that requests can name any installed
+ * model rather than only the predefined {@link Model} constants.
+ * <p>
+ * The catalog is loaded on first use and reloaded once it is older than the refresh interval.
+ * A name that is not in the catalog triggers an early reload, so that a model installed after
+ * the last load is found without waiting for the interval; such reloads happen at most once per
+ * second. Concurrent loads are deduplicated through a {@link SingleFlight}. If a reload fails,
+ * the previous catalog stays in use. Names are looked up by their {@link Model#keyOf(String) key}
+ * and only models of the catalog are interned, so arbitrary names sent by clients do not
+ * accumulate as {@link Model} instances.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>catalog.refreshMillis:</b> the age in milliseconds after which the catalog is reloaded.</li>
+ * </ul>
+ */
+public class ModelCatalog {
+
+    /**
+     * The minimum age of the catalog before an unknown name triggers a reload.
+     */
+    private static final long MIN_RELOAD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A loaded catalog.
+     *
+     * @param models        the installed models by their {@link Model#keyOf(String) key}.
+     * @param loadedAtNanos the {@link System#nanoTime()} at which the catalog was loaded.
+     */
+    private record Snapshot(Map<String, Model> models, long loadedAtNanos) {
+    }
+
+    /**
+     * The registry listing the models of the Ollama nodes.
+     */
+    private final BackendRegistry backendRegistry;
+
+    /**
+     * The age in nanoseconds after which the catalog is reloaded.
+     */
+    private final long refreshNanos;
+
+    /**
+     * Deduplicates concurrent loads.
+     */
+    private final SingleFlight<Snapshot> loads = new SingleFlight<>();
+
+    /**
+     * The current catalog, or {@code null} if none has been loaded.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructs a {@code ModelCatalog}.
+     *
+     * @param backendRegistry the {@link BackendRegistry} listing the models of the Ollama nodes.
+     * @param refreshMillis   the age in milliseconds after which the catalog is reloaded.
+     */
+    public ModelCatalog(BackendRegistry backendRegistry, long refreshMillis) {
+        this.backendRegistry = backendRegistry;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, refreshMillis));
+    }
+
+    /**
+     * Creates a {@code ModelCatalog} from the given configuration.
+     *
+     * @param config          the {@link ServerConfig} to read the settings from.
+     * @param backendRegistry the {@link BackendRegistry} listing the models of the Ollama nodes.
+     * @return the configured {@code ModelCatalog}.
+     */
+    public static ModelCatalog fromConfig(ServerConfig config, BackendRegistry backendRegistry) {
+        return new ModelCatalog(backendRegistry, config.getLong("catalog.refreshMillis", 30000));
+    }
+
+    /**
+     * Resolves a model name against the catalog.
+     *
+     * @param modelName the model name, e.g. {@code llama3.2:3b}.
+     * @return the installed {@link Model}.
+     * @throws IllegalArgumentException if no node has the model installed.
+     * @throws IOException              if the catalog could not be loaded.
+     */
+    public Model resolve(String modelName) throws IOException {
+        String key = Model.keyOf(modelName);
+        Snapshot current = get();
+        Model model = current.models().get(key);
+        if (model == null && System.nanoTime() - current.loadedAtNanos() >= MIN_RELOAD_NANOS) {
+            current = reload(current);
+            model = current.models().get(key);
+        }
+        if (model == null) {
+            throw new IllegalArgumentException("Unbekanntes Modell '" + modelName + "'");
+        }
+        return model;
+    }
+
+    /**
+     * Checks whether a model is installed on at least one node, without waiting for a reload
+     * if the model is missing.
+     *
+     * @param model the model.
+     * @return {@code true} if the model is in the catalog.
+     * @throws IOException if the catalog could not be loaded.
+     */
+    public boolean contains(Model model) throws IOException {
+        return get().models().get(Model.keyOf(model.getModelName())) == model;
+    }
+
+    /**
+     * Retrieves the current catalog, loading it if it is missing or outdated.
+     *
+     * @return the current {@link Snapshot}.
+     * @throws IOException if no catalog exists and it could not be loaded.
+     */
+    private Snapshot get() throws IOException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return loads.execute("catalog", this::load);
+        }
+        if (System.nanoTime() - current.loadedAtNanos() >= refreshNanos) {
+            return reload(current);
+        }
+        return current;
+    }
+
+    /**
+     * Reloads the catalog, keeping the given one if the load fails.
+     *
+     * @param current the catalog in use.
+     * @return the reloaded catalog, or {@code current} if the load failed.
+     */
+    private Snapshot reload(Snapshot current) {
+        try {
+            return loads.execute("catalog", this::load);
+        } catch (IOException e) {
+            System.err.println("Modellkatalog konnte nicht aktualisiert werden: " + e.getMessage());
+            return current;
+        }
+    }
+
+    /**
+     * Loads the catalog from the Ollama nodes and publishes it.
+     *
+     * @return the loaded {@link Snapshot}.
+     * @throws IOException if no node could be asked.
+     */
+    private Snapshot load() throws IOException {
+        Map<String, Model> models = new LinkedHashMap<>();
+        for (String name : backendRegistry.listModels()) {
+            models.put(Model.keyOf(name), Model.of(name));
+        }
+        Snapshot loaded = new Snapshot(Map.copyOf(models), System.nanoTime());
+        snapshot = loaded;
+        return loaded;
+    }
+}
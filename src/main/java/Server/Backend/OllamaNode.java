@@ -0,0 +1,408 @@
+package Server.Backend;
+
+import LLM.LocalClient.Ollama;
+import LLM.LocalClient.Ollama.Model;
+import LLM.Metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code OllamaNode} class represents one Ollama server of an {@link OllamaNodePool}
+ * together with its routing weight, health, load and the models loaded on it.
+ * <p>
+ * The view of loaded models is built from the {@code /api/ps} data of the node
+ * ({@link #refreshLoadedModels()}) and from the load, unload and generation calls sent to it.
+ * The same data provides the memory each model occupies, which the {@link ResidencyManager}
+ * uses to keep the node within its memory budget.
+ * <p>
+ * A node is taken out of rotation after a number of consecutive failed requests or health
+ * checks and put back after a number of consecutive successful health checks. Requests that end
+ * for reasons unrelated to the node, e.g. because they were cancelled or rejected, are neither
+ * successes nor failures.
+ */
+public class OllamaNode {
+
+    /**
+     * The client of the node.
+     */
+    private final Ollama client;
+
+    /**
+     * The routing weight; a node with weight 2 receives about twice the requests of a node
+     * with weight 1.
+     */
+    private final int weight;
+
+    /**
+     * The number of consecutive failures after which the node is taken out of rotation.
+     */
+    private final int unhealthyThreshold;
+
+    /**
+     * The number of consecutive successful health checks after which the node is put back.
+     */
+    private final int healthyThreshold;
+
+    /**
+     * Whether the node is in rotation.
+     */
+    private volatile boolean healthy = true;
+
+    /**
+     * The number of consecutive failures while healthy, or of consecutive successes while
+     * unhealthy.
+     */
+    private final AtomicInteger streak = new AtomicInteger();
+
+    /**
+     * Whether a health check of the node is running.
+     */
+    private final AtomicBoolean healthCheckRunning = new AtomicBoolean();
+
+    /**
+     * The number of requests currently running on the node.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The number of requests sent to the node.
+     */
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * The number of failed requests.
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * The latencies of successful requests.
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * The models loaded on the node as last seen. The set is immutable and replaced on every change.
+     */
+    private final AtomicReference<Set<Model>> loadedModels = new AtomicReference<>(Set.of());
+
+    /**
+     * The number of requests per model that load the model on the node and have not finished yet.
+     */
+    private final Map<Model, Integer> loadingModels = new ConcurrentHashMap<>();
+
+    /**
+     * The memory in bytes each model occupied when it was last seen running. Sizes are kept
+     * after a model is unloaded, so that the memory needed to load it again is known.
+     */
+    private final Map<Model, Long> modelSizes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an {@code OllamaNode}.
+     *
+     * @param client             the {@link Ollama} client of the node.
+     * @param weight             the routing weight, at least 1.
+     * @param unhealthyThreshold the number of consecutive failures that take the node out of rotation.
+     * @param healthyThreshold   the number of consecutive successful health checks that put it back.
+     */
+    public OllamaNode(Ollama client, int weight, int unhealthyThreshold, int healthyThreshold) {
+        this.client = client;
+        this.weight = Math.max(1, weight);
+        this.unhealthyThreshold = Math.max(1, unhealthyThreshold);
+        this.healthyThreshold = Math.max(1, healthyThreshold);
+    }
+
+    /**
+     * Retrieves the client of the node.
+     *
+     * @return the {@link Ollama} client.
+     */
+    public Ollama getClient() {
+        return client;
+    }
+
+    /**
+     * Retrieves the base URL of the node.
+     *
+     * @return the server URL.
+     */
+    public String getUrl() {
+        return client.getServerUrl();
+    }
+
+    /**
+     * Retrieves the routing weight.
+     *
+     * @return the weight.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Checks whether the node is in rotation.
+     *
+     * @return {@code true} if the node is healthy.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Retrieves the number of requests currently running on the node.
+     *
+     * @return the in-flight count.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Retrieves the number of requests sent to the node.
+     *
+     * @return the request count.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Retrieves the number of failed requests.
+     *
+     * @return the failure count.
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Retrieves the latencies of successful requests.
+     *
+     * @return the {@link LatencyHistogram} of the node.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Retrieves the models loaded on the node as last seen.
+     *
+     * @return the immutable set of loaded {@link Model} instances.
+     */
+    public Set<Model> getLoadedModels() {
+        return loadedModels.get();
+    }
+
+    /**
+     * Checks whether a model is loaded on the node as last seen.
+     *
+     * @param model the model.
+     * @return {@code true} if the model is warm on the node.
+     */
+    public boolean hasLoaded(Model model) {
+        return loadedModels.get().contains(model);
+    }
+
+    /**
+     * Retrieves the models that requests are loading on the node.
+     *
+     * @return the immutable set of {@link Model} instances being loaded.
+     */
+    public Set<Model> getLoadingModels() {
+        return Set.copyOf(loadingModels.keySet());
+    }
+
+    /**
+     * Checks whether a request that loads a model on the node is running.
+     *
+     * @param model the model.
+     * @return {@code true} if the model is being loaded on the node.
+     */
+    public boolean isLoading(Model model) {
+        return loadingModels.containsKey(model);
+    }
+
+    /**
+     * Retrieves the memory a model occupied when it was last seen running on the node.
+     *
+     * @param model the model.
+     * @return the size in bytes, or {@code -1} if the model has not been seen running.
+     */
+    public long getModelSize(Model model) {
+        return modelSizes.getOrDefault(model, -1L);
+    }
+
+    /**
+     * Replaces the view of the models loaded on the node.
+     *
+     * @param models the loaded models.
+     */
+    void setLoadedModels(Set<Model> models) {
+        loadedModels.set(Set.copyOf(models));
+    }
+
+    /**
+     * Records that a model is loaded on the node.
+     *
+     * @param model the loaded model.
+     */
+    void addLoadedModel(Model model) {
+        loadedModels.updateAndGet(models -> {
+            if (models.contains(model)) {
+                return models;
+            }
+            Set<Model> copy = new HashSet<>(models);
+            copy.add(model);
+            return Set.copyOf(copy);
+        });
+    }
+
+    /**
+     * Records that a request loading a model on the node was started.
+     *
+     * @param model the model being loaded.
+     */
+    void onLoadStarted(Model model) {
+        loadingModels.merge(model, 1, Integer::sum);
+    }
+
+    /**
+     * Records that a request loading a model on the node finished, whether or not the model was loaded.
+     *
+     * @param model the model that was being loaded.
+     */
+    void onLoadFinished(Model model) {
+        loadingModels.computeIfPresent(model, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Records that a model is no longer loaded on the node.
+     *
+     * @param model the unloaded model.
+     */
+    void removeLoadedModel(Model model) {
+        loadedModels.updateAndGet(models -> {
+            if (!models.contains(model)) {
+                return models;
+            }
+            Set<Model> copy = new HashSet<>(models);
+            copy.remove(model);
+            return Set.copyOf(copy);
+        });
+    }
+
+    /**
+     * Asks the node for its running models, records their sizes and replaces the view of loaded
+     * models. If the view changes while the request is running, it is left unchanged, since the
+     * result may already be outdated.
+     *
+     * @return the running {@link Model} instances as reported by the node.
+     * @throws IOException if the node could not be reached.
+     */
+    List<Model> refreshLoadedModels() throws IOException {
+        Set<Model> before = loadedModels.get();
+        List<Model> running = new ArrayList<>();
+        for (Ollama.RunningModel runningModel : client.listRunningModelDetails()) {
+            running.add(runningModel.model());
+            if (runningModel.sizeBytes() > 0) {
+                modelSizes.put(runningModel.model(), runningModel.sizeBytes());
+            }
+        }
+        loadedModels.compareAndSet(before, Set.copyOf(running));
+        return running;
+    }
+
+    /**
+     * Records that a request was started on the node.
+     */
+    void onRequestStarted() {
+        inFlight.incrementAndGet();
+        requests.increment();
+    }
+
+    /**
+     * Records that a request on the node finished.
+     *
+     * @param startNanos the {@link System#nanoTime()} at which the request started.
+     * @param success    whether the request succeeded.
+     */
+    void onRequestFinished(long startNanos, boolean success) {
+        inFlight.decrementAndGet();
+        if (success) {
+            latency.record(System.nanoTime() - startNanos);
+            if (healthy) {
+                streak.set(0);
+            }
+        } else {
+            failures.increment();
+            onFailure();
+        }
+    }
+
+    /**
+     * Records that a request on the node finished with an outcome that says nothing about the
+     * health of the node, e.g. because it was cancelled or the node rejected it.
+     */
+    void onRequestIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Marks the start of a health check.
+     *
+     * @return {@code true} if no other health check of the node is running; otherwise, {@code false}.
+     */
+    boolean tryStartHealthCheck() {
+        return healthCheckRunning.compareAndSet(false, true);
+    }
+
+    /**
+     * Records the outcome of a health check and marks its end.
+     *
+     * @param success whether the node answered.
+     */
+    void onHealthCheck(boolean success) {
+        healthCheckRunning.set(false);
+        if (!success) {
+            onFailure();
+            return;
+        }
+
+        if (healthy) {
+            streak.set(0);
+        } else if (streak.incrementAndGet() >= healthyThreshold) {
+            synchronized (this) {
+                if (!healthy) {
+                    healthy = true;
+                    streak.set(0);
+                    System.out.println("Ollama-Knoten wieder verfügbar: " + getUrl());
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a failure and takes the node out of rotation once the threshold is reached.
+     */
+    private void onFailure() {
+        if (!healthy) {
+            streak.set(0);
+        } else if (streak.incrementAndGet() >= unhealthyThreshold) {
+            synchronized (this) {
+                if (healthy) {
+                    healthy = false;
+                    streak.set(0);
+                    System.err.println("Ollama-Knoten aus der Rotation genommen: " + getUrl());
+                }
+            }
+        }
+    }
+}
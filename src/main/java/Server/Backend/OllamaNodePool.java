@@ -0,0 +1,509 @@
+package Server.Backend;
+
+import LLM.LocalClient.Ollama;
+import LLM.LocalClient.Ollama.Model;
+import LLM.Metrics.LatencyHistogram;
+import LLM.Metrics.RollingLatencyHistogram;
+import LLM.Transport.UpstreamStatusException;
+import Server.ServerConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code OllamaNodePool} class distributes requests over several Ollama servers.
+ * <p>
+ * Requests are routed by model affinity: a request for a model goes to a node that already has
+ * the model loaded, since loading a model on a cold node takes up to tens of seconds. Among the
+ * warm nodes, and among all nodes if no node has the model loaded, the healthy node with the
+ * fewest outstanding requests relative to its weight is chosen; ties are broken at random, so
+ * idle nodes share the load evenly. Concurrent requests for a model that a node is loading
+ * follow the loading request to that node instead of starting cold loads on other nodes; the
+ * model only counts as loaded on the node once a request for it has succeeded there. Before a
+ * model is loaded on a node, the {@link ResidencyManager} of the pool makes room for it within
+ * the memory budget of the node.
+ * <p>
+ * A background task checks the health of every node at a fixed interval by fetching its running
+ * models ({@code /api/ps}), which also keeps the model views of the nodes up to date. A check
+ * that does not finish within its timeout is aborted and counts as failed, and a node is not
+ * checked again while its previous check is still running. Nodes that fail repeatedly, either in
+ * requests or in health checks, are taken out of rotation and put back once their health checks
+ * succeed again (see {@link OllamaNode}). Only errors of the node count as failed requests:
+ * connection and read errors and {@code 5xx} responses. Cancelled requests and requests the node
+ * rejects, e.g. with {@code 404} for an unknown model, leave its health unchanged. If no node is
+ * healthy, requests are still routed to the least loaded node rather than rejected.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>ollama.nodes:</b> the comma-separated base URLs of the nodes, each optionally
+ *     followed by {@code @weight}, e.g. {@code http://gpu1:11434@2,http://gpu2:11434}.</li>
+ *     <li><b>ollama.healthCheckIntervalMillis:</b> the interval of the health checks and model
+ *     refreshes; {@code 0} disables them.</li>
+ *     <li><b>ollama.healthCheckTimeoutMillis:</b> the time after which a health check is aborted and counts as failed.</li>
+ *     <li><b>ollama.unhealthyThreshold:</b> the number of consecutive failures that take a node out of rotation.</li>
+ *     <li><b>ollama.healthyThreshold:</b> the number of consecutive successful health checks that put it back.</li>
+ *     <li><b>ollama.latencyWindowSeconds:</b> the length of a model latency observation window; the
+ *     latencies used for routing cover the last one to two windows.</li>
+ * </ul>
+ * See {@link ResidencyManager} for the keys configuring which models stay loaded.
+ */
+public class OllamaNodePool {
+
+    /**
+     * The node used if no nodes are configured.
+     */
+    public static final String DEFAULT_NODE = "http://localhost:11434";
+
+    /**
+     * A call to the client of a node.
+     *
+     * @param <T> the type of the call result.
+     */
+    @FunctionalInterface
+    public interface NodeCall<T> {
+
+        /**
+         * Performs the call.
+         *
+         * @param client the {@link Ollama} client of the selected node.
+         * @return the result of the call.
+         * @throws IOException if the call fails.
+         */
+        T call(Ollama client) throws IOException;
+    }
+
+    /**
+     * The default time in milliseconds after which a health check is aborted.
+     */
+    public static final long DEFAULT_HEALTH_CHECK_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * A request running on a node. Closing the lease records the outcome of the request: it
+     * counts as successful if {@link #succeeded()} was called before, as failed if
+     * {@link #failed(Throwable)} reported an error of the node, and is ignored otherwise.
+     */
+    public final class Lease implements AutoCloseable {
+        private final OllamaNode node;
+        private final Model model;
+        private final boolean loading;
+        private final long startNanos = System.nanoTime();
+        private boolean success;
+        private boolean failure;
+
+        private Lease(OllamaNode node, Model model, boolean loading) {
+            this.node = node;
+            this.model = model;
+            this.loading = loading;
+            node.onRequestStarted();
+            residencyManager.onRequestStarted(node, model);
+        }
+
+        /**
+         * Retrieves the node the request runs on.
+         *
+         * @return the {@link OllamaNode}.
+         */
+        public OllamaNode getNode() {
+            return node;
+        }
+
+        /**
+         * Retrieves the model the request is routed for.
+         *
+         * @return the {@link Model}.
+         */
+        public Model getModel() {
+            return model;
+        }
+
+        /**
+         * Retrieves the client of the node the request runs on.
+         *
+         * @return the {@link Ollama} client.
+         */
+        public Ollama getClient() {
+            return node.getClient();
+        }
+
+        /**
+         * Marks the request as successful. A request that loaded the model marks it as loaded
+         * on the node.
+         */
+        public void succeeded() {
+            success = true;
+            if (loading) {
+                node.addLoadedModel(model);
+            }
+        }
+
+        /**
+         * Reports the error the request failed with. Must be called on the thread that performed
+         * the request, so that a cancellation can be told from an error of the node.
+         *
+         * @param cause the error of the request.
+         */
+        public void failed(Throwable cause) {
+            failure = isNodeFailure(cause);
+        }
+
+        @Override
+        public void close() {
+            if (loading) {
+                node.onLoadFinished(model);
+            }
+            residencyManager.onRequestFinished(node, model);
+            if (success) {
+                node.onRequestFinished(startNanos, true);
+                if (!loading) {
+                    // Cold loads take far longer than warm requests and say nothing about the model's latency
+                    modelLatencies.computeIfAbsent(model, key -> new RollingLatencyHistogram(latencyWindowSeconds))
+                            .record(System.nanoTime() - startNanos);
+                }
+            } else if (failure) {
+                node.onRequestFinished(startNanos, false);
+            } else {
+                node.onRequestIgnored();
+            }
+        }
+    }
+
+    /**
+     * The nodes of the pool.
+     */
+    private final List<OllamaNode> nodes;
+
+    /**
+     * The model requests are routed for unless they name another one.
+     */
+    private final Model defaultModel;
+
+    /**
+     * Decides which models stay loaded on the nodes.
+     */
+    private final ResidencyManager residencyManager;
+
+    /**
+     * The time in milliseconds after which a health check is aborted.
+     */
+    private final long healthCheckTimeoutMillis;
+
+    /**
+     * The scheduler running the health checks and aborting those that take too long.
+     */
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * The length of a model latency observation window in seconds.
+     */
+    private final long latencyWindowSeconds;
+
+    /**
+     * The latencies of successful requests per model over the last one to two windows, over all nodes.
+     */
+    private final Map<Model, RollingLatencyHistogram> modelLatencies = new ConcurrentHashMap<>();
+
+    /**
+     * The number of requests routed to a node that had the model loaded.
+     */
+    private final LongAdder warmRoutes = new LongAdder();
+
+    /**
+     * The number of requests routed to a node that had to load the model.
+     */
+    private final LongAdder coldRoutes = new LongAdder();
+
+    /**
+     * Constructs an {@code OllamaNodePool} and starts the health checks.
+     *
+     * @param nodes                     the nodes of the pool; must not be empty.
+     * @param defaultModel              the {@link Model} requests are routed for unless they name another one.
+     * @param residencyManager          the {@link ResidencyManager} deciding which models stay loaded.
+     * @param healthCheckIntervalMillis the interval of the health checks; {@code 0} disables them.
+     * @param healthCheckTimeoutMillis  the time after which a health check is aborted.
+     * @param latencyWindowSeconds      the length of a model latency observation window.
+     */
+    public OllamaNodePool(List<OllamaNode> nodes, Model defaultModel, ResidencyManager residencyManager, long healthCheckIntervalMillis,
+                          long healthCheckTimeoutMillis, long latencyWindowSeconds) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one Ollama node is required");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.defaultModel = defaultModel;
+        this.residencyManager = residencyManager;
+        this.healthCheckTimeoutMillis = Math.max(1, healthCheckTimeoutMillis);
+        this.latencyWindowSeconds = latencyWindowSeconds;
+        this.nodes.forEach(node -> node.getClient().setKeepAlive(residencyManager.getKeepAlive()));
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (healthCheckIntervalMillis > 0) {
+            healthChecker.scheduleWithFixedDelay(this::checkHealth,
+                    healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Creates an {@code OllamaNodePool} from the given configuration.
+     *
+     * @param config the {@link ServerConfig} to read the settings from.
+     * @param model  the {@link Model} the nodes use for generation.
+     * @return the configured {@code OllamaNodePool}.
+     */
+    public static OllamaNodePool fromConfig(ServerConfig config, Model model) {
+        int unhealthyThreshold = config.getInt("ollama.unhealthyThreshold", 3);
+        int healthyThreshold = config.getInt("ollama.healthyThreshold", 2);
+
+        List<OllamaNode> nodes = new ArrayList<>();
+        for (String entry : config.getString("ollama.nodes", DEFAULT_NODE).split(",")) {
+            String url = entry.trim();
+            if (url.isEmpty()) {
+                continue;
+            }
+            int weight = 1;
+            int separator = url.lastIndexOf('@');
+            if (separator > 0 && url.substring(separator + 1).matches("\\d+")) {
+                weight = Integer.parseInt(url.substring(separator + 1));
+                url = url.substring(0, separator);
+            }
+            if (url.endsWith("/")) {
+                url = url.substring(0, url.length() - 1);
+            }
+            nodes.add(new OllamaNode(new Ollama(url, model), weight, unhealthyThreshold, healthyThreshold));
+        }
+        if (nodes.isEmpty()) {
+            nodes.add(new OllamaNode(new Ollama(DEFAULT_NODE, model), 1, unhealthyThreshold, healthyThreshold));
+        }
+
+        return new OllamaNodePool(nodes, model, ResidencyManager.fromConfig(config, model),
+                config.getLong("ollama.healthCheckIntervalMillis", 5000),
+                config.getLong("ollama.healthCheckTimeoutMillis", DEFAULT_HEALTH_CHECK_TIMEOUT_MILLIS),
+                config.getLong("ollama.latencyWindowSeconds", 60));
+    }
+
+    /**
+     * Retrieves all nodes of the pool.
+     *
+     * @return the immutable list of {@link OllamaNode} instances.
+     */
+    public List<OllamaNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Retrieves the nodes in rotation, or all nodes if none is healthy.
+     *
+     * @return the list of {@link OllamaNode} instances to use.
+     */
+    public List<OllamaNode> getAvailableNodes() {
+        List<OllamaNode> healthy = nodes.stream().filter(OllamaNode::isHealthy).toList();
+        return healthy.isEmpty() ? nodes : healthy;
+    }
+
+    /**
+     * Retrieves the model requests are routed for unless they name another one.
+     *
+     * @return the default {@link Model}.
+     */
+    public Model getDefaultModel() {
+        return defaultModel;
+    }
+
+    /**
+     * Retrieves the manager deciding which models stay loaded on the nodes.
+     *
+     * @return the {@link ResidencyManager}.
+     */
+    public ResidencyManager getResidencyManager() {
+        return residencyManager;
+    }
+
+    /**
+     * Retrieves the recent latencies of successful requests for a model, over all nodes. Only
+     * the last one to two observation windows are included, and requests that loaded the model
+     * are left out. For streamed generations, the latency includes the whole stream.
+     *
+     * @param model the model.
+     * @return a {@link LatencyHistogram} snapshot of the recent latencies of the model.
+     */
+    public LatencyHistogram getModelLatency(Model model) {
+        RollingLatencyHistogram latency = modelLatencies.get(model);
+        return latency != null ? latency.snapshot() : new LatencyHistogram();
+    }
+
+    /**
+     * Retrieves the number of requests routed to a node that had the model loaded.
+     *
+     * @return the warm route count.
+     */
+    public long getWarmRoutes() {
+        return warmRoutes.sum();
+    }
+
+    /**
+     * Retrieves the number of requests routed to a node that had to load the model.
+     *
+     * @return the cold route count.
+     */
+    public long getColdRoutes() {
+        return coldRoutes.sum();
+    }
+
+    /**
+     * Starts a request for the default model. The returned lease must be closed when the
+     * request is finished.
+     *
+     * @return the {@link Lease} of the selected node.
+     */
+    public Lease acquire() {
+        return acquire(defaultModel);
+    }
+
+    /**
+     * Starts a request for a model on the least loaded node that has the model loaded or is
+     * loading it, or on the least loaded node if none has, after making room for the model
+     * there. The returned lease must be closed when the request is finished.
+     *
+     * @param model the {@link Model} the request is for.
+     * @return the {@link Lease} of the selected node.
+     */
+    public Lease acquire(Model model) {
+        List<OllamaNode> candidates = getAvailableNodes();
+        List<OllamaNode> warm = candidates.stream()
+                .filter(node -> node.hasLoaded(model) || node.isLoading(model))
+                .toList();
+        if (!warm.isEmpty()) {
+            warmRoutes.increment();
+            return new Lease(select(warm), model, false);
+        }
+
+        coldRoutes.increment();
+        OllamaNode node = select(candidates);
+        // Reserves the memory of the model; Ollama loads it with this request, and it counts as
+        // loaded once the request succeeds
+        residencyManager.makeRoom(node, model);
+        return new Lease(node, model, true);
+    }
+
+    /**
+     * Performs a call for the default model.
+     *
+     * @param call the call to perform.
+     * @param <T>  the type of the call result.
+     * @return the result of the call.
+     * @throws IOException if the call fails.
+     */
+    public <T> T execute(NodeCall<T> call) throws IOException {
+        return execute(defaultModel, call);
+    }
+
+    /**
+     * Performs a call for a model on the node chosen by {@link #acquire(Model)}.
+     *
+     * @param model the {@link Model} the call is for.
+     * @param call  the call to perform.
+     * @param <T>   the type of the call result.
+     * @return the result of the call.
+     * @throws IOException if the call fails.
+     */
+    public <T> T execute(Model model, NodeCall<T> call) throws IOException {
+        try (Lease lease = acquire(model)) {
+            try {
+                T result = call.call(lease.getClient());
+                lease.succeeded();
+                return result;
+            } catch (IOException | RuntimeException e) {
+                lease.failed(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops the health checks.
+     */
+    public void shutdown() {
+        healthChecker.shutdownNow();
+    }
+
+    /**
+     * Selects the node with the lowest load relative to its weight. Counting the request about
+     * to be sent makes a node of weight 2 receive its second request before a node of weight 1
+     * receives its first one. The scan starts at a random node to break ties.
+     *
+     * @param candidates the nodes to choose from.
+     * @return the selected {@link OllamaNode}.
+     */
+    private static OllamaNode select(List<OllamaNode> candidates) {
+        int size = candidates.size();
+        int start = size == 1 ? 0 : ThreadLocalRandom.current().nextInt(size);
+        OllamaNode best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            OllamaNode node = candidates.get((start + i) % size);
+            double score = (node.getInFlight() + 1.0) / node.getWeight();
+            if (score < bestScore) {
+                best = node;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks whether an error of a request says something about the health of the node.
+     *
+     * @param cause the error of the request.
+     * @return {@code true} for connection and read errors and {@code 5xx} responses; {@code false}
+     *         for cancelled requests, rejected requests and errors outside the exchange.
+     */
+    static boolean isNodeFailure(Throwable cause) {
+        if ((cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException))
+                || Thread.currentThread().isInterrupted()) {
+            // Cancelled by the caller, e.g. a losing hedge or a disconnected client
+            return false;
+        }
+        if (cause instanceof UpstreamStatusException statusException) {
+            return statusException.isServerError();
+        }
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Checks the health of all nodes at the same time, so that an unreachable node does not
+     * delay the checks of the others. A successful check also refreshes the models loaded on
+     * the node. A node whose previous check is still running is skipped, and a check that
+     * exceeds the timeout is interrupted, which aborts its exchange.
+     */
+    private void checkHealth() {
+        for (OllamaNode node : nodes) {
+            if (!node.tryStartHealthCheck()) {
+                continue;
+            }
+            Thread check = Thread.startVirtualThread(() -> {
+                boolean success = false;
+                try {
+                    node.refreshLoadedModels();
+                    success = true;
+                } catch (IOException | RuntimeException e) {
+                    // The node counts as unhealthy for this check
+                } finally {
+                    node.onHealthCheck(success);
+                }
+            });
+            // Interrupting a check that has already finished has no effect
+            healthChecker.schedule(check::interrupt, healthCheckTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package Server.Backend;
+
+import LLM.LocalClient.Ollama.Model;
+import Server.Cache.EvictionPolicy;
+import Server.ServerConfig;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code ResidencyManager} class decides which models stay loaded on the Ollama nodes.
+ * <p>
+ * Every node has a memory budget. Before a model is loaded on a node, the memory of the models
+ * loaded there, as reported by {@code /api/ps}, and of the models being loaded there is added to
+ * the memory the new model needs. Only if the sum exceeds the budget are other models unloaded,
+ * chosen by the configured {@link EvictionPolicy} among those without running requests, until
+ * the new model fits. The memory of the new model is then reserved until its load finishes, so
+ * concurrent loads on the same node cannot overcommit the budget. Pinned models, which always
+ * include the model used for generation, are never unloaded. The memory of a model that has not
+ * been seen running yet is estimated with a configured default. Listeners registered with
+ * {@link #addEvictionListener(Runnable)} are notified after models were unloaded.
+ * <p>
+ * Since the manager unloads models when the budget requires it, it sends its own
+ * {@code keep_alive} with every request instead of relying on the idle timeout of Ollama; by
+ * default, models stay loaded until they are evicted if a budget is configured.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>residency.maxBytes:</b> the memory budget of every node in bytes; {@code 0} disables
+ *     eviction.</li>
+ *     <li><b>residency.evictionPolicy:</b> {@code LRU} or {@code LFU}.</li>
+ *     <li><b>residency.pinnedModels:</b> the comma-separated names of models that are loaded at
+ *     startup and never evicted, in addition to the model used for generation.</li>
+ *     <li><b>residency.keepAlive:</b> the {@code keep_alive} sent to Ollama, in seconds or as a
+ *     duration such as {@code 30m}; defaults to {@code -1} with a budget and to the default of
+ *     Ollama without one.</li>
+ *     <li><b>residency.defaultModelBytes:</b> the estimated memory of a model that has not been
+ *     seen running yet.</li>
+ * </ul>
+ */
+public class ResidencyManager {
+
+    /**
+     * The use of a model on a node.
+     */
+    private static final class Usage {
+
+        /**
+         * The {@link System#nanoTime()} of the last request for the model.
+         */
+        private volatile long lastUsedNanos;
+
+        /**
+         * The number of requests for the model.
+         */
+        private final LongAdder uses = new LongAdder();
+
+        /**
+         * The number of requests for the model currently running.
+         */
+        private final AtomicInteger active = new AtomicInteger();
+    }
+
+    /**
+     * The memory budget of every node in bytes; {@code 0} disables eviction.
+     */
+    private final long maxBytes;
+
+    /**
+     * The strategy choosing the model to unload.
+     */
+    private final EvictionPolicy evictionPolicy;
+
+    /**
+     * The models that are never evicted.
+     */
+    private final Set<Model> pinnedModels;
+
+    /**
+     * The {@code keep_alive} sent to Ollama, or {@code null} for the default of Ollama.
+     */
+    private final String keepAlive;
+
+    /**
+     * The estimated memory of a model that has not been seen running yet.
+     */
+    private final long defaultModelBytes;
+
+    /**
+     * The use of the models per node.
+     */
+    private final Map<OllamaNode, Map<Model, Usage>> usage = new ConcurrentHashMap<>();
+
+    /**
+     * The locks serializing evictions per node. Evictions call the node while holding the lock,
+     * which must not pin the carrier of a virtual thread.
+     */
+    private final Map<OllamaNode, ReentrantLock> nodeLocks = new ConcurrentHashMap<>();
+
+    /**
+     * The number of models unloaded to stay within the budget.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The listeners notified when models were unloaded to stay within the budget.
+     */
+    private final List<Runnable> evictionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a {@code ResidencyManager}.
+     *
+     * @param maxBytes          the memory budget of every node in bytes; {@code 0} disables eviction.
+     * @param evictionPolicy    the {@link EvictionPolicy} choosing the model to unload.
+     * @param pinnedModels      the models that are never evicted.
+     * @param keepAlive         the {@code keep_alive} sent to Ollama, or {@code null} for its default.
+     * @param defaultModelBytes the estimated memory of a model that has not been seen running yet.
+     */
+    public ResidencyManager(long maxBytes, EvictionPolicy evictionPolicy, Set<Model> pinnedModels, String keepAlive, long defaultModelBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.evictionPolicy = evictionPolicy;
+        this.pinnedModels = Collections.unmodifiableSet(new LinkedHashSet<>(pinnedModels));
+        this.keepAlive = keepAlive;
+        this.defaultModelBytes = Math.max(0, defaultModelBytes);
+    }
+
+    /**
+     * Creates a {@code ResidencyManager} from the given configuration.
+     *
+     * @param config       the {@link ServerConfig} to read the settings from.
+     * @param defaultModel the {@link Model} used for generation, which is always pinned.
+     * @return the configured {@code ResidencyManager}.
+     */
+    public static ResidencyManager fromConfig(ServerConfig config, Model defaultModel) {
+        long maxBytes = config.getLong("residency.maxBytes", 0);
+
+        Set<Model> pinned = new LinkedHashSet<>();
+        pinned.add(defaultModel);
+        for (String name : config.getString("residency.pinnedModels", "").split(",")) {
+            if (!name.isBlank()) {
+                pinned.add(Model.of(name));
+            }
+        }
+
+        String keepAlive = config.getString("residency.keepAlive", maxBytes > 0 ? "-1" : "").trim();
+        return new ResidencyManager(maxBytes,
+                config.getEnum("residency.evictionPolicy", EvictionPolicy.class, EvictionPolicy.LRU),
+                pinned,
+                keepAlive.isEmpty() ? null : keepAlive,
+                config.getLong("residency.defaultModelBytes", 4L * 1024 * 1024 * 1024));
+    }
+
+    /**
+     * Retrieves the memory budget of every node.
+     *
+     * @return the budget in bytes; {@code 0} if eviction is disabled.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Retrieves the models that are never evicted.
+     *
+     * @return the unmodifiable set of pinned {@link Model} instances.
+     */
+    public Set<Model> getPinnedModels() {
+        return pinnedModels;
+    }
+
+    /**
+     * Retrieves the {@code keep_alive} sent to Ollama.
+     *
+     * @return the keep-alive value, or {@code null} for the default of Ollama.
+     */
+    public String getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Retrieves the number of models unloaded to stay within the budget.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Registers a listener that is called after models were unloaded to stay within the budget.
+     *
+     * @param listener the listener to call.
+     */
+    public void addEvictionListener(Runnable listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * Retrieves the memory a model needs on a node: its size when it was last seen running
+     * there, or the configured estimate.
+     *
+     * @param node  the node.
+     * @param model the model.
+     * @return the size in bytes.
+     */
+    public long getModelBytes(OllamaNode node, Model model) {
+        long size = node.getModelSize(model);
+        return size >= 0 ? size : defaultModelBytes;
+    }
+
+    /**
+     * Retrieves the memory occupied on a node by the models loaded there as last seen and
+     * reserved by the models being loaded there.
+     *
+     * @param node the node.
+     * @return the used memory in bytes.
+     */
+    public long getUsedBytes(OllamaNode node) {
+        Set<Model> models = new LinkedHashSet<>(node.getLoadedModels());
+        models.addAll(node.getLoadingModels());
+        long used = 0;
+        for (Model model : models) {
+            used += getModelBytes(node, model);
+        }
+        return used;
+    }
+
+    /**
+     * Makes room for a model on a node before it is loaded there, unloading the least recently
+     * or least frequently used models that are neither pinned nor in use until the model fits
+     * into the budget. If not enough models can be unloaded, the model is loaded anyway and
+     * Ollama decides whether it fits.
+     * <p>
+     * The memory of the model is reserved on the node in the same step, so that the budget
+     * check of the next load already counts it. The caller must release the reservation with
+     * {@link OllamaNode#onLoadFinished(Model)} once the load has finished, whether or not it
+     * succeeded.
+     *
+     * @param node  the node the model is loaded on.
+     * @param model the model to load.
+     * @return {@code true} if the model fits into the budget.
+     */
+    public boolean makeRoom(OllamaNode node, Model model) {
+        if (maxBytes == 0) {
+            node.onLoadStarted(model);
+            return true;
+        }
+
+        boolean fits;
+        int evicted = 0;
+        ReentrantLock lock = nodeLocks.computeIfAbsent(node, key -> new ReentrantLock());
+        lock.lock();
+        try {
+            fits = true;
+            if (!node.hasLoaded(model) && !node.isLoading(model)) {
+                long needed = getModelBytes(node, model);
+                long used = getUsedBytes(node);
+                while (used + needed > maxBytes) {
+                    Model victim = selectVictim(node, model);
+                    if (victim == null) {
+                        System.err.println("Speicherbudget von " + node.getUrl() + " reicht nicht für "
+                                + model.getModelName() + " (" + (used + needed) + " von " + maxBytes + " Bytes)");
+                        fits = false;
+                        break;
+                    }
+
+                    long victimBytes = getModelBytes(node, victim);
+                    // Route new requests away from the model before it is unloaded
+                    node.removeLoadedModel(victim);
+                    try {
+                        node.getClient().unloadModel(victim);
+                        evictions.increment();
+                        evicted++;
+                        System.out.println("Modell verdrängt: " + victim.getModelName() + " (" + node.getUrl() + ")");
+                    } catch (IOException e) {
+                        System.err.println("Modell konnte nicht verdrängt werden: " + victim.getModelName()
+                                + " (" + node.getUrl() + ") - " + e.getMessage());
+                        fits = false;
+                        break;
+                    }
+                    used -= victimBytes;
+                }
+            }
+            // Reserve the memory before the next load on the node checks the budget
+            node.onLoadStarted(model);
+        } finally {
+            lock.unlock();
+        }
+
+        if (evicted > 0) {
+            evictionListeners.forEach(Runnable::run);
+        }
+        return fits;
+    }
+
+    /**
+     * Records that a request for a model was started on a node.
+     *
+     * @param node  the node.
+     * @param model the model.
+     */
+    void onRequestStarted(OllamaNode node, Model model) {
+        Usage modelUsage = usage.computeIfAbsent(node, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(model, key -> new Usage());
+        modelUsage.active.incrementAndGet();
+        modelUsage.uses.increment();
+        modelUsage.lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that a request for a model on a node finished.
+     *
+     * @param node  the node.
+     * @param model the model.
+     */
+    void onRequestFinished(OllamaNode node, Model model) {
+        Usage modelUsage = usage.get(node).get(model);
+        modelUsage.lastUsedNanos = System.nanoTime();
+        modelUsage.active.decrementAndGet();
+    }
+
+    /**
+     * Selects the model to unload from a node. Models that have never been requested through
+     * the server are unloaded first.
+     *
+     * @param node     the node.
+     * @param incoming the model that is about to be loaded.
+     * @return the {@link Model} to unload, or {@code null} if no model can be unloaded.
+     */
+    private Model selectVictim(OllamaNode node, Model incoming) {
+        Map<Model, Usage> nodeUsage = usage.getOrDefault(node, Map.of());
+        Model victim = null;
+        boolean victimRequested = false;
+        long victimLastUsed = 0;
+        long victimUses = 0;
+        for (Model candidate : node.getLoadedModels()) {
+            if (candidate == incoming || pinnedModels.contains(candidate)) {
+                continue;
+            }
+            Usage candidateUsage = nodeUsage.get(candidate);
+            if (candidateUsage != null && candidateUsage.active.get() > 0) {
+                continue;
+            }
+            boolean requested = candidateUsage != null;
+            long lastUsed = requested ? candidateUsage.lastUsedNanos : 0;
+            long uses = requested ? candidateUsage.uses.sum() : 0;
+
+            boolean better;
+            if (victim == null) {
+                better = true;
+            } else if (requested != victimRequested) {
+                better = !requested;
+            } else if (!requested) {
+                better = false;
+            } else if (evictionPolicy == EvictionPolicy.LFU && uses != victimUses) {
+                better = uses < victimUses;
+            } else {
+                // System.nanoTime() values may overflow, only their difference is meaningful
+                better = lastUsed - victimLastUsed < 0;
+            }
+            if (better) {
+                victim = candidate;
+                victimRequested = requested;
+                victimLastUsed = lastUsed;
+                victimUses = uses;
+            }
+        }
+        return victim;
+    }
+}
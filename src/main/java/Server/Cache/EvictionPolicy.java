@@ -0,0 +1,19 @@
+package Server.Cache;
+
+/**
+ * Enum representing the strategies the {@link ResponseCache} uses to choose the entry to evict
+ * when its byte budget is exceeded. The {@link Server.Backend.ResidencyManager} uses the same
+ * strategies to choose the model to unload from an Ollama node.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entry.
+     */
+    LRU,
+
+    /**
+     * Evicts the least frequently used entry. Ties are broken by recency.
+     */
+    LFU
+}
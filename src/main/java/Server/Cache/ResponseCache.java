@@ -0,0 +1,436 @@
+package Server.Cache;
+
+import LLM.GenerationOptions;
+import Server.ServerConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ResponseCache} class is an in-memory cache for generated responses, keyed by a
+ * hash of the normalized model, prompt and generation options (see {@link #key}).
+ * <p>
+ * The cache is bounded by a byte budget. When a new entry would exceed the budget, entries are
+ * evicted according to the configured {@link EvictionPolicy}. Every entry has its own
+ * time-to-live, after which it is no longer returned. Hits, misses, evictions and expirations
+ * are counted for monitoring.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>cache.enabled:</b> whether responses are cached at all.</li>
+ *     <li><b>cache.maxBytes:</b> the byte budget of the cache.</li>
+ *     <li><b>cache.ttlSeconds:</b> the default time-to-live of an entry.</li>
+ *     <li><b>cache.evictionPolicy:</b> {@code LRU} or {@code LFU}.</li>
+ *     <li><b>cache.nonDeterministic:</b> whether responses generated with non-deterministic
+ *     settings are cached without the client explicitly asking for it.</li>
+ * </ul>
+ */
+public class ResponseCache {
+
+    /**
+     * The approximate fixed memory overhead of an entry in bytes (key, entry object, map node).
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    /**
+     * The model name used in cache keys as long as the model cannot be chosen per request.
+     */
+    public static final String DEFAULT_MODEL = "default";
+
+    /**
+     * The entries in access order, i.e. the least recently used entry comes first.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The keys grouped by access frequency, only maintained for {@link EvictionPolicy#LFU}. Each
+     * bucket keeps its keys in the order they reached the frequency, so the first key of the
+     * lowest bucket is the least recently promoted of the least frequently used entries.
+     */
+    private final TreeMap<Long, LinkedHashSet<String>> frequencies = new TreeMap<>();
+
+    /**
+     * Whether the cache is enabled.
+     */
+    private final boolean enabled;
+
+    /**
+     * The byte budget of the cache.
+     */
+    private final long maxBytes;
+
+    /**
+     * The default time-to-live of an entry in milliseconds.
+     */
+    private final long defaultTtlMillis;
+
+    /**
+     * The strategy used to choose entries for eviction.
+     */
+    private final EvictionPolicy evictionPolicy;
+
+    /**
+     * Whether non-deterministic responses are cached by default.
+     */
+    private final boolean cacheNonDeterministic;
+
+    /**
+     * The estimated number of bytes currently held by the cache.
+     */
+    private long currentBytes;
+
+    /**
+     * The number of lookups that returned a cached response.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of lookups that found no valid entry.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of entries evicted to stay within the byte budget.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The number of entries dropped because their time-to-live elapsed.
+     */
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Constructs a {@code ResponseCache}.
+     *
+     * @param enabled               whether the cache is enabled.
+     * @param maxBytes              the byte budget of the cache.
+     * @param defaultTtlMillis      the default time-to-live of an entry in milliseconds.
+     * @param evictionPolicy        the {@link EvictionPolicy} to apply.
+     * @param cacheNonDeterministic whether non-deterministic responses are cached by default.
+     */
+    public ResponseCache(boolean enabled, long maxBytes, long defaultTtlMillis, EvictionPolicy evictionPolicy, boolean cacheNonDeterministic) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.evictionPolicy = evictionPolicy;
+        this.cacheNonDeterministic = cacheNonDeterministic;
+    }
+
+    /**
+     * Creates a {@code ResponseCache} from the given configuration.
+     *
+     * @param config the {@link ServerConfig} to read the settings from.
+     * @return the configured {@code ResponseCache}.
+     */
+    public static ResponseCache fromConfig(ServerConfig config) {
+        return new ResponseCache(
+                config.getBoolean("cache.enabled", true),
+                config.getLong("cache.maxBytes", 64L * 1024 * 1024),
+                TimeUnit.SECONDS.toMillis(config.getLong("cache.ttlSeconds", 3600)),
+                config.getEnum("cache.evictionPolicy", EvictionPolicy.class, EvictionPolicy.LRU),
+                config.getBoolean("cache.nonDeterministic", false));
+    }
+
+    /**
+     * Computes the cache key of a generation request. The model name is compared
+     * case-insensitively, and line endings as well as leading and trailing whitespace of
+     * the prompt are normalized.
+     *
+     * @param model   the name of the requested model.
+     * @param prompt  the prompt.
+     * @param options the {@link GenerationOptions} of the request.
+     * @return the key as a hexadecimal SHA-256 hash.
+     */
+    public static String key(String model, String prompt, GenerationOptions options) {
+        String normalized = model.trim().toLowerCase()
+                + '\u0000' + prompt.replace("\r\n", "\n").strip()
+                + '\u0000' + options.toCanonicalString();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Decides whether a response generated with the given options may be cached.
+     *
+     * @param options  the {@link GenerationOptions} of the request.
+     * @param override the client's explicit choice, or {@code null} to use the default rule.
+     * @return {@code true} if the response may be read from and stored in the cache.
+     */
+    public boolean isCacheable(GenerationOptions options, Boolean override) {
+        if (!enabled) {
+            return false;
+        }
+        if (override != null) {
+            return override;
+        }
+        return cacheNonDeterministic || options.isDeterministic();
+    }
+
+    /**
+     * Looks up a cached response.
+     *
+     * @param key the cache key, see {@link #key}.
+     * @return the cached response, or {@code null} if there is no valid entry.
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            remove(key, entry);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+
+        if (evictionPolicy == EvictionPolicy.LFU) {
+            untrack(key, entry);
+            entry.frequency++;
+            track(key, entry);
+        } else {
+            entry.frequency++;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Stores a response using the default time-to-live.
+     *
+     * @param key   the cache key, see {@link #key}.
+     * @param value the generated response.
+     */
+    public void put(String key, String value) {
+        put(key, value, defaultTtlMillis);
+    }
+
+    /**
+     * Stores a response. Entries are evicted as needed to stay within the byte budget.
+     * Responses larger than the whole budget are not stored.
+     *
+     * @param key       the cache key, see {@link #key}.
+     * @param value     the generated response.
+     * @param ttlMillis the time-to-live of the entry in milliseconds.
+     */
+    public synchronized void put(String key, String value, long ttlMillis) {
+        if (!enabled || ttlMillis <= 0) {
+            return;
+        }
+
+        long size = ENTRY_OVERHEAD_BYTES + 2L * (key.length() + value.length());
+        if (size > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.get(key);
+        if (previous != null) {
+            remove(key, previous);
+        }
+
+        while (currentBytes + size > maxBytes && !entries.isEmpty()) {
+            evictOne();
+        }
+
+        Entry entry = new Entry(value, size, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+        entries.put(key, entry);
+        track(key, entry);
+        currentBytes += size;
+    }
+
+    /**
+     * Removes a single entry.
+     *
+     * @param key the cache key, see {@link #key}.
+     * @return {@code true} if an entry was removed.
+     */
+    public synchronized boolean invalidate(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        remove(key, entry);
+        return true;
+    }
+
+    /**
+     * Removes all entries.
+     *
+     * @return the number of removed entries.
+     */
+    public synchronized int invalidateAll() {
+        int count = entries.size();
+        entries.clear();
+        frequencies.clear();
+        currentBytes = 0;
+        return count;
+    }
+
+    /**
+     * Evicts one entry in constant time (logarithmic in the number of distinct frequencies for
+     * LFU). An expired least recently used entry is dropped first; otherwise the least recently
+     * used entry (LRU) or the least recently promoted of the least frequently used entries (LFU)
+     * is evicted.
+     */
+    private void evictOne() {
+        Map.Entry<String, Entry> eldest = entries.entrySet().iterator().next();
+        if (eldest.getValue().isExpired(System.nanoTime())) {
+            remove(eldest.getKey(), eldest.getValue());
+            expirations.increment();
+            return;
+        }
+
+        String victimKey = evictionPolicy == EvictionPolicy.LFU
+                ? frequencies.firstEntry().getValue().iterator().next()
+                : eldest.getKey();
+        Entry victim = entries.remove(victimKey);
+        untrack(victimKey, victim);
+        currentBytes -= victim.size;
+        evictions.increment();
+    }
+
+    /**
+     * Removes an entry and updates the byte count.
+     *
+     * @param key   the key of the entry.
+     * @param entry the entry to remove.
+     */
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        untrack(key, entry);
+        currentBytes -= entry.size;
+    }
+
+    /**
+     * Adds a key to the bucket of its entry's frequency, if frequencies are tracked.
+     *
+     * @param key   the key of the entry.
+     * @param entry the entry.
+     */
+    private void track(String key, Entry entry) {
+        if (evictionPolicy == EvictionPolicy.LFU) {
+            frequencies.computeIfAbsent(entry.frequency, frequency -> new LinkedHashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Removes a key from the bucket of its entry's frequency, dropping the bucket once it is empty.
+     *
+     * @param key   the key of the entry.
+     * @param entry the entry.
+     */
+    private void untrack(String key, Entry entry) {
+        if (evictionPolicy != EvictionPolicy.LFU) {
+            return;
+        }
+        LinkedHashSet<String> bucket = frequencies.get(entry.frequency);
+        if (bucket != null && bucket.remove(key) && bucket.isEmpty()) {
+            frequencies.remove(entry.frequency);
+        }
+    }
+
+    /**
+     * Retrieves the number of cache hits.
+     *
+     * @return the hit count.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of cache misses.
+     *
+     * @return the miss count.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the number of entries evicted to stay within the byte budget.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Retrieves the number of entries dropped because their time-to-live elapsed.
+     *
+     * @return the expiration count.
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * Retrieves the number of entries currently held.
+     *
+     * @return the entry count.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the estimated number of bytes currently held.
+     *
+     * @return the byte count.
+     */
+    public synchronized long getBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Retrieves the byte budget of the cache.
+     *
+     * @return the maximum number of bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Retrieves the eviction policy of the cache.
+     *
+     * @return the {@link EvictionPolicy}.
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * A cached response together with its bookkeeping data.
+     */
+    private static class Entry {
+        private final String value;
+        private final long size;
+        private final long expiresAtNanos;
+        private long frequency = 1;
+
+        Entry(String value, long size, long expiresAtNanos) {
+            this.value = value;
+            this.size = size;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
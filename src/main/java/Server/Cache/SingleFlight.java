@@ -0,0 +1,124 @@
+package Server.Cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code SingleFlight} class deduplicates identical calls that are in flight at the same
+ * time.
+ * <p>
+ * The first caller for a key performs the call. Callers arriving with the same key while the
+ * call is still running do not start their own call but wait for the result of the first one,
+ * including its failure. Once the call has finished, the key is released and the next caller
+ * starts a new call.
+ *
+ * @param <V> the type of the call result.
+ */
+public class SingleFlight<V> {
+
+    /**
+     * A call that may fail with an {@link IOException}.
+     *
+     * @param <V> the type of the call result.
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+
+        /**
+         * Performs the call.
+         *
+         * @return the result of the call.
+         * @throws IOException if the call fails.
+         */
+        V call() throws IOException;
+    }
+
+    /**
+     * The calls currently in flight, keyed by request key.
+     */
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The number of callers that joined a call instead of starting their own.
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Performs the call for the given key, or joins an identical call already in flight.
+     *
+     * @param key  the key identifying identical calls.
+     * @param call the call to perform if none is in flight.
+     * @return the result of the call.
+     * @throws IOException if the call fails or the waiting thread is interrupted.
+     */
+    public V execute(String key, Call<V> call) throws IOException {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        try {
+            V result = call.call();
+            own.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Waits for the result of a call started by another caller.
+     *
+     * @param future the future of the call.
+     * @return the result of the call.
+     * @throws IOException if the call failed or the waiting thread is interrupted.
+     */
+    private V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an identical request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Retrieves the number of calls currently in flight.
+     *
+     * @return the number of distinct keys being processed.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Retrieves the number of callers that joined an identical call.
+     *
+     * @return the coalesced call count.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+}
@@ -0,0 +1,202 @@
+package Server.Cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code SnapshotCache} class keeps the latest response body of a read-only endpoint, such as
+ * the model lists of Ollama, so that frequent polling does not reach the backend every time.
+ * <p>
+ * The cache follows the stale-while-revalidate pattern: a snapshot older than the refresh
+ * interval is still returned while a single background refresh loads a new one. Only the very
+ * first request, and the first one after {@link #invalidate()}, waits for the backend; requests
+ * arriving at the same time join that load through a {@link SingleFlight}. If a
+ * refresh fails, the previous snapshot stays in use. Every snapshot carries an {@code ETag}
+ * derived from its body, so clients can revalidate with {@code If-None-Match}.
+ */
+public class SnapshotCache {
+
+    /**
+     * Loads the current response body from the backend.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Loads the response body.
+         *
+         * @return the response body.
+         * @throws IOException if the backend could not be reached.
+         */
+        String load() throws IOException;
+    }
+
+    /**
+     * A cached response body.
+     *
+     * @param body          the response body.
+     * @param etag          the quoted entity tag of the body.
+     * @param loadedAtNanos the {@link System#nanoTime()} at which the body was loaded.
+     */
+    public record Snapshot(String body, String etag, long loadedAtNanos) {
+
+        /**
+         * Retrieves the age of the snapshot.
+         *
+         * @return the age in seconds.
+         */
+        public long getAgeSeconds() {
+            return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - loadedAtNanos);
+        }
+    }
+
+    /**
+     * Loads the response body.
+     */
+    private final Loader loader;
+
+    /**
+     * The age in nanoseconds after which a snapshot is refreshed.
+     */
+    private final long refreshNanos;
+
+    /**
+     * The current snapshot, or {@code null} if none has been loaded or it was invalidated.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Incremented by {@link #invalidate()}, so that loads started before an invalidation do not
+     * publish their outdated result.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Deduplicates the loads of requests that find no snapshot.
+     */
+    private final SingleFlight<Snapshot> loads = new SingleFlight<>();
+
+    /**
+     * Whether a background refresh is running.
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * The number of requests answered from a snapshot.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of requests that had to wait for the backend.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a {@code SnapshotCache}.
+     *
+     * @param refreshMillis the age in milliseconds after which a snapshot is refreshed;
+     *                      {@code 0} loads the body on every request.
+     * @param loader        the {@link Loader} loading the response body.
+     */
+    public SnapshotCache(long refreshMillis, Loader loader) {
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, refreshMillis));
+        this.loader = loader;
+    }
+
+    /**
+     * Retrieves the current snapshot. A missing snapshot is loaded on the calling thread; an
+     * outdated snapshot is returned as is while a refresh runs in the background.
+     *
+     * @return the {@link Snapshot}.
+     * @throws IOException if no snapshot exists and the backend could not be reached.
+     */
+    public Snapshot get() throws IOException {
+        Snapshot current = snapshot;
+        if (current == null || refreshNanos == 0) {
+            misses.increment();
+            return loads.execute(Long.toString(generation.get()), this::load);
+        }
+
+        hits.increment();
+        if (System.nanoTime() - current.loadedAtNanos() >= refreshNanos && refreshing.compareAndSet(false, true)) {
+            Thread.startVirtualThread(() -> {
+                try {
+                    load();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Snapshot konnte nicht aktualisiert werden: " + e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return current;
+    }
+
+    /**
+     * Discards the current snapshot, so that the next request loads a new one. Loads that are
+     * still running do not publish their result.
+     */
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * Retrieves the number of requests answered from a snapshot.
+     *
+     * @return the hit count.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of requests that had to wait for the backend.
+     *
+     * @return the miss count.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Loads a new snapshot and publishes it unless the cache was invalidated in the meantime.
+     *
+     * @return the loaded {@link Snapshot}.
+     * @throws IOException if the backend could not be reached.
+     */
+    private Snapshot load() throws IOException {
+        long startGeneration = generation.get();
+        String body = loader.load();
+        Snapshot loaded = new Snapshot(body, etag(body), System.nanoTime());
+        synchronized (this) {
+            if (generation.get() == startGeneration) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Computes the entity tag of a body.
+     *
+     * @param body the response body.
+     * @return the quoted entity tag.
+     */
+    private static String etag(String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(body.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package Server.Execution;
+
+import Server.Handler.ResponseSender;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code AdmissionFilter} class limits how many exchanges of the contexts it is attached to
+ * may be processed at the same time.
+ * <p>
+ * Exchanges beyond the concurrency cap wait in the shared {@link RequestScheduler}, which admits
+ * them by priority class and shares slots fairly between clients. The priority class is taken
+ * from the {@value #PRIORITY_HEADER} header ({@code interactive}, {@code batch} or
+ * {@code background}) and defaults to the class of the context. Clients are identified by the
+ * {@link ClientIdentifier}, i.e. by a configured API key or by their IP address. If the queue already
+ * holds the maximum number of waiting exchanges, or an exchange waits longer than the queue
+ * timeout, the client receives {@code 503 Service Unavailable} with a {@code Retry-After} header.
+ * The priority class of an admitted exchange is stored in its {@value #PRIORITY_ATTRIBUTE}
+ * attribute, so that handlers fanning out work can take further slots in the same class.
+ * Contexts without this filter (e.g. {@code /api/ping}) are never held back by it.
+ */
+public class AdmissionFilter extends Filter {
+
+    /**
+     * The request header selecting the priority class.
+     */
+    public static final String PRIORITY_HEADER = "X-Priority";
+
+    /**
+     * The exchange attribute holding the {@link PriorityClass} an admitted exchange runs in.
+     */
+    public static final String PRIORITY_ATTRIBUTE = "Server.Execution.priority";
+
+    /**
+     * The scheduler admitting the exchanges, shared by all admission-controlled contexts.
+     */
+    private final RequestScheduler scheduler;
+
+    /**
+     * Determines the identity of the clients.
+     */
+    private final ClientIdentifier clientIdentifier;
+
+    /**
+     * The priority class of exchanges without a {@value #PRIORITY_HEADER} header.
+     */
+    private final PriorityClass defaultPriority;
+
+    /**
+     * The maximum time in nanoseconds an exchange may wait for a slot.
+     */
+    private final long queueTimeoutNanos;
+
+    /**
+     * Used to send the rejection response.
+     */
+    private final ResponseSender responseSender = new ResponseSender();
+
+    /**
+     * Constructs an {@code AdmissionFilter}.
+     *
+     * @param scheduler          the {@link RequestScheduler} admitting the exchanges.
+     * @param clientIdentifier   the {@link ClientIdentifier} determining the identity of the clients.
+     * @param defaultPriority    the {@link PriorityClass} of exchanges without a priority header.
+     * @param queueTimeoutMillis the maximum waiting time of a queued exchange in milliseconds.
+     */
+    public AdmissionFilter(RequestScheduler scheduler, ClientIdentifier clientIdentifier, PriorityClass defaultPriority,
+                           long queueTimeoutMillis) {
+        this.scheduler = scheduler;
+        this.clientIdentifier = clientIdentifier;
+        this.defaultPriority = defaultPriority;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueTimeoutMillis));
+    }
+
+    /**
+     * Admits the exchange if a slot is free or becomes free within the queue timeout,
+     * otherwise rejects it with {@code 503}. An unknown priority class is rejected with {@code 400}.
+     *
+     * @param exchange the {@link HttpExchange} to be filtered.
+     * @param chain    the remaining filters and the handler.
+     * @throws IOException if an I/O error occurs while processing or rejecting the exchange.
+     */
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        PriorityClass priority = defaultPriority;
+        String priorityHeader = exchange.getRequestHeaders().getFirst(PRIORITY_HEADER);
+        if (priorityHeader != null) {
+            try {
+                priority = PriorityClass.fromName(priorityHeader);
+            } catch (IllegalArgumentException e) {
+                JSONObject errorResponse = new JSONObject();
+                errorResponse.put("error", "Ungültige Anfrage: " + e.getMessage());
+                responseSender.sendResponse(exchange, errorResponse.toString(), 400);
+                return;
+            }
+        }
+
+        if (!acquire(priority, clientIdentifier.identify(exchange))) {
+            reject(exchange);
+            return;
+        }
+
+        exchange.setAttribute(PRIORITY_ATTRIBUTE, priority);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    /**
+     * Tries to obtain a slot, waiting in the scheduler if necessary.
+     *
+     * @param priority the {@link PriorityClass} of the exchange.
+     * @param client   the identity of the client.
+     * @return {@code true} if a slot was obtained; otherwise, {@code false}.
+     */
+    private boolean acquire(PriorityClass priority, String client) {
+        try {
+            return scheduler.acquire(priority, client, queueTimeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Sends the {@code 503 Service Unavailable} response for a rejected exchange.
+     *
+     * @param exchange the rejected {@link HttpExchange}.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void reject(HttpExchange exchange) throws IOException {
+        JSONObject errorResponse = new JSONObject();
+        errorResponse.put("error", "Der Server ist ausgelastet, bitte später erneut versuchen.");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        responseSender.sendResponse(exchange, errorResponse.toString(), 503);
+    }
+
+    /**
+     * Retrieves the priority class of exchanges without a priority header.
+     *
+     * @return the default {@link PriorityClass}.
+     */
+    public PriorityClass getDefaultPriority() {
+        return defaultPriority;
+    }
+
+    /**
+     * Returns a short description of this filter.
+     *
+     * @return the description.
+     */
+    @Override
+    public String description() {
+        return "Admission control (" + defaultPriority + ", max " + scheduler.getMaxConcurrent() + " concurrent, "
+                + scheduler.getMaxQueued() + " queued)";
+    }
+}
@@ -0,0 +1,89 @@
+package Server.Execution;
+
+import Server.ServerConfig;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code ClientIdentifier} class determines the identity under which a client is scheduled
+ * and rate limited.
+ * <p>
+ * A client is identified by its {@value #API_KEY_HEADER} header only if the key is one of the
+ * configured API keys; any other client, including one sending an unknown key, is identified by
+ * its IP address. Otherwise a client could escape its limits and its share of the scheduler by
+ * sending a new key with every request.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>clients.apiKeys:</b> the comma-separated API keys accepted as client identities.
+ *     The keys of {@code scheduler.clientWeights} that are not IP addresses are accepted as
+ *     well.</li>
+ * </ul>
+ */
+public class ClientIdentifier {
+
+    /**
+     * The request header identifying the client instead of its IP address.
+     */
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    /**
+     * Matches IPv4 addresses and IPv6 addresses in their usual notations.
+     */
+    private static final Pattern IP_ADDRESS = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}|[0-9a-fA-F]*:[0-9a-fA-F:.]*");
+
+    /**
+     * The API keys accepted as client identities.
+     */
+    private final Set<String> apiKeys;
+
+    /**
+     * Constructs a {@code ClientIdentifier}.
+     *
+     * @param apiKeys the API keys accepted as client identities.
+     */
+    public ClientIdentifier(Collection<String> apiKeys) {
+        this.apiKeys = Set.copyOf(apiKeys);
+    }
+
+    /**
+     * Creates a {@code ClientIdentifier} from the given configuration.
+     *
+     * @param config          the {@link ServerConfig} to read the settings from.
+     * @param weightedClients the clients listed in {@code scheduler.clientWeights}.
+     * @return the configured {@code ClientIdentifier}.
+     */
+    public static ClientIdentifier fromConfig(ServerConfig config, Collection<String> weightedClients) {
+        Set<String> apiKeys = new LinkedHashSet<>();
+        for (String key : config.getString("clients.apiKeys", "").split(",")) {
+            if (!key.isBlank()) {
+                apiKeys.add(key.trim());
+            }
+        }
+        for (String client : weightedClients) {
+            if (!IP_ADDRESS.matcher(client).matches()) {
+                apiKeys.add(client);
+            }
+        }
+        return new ClientIdentifier(apiKeys);
+    }
+
+    /**
+     * Determines the identity of the client sending an exchange.
+     *
+     * @param exchange the {@link HttpExchange}.
+     * @return the API key of the client if it is a configured one; otherwise, its IP address.
+     */
+    public String identify(HttpExchange exchange) {
+        String apiKey = exchange.getRequestHeaders().getFirst(API_KEY_HEADER);
+        if (apiKey != null && apiKeys.contains(apiKey.trim())) {
+            return apiKey.trim();
+        }
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+}
@@ -0,0 +1,220 @@
+package Server.Execution;
+
+import Server.ServerConfig;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code ExecutionEngine} class decides on which threads the {@link HttpServer} runs its
+ * exchanges and how many expensive exchanges may be processed at the same time.
+ * <p>
+ * The engine supports the modes described in {@link ExecutionMode}. In the
+ * {@link ExecutionMode#VIRTUAL_THREADS} and {@link ExecutionMode#PLATFORM_POOL} modes an
+ * {@link AdmissionFilter} bounds the contexts registered through
+ * {@link #applyAdmissionControl(HttpContext, PriorityClass)}, so that slow generation requests
+ * cannot occupy every worker while fast endpoints stay responsive. All of these contexts share
+ * one {@link RequestScheduler}, which admits waiting requests by priority class and client. In
+ * {@link ExecutionMode#DISPATCHER} mode exchanges are processed one after another anyway, so no
+ * admission control is applied.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>executor.mode:</b> one of {@code VIRTUAL_THREADS}, {@code PLATFORM_POOL}, {@code DISPATCHER}.</li>
+ *     <li><b>executor.poolSize:</b> the number of worker threads in {@code PLATFORM_POOL} mode.</li>
+ *     <li><b>admission.maxConcurrent:</b> the concurrency cap for admission-controlled endpoints.</li>
+ *     <li><b>admission.maxQueued:</b> the maximum number of requests waiting for a free slot.</li>
+ *     <li><b>admission.queueTimeoutMillis:</b> the maximum waiting time of a queued request.</li>
+ *     <li><b>scheduler.agingMillis:</b> the waiting time after which a priority class is promoted
+ *     by one level; {@code 0} disables aging.</li>
+ *     <li><b>scheduler.clientWeights:</b> the comma-separated weights of clients as
+ *     {@code client=weight}, where the client is an API key or an IP address; other clients
+ *     have weight {@code 1}.</li>
+ * </ul>
+ * See {@link ClientIdentifier} for the keys deciding which API keys identify clients.
+ */
+public class ExecutionEngine {
+
+    /**
+     * The mode this engine runs in.
+     */
+    private final ExecutionMode mode;
+
+    /**
+     * The executor handed to the {@link HttpServer}, or {@code null} in
+     * {@link ExecutionMode#DISPATCHER} mode.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The scheduler admitting requests to expensive endpoints, or {@code null} in
+     * {@link ExecutionMode#DISPATCHER} mode.
+     */
+    private final RequestScheduler scheduler;
+
+    /**
+     * Determines the identity of the clients for the scheduler and the rate limits.
+     */
+    private final ClientIdentifier clientIdentifier;
+
+    /**
+     * The maximum waiting time of a queued request in milliseconds.
+     */
+    private final long queueTimeoutMillis;
+
+    /**
+     * Constructs an {@code ExecutionEngine}.
+     * <p>
+     * In {@link ExecutionMode#PLATFORM_POOL} mode, admitted and queued exchanges both occupy a
+     * worker thread. The concurrency cap and queue limit are therefore clamped so that at least
+     * one eighth of the pool (minimum one thread) always remains available for other endpoints.
+     *
+     * @param mode               the {@link ExecutionMode} to use.
+     * @param poolSize           the number of worker threads in {@link ExecutionMode#PLATFORM_POOL} mode.
+     * @param maxConcurrent      the concurrency cap for admission-controlled endpoints.
+     * @param maxQueued          the maximum number of requests waiting for a free slot.
+     * @param queueTimeoutMillis the maximum waiting time of a queued request in milliseconds.
+     * @param agingMillis        the waiting time after which a priority class is promoted by one level.
+     * @param clientWeights      the weights of the clients; clients not listed have weight {@code 1}.
+     * @param clientIdentifier   the {@link ClientIdentifier} determining the identity of the clients.
+     */
+    public ExecutionEngine(ExecutionMode mode, int poolSize, int maxConcurrent, int maxQueued, long queueTimeoutMillis,
+                           long agingMillis, Map<String, Integer> clientWeights, ClientIdentifier clientIdentifier) {
+        this.mode = mode;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.clientIdentifier = clientIdentifier;
+
+        switch (mode) {
+            case VIRTUAL_THREADS -> {
+                executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("api-request-", 0).factory());
+                scheduler = new RequestScheduler(maxConcurrent, maxQueued, agingMillis, clientWeights);
+            }
+            case PLATFORM_POOL -> {
+                if (poolSize < 2) {
+                    throw new IllegalArgumentException("executor.poolSize must be at least 2");
+                }
+                executor = Executors.newFixedThreadPool(poolSize, Thread.ofPlatform().name("api-worker-", 0).factory());
+
+                int available = poolSize - Math.max(1, poolSize / 8);
+                int cappedConcurrent = Math.min(maxConcurrent, available);
+                int cappedQueued = Math.min(maxQueued, available - cappedConcurrent);
+                scheduler = new RequestScheduler(cappedConcurrent, cappedQueued, agingMillis, clientWeights);
+            }
+            default -> {
+                executor = null;
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * Creates an {@code ExecutionEngine} from the given configuration.
+     *
+     * @param config the {@link ServerConfig} to read the settings from.
+     * @return the configured {@code ExecutionEngine}.
+     */
+    public static ExecutionEngine fromConfig(ServerConfig config) {
+        Map<String, Integer> clientWeights = new HashMap<>();
+        for (String entry : config.getString("scheduler.clientWeights", "").split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator > 0) {
+                clientWeights.put(entry.substring(0, separator).trim(),
+                        Math.max(1, Integer.parseInt(entry.substring(separator + 1).trim())));
+            }
+        }
+
+        return new ExecutionEngine(
+                config.getEnum("executor.mode", ExecutionMode.class, ExecutionMode.VIRTUAL_THREADS),
+                config.getInt("executor.poolSize", 64),
+                config.getInt("admission.maxConcurrent", 256),
+                config.getInt("admission.maxQueued", 512),
+                config.getLong("admission.queueTimeoutMillis", 30_000),
+                config.getLong("scheduler.agingMillis", 5000),
+                clientWeights,
+                ClientIdentifier.fromConfig(config, clientWeights.keySet()));
+    }
+
+    /**
+     * Installs the executor of this engine on the given server. Must be called before the
+     * server is started.
+     *
+     * @param server the {@link HttpServer} to configure.
+     */
+    public void install(HttpServer server) {
+        if (executor != null) {
+            server.setExecutor(executor);
+        }
+    }
+
+    /**
+     * Puts the given context under admission control.
+     *
+     * @param context         the {@link HttpContext} of an expensive endpoint.
+     * @param defaultPriority the {@link PriorityClass} of requests without a priority header.
+     */
+    public void applyAdmissionControl(HttpContext context, PriorityClass defaultPriority) {
+        if (scheduler != null) {
+            context.getFilters().add(new AdmissionFilter(scheduler, clientIdentifier, defaultPriority, queueTimeoutMillis));
+        }
+    }
+
+    /**
+     * Retrieves the mode this engine runs in.
+     *
+     * @return the {@link ExecutionMode}.
+     */
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Retrieves the identification of clients shared by the scheduler and the rate limits.
+     *
+     * @return the {@link ClientIdentifier}.
+     */
+    public ClientIdentifier getClientIdentifier() {
+        return clientIdentifier;
+    }
+
+    /**
+     * Retrieves the scheduler admitting requests to expensive endpoints.
+     *
+     * @return the {@link RequestScheduler}, or {@code null} in {@link ExecutionMode#DISPATCHER} mode.
+     */
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Retrieves the maximum waiting time of a queued request.
+     *
+     * @return the queue timeout in milliseconds.
+     */
+    public long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+
+    /**
+     * Stops accepting new work and waits briefly for running exchanges to finish.
+     */
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
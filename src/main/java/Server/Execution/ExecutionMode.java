@@ -0,0 +1,24 @@
+package Server.Execution;
+
+/**
+ * Enum representing the ways in which the {@link ExecutionEngine} can run HTTP exchanges.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Every exchange runs on its own virtual thread. Blocking upstream calls only park the
+     * virtual thread, so hundreds of generations can be in flight at the same time.
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * Exchanges run on a fixed-size pool of platform threads.
+     */
+    PLATFORM_POOL,
+
+    /**
+     * Exchanges run on the single dispatcher thread of the {@code HttpServer}
+     * (the behaviour of a server without an executor).
+     */
+    DISPATCHER
+}
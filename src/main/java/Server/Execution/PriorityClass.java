@@ -0,0 +1,39 @@
+package Server.Execution;
+
+/**
+ * Enum representing the priority classes the {@link RequestScheduler} admits requests in.
+ * Constants are ordered from the highest to the lowest priority.
+ */
+public enum PriorityClass {
+
+    /**
+     * Requests a user is waiting for.
+     */
+    INTERACTIVE,
+
+    /**
+     * Bulk jobs whose results are needed soon, but not immediately.
+     */
+    BATCH,
+
+    /**
+     * Work that may run whenever nothing else is waiting.
+     */
+    BACKGROUND;
+
+    /**
+     * Returns the priority class with the given name, ignoring case.
+     *
+     * @param name the name of the priority class, e.g. {@code interactive}.
+     * @return the matching {@code PriorityClass}.
+     * @throws IllegalArgumentException if no priority class has the given name.
+     */
+    public static PriorityClass fromName(String name) {
+        for (PriorityClass priority : values()) {
+            if (priority.name().equalsIgnoreCase(name.trim())) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unbekannte Priorität '" + name + "'");
+    }
+}
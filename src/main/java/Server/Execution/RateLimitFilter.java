@@ -0,0 +1,144 @@
+package Server.Execution;
+
+import Server.Handler.ResponseSender;
+import Server.Resilience.RateLimiter;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@code RateLimitFilter} class enforces the client limits of a {@link RateLimiter} on the
+ * contexts it is attached to.
+ * <p>
+ * Clients are identified by the {@link ClientIdentifier}, like in {@link AdmissionFilter}. The request body is read up front to
+ * estimate the tokens of the prompt and then handed on to the handler unchanged; the tokens of
+ * the response are estimated from the bytes sent and charged once the handler has finished.
+ * Clients over their limit receive {@code 429 Too Many Requests} with a {@code Retry-After}
+ * header, before they take up a slot of the admission control.
+ */
+public class RateLimitFilter extends Filter {
+
+    /**
+     * An output stream counting the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * The number of bytes written.
+         */
+        private long count;
+
+        /**
+         * Constructs a {@code CountingOutputStream}.
+         *
+         * @param out the stream to write to.
+         */
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        /**
+         * Writes a byte and counts it.
+         *
+         * @param b the byte.
+         * @throws IOException if the underlying stream fails.
+         */
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        /**
+         * Writes bytes and counts them.
+         *
+         * @param b   the data.
+         * @param off the start offset in the data.
+         * @param len the number of bytes to write.
+         * @throws IOException if the underlying stream fails.
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * The limiter holding the buckets of the clients.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Determines the identity of the clients.
+     */
+    private final ClientIdentifier clientIdentifier;
+
+    /**
+     * Used to send the rejection response.
+     */
+    private final ResponseSender responseSender = new ResponseSender();
+
+    /**
+     * Constructs a {@code RateLimitFilter}.
+     *
+     * @param rateLimiter      the {@link RateLimiter} holding the buckets of the clients.
+     * @param clientIdentifier the {@link ClientIdentifier} determining the identity of the clients.
+     */
+    public RateLimitFilter(RateLimiter rateLimiter, ClientIdentifier clientIdentifier) {
+        this.rateLimiter = rateLimiter;
+        this.clientIdentifier = clientIdentifier;
+    }
+
+    /**
+     * Passes the exchange on if the client is within its limits, otherwise rejects it with
+     * {@code 429}.
+     *
+     * @param exchange the {@link HttpExchange} to be filtered.
+     * @param chain    the remaining filters and the handler.
+     * @throws IOException if an I/O error occurs while processing or rejecting the exchange.
+     */
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!rateLimiter.isClientLimited()) {
+            chain.doFilter(exchange);
+            return;
+        }
+
+        String client = clientIdentifier.identify(exchange);
+        byte[] requestBody = exchange.getRequestBody().readAllBytes();
+        long wait = rateLimiter.tryAcquireClient(client, RateLimiter.estimateTokens(requestBody.length));
+        if (wait > 0) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Zu viele Anfragen, bitte später erneut versuchen.");
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(RateLimiter.toRetryAfterSeconds(wait)));
+            responseSender.sendResponse(exchange, errorResponse.toString(), 429);
+            return;
+        }
+
+        CountingOutputStream responseBody = new CountingOutputStream(exchange.getResponseBody());
+        exchange.setStreams(new ByteArrayInputStream(requestBody), responseBody);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            rateLimiter.chargeClient(client, RateLimiter.estimateTokens(responseBody.count));
+        }
+    }
+
+    /**
+     * Returns a short description of this filter.
+     *
+     * @return the description.
+     */
+    @Override
+    public String description() {
+        return "Client rate limiting";
+    }
+}
@@ -0,0 +1,455 @@
+package Server.Execution;
+
+import LLM.Metrics.LatencyHistogram;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code RequestScheduler} class decides which waiting request gets the next free slot when
+ * more requests arrive than may run at the same time.
+ * <p>
+ * Waiting requests are grouped by {@link PriorityClass}, and a free slot goes to the highest
+ * class with waiting requests. Within a class, slots are shared between clients by weighted fair
+ * queueing: every request receives a virtual finish time of {@code max(virtual time, finish time
+ * of the previous request of its client) + 1 / weight}, and the request with the earliest finish
+ * time is admitted first. A client submitting many requests at once therefore only delays its
+ * own requests, while other clients keep their share.
+ * <p>
+ * To keep low priority work from starving, a class is promoted by one level for every
+ * {@code agingMillis} its oldest request has been waiting. If a promoted class reaches the level
+ * of a higher class, the higher class still goes first.
+ * <p>
+ * The scheduler is guarded by a {@link ReentrantLock}, since waiting requests usually run on
+ * virtual threads, which must not be pinned to their carrier while they wait.
+ */
+public class RequestScheduler {
+
+    /**
+     * A request waiting for a slot.
+     */
+    private static final class Ticket {
+
+        /**
+         * The client the request belongs to.
+         */
+        private final String client;
+
+        /**
+         * The virtual finish time of the request.
+         */
+        private final double finishTag;
+
+        /**
+         * The arrival order of the request, breaking ties between equal finish times.
+         */
+        private final long sequence;
+
+        /**
+         * The {@link System#nanoTime()} at which the request started waiting.
+         */
+        private final long enqueuedNanos;
+
+        /**
+         * Signalled when the request is granted a slot.
+         */
+        private final Condition granted;
+
+        /**
+         * Whether the request has been granted a slot.
+         */
+        private boolean admitted;
+
+        /**
+         * Constructs a {@code Ticket}.
+         *
+         * @param client        the client the request belongs to.
+         * @param finishTag     the virtual finish time of the request.
+         * @param sequence      the arrival order of the request.
+         * @param enqueuedNanos the {@link System#nanoTime()} at which the request started waiting.
+         * @param granted       the {@link Condition} signalled when the request is granted a slot.
+         */
+        private Ticket(String client, double finishTag, long sequence, long enqueuedNanos, Condition granted) {
+            this.client = client;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.enqueuedNanos = enqueuedNanos;
+            this.granted = granted;
+        }
+    }
+
+    /**
+     * The waiting requests and statistics of one priority class.
+     */
+    private static final class ClassQueue {
+
+        /**
+         * The waiting requests ordered by virtual finish time.
+         */
+        private final TreeSet<Ticket> byFinishTag = new TreeSet<>(
+                Comparator.<Ticket>comparingDouble(ticket -> ticket.finishTag).thenComparingLong(ticket -> ticket.sequence));
+
+        /**
+         * The waiting requests in arrival order.
+         */
+        private final LinkedHashSet<Ticket> byArrival = new LinkedHashSet<>();
+
+        /**
+         * The virtual finish time of the last waiting request of every client with waiting requests.
+         */
+        private final Map<String, Double> lastFinishTags = new HashMap<>();
+
+        /**
+         * The number of waiting requests of every client with waiting requests.
+         */
+        private final Map<String, Integer> queuedPerClient = new HashMap<>();
+
+        /**
+         * The virtual finish time of the request admitted last.
+         */
+        private double virtualTime;
+
+        /**
+         * The number of waiting requests, readable without the lock.
+         */
+        private final AtomicInteger queued = new AtomicInteger();
+
+        /**
+         * The time requests waited for a slot, including requests admitted immediately.
+         */
+        private final LatencyHistogram waitTime = new LatencyHistogram();
+
+        /**
+         * The number of admitted requests.
+         */
+        private final LongAdder admitted = new LongAdder();
+
+        /**
+         * The number of requests rejected because the queue was full or they waited too long.
+         */
+        private final LongAdder rejected = new LongAdder();
+
+        /**
+         * The number of requests admitted ahead of a higher class because of aging.
+         */
+        private final LongAdder aged = new LongAdder();
+    }
+
+    /**
+     * The maximum number of requests that may run concurrently.
+     */
+    private final int maxConcurrent;
+
+    /**
+     * The maximum number of requests that may wait for a slot.
+     */
+    private final int maxQueued;
+
+    /**
+     * The waiting time in nanoseconds after which a class is promoted by one level, or {@code 0}
+     * to disable aging.
+     */
+    private final long agingNanos;
+
+    /**
+     * The weights of the clients; clients not listed have weight {@code 1}.
+     */
+    private final Map<String, Integer> clientWeights;
+
+    /**
+     * The waiting requests per priority class.
+     */
+    private final Map<PriorityClass, ClassQueue> queues = new EnumMap<>(PriorityClass.class);
+
+    /**
+     * Guards the queues and the slot count.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The number of running requests.
+     */
+    private int inFlight;
+
+    /**
+     * The number of waiting requests across all classes.
+     */
+    private int totalQueued;
+
+    /**
+     * The arrival counter of waiting requests.
+     */
+    private long sequence;
+
+    /**
+     * Constructs a {@code RequestScheduler}.
+     *
+     * @param maxConcurrent the maximum number of requests that may run concurrently.
+     * @param maxQueued     the maximum number of requests that may wait for a slot.
+     * @param agingMillis   the waiting time after which a class is promoted by one level;
+     *                      {@code 0} disables aging.
+     * @param clientWeights the weights of the clients; clients not listed have weight {@code 1}.
+     */
+    public RequestScheduler(int maxConcurrent, int maxQueued, long agingMillis, Map<String, Integer> clientWeights) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, agingMillis));
+        this.clientWeights = Map.copyOf(clientWeights);
+        for (PriorityClass priority : PriorityClass.values()) {
+            queues.put(priority, new ClassQueue());
+        }
+    }
+
+    /**
+     * Obtains a slot for a request, waiting up to the given time if none is free.
+     *
+     * @param priority     the {@link PriorityClass} of the request.
+     * @param client       the identity of the client sending the request.
+     * @param timeoutNanos the maximum waiting time in nanoseconds.
+     * @return {@code true} if a slot was obtained and must be returned through {@link #release()};
+     *         {@code false} if the queue was full or the request waited too long.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     */
+    public boolean acquire(PriorityClass priority, String client, long timeoutNanos) throws InterruptedException {
+        ClassQueue queue = queues.get(priority);
+        lock.lock();
+        try {
+            if (inFlight < maxConcurrent && totalQueued == 0) {
+                inFlight++;
+                queue.admitted.increment();
+                queue.waitTime.record(0);
+                return true;
+            }
+            if (totalQueued >= maxQueued) {
+                queue.rejected.increment();
+                return false;
+            }
+
+            Ticket ticket = enqueue(queue, client);
+            long remaining = timeoutNanos;
+            try {
+                while (!ticket.admitted) {
+                    if (remaining <= 0) {
+                        remove(queue, ticket);
+                        queue.rejected.increment();
+                        return false;
+                    }
+                    remaining = ticket.granted.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (ticket.admitted) {
+                    // The slot was handed over just before the interrupt, pass it on
+                    handOver();
+                } else {
+                    remove(queue, ticket);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a slot obtained through {@link #acquire(PriorityClass, String, long)}, handing it
+     * to the next waiting request if there is one.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            handOver();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the slot of a finished request to the next waiting request, or frees it if no
+     * request is waiting. Must be called while holding the lock.
+     */
+    private void handOver() {
+        long now = System.nanoTime();
+
+        PriorityClass highest = null;
+        PriorityClass selected = null;
+        long selectedLevel = Long.MAX_VALUE;
+        for (PriorityClass priority : PriorityClass.values()) {
+            ClassQueue queue = queues.get(priority);
+            if (queue.byArrival.isEmpty()) {
+                continue;
+            }
+            if (highest == null) {
+                highest = priority;
+            }
+            long level = priority.ordinal();
+            if (agingNanos > 0) {
+                long waited = now - queue.byArrival.getFirst().enqueuedNanos;
+                level = Math.max(0, level - waited / agingNanos);
+            }
+            if (level < selectedLevel) {
+                selected = priority;
+                selectedLevel = level;
+            }
+        }
+
+        if (selected == null) {
+            inFlight--;
+            return;
+        }
+
+        ClassQueue queue = queues.get(selected);
+        Ticket ticket = queue.byFinishTag.first();
+        remove(queue, ticket);
+        queue.virtualTime = ticket.finishTag;
+        queue.admitted.increment();
+        queue.waitTime.record(now - ticket.enqueuedNanos);
+        if (selected != highest) {
+            queue.aged.increment();
+        }
+        ticket.admitted = true;
+        ticket.granted.signal();
+    }
+
+    /**
+     * Adds a waiting request to the queue of its class. Must be called while holding the lock.
+     *
+     * @param queue  the {@link ClassQueue} of the request.
+     * @param client the client the request belongs to.
+     * @return the {@link Ticket} of the request.
+     */
+    private Ticket enqueue(ClassQueue queue, String client) {
+        double start = Math.max(queue.virtualTime, queue.lastFinishTags.getOrDefault(client, 0.0));
+        double finishTag = start + 1.0 / clientWeights.getOrDefault(client, 1);
+
+        Ticket ticket = new Ticket(client, finishTag, sequence++, System.nanoTime(), lock.newCondition());
+        queue.byFinishTag.add(ticket);
+        queue.byArrival.add(ticket);
+        queue.lastFinishTags.put(client, finishTag);
+        queue.queuedPerClient.merge(client, 1, Integer::sum);
+        queue.queued.incrementAndGet();
+        totalQueued++;
+        return ticket;
+    }
+
+    /**
+     * Removes a waiting request from the queue of its class. Must be called while holding the lock.
+     *
+     * @param queue  the {@link ClassQueue} of the request.
+     * @param ticket the {@link Ticket} of the request.
+     */
+    private void remove(ClassQueue queue, Ticket ticket) {
+        queue.byFinishTag.remove(ticket);
+        queue.byArrival.remove(ticket);
+        if (queue.queuedPerClient.merge(ticket.client, -1, Integer::sum) == 0) {
+            // Idle clients start again at the virtual time, without credit from earlier requests
+            queue.queuedPerClient.remove(ticket.client);
+            queue.lastFinishTags.remove(ticket.client);
+        }
+        queue.queued.decrementAndGet();
+        totalQueued--;
+    }
+
+    /**
+     * Retrieves the number of running requests.
+     *
+     * @return the number of occupied slots.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of requests of a class waiting for a slot.
+     *
+     * @param priority the {@link PriorityClass}.
+     * @return the queue depth of the class.
+     */
+    public int getQueued(PriorityClass priority) {
+        return queues.get(priority).queued.get();
+    }
+
+    /**
+     * Retrieves the time the requests of a class waited for a slot.
+     *
+     * @param priority the {@link PriorityClass}.
+     * @return the {@link LatencyHistogram} of the waiting times.
+     */
+    public LatencyHistogram getWaitTime(PriorityClass priority) {
+        return queues.get(priority).waitTime;
+    }
+
+    /**
+     * Retrieves the number of admitted requests of a class.
+     *
+     * @param priority the {@link PriorityClass}.
+     * @return the admission count.
+     */
+    public long getAdmitted(PriorityClass priority) {
+        return queues.get(priority).admitted.sum();
+    }
+
+    /**
+     * Retrieves the number of rejected requests of a class.
+     *
+     * @param priority the {@link PriorityClass}.
+     * @return the rejection count.
+     */
+    public long getRejected(PriorityClass priority) {
+        return queues.get(priority).rejected.sum();
+    }
+
+    /**
+     * Retrieves the number of requests of a class admitted ahead of a higher class because of aging.
+     *
+     * @param priority the {@link PriorityClass}.
+     * @return the number of aged admissions.
+     */
+    public long getAged(PriorityClass priority) {
+        return queues.get(priority).aged.sum();
+    }
+
+    /**
+     * Retrieves the concurrency cap.
+     *
+     * @return the maximum number of concurrently running requests.
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Retrieves the queue size limit.
+     *
+     * @return the maximum number of waiting requests.
+     */
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Retrieves the waiting time after which a class is promoted by one level.
+     *
+     * @return the aging interval in milliseconds; {@code 0} if aging is disabled.
+     */
+    public long getAgingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(agingNanos);
+    }
+}
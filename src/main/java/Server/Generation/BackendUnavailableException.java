@@ -0,0 +1,24 @@
+package Server.Generation;
+
+import java.io.IOException;
+
+/**
+ * Signals that no backend could be asked to generate a response because the circuit breakers
+ * of all backends are open.
+ */
+public class BackendUnavailableException extends IOException {
+
+    /**
+     * The serialization version of this exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a {@code BackendUnavailableException} with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public BackendUnavailableException(String message) {
+        super(message);
+    }
+}
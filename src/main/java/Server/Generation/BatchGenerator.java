@@ -0,0 +1,396 @@
+package Server.Generation;
+
+import LLM.GenerationOptions;
+import LLM.LocalClient.Ollama.Model;
+import Server.Cache.ResponseCache;
+import Server.Execution.ExecutionEngine;
+import Server.Execution.PriorityClass;
+import Server.Execution.RequestScheduler;
+import Server.Resilience.RateLimiter;
+import Server.ServerConfig;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code BatchGenerator} class generates the responses of many prompts in one request.
+ * <p>
+ * The items of a batch are processed by a fixed number of workers that take the next item as
+ * soon as they are done with the previous one, so no more than the configured parallelism of
+ * backend calls are in flight for a batch. Every item goes through the {@link GenerationService}
+ * and therefore through the same circuit breakers, failover and hedging as a single request,
+ * and through the {@link ResponseCache}. The model of an item is determined by the
+ * {@link ModelRouter} on the worker, so that {@code auto} chooses per prompt. A failing item does not affect the others: each item
+ * gets its own result with an HTTP-like status code.
+ * <p>
+ * A batch counts against the limits of its client like the single requests it replaces. The
+ * request itself holds one slot of the {@link RequestScheduler}, which the first worker uses;
+ * every further worker takes a slot in the class and for the client of the request for each
+ * item, so the scheduler shares capacity fairly between batches and other requests. A worker
+ * that does not get a slot within the queue timeout stops and leaves the remaining items to the
+ * others. Likewise, the request was charged one request of the client rate limit, and every
+ * further item takes another one; items beyond the limit fail with {@code 429}.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>batch.maxItems:</b> the maximum number of items in a batch.</li>
+ *     <li><b>batch.parallelism:</b> the number of items generated at the same time, unless the request asks for fewer or more.</li>
+ *     <li><b>batch.maxParallelism:</b> the upper bound of the parallelism a request can ask for.</li>
+ * </ul>
+ */
+public class BatchGenerator {
+
+    /**
+     * An item of a batch.
+     *
+     * @param prompt  the input prompt, or {@code null} if the item is invalid.
+     * @param options the {@link GenerationOptions} of the item.
+     * @param model   the model name of the item, or {@code null} to let any backend answer.
+     * @param error   the reason the item is invalid, or {@code null} if it is valid.
+     */
+    public record Item(String prompt, GenerationOptions options, String model, String error) {
+
+        /**
+         * Creates a valid item.
+         *
+         * @param prompt  the input prompt.
+         * @param options the {@link GenerationOptions} of the item.
+         * @param model   the model name of the item, or {@code null} to let any backend answer.
+         * @return the item.
+         */
+        public static Item of(String prompt, GenerationOptions options, String model) {
+            return new Item(prompt, options, model, null);
+        }
+
+        /**
+         * Creates an item that is rejected without being generated.
+         *
+         * @param error the reason the item is invalid.
+         * @return the item.
+         */
+        public static Item invalid(String error) {
+            return new Item(null, null, null, error);
+        }
+    }
+
+    /**
+     * The result of an item.
+     *
+     * @param index    the position of the item in the batch.
+     * @param status   the HTTP-like status: 200 on success, 400 for an invalid item, 429 if the
+     *                 rate limits of the client or the backends were exhausted, 503 if no
+     *                 backend or no model catalog was available and 500 if generation failed.
+     * @param response the generated text, or {@code null} if the item failed.
+     * @param error    the error message, or {@code null} on success.
+     * @param cached   whether the response was served from the cache.
+     * @param model    the name of the model the item was generated with, or {@code null} if
+     *                 the item named no model.
+     */
+    public record Result(int index, int status, String response, String error, boolean cached, String model) {
+
+        /**
+         * Checks whether the item succeeded.
+         *
+         * @return {@code true} if the status is 200.
+         */
+        public boolean isSuccess() {
+            return status == 200;
+        }
+
+        /**
+         * Converts the result to JSON.
+         *
+         * @return the result as {@link JSONObject}.
+         */
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("index", index);
+            json.put("status", status);
+            if (response != null) {
+                json.put("response", response);
+                json.put("cached", cached);
+            }
+            if (model != null) {
+                json.put("model", model);
+            }
+            if (error != null) {
+                json.put("error", error);
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Receives the result of each item as soon as it is available.
+     */
+    @FunctionalInterface
+    public interface ResultListener {
+
+        /**
+         * Called on the thread that runs the batch, once per item in order of completion.
+         *
+         * @param result the result of the item.
+         * @throws IOException if the result cannot be processed, e.g. because the client is gone.
+         */
+        void onResult(Result result) throws IOException;
+    }
+
+    /**
+     * The service generating the responses.
+     */
+    private final GenerationService generationService;
+
+    /**
+     * The shared cache for generated responses.
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * Determines the model of each item.
+     */
+    private final ModelRouter modelRouter;
+
+    /**
+     * The scheduler granting the slots of additional workers, or {@code null} without admission control.
+     */
+    private final RequestScheduler scheduler;
+
+    /**
+     * The maximum time in nanoseconds an additional worker waits for a slot.
+     */
+    private final long queueTimeoutNanos;
+
+    /**
+     * The limiter charging every item to the client.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * The maximum number of items in a batch.
+     */
+    private final int maxItems;
+
+    /**
+     * The default number of items generated at the same time.
+     */
+    private final int defaultParallelism;
+
+    /**
+     * The upper bound of the parallelism a request can ask for.
+     */
+    private final int maxParallelism;
+
+    /**
+     * Constructs a {@code BatchGenerator}.
+     *
+     * @param generationService  the {@link GenerationService} generating the responses.
+     * @param responseCache      the {@link ResponseCache} shared with the generation endpoints.
+     * @param modelRouter        the {@link ModelRouter} determining the model of each item.
+     * @param scheduler          the {@link RequestScheduler} granting the slots of additional
+     *                           workers, or {@code null} without admission control.
+     * @param queueTimeoutMillis the maximum time an additional worker waits for a slot.
+     * @param rateLimiter        the {@link RateLimiter} charging every item to the client.
+     * @param maxItems           the maximum number of items in a batch.
+     * @param defaultParallelism the default number of items generated at the same time.
+     * @param maxParallelism     the upper bound of the parallelism a request can ask for.
+     */
+    public BatchGenerator(GenerationService generationService, ResponseCache responseCache, ModelRouter modelRouter,
+                          RequestScheduler scheduler, long queueTimeoutMillis, RateLimiter rateLimiter,
+                          int maxItems, int defaultParallelism, int maxParallelism) {
+        this.generationService = generationService;
+        this.responseCache = responseCache;
+        this.modelRouter = modelRouter;
+        this.scheduler = scheduler;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueTimeoutMillis));
+        this.rateLimiter = rateLimiter;
+        this.maxItems = maxItems;
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.defaultParallelism = Math.max(1, Math.min(defaultParallelism, this.maxParallelism));
+    }
+
+    /**
+     * Creates a {@code BatchGenerator} from the given configuration.
+     *
+     * @param config            the {@link ServerConfig} to read the settings from.
+     * @param generationService the {@link GenerationService} generating the responses.
+     * @param responseCache     the {@link ResponseCache} shared with the generation endpoints.
+     * @param modelRouter       the {@link ModelRouter} determining the model of each item.
+     * @param executionEngine   the {@link ExecutionEngine} whose scheduler admits the workers.
+     * @param rateLimiter       the {@link RateLimiter} charging every item to the client.
+     * @return the configured {@code BatchGenerator}.
+     */
+    public static BatchGenerator fromConfig(ServerConfig config, GenerationService generationService,
+                                            ResponseCache responseCache, ModelRouter modelRouter,
+                                            ExecutionEngine executionEngine, RateLimiter rateLimiter) {
+        return new BatchGenerator(generationService, responseCache, modelRouter,
+                executionEngine.getScheduler(), executionEngine.getQueueTimeoutMillis(), rateLimiter,
+                config.getInt("batch.maxItems", 1000),
+                config.getInt("batch.parallelism", 8),
+                config.getInt("batch.maxParallelism", 32));
+    }
+
+    /**
+     * Retrieves the maximum number of items in a batch.
+     *
+     * @return the maximum item count.
+     */
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Determines the parallelism of a batch.
+     *
+     * @param requested the parallelism asked for by the client, or {@code null} for the default.
+     * @return the parallelism between 1 and the configured maximum.
+     */
+    public int resolveParallelism(Integer requested) {
+        if (requested == null) {
+            return defaultParallelism;
+        }
+        return Math.max(1, Math.min(requested, maxParallelism));
+    }
+
+    /**
+     * Generates the responses of all items. Blocks until every item has a result or the
+     * listener fails; in the latter case the remaining items are cancelled.
+     *
+     * @param items       the items of the batch.
+     * @param parallelism the number of items generated at the same time.
+     * @param hedge       whether the items may be hedged.
+     * @param priority    the {@link PriorityClass} the request was admitted in, or {@code null}
+     *                    if it is not under admission control.
+     * @param client      the identity of the client sending the batch.
+     * @param listener    receives every result as soon as it is available, or {@code null}.
+     * @return the results in the order of the items.
+     * @throws IOException if the listener fails or the calling thread is interrupted.
+     */
+    public List<Result> generate(List<Item> items, int parallelism, boolean hedge, PriorityClass priority, String client,
+                                 ResultListener listener) throws IOException {
+        Result[] results = new Result[items.size()];
+        BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+        AtomicInteger nextIndex = new AtomicInteger();
+        // The rate limit filter already charged the request itself, which pays for one item
+        AtomicInteger prepaidItems = new AtomicInteger(1);
+
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            int workerCount = Math.min(parallelism, items.size());
+            for (int i = 0; i < workerCount; i++) {
+                // The first worker runs on the slot of the request, the others take their own
+                boolean ownSlots = i > 0 && scheduler != null && priority != null;
+                workers.submit(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        if (ownSlots && !acquireSlot(priority, client)) {
+                            return;
+                        }
+                        try {
+                            int index = nextIndex.getAndIncrement();
+                            if (index >= items.size()) {
+                                return;
+                            }
+                            completed.add(generateItem(index, items.get(index), hedge, client, prepaidItems));
+                        } finally {
+                            if (ownSlots) {
+                                scheduler.release();
+                            }
+                        }
+                    }
+                });
+            }
+
+            for (int received = 0; received < items.size(); received++) {
+                Result result = completed.take();
+                results[result.index()] = result;
+                if (listener != null) {
+                    listener.onResult(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch was interrupted");
+        } finally {
+            // Cancels the items still running if the batch was aborted
+            workers.shutdownNow();
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Obtains a scheduler slot for an additional worker, waiting up to the queue timeout.
+     *
+     * @param priority the {@link PriorityClass} of the batch request.
+     * @param client   the identity of the client sending the batch.
+     * @return {@code true} if a slot was obtained and must be released; otherwise, {@code false}.
+     */
+    private boolean acquireSlot(PriorityClass priority, String client) {
+        try {
+            return scheduler.acquire(priority, client, queueTimeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Generates the response of a single item.
+     *
+     * @param index        the position of the item in the batch.
+     * @param item         the item.
+     * @param hedge        whether the item may be hedged.
+     * @param client       the identity of the client sending the batch.
+     * @param prepaidItems the number of items already charged to the client.
+     * @return the result of the item.
+     */
+    private Result generateItem(int index, Item item, boolean hedge, String client, AtomicInteger prepaidItems) {
+        if (item.error() != null) {
+            return new Result(index, 400, null, item.error(), false, null);
+        }
+        if (prepaidItems.getAndDecrement() <= 0 && rateLimiter.tryAcquireClient(client, 0) > 0) {
+            return new Result(index, 429, null, "Zu viele Anfragen, bitte später erneut versuchen.", false, null);
+        }
+
+        Model model;
+        try {
+            model = modelRouter.resolve(item.model(), item.prompt());
+        } catch (IllegalArgumentException e) {
+            return new Result(index, 400, null, e.getMessage(), false, null);
+        } catch (IOException e) {
+            return new Result(index, 503, null, "Modellkatalog nicht verfügbar: " + e.getMessage(), false, null);
+        }
+        String modelName = model != null ? model.getModelName() : null;
+
+        boolean cacheable = responseCache.isCacheable(item.options(), null);
+        String cacheKey = ResponseCache.key(modelName != null ? modelName : ResponseCache.DEFAULT_MODEL, item.prompt(), item.options());
+        if (cacheable) {
+            String cachedResponse = responseCache.get(cacheKey);
+            if (cachedResponse != null) {
+                return new Result(index, 200, cachedResponse, null, true, modelName);
+            }
+        }
+
+        try {
+            String response = generationService.generate(item.prompt(), item.options(), model, hedge);
+            if (cacheable) {
+                responseCache.put(cacheKey, response);
+            }
+            return new Result(index, 200, response, null, false, modelName);
+        } catch (RateLimitedException e) {
+            return new Result(index, 429, null, e.getMessage(), false, modelName);
+        } catch (BackendUnavailableException e) {
+            return new Result(index, 503, null, e.getMessage(), false, modelName);
+        } catch (IOException | RuntimeException e) {
+            return new Result(index, 500, null, "Fehler beim Generieren der Antwort: " + e.getMessage(), false, modelName);
+        }
+    }
+}
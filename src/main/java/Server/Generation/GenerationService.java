@@ -0,0 +1,460 @@
+package Server.Generation;
+
+import LLM.ExternalClient.Groq;
+import LLM.GenerationOptions;
+import LLM.LocalClient.Ollama;
+import LLM.LocalClient.Ollama.Model;
+import LLM.Metrics.LatencyHistogram;
+import LLM.Transport.UpstreamStatusException;
+import Server.Backend.BackendRegistry;
+import Server.Backend.OllamaNodePool;
+import Server.Resilience.CircuitBreaker;
+import Server.Resilience.CircuitBreakerRegistry;
+import Server.Resilience.RateLimiter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code GenerationService} class generates responses using the {@link Groq} and
+ * {@link Ollama} clients and decides which backend serves a request. Ollama requests are spread
+ * over the nodes of an {@link OllamaNodePool}.
+ * <p>
+ * Backends are tried in order of preference (Groq first, then Ollama). A request that names a
+ * {@link Model} is served by the Ollama nodes only, since Groq runs its own model. Each backend is guarded
+ * by a {@link CircuitBreaker} from the shared {@link CircuitBreakerRegistry}: while the breaker
+ * of a backend is open, requests are routed straight to the next backend instead of paying for
+ * a failing call first. When the breaker allows probing again, a few requests are sent to the
+ * recovering backend to find out whether it is healthy. Backends whose {@link RateLimiter}
+ * buckets are exhausted are skipped the same way; if that leaves no backend, the request fails
+ * with a {@link RateLimitedException}.
+ * <p>
+ * Latency-critical requests can be hedged: if the primary backend has not answered within the
+ * delay chosen by the {@link HedgingPolicy}, the same prompt is also sent to the next backend.
+ * The first successful answer is returned and the other call is cancelled.
+ */
+public class GenerationService {
+
+    /**
+     * The name of the Groq backend.
+     */
+    public static final String GROQ = "groq";
+
+    /**
+     * The name of the Ollama backend.
+     */
+    public static final String OLLAMA = "ollama";
+
+    /**
+     * A call to a single backend.
+     */
+    @FunctionalInterface
+    private interface BackendCall {
+
+        /**
+         * Generates a response.
+         *
+         * @param prompt  the input prompt.
+         * @param options the {@link GenerationOptions} of the request.
+         * @param model   the {@link Model} to use, or {@code null} for the default of the backend.
+         * @return the generated text.
+         * @throws Exception if the backend fails.
+         */
+        String generate(String prompt, GenerationOptions options, Model model) throws Exception;
+    }
+
+    /**
+     * A backend together with the call used to reach it.
+     *
+     * @param name the backend name.
+     * @param call the generation call.
+     */
+    private record Backend(String name, BackendCall call) {
+    }
+
+    /**
+     * The backends in order of preference.
+     */
+    private final List<Backend> backends = new ArrayList<>();
+
+    /**
+     * The latencies of successful calls, per backend.
+     */
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * The circuit breakers guarding the backends.
+     */
+    private final CircuitBreakerRegistry circuitBreakers;
+
+    /**
+     * The policy deciding when hedge requests are sent.
+     */
+    private final HedgingPolicy hedgingPolicy;
+
+    /**
+     * The rate limits of the backends.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Runs the backend calls of hedged requests, one virtual thread per call.
+     */
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Constructs a {@code GenerationService} that uses the clients of the given registry.
+     *
+     * @param backendRegistry the {@link BackendRegistry} holding the backend clients.
+     * @param circuitBreakers the {@link CircuitBreakerRegistry} guarding the backends.
+     * @param hedgingPolicy   the {@link HedgingPolicy} deciding when hedge requests are sent.
+     * @param rateLimiter     the {@link RateLimiter} holding the rate limits of the backends.
+     */
+    public GenerationService(BackendRegistry backendRegistry, CircuitBreakerRegistry circuitBreakers, HedgingPolicy hedgingPolicy,
+                             RateLimiter rateLimiter) {
+        this(backendRegistry.getOllamaPool(), backendRegistry.getGroq(), circuitBreakers, hedgingPolicy, rateLimiter);
+    }
+
+    /**
+     * Constructs a {@code GenerationService}.
+     *
+     * @param ollamaPool      the {@link OllamaNodePool} of the Ollama backend.
+     * @param groq            the {@link Groq} client, or {@code null} if Groq is not available.
+     * @param circuitBreakers the {@link CircuitBreakerRegistry} guarding the backends.
+     * @param hedgingPolicy   the {@link HedgingPolicy} deciding when hedge requests are sent.
+     * @param rateLimiter     the {@link RateLimiter} holding the rate limits of the backends.
+     */
+    public GenerationService(OllamaNodePool ollamaPool, Groq groq, CircuitBreakerRegistry circuitBreakers, HedgingPolicy hedgingPolicy,
+                             RateLimiter rateLimiter) {
+        this.circuitBreakers = circuitBreakers;
+        this.hedgingPolicy = hedgingPolicy;
+        this.rateLimiter = rateLimiter;
+        if (groq != null) {
+            backends.add(new Backend(GROQ, (prompt, options, model) -> groq.generateResponseNonStreaming(prompt, options)));
+        }
+        backends.add(new Backend(OLLAMA, (prompt, options, model) -> {
+            Model target = model != null ? model : ollamaPool.getDefaultModel();
+            return ollamaPool.execute(target, client -> client.generateResponseNonStreaming(prompt, options, target));
+        }));
+
+        // Register the breakers up front so that their state can be reported before the first request
+        backends.forEach(backend -> circuitBreakers.get(backend.name()));
+        backends.forEach(backend -> latencies.put(backend.name(), new LatencyHistogram()));
+    }
+
+    /**
+     * Generates a response using the first backend whose circuit breaker permits the call.
+     * If that backend fails, the next one is tried.
+     *
+     * @param prompt  the input prompt.
+     * @param options the {@link GenerationOptions} of the request.
+     * @return the generated text.
+     * @throws BackendUnavailableException if the circuit breakers or rate limits of all backends refuse the call.
+     * @throws IOException                 if every permitted backend failed.
+     */
+    public String generate(String prompt, GenerationOptions options) throws IOException {
+        return generate(prompt, options, (Model) null);
+    }
+
+    /**
+     * Generates a response with a model using the first backend whose circuit breaker permits
+     * the call. If that backend fails, the next one is tried.
+     *
+     * @param prompt  the input prompt.
+     * @param options the {@link GenerationOptions} of the request.
+     * @param model   the {@link Model} to use, or {@code null} to let any backend answer.
+     * @return the generated text.
+     * @throws BackendUnavailableException if the circuit breakers or rate limits of all backends refuse the call.
+     * @throws IOException                 if every permitted backend failed.
+     */
+    public String generate(String prompt, GenerationOptions options, Model model) throws IOException {
+        IOException lastError = null;
+        AtomicLong rateLimitedNanos = new AtomicLong(Long.MAX_VALUE);
+
+        for (Backend backend : backendsFor(model)) {
+            if (!tryAcquire(backend, prompt, rateLimitedNanos)) {
+                continue;
+            }
+
+            try {
+                return callBackend(backend, prompt, options, model);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (Exception e) {
+                lastError = toIOException(e);
+            }
+        }
+
+        if (lastError == null) {
+            throw unavailable(rateLimitedNanos.get());
+        }
+        throw lastError;
+    }
+
+    /**
+     * Generates a response, optionally hedging the request.
+     * <p>
+     * A hedged request is sent to the first permitted backend. If that backend has not answered
+     * within {@link HedgingPolicy#getDelayMillis(String)} and the hedge budget allows it, the
+     * request is also sent to the next permitted backend. The first successful answer wins and
+     * the call still running is cancelled. If a call fails while no other call is running, the
+     * request fails over to the next backend as in {@link #generate(String, GenerationOptions)}.
+     *
+     * @param prompt  the input prompt.
+     * @param options the {@link GenerationOptions} of the request.
+     * @param hedge   whether the request may be hedged.
+     * @return the generated text.
+     * @throws BackendUnavailableException if the circuit breakers or rate limits of all backends refuse the call.
+     * @throws IOException                 if every permitted backend failed.
+     */
+    public String generate(String prompt, GenerationOptions options, boolean hedge) throws IOException {
+        return generate(prompt, options, null, hedge);
+    }
+
+    /**
+     * Generates a response with a model, optionally hedging the request as in
+     * {@link #generate(String, GenerationOptions, boolean)}. Requests that name a model have
+     * a single backend and are therefore never hedged.
+     *
+     * @param prompt  the input prompt.
+     * @param options the {@link GenerationOptions} of the request.
+     * @param model   the {@link Model} to use, or {@code null} to let any backend answer.
+     * @param hedge   whether the request may be hedged.
+     * @return the generated text.
+     * @throws BackendUnavailableException if the circuit breakers or rate limits of all backends refuse the call.
+     * @throws IOException                 if every permitted backend failed.
+     */
+    public String generate(String prompt, GenerationOptions options, Model model, boolean hedge) throws IOException {
+        List<Backend> candidates = backendsFor(model);
+        if (!hedge || candidates.size() < 2) {
+            return generate(prompt, options, model);
+        }
+        hedgingPolicy.onRequest();
+
+        CompletionService<String> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+        Map<Future<String>, String> running = new HashMap<>();
+        AtomicLong rateLimitedNanos = new AtomicLong(Long.MAX_VALUE);
+        Iterator<Backend> remaining = candidates.iterator();
+        IOException lastError = null;
+        String hedgeBackend = null;
+        boolean hedgeConsidered = false;
+
+        try {
+            String primaryBackend = submitNext(remaining, completionService, running, prompt, options, model, rateLimitedNanos);
+            while (!running.isEmpty()) {
+                Future<String> completed;
+                if (!hedgeConsidered) {
+                    completed = completionService.poll(hedgingPolicy.getDelayMillis(primaryBackend), TimeUnit.MILLISECONDS);
+                    if (completed == null) {
+                        // The primary backend is slower than usual, race it against the next one
+                        hedgeConsidered = true;
+                        if (hedgingPolicy.tryAcquireHedge()) {
+                            hedgeBackend = submitNext(remaining, completionService, running, prompt, options, model, rateLimitedNanos);
+                            if (hedgeBackend != null) {
+                                hedgingPolicy.onHedgeSent();
+                            } else {
+                                hedgingPolicy.refundHedge();
+                            }
+                        }
+                        continue;
+                    }
+                } else {
+                    completed = completionService.take();
+                }
+
+                String backendName = running.remove(completed);
+                try {
+                    String response = completed.get();
+                    if (backendName.equals(hedgeBackend)) {
+                        hedgingPolicy.onHedgeWon();
+                    }
+                    return response;
+                } catch (ExecutionException e) {
+                    lastError = toIOException(e.getCause());
+                    if (running.isEmpty()) {
+                        // Nothing left to race against, fail over to the next backend
+                        primaryBackend = submitNext(remaining, completionService, running, prompt, options, model, rateLimitedNanos);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Generation was interrupted");
+        } finally {
+            // Cancel the losing call, its backend no longer needs to finish the generation
+            running.keySet().forEach(future -> future.cancel(true));
+        }
+
+        if (lastError == null) {
+            throw unavailable(rateLimitedNanos.get());
+        }
+        throw lastError;
+    }
+
+    /**
+     * Submits the request to the next backend whose circuit breaker and rate limits permit the call.
+     *
+     * @param remaining         the backends not tried yet.
+     * @param completionService the {@link CompletionService} running the calls.
+     * @param running           the running calls and their backend names.
+     * @param prompt            the input prompt.
+     * @param options           the {@link GenerationOptions} of the request.
+     * @param model             the {@link Model} to use, or {@code null} for the default of the backend.
+     * @param rateLimitedNanos  the shortest wait of the backends skipped because of their rate limits.
+     * @return the name of the backend, or {@code null} if no backend permits the call.
+     */
+    private String submitNext(Iterator<Backend> remaining, CompletionService<String> completionService,
+                              Map<Future<String>, String> running, String prompt, GenerationOptions options, Model model,
+                              AtomicLong rateLimitedNanos) {
+        while (remaining.hasNext()) {
+            Backend backend = remaining.next();
+            if (tryAcquire(backend, prompt, rateLimitedNanos)) {
+                running.put(completionService.submit(() -> callBackend(backend, prompt, options, model)), backend.name());
+                return backend.name();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Asks the circuit breaker and the rate limits of a backend for permission to call it.
+     *
+     * @param backend          the backend to call.
+     * @param prompt           the input prompt.
+     * @param rateLimitedNanos lowered to the wait of the backend if its rate limits refuse the call.
+     * @return {@code true} if the backend may be called; otherwise, {@code false}.
+     */
+    private boolean tryAcquire(Backend backend, String prompt, AtomicLong rateLimitedNanos) {
+        CircuitBreaker breaker = circuitBreakers.get(backend.name());
+        if (!breaker.tryAcquire()) {
+            return false;
+        }
+        long wait = rateLimiter.tryAcquireBackend(backend.name(), RateLimiter.estimateTokens(prompt.length()));
+        if (wait > 0) {
+            // The call is not made, release a probe permission of the breaker
+            breaker.onIgnored();
+            rateLimitedNanos.accumulateAndGet(wait, Math::min);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the exception for a request that no backend could be asked to serve.
+     *
+     * @param rateLimitedNanos the shortest wait of the backends skipped because of their rate
+     *                         limits, or {@link Long#MAX_VALUE} if none was.
+     * @return a {@link RateLimitedException} if a backend was rate limited; otherwise, a
+     *         {@link BackendUnavailableException}.
+     */
+    private static BackendUnavailableException unavailable(long rateLimitedNanos) {
+        if (rateLimitedNanos != Long.MAX_VALUE) {
+            return new RateLimitedException("Das Anfragelimit der Backends ist erschöpft.", rateLimitedNanos);
+        }
+        return new BackendUnavailableException("Alle Backends sind vorübergehend nicht verfügbar.");
+    }
+
+    /**
+     * Calls a backend whose circuit breaker already permitted the call and reports the outcome
+     * to the breaker and the {@link HedgingPolicy}. Cancelled calls and requests the backend
+     * rejected with a {@code 4xx} status are not counted against the breaker.
+     *
+     * @param backend the backend to call.
+     * @param prompt  the input prompt.
+     * @param options the {@link GenerationOptions} of the request.
+     * @param model   the {@link Model} to use, or {@code null} for the default of the backend.
+     * @return the generated text.
+     * @throws Exception if the backend fails or the call is cancelled.
+     */
+    private String callBackend(Backend backend, String prompt, GenerationOptions options, Model model) throws Exception {
+        CircuitBreaker breaker = circuitBreakers.get(backend.name());
+        long start = System.nanoTime();
+        try {
+            String response = backend.call().generate(prompt, options, model);
+            long duration = System.nanoTime() - start;
+            breaker.onSuccess(duration);
+            hedgingPolicy.recordLatency(backend.name(), duration);
+            latencies.get(backend.name()).record(duration);
+            rateLimiter.chargeBackend(backend.name(), RateLimiter.estimateTokens(response.length()));
+            return response;
+        } catch (Exception e) {
+            if (e instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) {
+                // Cancelled by the caller, says nothing about the health of the backend
+                breaker.onIgnored();
+                throw e;
+            }
+            if (e instanceof UpstreamStatusException statusException && !statusException.isServerError()) {
+                // Rejected request, e.g. invalid options from the client; the backend itself is healthy
+                breaker.onIgnored();
+                System.out.println("Backend " + backend.name() + " rejected the request: " + e.getMessage());
+                throw e;
+            }
+            breaker.onFailure(System.nanoTime() - start);
+            System.out.println("Backend " + backend.name() + " failed: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the backends that can serve a request.
+     *
+     * @param model the {@link Model} the request names, or {@code null}.
+     * @return all backends, or only the Ollama backend if a model is named.
+     */
+    private List<Backend> backendsFor(Model model) {
+        if (model == null) {
+            return backends;
+        }
+        return backends.stream().filter(backend -> backend.name().equals(OLLAMA)).toList();
+    }
+
+    /**
+     * Converts the failure of a backend call to an {@link IOException}.
+     *
+     * @param error the failure.
+     * @return the failure as {@link IOException}.
+     */
+    private static IOException toIOException(Throwable error) {
+        return error instanceof IOException ioException ? ioException : new IOException(error.getMessage(), error);
+    }
+
+    /**
+     * Retrieves the names of the configured backends in order of preference.
+     *
+     * @return the backend names.
+     */
+    public List<String> getBackendNames() {
+        return backends.stream().map(Backend::name).toList();
+    }
+
+    /**
+     * Retrieves the latencies of the successful calls to a backend.
+     *
+     * @param backend the backend name.
+     * @return the {@link LatencyHistogram} of the backend.
+     */
+    public LatencyHistogram getLatency(String backend) {
+        return latencies.computeIfAbsent(backend, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Stops the threads running hedged backend calls.
+     */
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,277 @@
+package Server.Generation;
+
+import LLM.Metrics.LatencyHistogram;
+import LLM.Metrics.RollingLatencyHistogram;
+import Server.ServerConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code HedgingPolicy} class decides when the {@link GenerationService} sends a hedge
+ * request, i.e. the same prompt to a second backend while the first one has not answered yet.
+ * <p>
+ * The hedge delay is either fixed or derived from the observed latency of the primary backend
+ * (by default its p95 over the last one to two windows). Hedges are limited by a budget: every
+ * hedgeable request earns a fraction of a hedge (e.g. 0.05 for a 5% budget) and every hedge
+ * spends a whole one, so hedging never adds more than the configured share of extra load.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>hedging.enabled:</b> whether hedging is available at all.</li>
+ *     <li><b>hedging.byDefault:</b> whether requests are hedged without asking for it.</li>
+ *     <li><b>hedging.delayMillis:</b> a fixed hedge delay; {@code 0} uses the observed percentile.</li>
+ *     <li><b>hedging.delayPercentile:</b> the latency percentile used as hedge delay.</li>
+ *     <li><b>hedging.minDelayMillis:</b> the lower bound of the observed hedge delay.</li>
+ *     <li><b>hedging.initialDelayMillis:</b> the delay used until enough latencies are observed.</li>
+ *     <li><b>hedging.minSamples:</b> the number of observed latencies required to use the percentile.</li>
+ *     <li><b>hedging.windowSeconds:</b> the length of a latency observation window.</li>
+ *     <li><b>hedging.budgetPercent:</b> the maximum extra load caused by hedges, in percent.</li>
+ * </ul>
+ */
+public class HedgingPolicy {
+
+    /**
+     * The fixed-point scale of the hedge budget (one hedge equals this many credits).
+     */
+    private static final long CREDITS_PER_HEDGE = 1000;
+
+    /**
+     * The maximum number of hedges that can be saved up for bursts.
+     */
+    private static final long MAX_SAVED_HEDGES = 10;
+
+    /**
+     * Whether hedging is available.
+     */
+    private final boolean enabled;
+
+    /**
+     * Whether requests are hedged without asking for it.
+     */
+    private final boolean byDefault;
+
+    /**
+     * The fixed hedge delay in milliseconds, or {@code 0} to use the observed percentile.
+     */
+    private final long fixedDelayMillis;
+
+    /**
+     * The latency percentile used as hedge delay.
+     */
+    private final double delayPercentile;
+
+    /**
+     * The lower bound of the observed hedge delay in milliseconds.
+     */
+    private final long minDelayMillis;
+
+    /**
+     * The delay in milliseconds used until enough latencies are observed.
+     */
+    private final long initialDelayMillis;
+
+    /**
+     * The number of observed latencies required to use the percentile.
+     */
+    private final int minSamples;
+
+    /**
+     * The length of a latency observation window in seconds.
+     */
+    private final long windowSeconds;
+
+    /**
+     * The credits earned per hedgeable request.
+     */
+    private final long creditsPerRequest;
+
+    /**
+     * The hedge budget in credits.
+     */
+    private final AtomicLong credits = new AtomicLong(CREDITS_PER_HEDGE);
+
+    /**
+     * The observed latencies per backend.
+     */
+    private final Map<String, RollingLatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * The number of hedge requests sent.
+     */
+    private final LongAdder hedges = new LongAdder();
+
+    /**
+     * The number of hedge requests that answered before the primary request.
+     */
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * The number of hedges skipped because the budget was exhausted.
+     */
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    /**
+     * Constructs a {@code HedgingPolicy}.
+     *
+     * @param enabled            whether hedging is available.
+     * @param byDefault          whether requests are hedged without asking for it.
+     * @param fixedDelayMillis   a fixed hedge delay, or {@code 0} to use the observed percentile.
+     * @param delayPercentile    the latency percentile used as hedge delay.
+     * @param minDelayMillis     the lower bound of the observed hedge delay.
+     * @param initialDelayMillis the delay used until enough latencies are observed.
+     * @param minSamples         the number of observed latencies required to use the percentile.
+     * @param windowSeconds      the length of a latency observation window.
+     * @param budgetPercent      the maximum extra load caused by hedges, in percent.
+     */
+    public HedgingPolicy(boolean enabled, boolean byDefault, long fixedDelayMillis, double delayPercentile,
+                         long minDelayMillis, long initialDelayMillis, int minSamples, long windowSeconds,
+                         double budgetPercent) {
+        this.enabled = enabled;
+        this.byDefault = byDefault;
+        this.fixedDelayMillis = fixedDelayMillis;
+        this.delayPercentile = delayPercentile;
+        this.minDelayMillis = minDelayMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.minSamples = minSamples;
+        this.windowSeconds = windowSeconds;
+        this.creditsPerRequest = Math.round(budgetPercent / 100.0 * CREDITS_PER_HEDGE);
+    }
+
+    /**
+     * Creates a {@code HedgingPolicy} from the given configuration.
+     *
+     * @param config the {@link ServerConfig} to read the settings from.
+     * @return the configured {@code HedgingPolicy}.
+     */
+    public static HedgingPolicy fromConfig(ServerConfig config) {
+        return new HedgingPolicy(
+                config.getBoolean("hedging.enabled", true),
+                config.getBoolean("hedging.byDefault", false),
+                config.getLong("hedging.delayMillis", 0),
+                config.getDouble("hedging.delayPercentile", 95),
+                config.getLong("hedging.minDelayMillis", 50),
+                config.getLong("hedging.initialDelayMillis", 2000),
+                config.getInt("hedging.minSamples", 20),
+                config.getLong("hedging.windowSeconds", 60),
+                config.getDouble("hedging.budgetPercent", 5));
+    }
+
+    /**
+     * Decides whether a request is hedged.
+     *
+     * @param requested the client's explicit choice, or {@code null} to use the default.
+     * @return {@code true} if the request should be hedged.
+     */
+    public boolean shouldHedge(Boolean requested) {
+        return enabled && (requested != null ? requested : byDefault);
+    }
+
+    /**
+     * Adds the budget share of a hedgeable request.
+     */
+    public void onRequest() {
+        long max = MAX_SAVED_HEDGES * CREDITS_PER_HEDGE;
+        credits.getAndUpdate(current -> Math.min(max, current + creditsPerRequest));
+    }
+
+    /**
+     * Takes one hedge from the budget.
+     *
+     * @return {@code true} if the budget allowed the hedge; otherwise, {@code false}.
+     */
+    public boolean tryAcquireHedge() {
+        long current;
+        do {
+            current = credits.get();
+            if (current < CREDITS_PER_HEDGE) {
+                budgetExhausted.increment();
+                return false;
+            }
+        } while (!credits.compareAndSet(current, current - CREDITS_PER_HEDGE));
+        return true;
+    }
+
+    /**
+     * Returns a hedge taken by {@link #tryAcquireHedge()} that could not be sent.
+     */
+    public void refundHedge() {
+        credits.addAndGet(CREDITS_PER_HEDGE);
+    }
+
+    /**
+     * Records that a hedge request was sent.
+     */
+    public void onHedgeSent() {
+        hedges.increment();
+    }
+
+    /**
+     * Records that a hedge request answered before the primary request.
+     */
+    public void onHedgeWon() {
+        hedgeWins.increment();
+    }
+
+    /**
+     * Records the latency of a successful backend call.
+     *
+     * @param backend the backend name.
+     * @param nanos   the duration of the call in nanoseconds.
+     */
+    public void recordLatency(String backend, long nanos) {
+        latencies.computeIfAbsent(backend, name -> new RollingLatencyHistogram(windowSeconds)).record(nanos);
+    }
+
+    /**
+     * Retrieves the time to wait for the primary backend before sending a hedge.
+     *
+     * @param backend the name of the primary backend.
+     * @return the hedge delay in milliseconds.
+     */
+    public long getDelayMillis(String backend) {
+        if (fixedDelayMillis > 0) {
+            return fixedDelayMillis;
+        }
+
+        RollingLatencyHistogram latency = latencies.get(backend);
+        if (latency == null) {
+            return initialDelayMillis;
+        }
+        LatencyHistogram snapshot = latency.snapshot();
+        if (snapshot.getCount() < minSamples) {
+            return initialDelayMillis;
+        }
+        return Math.max(minDelayMillis, TimeUnit.NANOSECONDS.toMillis(snapshot.getPercentileNanos(delayPercentile)));
+    }
+
+    /**
+     * Retrieves the number of hedge requests sent.
+     *
+     * @return the hedge count.
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * Retrieves the number of hedge requests that answered first.
+     *
+     * @return the hedge win count.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Retrieves the number of hedges skipped because the budget was exhausted.
+     *
+     * @return the count of skipped hedges.
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+}
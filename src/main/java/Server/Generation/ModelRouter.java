@@ -0,0 +1,187 @@
+package Server.Generation;
+
+import LLM.LocalClient.Ollama.Model;
+import LLM.Metrics.LatencyHistogram;
+import Server.Backend.ModelCatalog;
+import Server.Backend.OllamaNodePool;
+import Server.ServerConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code ModelRouter} class determines the model of a generation request from its
+ * {@code model} field.
+ * <p>
+ * A model name is resolved against the {@link ModelCatalog}. The name {@value #AUTO} lets the
+ * router choose: the automatic models are ordered from the cheapest to the most expensive, and
+ * each but the last one has a maximum prompt length. A prompt is routed to the first installed
+ * model whose limit it fits, so expensive models only serve the prompts that need them. If the
+ * recent p95 latency of that model exceeds the target latency, the prompt goes to the most
+ * capable cheaper model that meets the target instead. Latencies are taken from the last one to
+ * two observation windows of the {@link OllamaNodePool}, without requests that had to load the
+ * model, and are only used once a model has served {@value #MIN_SAMPLES} requests in them; a
+ * model that missed the target is therefore tried again once its slow requests have aged out.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>routing.autoModels:</b> the comma-separated automatic models from the cheapest to
+ *     the most expensive, each optionally followed by {@code @maxPromptChars}, e.g.
+ *     {@code tinyllama@200,llama3.2:3b@2000,llama3.1:8b}.</li>
+ *     <li><b>routing.targetLatencyMillis:</b> the p95 latency a model must meet to serve
+ *     automatically routed prompts; {@code 0} routes by prompt length only.</li>
+ * </ul>
+ */
+public class ModelRouter {
+
+    /**
+     * The model name that lets the router choose the model.
+     */
+    public static final String AUTO = "auto";
+
+    /**
+     * The number of requests a model must have served before its latency is used.
+     */
+    public static final int MIN_SAMPLES = 10;
+
+    /**
+     * A model available for automatic routing.
+     *
+     * @param model          the model.
+     * @param maxPromptChars the longest prompt the model serves, or {@link Integer#MAX_VALUE}.
+     */
+    public record Tier(Model model, int maxPromptChars) {
+    }
+
+    /**
+     * The catalog resolving model names.
+     */
+    private final ModelCatalog modelCatalog;
+
+    /**
+     * The pool recording the latencies of the models.
+     */
+    private final OllamaNodePool ollamaPool;
+
+    /**
+     * The automatic models from the cheapest to the most expensive.
+     */
+    private final List<Tier> tiers;
+
+    /**
+     * The p95 latency in nanoseconds a model must meet, or {@code 0} to ignore latencies.
+     */
+    private final long targetLatencyNanos;
+
+    /**
+     * Constructs a {@code ModelRouter}.
+     *
+     * @param modelCatalog        the {@link ModelCatalog} resolving model names.
+     * @param ollamaPool          the {@link OllamaNodePool} recording the latencies of the models.
+     * @param tiers               the automatic models from the cheapest to the most expensive.
+     * @param targetLatencyMillis the p95 latency a model must meet; {@code 0} ignores latencies.
+     */
+    public ModelRouter(ModelCatalog modelCatalog, OllamaNodePool ollamaPool, List<Tier> tiers, long targetLatencyMillis) {
+        this.modelCatalog = modelCatalog;
+        this.ollamaPool = ollamaPool;
+        this.tiers = List.copyOf(tiers);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, targetLatencyMillis));
+    }
+
+    /**
+     * Creates a {@code ModelRouter} from the given configuration.
+     *
+     * @param config       the {@link ServerConfig} to read the settings from.
+     * @param modelCatalog the {@link ModelCatalog} resolving model names.
+     * @param ollamaPool   the {@link OllamaNodePool} recording the latencies of the models.
+     * @return the configured {@code ModelRouter}.
+     */
+    public static ModelRouter fromConfig(ServerConfig config, ModelCatalog modelCatalog, OllamaNodePool ollamaPool) {
+        List<Tier> tiers = new ArrayList<>();
+        for (String entry : config.getString("routing.autoModels", "tinyllama@200,llama3.2:3b@2000,llama3.1:8b").split(",")) {
+            String name = entry.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            int maxPromptChars = Integer.MAX_VALUE;
+            int separator = name.lastIndexOf('@');
+            if (separator > 0 && name.substring(separator + 1).matches("\\d+")) {
+                maxPromptChars = Integer.parseInt(name.substring(separator + 1));
+                name = name.substring(0, separator);
+            }
+            tiers.add(new Tier(Model.of(name), maxPromptChars));
+        }
+        return new ModelRouter(modelCatalog, ollamaPool, tiers, config.getLong("routing.targetLatencyMillis", 10000));
+    }
+
+    /**
+     * Determines the model of a request.
+     *
+     * @param requested the {@code model} field of the request, or {@code null} if it has none.
+     * @param prompt    the input prompt.
+     * @return the {@link Model}, or {@code null} if the request does not name a model.
+     * @throws IllegalArgumentException if the model is not installed on any node.
+     * @throws IOException              if the model catalog could not be loaded.
+     */
+    public Model resolve(String requested, String prompt) throws IOException {
+        if (requested == null) {
+            return null;
+        }
+        if (requested.equalsIgnoreCase(AUTO)) {
+            return selectAuto(prompt);
+        }
+        return modelCatalog.resolve(requested);
+    }
+
+    /**
+     * Chooses the model of a prompt from its length and the latencies of the automatic models.
+     * Falls back to the default model of the pool if no automatic model is installed.
+     *
+     * @param prompt the input prompt.
+     * @return the chosen {@link Model}.
+     * @throws IOException if the model catalog could not be loaded.
+     */
+    public Model selectAuto(String prompt) throws IOException {
+        List<Tier> installed = new ArrayList<>();
+        for (Tier tier : tiers) {
+            if (modelCatalog.contains(tier.model())) {
+                installed.add(tier);
+            }
+        }
+        if (installed.isEmpty()) {
+            return ollamaPool.getDefaultModel();
+        }
+
+        // The cheapest model the prompt fits, or the most capable one for very long prompts
+        int needed = installed.size() - 1;
+        for (int i = 0; i < installed.size(); i++) {
+            if (prompt.length() <= installed.get(i).maxPromptChars()) {
+                needed = i;
+                break;
+            }
+        }
+
+        for (int i = needed; i >= 0; i--) {
+            if (meetsTarget(installed.get(i).model())) {
+                return installed.get(i).model();
+            }
+        }
+        return installed.get(needed).model();
+    }
+
+    /**
+     * Checks whether a model meets the target latency. Models without enough samples do.
+     *
+     * @param model the model.
+     * @return {@code true} if the recent p95 latency is within the target.
+     */
+    private boolean meetsTarget(Model model) {
+        if (targetLatencyNanos == 0) {
+            return true;
+        }
+        LatencyHistogram latency = ollamaPool.getModelLatency(model);
+        return latency.getCount() < MIN_SAMPLES || latency.getPercentileNanos(95) <= targetLatencyNanos;
+    }
+}
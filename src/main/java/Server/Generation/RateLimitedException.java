@@ -0,0 +1,40 @@
+package Server.Generation;
+
+import Server.Resilience.RateLimiter;
+
+/**
+ * Signals that no backend could be asked to generate a response because the rate limits of all
+ * backends that were not unavailable otherwise are exhausted.
+ */
+public class RateLimitedException extends BackendUnavailableException {
+
+    /**
+     * The serialization version of this exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The time in nanoseconds until a backend accepts requests again.
+     */
+    private final long retryAfterNanos;
+
+    /**
+     * Constructs a {@code RateLimitedException} with the specified detail message.
+     *
+     * @param message         the detail message.
+     * @param retryAfterNanos the time in nanoseconds until a backend accepts requests again.
+     */
+    public RateLimitedException(String message, long retryAfterNanos) {
+        super(message);
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * Retrieves the time until a backend accepts requests again.
+     *
+     * @return the wait in whole seconds, suitable for a {@code Retry-After} header.
+     */
+    public long getRetryAfterSeconds() {
+        return RateLimiter.toRetryAfterSeconds(retryAfterNanos);
+    }
+}
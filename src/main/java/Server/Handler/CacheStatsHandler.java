@@ -0,0 +1,63 @@
+package Server.Handler;
+
+import Server.Cache.ResponseCache;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * The {@code CacheStatsHandler} class handles HTTP GET requests to retrieve the counters of the
+ * {@link ResponseCache}.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class CacheStatsHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * The cache whose statistics are reported.
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * Constructs a new {@code CacheStatsHandler}.
+     *
+     * @param responseCache the {@link ResponseCache} to report on.
+     */
+    public CacheStatsHandler(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Handles incoming HTTP GET requests by returning hit, miss and eviction counters as well
+     * as the current size of the cache.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        long hits = responseCache.getHits();
+        long misses = responseCache.getMisses();
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("hits", hits);
+        responseJson.put("misses", misses);
+        responseJson.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        responseJson.put("evictions", responseCache.getEvictions());
+        responseJson.put("expirations", responseCache.getExpirations());
+        responseJson.put("entries", responseCache.getSize());
+        responseJson.put("bytes", responseCache.getBytes());
+        responseJson.put("maxBytes", responseCache.getMaxBytes());
+        responseJson.put("evictionPolicy", responseCache.getEvictionPolicy().name());
+
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+}
@@ -0,0 +1,76 @@
+package Server.Handler;
+
+import Server.Resilience.CircuitBreaker;
+import Server.Resilience.CircuitBreakerRegistry;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * The {@code CircuitBreakerHandler} class handles HTTP GET requests to retrieve the state of the
+ * circuit breakers guarding the backends, including their recent state transitions.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class CircuitBreakerHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * The registry holding the circuit breakers.
+     */
+    private final CircuitBreakerRegistry circuitBreakers;
+
+    /**
+     * Constructs a new {@code CircuitBreakerHandler}.
+     *
+     * @param circuitBreakers the {@link CircuitBreakerRegistry} to report on.
+     */
+    public CircuitBreakerHandler(CircuitBreakerRegistry circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    /**
+     * Handles incoming HTTP GET requests by returning the state of every circuit breaker.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        JSONArray breakersArray = new JSONArray();
+        for (CircuitBreaker breaker : circuitBreakers.getAll()) {
+            JSONArray transitionsArray = new JSONArray();
+            for (CircuitBreaker.Transition transition : breaker.getTransitions()) {
+                JSONObject transitionJson = new JSONObject();
+                transitionJson.put("time", Instant.ofEpochMilli(transition.timestampMillis()).toString());
+                transitionJson.put("from", transition.from().name());
+                transitionJson.put("to", transition.to().name());
+                transitionJson.put("reason", transition.reason());
+                transitionsArray.put(transitionJson);
+            }
+
+            JSONObject breakerJson = new JSONObject();
+            breakerJson.put("backend", breaker.getName());
+            breakerJson.put("state", breaker.getState().name());
+            breakerJson.put("failureRate", breaker.getFailureRate());
+            breakerJson.put("slowCallRate", breaker.getSlowCallRate());
+            breakerJson.put("recordedCalls", breaker.getWindowCount());
+            breakerJson.put("rejectedCalls", breaker.getRejectedCalls());
+            breakerJson.put("transitions", transitionsArray);
+            breakersArray.put(breakerJson);
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("circuitBreakers", breakersArray);
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+}
@@ -0,0 +1,242 @@
+package Server.Handler;
+
+import LLM.GenerationOptions;
+import Server.Execution.AdmissionFilter;
+import Server.Execution.ClientIdentifier;
+import Server.Execution.PriorityClass;
+import Server.Generation.BatchGenerator;
+import Server.Generation.HedgingPolicy;
+import Server.Streaming.FlushCoalescer;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code GenerateBatchHandler} class is an HTTP handler that processes POST requests to
+ * generate the responses of many prompts at once using the {@link BatchGenerator}.
+ * <p>
+ * The request body contains an array {@code items}; each item is either a prompt string or an
+ * object with a {@code prompt} and optional {@code options} (see {@link GenerationOptions}) and
+ * {@code model}. Top-level {@code options} and {@code model} apply to all items without their
+ * own; with {@code auto}, the model is chosen per item. The optional fields
+ * {@code parallelism} and {@code hedge} control how many items are generated at the same time
+ * and whether items may be hedged.
+ * <p>
+ * By default the response is a JSON object with the {@code results} in the order of the items,
+ * each with its {@code index}, {@code status} and either {@code response} or {@code error}.
+ * With {@code "stream": true} every result is sent as a line of newline-delimited JSON as soon
+ * as its item is finished, followed by a summary line with {@code "done": true}.
+ * <p>
+ * Every item counts against the rate limit and scheduler share of the client, see
+ * {@link BatchGenerator}.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class GenerateBatchHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * Generates the items of a batch.
+     */
+    private final BatchGenerator batchGenerator;
+
+    /**
+     * The policy deciding whether items are hedged.
+     */
+    private final HedgingPolicy hedgingPolicy;
+
+    /**
+     * Creates the coalescing response streams for streamed results.
+     */
+    private final FlushCoalescer flushCoalescer;
+
+    /**
+     * Determines the client the items are charged to.
+     */
+    private final ClientIdentifier clientIdentifier;
+
+    /**
+     * Constructs a {@code GenerateBatchHandler}.
+     *
+     * @param batchGenerator the {@link BatchGenerator} generating the items.
+     * @param hedgingPolicy  the {@link HedgingPolicy} deciding whether items are hedged.
+     * @param flushCoalescer   the {@link FlushCoalescer} creating the response streams.
+     * @param clientIdentifier the {@link ClientIdentifier} determining the client the items are charged to.
+     */
+    public GenerateBatchHandler(BatchGenerator batchGenerator, HedgingPolicy hedgingPolicy, FlushCoalescer flushCoalescer,
+                                ClientIdentifier clientIdentifier) {
+        this.batchGenerator = batchGenerator;
+        this.hedgingPolicy = hedgingPolicy;
+        this.flushCoalescer = flushCoalescer;
+        this.clientIdentifier = clientIdentifier;
+    }
+
+    /**
+     * Handles incoming HTTP requests by validating the request, generating all items and
+     * sending their results.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an I/O error occurs during processing.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Verify the request method is POST
+        if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        // Read and parse the request body
+        String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        JSONObject requestJson = new JSONObject(requestBody);
+        JSONArray itemsJson = requestJson.optJSONArray("items");
+        if (itemsJson == null) {
+            sendError(exchange, "Das Feld 'items' ist erforderlich.", 400);
+            return;
+        }
+        if (itemsJson.length() > batchGenerator.getMaxItems()) {
+            sendError(exchange, "Zu viele Einträge: höchstens " + batchGenerator.getMaxItems() + " pro Anfrage.", 400);
+            return;
+        }
+
+        GenerationOptions defaultOptions;
+        String defaultModel;
+        int parallelism;
+        boolean hedge;
+        boolean stream;
+        try {
+            defaultOptions = GenerationOptions.fromJson(requestJson.optJSONObject("options"));
+            defaultModel = requestJson.has("model") ? requestJson.getString("model") : null;
+            parallelism = batchGenerator.resolveParallelism(requestJson.has("parallelism") ? requestJson.getInt("parallelism") : null);
+            hedge = hedgingPolicy.shouldHedge(requestJson.has("hedge") ? requestJson.getBoolean("hedge") : null);
+            stream = requestJson.optBoolean("stream", false);
+        } catch (RuntimeException e) {
+            sendError(exchange, "Ungültige Anfrage: " + e.getMessage(), 400);
+            return;
+        }
+
+        List<BatchGenerator.Item> items = new ArrayList<>(itemsJson.length());
+        for (int i = 0; i < itemsJson.length(); i++) {
+            items.add(parseItem(itemsJson.get(i), defaultOptions, defaultModel));
+        }
+
+        if (stream) {
+            streamResults(exchange, items, parallelism, hedge);
+        } else {
+            sendResults(exchange, items, parallelism, hedge);
+        }
+    }
+
+    /**
+     * Converts an element of the {@code items} array to a batch item. Invalid elements become
+     * items that are rejected with their own error instead of failing the whole batch.
+     *
+     * @param element        the array element.
+     * @param defaultOptions the options used if the item has none.
+     * @param defaultModel   the model name used if the item has none, or {@code null}.
+     * @return the {@link BatchGenerator.Item}.
+     */
+    private BatchGenerator.Item parseItem(Object element, GenerationOptions defaultOptions, String defaultModel) {
+        if (element instanceof String prompt) {
+            return BatchGenerator.Item.of(prompt, defaultOptions, defaultModel);
+        }
+        if (!(element instanceof JSONObject itemJson) || !(itemJson.opt("prompt") instanceof String prompt)) {
+            return BatchGenerator.Item.invalid("Das Feld 'prompt' ist erforderlich.");
+        }
+        try {
+            JSONObject optionsJson = itemJson.optJSONObject("options");
+            return BatchGenerator.Item.of(prompt,
+                    optionsJson != null ? GenerationOptions.fromJson(optionsJson) : defaultOptions,
+                    itemJson.has("model") ? itemJson.getString("model") : defaultModel);
+        } catch (RuntimeException e) {
+            return BatchGenerator.Item.invalid("Ungültige Anfrage: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Generates all items and sends their results in one JSON response.
+     *
+     * @param exchange    the {@link HttpExchange} object for the HTTP request and response.
+     * @param items       the items of the batch.
+     * @param parallelism the number of items generated at the same time.
+     * @param hedge       whether the items may be hedged.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void sendResults(HttpExchange exchange, List<BatchGenerator.Item> items, int parallelism, boolean hedge) throws IOException {
+        List<BatchGenerator.Result> results = batchGenerator.generate(items, parallelism, hedge, priorityOf(exchange),
+                clientIdentifier.identify(exchange), null);
+
+        JSONArray resultsJson = new JSONArray();
+        int succeeded = 0;
+        for (BatchGenerator.Result result : results) {
+            resultsJson.put(result.toJson());
+            succeeded += result.isSuccess() ? 1 : 0;
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("results", resultsJson);
+        responseJson.put("succeeded", succeeded);
+        responseJson.put("failed", results.size() - succeeded);
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+
+    /**
+     * Generates all items and streams every result as soon as its item is finished.
+     *
+     * @param exchange    the {@link HttpExchange} object for the HTTP request and response.
+     * @param items       the items of the batch.
+     * @param parallelism the number of items generated at the same time.
+     * @param hedge       whether the items may be hedged.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void streamResults(HttpExchange exchange, List<BatchGenerator.Item> items, int parallelism, boolean hedge) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0); // Chunked Transfer-Encoding
+
+        try (OutputStream responseBody = flushCoalescer.wrap(exchange.getResponseBody())) {
+            int[] succeeded = new int[1];
+            String client = clientIdentifier.identify(exchange);
+            batchGenerator.generate(items, parallelism, hedge, priorityOf(exchange), client, result -> {
+                succeeded[0] += result.isSuccess() ? 1 : 0;
+                responseBody.write((result.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+                responseBody.flush();
+            });
+
+            JSONObject summary = new JSONObject();
+            summary.put("done", true);
+            summary.put("succeeded", succeeded[0]);
+            summary.put("failed", items.size() - succeeded[0]);
+            responseBody.write((summary + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Retrieves the priority class the admission control admitted the exchange in.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @return the {@link PriorityClass}, or {@code null} if the exchange is not under admission control.
+     */
+    private static PriorityClass priorityOf(HttpExchange exchange) {
+        return (PriorityClass) exchange.getAttribute(AdmissionFilter.PRIORITY_ATTRIBUTE);
+    }
+
+    /**
+     * Sends an error response.
+     *
+     * @param exchange   the {@link HttpExchange} object for the HTTP request and response.
+     * @param message    the error message.
+     * @param statusCode the HTTP status code.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void sendError(HttpExchange exchange, String message, int statusCode) throws IOException {
+        JSONObject errorResponse = new JSONObject();
+        errorResponse.put("error", message);
+        sendResponse(exchange, errorResponse.toString(), statusCode);
+    }
+}
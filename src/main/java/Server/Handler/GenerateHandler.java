@@ -1,7 +1,16 @@
 package Server.Handler;
 
+import LLM.GenerationOptions;
 import LLM.LocalClient.Ollama;
+import LLM.LocalClient.Ollama.Model;
 import LLM.ExternalClient.Groq;
+import Server.Cache.ResponseCache;
+import Server.Cache.SingleFlight;
+import Server.Generation.BackendUnavailableException;
+import Server.Generation.GenerationService;
+import Server.Generation.HedgingPolicy;
+import Server.Generation.ModelRouter;
+import Server.Generation.RateLimitedException;
 
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
@@ -11,42 +20,76 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The {@code GenerateHandler} class is an HTTP handler that processes POST requests
- * to generate a response using either the {@link Ollama} or {@link Groq} client.
+ * to generate a response using either the {@link Ollama} or {@link Groq} client,
+ * as chosen by the {@link GenerationService}.
  * It reads the input prompt from the request body, generates a response,
  * and sends it back as JSON.
  * <p>
+ * Besides the mandatory {@code prompt}, the request body may contain {@code options}
+ * (see {@link GenerationOptions}), {@code cache} to explicitly enable or disable caching for the
+ * request, and {@code cacheTtlSeconds} to override the lifetime of the cache entry. Responses are
+ * served from the shared {@link ResponseCache} when possible; the {@code X-Cache} response
+ * header reports {@code HIT}, {@code MISS} or {@code BYPASS}. A {@code Cache-Control: no-cache}
+ * or {@code no-store} request header bypasses the cache as well.
+ * <p>
+ * A {@code model} field generates the response with an installed Ollama model, or with the
+ * model the {@link ModelRouter} chooses for {@code auto}; the response then names the model.
+ * Without it, any backend may answer with its default model.
+ * <p>
+ * Identical requests (same model, prompt and options) that arrive while a generation for them
+ * is still running are coalesced: they wait for the running generation instead of starting
+ * their own. A request can opt out of this with {@code "coalesce": false}.
+ * <p>
+ * Latency-critical requests can set {@code "hedge": true} to race a second backend once the
+ * first one is slower than usual (see {@link HedgingPolicy}); {@code "hedge": false} opts out of
+ * hedging when it is enabled by default.
+ * <p>
  * This handler extends {@link ResponseSender} to simplify sending JSON responses.
  */
 public class GenerateHandler extends ResponseSender implements HttpHandler {
 
     /**
-     * Instance of the {@link Ollama} client for local model interaction.
+     * The service that selects the backend and generates the response.
      */
-    private Ollama ollama = new Ollama();
+    private final GenerationService generationService;
 
     /**
-     * Instance of the {@link Groq} client for external API interaction.
-     * If initialization fails, this will remain {@code null}.
+     * The shared cache for generated responses.
      */
-    private Groq groq;
+    private final ResponseCache responseCache;
 
-    // Initialize the Groq client
-    {
-        try {
-            groq = new Groq();
-        } catch (IOException e) {
-            System.err.println("Groq service could not be initialized");
-            groq = null;
-        }
-    }
+    /**
+     * The policy deciding whether a request is hedged.
+     */
+    private final HedgingPolicy hedgingPolicy;
 
     /**
-     * Default constructor for {@code GenerateHandler}.
+     * Determines the model a request names.
      */
-    public GenerateHandler() {
+    private final ModelRouter modelRouter;
+
+    /**
+     * Deduplicates identical generations that are in flight at the same time.
+     */
+    private final SingleFlight<String> singleFlight = new SingleFlight<>();
+
+    /**
+     * Constructs a {@code GenerateHandler}.
+     *
+     * @param generationService the {@link GenerationService} used to generate responses.
+     * @param responseCache     the {@link ResponseCache} shared with the cache endpoints.
+     * @param hedgingPolicy     the {@link HedgingPolicy} deciding whether a request is hedged.
+     * @param modelRouter       the {@link ModelRouter} determining the model a request names.
+     */
+    public GenerateHandler(GenerationService generationService, ResponseCache responseCache, HedgingPolicy hedgingPolicy, ModelRouter modelRouter) {
+        this.generationService = generationService;
+        this.responseCache = responseCache;
+        this.hedgingPolicy = hedgingPolicy;
+        this.modelRouter = modelRouter;
     }
 
     /**
@@ -81,28 +124,75 @@ public class GenerateHandler extends ResponseSender implements HttpHandler {
 
         String prompt = requestJson.getString("prompt");
 
+        GenerationOptions options;
+        Model model;
+        Boolean cacheOverride;
+        boolean coalesce;
+        boolean hedge;
+        long cacheTtlMillis;
+        try {
+            options = GenerationOptions.fromJson(requestJson.optJSONObject("options"));
+            cacheOverride = requestJson.has("cache") ? requestJson.getBoolean("cache") : null;
+            coalesce = !requestJson.has("coalesce") || requestJson.getBoolean("coalesce");
+            hedge = hedgingPolicy.shouldHedge(requestJson.has("hedge") ? requestJson.getBoolean("hedge") : null);
+            cacheTtlMillis = requestJson.has("cacheTtlSeconds")
+                    ? TimeUnit.SECONDS.toMillis(requestJson.getLong("cacheTtlSeconds"))
+                    : -1;
+            model = modelRouter.resolve(requestJson.has("model") ? requestJson.getString("model") : null, prompt);
+        } catch (IOException e) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Modellkatalog nicht verfügbar: " + e.getMessage());
+            sendResponse(exchange, errorResponse.toString(), 503);
+            return;
+        } catch (RuntimeException e) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Ungültige Anfrage: " + e.getMessage());
+            sendResponse(exchange, errorResponse.toString(), 400);
+            return;
+        }
+
+        if (isCacheBypassRequested(exchange)) {
+            cacheOverride = false;
+        }
+
+        // Serve the response from the cache if possible
+        boolean cacheable = responseCache.isCacheable(options, cacheOverride);
+        String requestKey = ResponseCache.key(model != null ? model.getModelName() : ResponseCache.DEFAULT_MODEL, prompt, options);
+        if (cacheable) {
+            String cachedResponse = responseCache.get(requestKey);
+            if (cachedResponse != null) {
+                sendGeneratedResponse(exchange, cachedResponse, model, "HIT");
+                return;
+            }
+        }
+
         try {
-            String generatedResponse = "Error";
-            if (groq == null) {
-                // Use Ollama if Groq is unavailable
-                generatedResponse = ollama.generateResponseNonStreaming(prompt);
-            } else {
-                try {
-                    // Use Groq to generate the response
-                    generatedResponse = groq.generateResponseNonStreaming(prompt);
-                } catch (IOException e) {
-                    System.out.println(e.getMessage());
-                    // Use Ollama if Groq request fails
-                    ollama.generateResponseNonStreaming(prompt);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            String generatedResponse = coalesce
+                    ? singleFlight.execute(requestKey, () -> generationService.generate(prompt, options, model, hedge))
+                    : generationService.generate(prompt, options, model, hedge);
+
+            if (cacheable) {
+                if (cacheTtlMillis >= 0) {
+                    responseCache.put(requestKey, generatedResponse, cacheTtlMillis);
+                } else {
+                    responseCache.put(requestKey, generatedResponse);
                 }
             }
 
             // Send the successful response
-            JSONObject responseJson = new JSONObject();
-            responseJson.put("response", generatedResponse);
-            sendResponse(exchange, responseJson.toString(), 200);
+            sendGeneratedResponse(exchange, generatedResponse, model, cacheable ? "MISS" : "BYPASS");
+        } catch (RateLimitedException e) {
+            // The rate limits of all backends are exhausted
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", e.getMessage());
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            sendResponse(exchange, errorResponse.toString(), 429);
+        } catch (BackendUnavailableException e) {
+            // All circuit breakers are open
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", e.getMessage());
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            sendResponse(exchange, errorResponse.toString(), 503);
         } catch (IOException e) {
             // Handle errors during response generation
             JSONObject errorResponse = new JSONObject();
@@ -110,4 +200,39 @@ public class GenerateHandler extends ResponseSender implements HttpHandler {
             sendResponse(exchange, errorResponse.toString(), 500);
         }
     }
+
+    /**
+     * Sends a generated response as JSON. If the request named a model, the response names it
+     * as well, so that clients see which model {@code auto} chose.
+     *
+     * @param exchange          the {@link HttpExchange} object for the HTTP request and response.
+     * @param generatedResponse the generated text.
+     * @param model             the {@link Model} of the request, or {@code null}.
+     * @param cacheStatus       the value of the {@code X-Cache} header.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void sendGeneratedResponse(HttpExchange exchange, String generatedResponse, Model model, String cacheStatus) throws IOException {
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("response", generatedResponse);
+        if (model != null) {
+            responseJson.put("model", model.getModelName());
+        }
+        exchange.getResponseHeaders().set("X-Cache", cacheStatus);
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+
+    /**
+     * Checks whether the client asked to bypass the cache via the {@code Cache-Control} header.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request.
+     * @return {@code true} if the header contains {@code no-cache} or {@code no-store}.
+     */
+    private boolean isCacheBypassRequested(HttpExchange exchange) {
+        String cacheControl = exchange.getRequestHeaders().getFirst("Cache-Control");
+        if (cacheControl == null) {
+            return false;
+        }
+        String value = cacheControl.toLowerCase();
+        return value.contains("no-cache") || value.contains("no-store");
+    }
 }
@@ -1,83 +1,623 @@
 package Server.Handler;
 
-import LlmClient.LanguageModelClient;
+import LLM.ExternalClient.Groq;
+import LLM.GenerationMetrics;
+import LLM.GenerationOptions;
+import LLM.LocalClient.Ollama;
+import LLM.LocalClient.Ollama.Model;
+import LLM.Transport.UpstreamResponse;
+import Server.Backend.BackendRegistry;
+import Server.Backend.OllamaNodePool;
+import Server.Generation.GenerationService;
+import Server.Generation.ModelRouter;
+import Server.Metrics.ServerMetrics;
+import Server.Resilience.RateLimiter;
+import Server.Streaming.BufferPool;
+import Server.Streaming.CoalescingOutputStream;
+import Server.Streaming.FlushCoalescer;
+import Server.Streaming.SseOutputStream;
+import Server.Streaming.StreamRelay;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class GenerateResponseStreamingHandler implements HttpHandler {
+/**
+ * The {@code GenerateResponseStreamingHandler} class is an HTTP handler that processes POST
+ * requests to generate a response with the {@link Ollama} or {@link Groq} client and streams
+ * the response to the client while it is being generated.
+ * <p>
+ * Besides the mandatory {@code prompt}, the request body may contain {@code options}
+ * (see {@link GenerationOptions}), a {@code backend} ({@code ollama} by default, or
+ * {@code groq}), a {@code model} for the Ollama backend (an installed model, or {@code auto} to
+ * let the {@link ModelRouter} choose one) and a {@code format}:
+ * <ul>
+ *     <li><b>raw</b> (default): the newline-delimited JSON chunks of Ollama are passed through
+ *     unchanged. The bytes are copied with the buffers of a {@link StreamRelay} and are not
+ *     parsed, except for the final chunk, which is read to log the {@link GenerationMetrics}.</li>
+ *     <li><b>tokens</b>: every chunk is reduced to a line of the form {@code {"response": "..."}}.</li>
+ *     <li><b>sse</b>: every chunk of Ollama is sent unchanged as the data of a Server-Sent Event
+ *     ({@code text/event-stream}); errors of both backends, including error chunks of Ollama and
+ *     truncated streams, are sent as {@code error} events and heartbeat comments
+ *     keep idle connections open. This format is also chosen if no format is given and the
+ *     {@code Accept} header asks for {@code text/event-stream}.</li>
+ * </ul>
+ * Groq streams are sent in the shape of Ollama chunks, ending with a {@code done} chunk that
+ * holds the token counts and timings reported by Groq.
+ * <p>
+ * Both backends report failures in the stream the same way: if the upstream reports an error,
+ * sends a chunk that cannot be read or ends without its final chunk, an {@code error} line
+ * follows the chunks sent so far, so a truncated answer cannot be taken for a complete one.
+ * Error chunks of Ollama in the {@code raw} format are passed through as they are.
+ * <p>
+ * In all formats, flushes are coalesced by the {@link FlushCoalescer}: the first token is sent
+ * right away, later tokens arriving in quick succession are sent together.
+ * <p>
+ * Streams count against the {@link RateLimiter} of their backend: a request over its limit is
+ * answered with {@code 429 Too Many Requests} before the generation starts, and the generated
+ * tokens reported in the final chunk are charged once the stream has ended. The time to the
+ * first token and the token counts of the final chunk are recorded in the {@link ServerMetrics}.
+ * <p>
+ * The handler returns once the generation has finished, so the response is complete when the
+ * client sees the end of the stream.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class GenerateResponseStreamingHandler extends ResponseSender implements HttpHandler {
 
-    private final LanguageModelClient languageModelClient;
+    /**
+     * The format passing the chunks of Ollama through unchanged.
+     */
+    public static final String FORMAT_RAW = "raw";
 
-    public GenerateResponseStreamingHandler() {
-        this.languageModelClient = new LanguageModelClient();
+    /**
+     * The format reducing every chunk to its {@code response} field.
+     */
+    public static final String FORMAT_TOKENS = "tokens";
+
+    /**
+     * The format sending the chunks of Ollama as Server-Sent Events.
+     */
+    public static final String FORMAT_SSE = "sse";
+
+    /**
+     * The pool of {@link Ollama} nodes generating responses.
+     */
+    private final OllamaNodePool ollamaPool;
+
+    /**
+     * Instance of the {@link Groq} client, or {@code null} if Groq is not available.
+     */
+    private final Groq groq;
+
+    /**
+     * Determines the model a request names.
+     */
+    private final ModelRouter modelRouter;
+
+    /**
+     * The rate limits of the backends.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Records the time to the first token and the token counts of the streams.
+     */
+    private final ServerMetrics serverMetrics;
+
+    /**
+     * Copies the raw upstream stream to the client.
+     */
+    private final StreamRelay streamRelay;
+
+    /**
+     * Creates the coalescing response streams and sends heartbeats.
+     */
+    private final FlushCoalescer flushCoalescer;
+
+    /**
+     * Constructs a new {@code GenerateResponseStreamingHandler} using the {@link Ollama} nodes
+     * and, if available, the {@link Groq} client of the given registry.
+     *
+     * @param backendRegistry the {@link BackendRegistry} holding the backend clients.
+     * @param modelRouter     the {@link ModelRouter} determining the model a request names.
+     * @param rateLimiter     the {@link RateLimiter} holding the rate limits of the backends.
+     * @param flushCoalescer  the {@link FlushCoalescer} creating the response streams.
+     * @param serverMetrics   the {@link ServerMetrics} recording the time to the first token.
+     */
+    public GenerateResponseStreamingHandler(BackendRegistry backendRegistry, ModelRouter modelRouter, RateLimiter rateLimiter,
+                                            FlushCoalescer flushCoalescer, ServerMetrics serverMetrics) {
+        this.ollamaPool = backendRegistry.getOllamaPool();
+        this.groq = backendRegistry.getGroq();
+        this.modelRouter = modelRouter;
+        this.rateLimiter = rateLimiter;
+        this.streamRelay = new StreamRelay(new BufferPool());
+        this.flushCoalescer = flushCoalescer;
+        this.serverMetrics = serverMetrics;
     }
 
+    /**
+     * Handles incoming HTTP requests by validating the request method, starting the generation
+     * and streaming its chunks to the client in the requested format.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an I/O error occurs during processing.
+     */
     @Override
     public void handle(HttpExchange exchange) throws IOException {
+        // Verify the request method is POST
         if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
             exchange.sendResponseHeaders(405, -1); // Method Not Allowed
             return;
         }
+        long startNanos = System.nanoTime();
 
-        // Anfragekörper lesen
+        // Read and parse the request body
         String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
         JSONObject requestJson = new JSONObject(requestBody);
-
         if (!requestJson.has("prompt")) {
-            sendResponse(exchange, "{\"error\":\"Das Feld 'prompt' ist erforderlich.\"}", 400);
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Das Feld 'prompt' ist erforderlich.");
+            sendResponse(exchange, errorResponse.toString(), 400);
             return;
         }
 
         String prompt = requestJson.getString("prompt");
+        String format = requestJson.optString("format", acceptsEventStream(exchange) ? FORMAT_SSE : FORMAT_RAW);
+        String backend = requestJson.optString("backend", GenerationService.OLLAMA);
+
+        GenerationOptions options;
+        Model model;
+        try {
+            options = GenerationOptions.fromJson(requestJson.optJSONObject("options"));
+            if (!format.equals(FORMAT_RAW) && !format.equals(FORMAT_TOKENS) && !format.equals(FORMAT_SSE)) {
+                throw new IllegalArgumentException("Unbekanntes Format '" + format + "'");
+            }
+            if (!backend.equals(GenerationService.OLLAMA) && !backend.equals(GenerationService.GROQ)) {
+                throw new IllegalArgumentException("Unbekanntes Backend '" + backend + "'");
+            }
+            if (backend.equals(GenerationService.GROQ) && requestJson.has("model")) {
+                throw new IllegalArgumentException("Das Feld 'model' gilt nur für das Backend 'ollama'");
+            }
+            model = modelRouter.resolve(requestJson.has("model") ? requestJson.getString("model") : null, prompt);
+        } catch (IOException e) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Modellkatalog nicht verfügbar: " + e.getMessage());
+            sendResponse(exchange, errorResponse.toString(), 503);
+            return;
+        } catch (RuntimeException e) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Ungültige Anfrage: " + e.getMessage());
+            sendResponse(exchange, errorResponse.toString(), 400);
+            return;
+        }
+
+        long wait = rateLimiter.tryAcquireBackend(backend, RateLimiter.estimateTokens(prompt.length()));
+        if (wait > 0) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Das Anfragelimit des Backends '" + backend + "' ist erschöpft.");
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(RateLimiter.toRetryAfterSeconds(wait)));
+            sendResponse(exchange, errorResponse.toString(), 429);
+            return;
+        }
 
-        // Antwortstream öffnen
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(200, 0); // Chunked Transfer-Encoding
+        if (backend.equals(GenerationService.GROQ)) {
+            streamFromGroq(exchange, prompt, options, format, startNanos);
+        } else {
+            streamFromOllama(exchange, prompt, options, model != null ? model : ollamaPool.getDefaultModel(), format, startNanos);
+        }
+    }
+
+    /**
+     * Streams a generation of the least loaded {@link Ollama} node that has the model loaded.
+     * The node counts the request as outstanding until the stream has ended, and the timings
+     * of the final chunk are recorded in the statistics of its client.
+     *
+     * @param exchange   the {@link HttpExchange} object for the HTTP request and response.
+     * @param prompt     the input prompt.
+     * @param options    the {@link GenerationOptions} of the request.
+     * @param model      the {@link Model} to generate with.
+     * @param format     the output format.
+     * @param startNanos the {@link System#nanoTime()} at which the request arrived.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void streamFromOllama(HttpExchange exchange, String prompt, GenerationOptions options, Model model, String format,
+                                  long startNanos) throws IOException {
+        try (OllamaNodePool.Lease lease = ollamaPool.acquire(model)) {
+            UpstreamResponse upstream;
+            long requestNanos = System.nanoTime();
+            try {
+                upstream = lease.getClient().generateResponseStreaming(prompt, options, lease.getModel());
+                lease.succeeded();
+            } catch (IOException e) {
+                // The generation could not be started, nothing has been sent yet
+                lease.failed(e);
+                sendStreamingError(exchange, e);
+                return;
+            }
+
+            relay(exchange, upstream, format, startNanos, lease, requestNanos);
+        }
+    }
 
-        try (OutputStream responseBody = exchange.getResponseBody()) {
-            languageModelClient.generateResponseStreaming(
-                    prompt,
-                    partialResponse -> {
+    /**
+     * Relays a started Ollama generation to the client.
+     *
+     * @param exchange     the {@link HttpExchange} object for the HTTP request and response.
+     * @param upstream     the streaming response of Ollama.
+     * @param format       the output format.
+     * @param startNanos   the {@link System#nanoTime()} at which the request arrived.
+     * @param lease        the {@link OllamaNodePool.Lease} of the node generating the response.
+     * @param requestNanos the {@link System#nanoTime()} at which the generation was requested from the node.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void relay(HttpExchange exchange, UpstreamResponse upstream, String format, long startNanos,
+                       OllamaNodePool.Lease lease, long requestNanos) throws IOException {
+        try (upstream; StreamingResponse response = new StreamingResponse(exchange, format, GenerationService.OLLAMA, startNanos)) {
+            response.start();
+            try {
+                String lastLine = switch (format) {
+                    case FORMAT_TOKENS -> relayTokens(upstream.getBody(), response.getBody());
+                    case FORMAT_SSE -> relayEvents(upstream.getBody(), response.getBody());
+                    default -> streamRelay.relay(upstream.getBody(), response.getBody());
+                };
+                // Only the raw format passes error chunks through to the client
+                GenerationMetrics metrics = readOutcome(lastLine, format.equals(FORMAT_RAW));
+                if (metrics != null) {
+                    lease.getClient().recordGeneration(lease.getModel(), metrics, System.nanoTime() - requestNanos);
+                    rateLimiter.chargeBackend(GenerationService.OLLAMA, metrics.getEvalCount());
+                    serverMetrics.recordGeneration(GenerationService.OLLAMA, metrics);
+                }
+            } catch (IOException e) {
+                response.writeError(e);
+            }
+        }
+    }
+
+    /**
+     * Streams a generation of the {@link Groq} client. The text pieces of Groq are sent in the
+     * shape of Ollama chunks, so clients see the same format for both backends.
+     *
+     * @param exchange   the {@link HttpExchange} object for the HTTP request and response.
+     * @param prompt     the input prompt.
+     * @param options    the {@link GenerationOptions} of the request.
+     * @param format     the output format.
+     * @param startNanos the {@link System#nanoTime()} at which the request arrived.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void streamFromGroq(HttpExchange exchange, String prompt, GenerationOptions options, String format,
+                                long startNanos) throws IOException {
+        if (groq == null) {
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Groq ist nicht verfügbar.");
+            sendResponse(exchange, errorResponse.toString(), 503);
+            return;
+        }
+
+        try (StreamingResponse response = new StreamingResponse(exchange, format, GenerationService.GROQ, startNanos)) {
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            GenerationMetrics metrics = groq.generateResponseStreaming(prompt, options,
+                    token -> {
                         try {
-                            // Jede Teilantwort schreiben
-                            JSONObject jsonResponse = new JSONObject();
-                            jsonResponse.put("response", partialResponse);
-                            responseBody.write((jsonResponse.toString() + "\n").getBytes(StandardCharsets.UTF_8));
-                            responseBody.flush(); // Daten sofort senden
+                            // The response is started with the first token, so that errors before it get a status code
+                            response.start();
+                            response.getBody().write(toChunkLine(token, format).getBytes(StandardCharsets.UTF_8));
+                            response.getBody().flush();
                         } catch (IOException e) {
-                            e.printStackTrace(); // Fehler im Stream-Handling
+                            throw new UncheckedIOException(e);
                         }
                     },
-                    error -> {
-                        try {
-                            // Fehler senden und Stream schließen
-                            JSONObject errorResponse = new JSONObject();
-                            errorResponse.put("error", error.getMessage());
-                            responseBody.write(errorResponse.toString().getBytes(StandardCharsets.UTF_8));
-                            responseBody.flush();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-            );
-        } catch (Exception e) {
-            // Allgemeiner Fehler
-            JSONObject errorResponse = new JSONObject();
-            errorResponse.put("error", "Fehler beim Streaming: " + e.getMessage());
-            sendResponse(exchange, errorResponse.toString(), 500);
+                    failure::set,
+                    () -> {});
+
+            Exception error = failure.get();
+            if (error != null && !response.isStarted()) {
+                response.abort();
+                sendStreamingError(exchange, error);
+                return;
+            }
+
+            response.start();
+            if (error != null) {
+                response.writeError(error);
+                return;
+            }
+            if (metrics != null) {
+                if (!format.equals(FORMAT_TOKENS)) {
+                    response.getBody().write((metrics.toOllamaDoneChunk() + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                System.out.println("Streaming abgeschlossen (Groq): " + metrics);
+                rateLimiter.chargeBackend(GenerationService.GROQ, metrics.getEvalCount());
+                serverMetrics.recordGeneration(GenerationService.GROQ, metrics);
+            }
+        }
+    }
+
+    /**
+     * Sends an error response for a generation that could not be started.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @param error    the error.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    private void sendStreamingError(HttpExchange exchange, Exception error) throws IOException {
+        JSONObject errorResponse = new JSONObject();
+        errorResponse.put("error", "Fehler beim Streaming: " + describe(error));
+        sendResponse(exchange, errorResponse.toString(), 500);
+    }
+
+    /**
+     * Describes an error for the client, falling back to its type if it has no message.
+     *
+     * @param error the error.
+     * @return the description.
+     */
+    private static String describe(Exception error) {
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    /**
+     * Checks whether the client asks for Server-Sent Events.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @return {@code true} if the {@code Accept} header contains {@code text/event-stream}.
+     */
+    private boolean acceptsEventStream(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && accept.contains("text/event-stream");
+    }
+
+    /**
+     * Streams the upstream chunks to the client, reduced to their {@code response} field.
+     *
+     * @param upstream the newline-delimited JSON stream of Ollama.
+     * @param client   the stream to write to.
+     * @return the last non-empty line of the upstream, or {@code null} if there was none.
+     * @throws IOException if reading from the upstream or writing to the client fails, Ollama
+     *                     sends an error chunk or a chunk is not valid JSON.
+     */
+    private String relayTokens(InputStream upstream, OutputStream client) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(upstream, StandardCharsets.UTF_8));
+        String lastLine = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            lastLine = line;
+            String tokenLine;
+            try {
+                tokenLine = toTokenLine(line);
+            } catch (JSONException e) {
+                throw new IOException("Ungültiger Chunk von Ollama: " + e.getMessage(), e);
+            }
+            if (tokenLine == null && isErrorChunk(line)) {
+                throw new IOException("Ollama meldete einen Fehler: " + errorOf(line));
+            }
+            if (tokenLine != null) {
+                client.write(tokenLine.getBytes(StandardCharsets.UTF_8));
+                client.flush();
+            }
+        }
+        return lastLine;
+    }
+
+    /**
+     * Streams the upstream chunks to the client unchanged, one line at a time, so that an error
+     * chunk can be held back and sent as an {@code error} event instead of a data event.
+     *
+     * @param upstream the newline-delimited JSON stream of Ollama.
+     * @param client   the {@link SseOutputStream} to write to.
+     * @return the last non-empty line of the upstream, or {@code null} if there was none.
+     * @throws IOException if reading from the upstream or writing to the client fails, or Ollama
+     *                     sends an error chunk.
+     */
+    private String relayEvents(InputStream upstream, OutputStream client) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(upstream, StandardCharsets.UTF_8));
+        String lastLine = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            lastLine = line;
+            if (isErrorChunk(line)) {
+                throw new IOException("Ollama meldete einen Fehler: " + errorOf(line));
+            }
+            client.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            client.flush();
+        }
+        return lastLine;
+    }
+
+    /**
+     * Converts a piece of text of a backend without Ollama chunks to the line sent to the client.
+     *
+     * @param token  the piece of text.
+     * @param format the output format.
+     * @return the line including its line break.
+     */
+    private static String toChunkLine(String token, String format) {
+        JSONObject json = new JSONObject();
+        json.put("response", token);
+        if (!format.equals(FORMAT_TOKENS)) {
+            json.put("done", false);
+        }
+        return json + "\n";
+    }
+
+    /**
+     * Converts an Ollama chunk to the line sent in {@link #FORMAT_TOKENS} format.
+     *
+     * @param chunk a line of the newline-delimited JSON stream of Ollama.
+     * @return the line including its line break, or {@code null} if the chunk has no {@code response}.
+     * @throws JSONException if the chunk is not valid JSON.
+     */
+    public static String toTokenLine(String chunk) {
+        JSONObject json = new JSONObject(chunk);
+        if (!json.has("response")) {
+            return null;
+        }
+        JSONObject tokenJson = new JSONObject();
+        tokenJson.put("response", json.getString("response"));
+        return tokenJson + "\n";
+    }
+
+    /**
+     * Checks whether a line of the Ollama stream is an error chunk, without parsing it.
+     *
+     * @param line a line of the newline-delimited JSON stream of Ollama.
+     * @return {@code true} if the line is an object starting with an {@code error} field.
+     */
+    private static boolean isErrorChunk(String line) {
+        return line.stripLeading().startsWith("{\"error\"");
+    }
+
+    /**
+     * Retrieves the message of an error chunk of Ollama.
+     *
+     * @param line the error chunk.
+     * @return the value of its {@code error} field, or the line itself if it cannot be parsed.
+     */
+    private static String errorOf(String line) {
+        try {
+            return String.valueOf(new JSONObject(line).get("error"));
+        } catch (JSONException e) {
+            return line;
         }
     }
 
-    private void sendResponse(HttpExchange exchange, String response, int statusCode) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes(StandardCharsets.UTF_8).length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Reads the outcome of a generation from the final chunk of the stream and logs it. A
+     * stream that does not end with a {@code done} chunk failed, so the client must not take
+     * it for a complete answer.
+     *
+     * @param lastLine       the last non-empty line of the stream, or {@code null}.
+     * @param errorForwarded whether an error chunk of Ollama has already been sent to the client
+     *                       as it is, so that it needs no further report.
+     * @return the {@link GenerationMetrics} of the final chunk, or {@code null} if the stream
+     *         ended with an error chunk that has already been forwarded.
+     * @throws IOException if the stream ended without a {@code done} chunk.
+     */
+    private GenerationMetrics readOutcome(String lastLine, boolean errorForwarded) throws IOException {
+        if (lastLine == null) {
+            throw new IOException("Ollama-Stream endete ohne abschließenden Chunk");
+        }
+        JSONObject lastChunk;
+        try {
+            lastChunk = new JSONObject(lastLine);
+        } catch (JSONException e) {
+            throw new IOException("Abschließender Chunk von Ollama konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+        if (lastChunk.optBoolean("done")) {
+            GenerationMetrics metrics = GenerationMetrics.fromOllamaJson(lastChunk);
+            System.out.println("Streaming abgeschlossen: " + metrics);
+            return metrics;
+        }
+        if (lastChunk.has("error")) {
+            if (errorForwarded) {
+                System.err.println("Streaming-Fehler von Ollama: " + lastChunk.get("error"));
+                return null;
+            }
+            throw new IOException("Ollama meldete einen Fehler: " + lastChunk.get("error"));
+        }
+        throw new IOException("Ollama-Stream endete ohne abschließenden Chunk");
+    }
+
+    /**
+     * The response stream of a streaming request in one of the output formats. The headers are
+     * sent by {@link #start()}; until then an error can still be sent as a regular response.
+     */
+    private class StreamingResponse implements Closeable {
+        private final HttpExchange exchange;
+        private final boolean sse;
+        private final String backend;
+        private final long startNanos;
+        private CoalescingOutputStream coalescingBody;
+        private OutputStream body;
+        private SseOutputStream events;
+        private ScheduledFuture<?> heartbeat;
+        private boolean aborted;
+
+        StreamingResponse(HttpExchange exchange, String format, String backend, long startNanos) {
+            this.exchange = exchange;
+            this.sse = format.equals(FORMAT_SSE);
+            this.backend = backend;
+            this.startNanos = startNanos;
+        }
+
+        void start() throws IOException {
+            if (body != null) {
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", sse ? "text/event-stream" : "application/x-ndjson");
+            if (sse) {
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            }
+            exchange.sendResponseHeaders(200, 0); // Chunked Transfer-Encoding
+
+            coalescingBody = flushCoalescer.wrap(exchange.getResponseBody());
+            if (sse) {
+                events = new SseOutputStream(coalescingBody);
+                heartbeat = flushCoalescer.startHeartbeat(events);
+                body = events;
+            } else {
+                body = coalescingBody;
+            }
+        }
+
+        boolean isStarted() {
+            return body != null;
+        }
+
+        OutputStream getBody() {
+            return body;
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        void writeError(Exception error) {
+            // Report the error in the stream; fails silently if the client is gone
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", "Fehler beim Streaming: " + describe(error));
+            try {
+                if (sse) {
+                    events.writeEvent("error", errorResponse.toString());
+                } else {
+                    body.write((errorResponse + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException ignored) {
+                // Client disconnected
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+            if (body != null) {
+                body.close();
+                long firstFlushNanos = coalescingBody.getFirstFlushNanos();
+                if (firstFlushNanos >= 0) {
+                    serverMetrics.recordTimeToFirstToken(backend, firstFlushNanos - startNanos);
+                }
+            } else if (!aborted) {
+                exchange.close();
+            }
         }
     }
 }
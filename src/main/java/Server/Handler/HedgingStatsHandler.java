@@ -0,0 +1,72 @@
+package Server.Handler;
+
+import Server.Generation.GenerationService;
+import Server.Generation.HedgingPolicy;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * The {@code HedgingStatsHandler} class handles HTTP GET requests to retrieve the counters of the
+ * {@link HedgingPolicy} and the hedge delay currently used for each backend.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class HedgingStatsHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * The policy whose statistics are reported.
+     */
+    private final HedgingPolicy hedgingPolicy;
+
+    /**
+     * The service providing the backend names.
+     */
+    private final GenerationService generationService;
+
+    /**
+     * Constructs a new {@code HedgingStatsHandler}.
+     *
+     * @param hedgingPolicy     the {@link HedgingPolicy} to report on.
+     * @param generationService the {@link GenerationService} whose backends are reported.
+     */
+    public HedgingStatsHandler(HedgingPolicy hedgingPolicy, GenerationService generationService) {
+        this.hedgingPolicy = hedgingPolicy;
+        this.generationService = generationService;
+    }
+
+    /**
+     * Handles incoming HTTP GET requests by returning the number of hedges sent and won, the
+     * number of hedges skipped for lack of budget and the hedge delay per backend.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        long hedges = hedgingPolicy.getHedges();
+        long hedgeWins = hedgingPolicy.getHedgeWins();
+
+        JSONObject delays = new JSONObject();
+        for (String backend : generationService.getBackendNames()) {
+            delays.put(backend, hedgingPolicy.getDelayMillis(backend));
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("hedges", hedges);
+        responseJson.put("hedgeWins", hedgeWins);
+        responseJson.put("hedgeWinRate", hedges == 0 ? 0.0 : (double) hedgeWins / hedges);
+        responseJson.put("budgetExhausted", hedgingPolicy.getBudgetExhausted());
+        responseJson.put("delayMillis", delays);
+
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+}
@@ -0,0 +1,81 @@
+package Server.Handler;
+
+import LLM.GenerationOptions;
+import Server.Cache.ResponseCache;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code InvalidateCacheHandler} class handles HTTP POST requests to remove entries from
+ * the {@link ResponseCache}.
+ * <p>
+ * The request body either contains {@code "all": true} to clear the whole cache, or the
+ * {@code prompt} (and optionally the {@code options}) of the generation request whose cached
+ * response should be removed.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class InvalidateCacheHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * The cache from which entries are removed.
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * Constructs a new {@code InvalidateCacheHandler}.
+     *
+     * @param responseCache the {@link ResponseCache} to invalidate.
+     */
+    public InvalidateCacheHandler(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Handles incoming HTTP POST requests to invalidate cache entries.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is POST
+        if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        // Read the request body
+        InputStream requestBody = exchange.getRequestBody();
+        String requestBodyString = new String(requestBody.readAllBytes(), StandardCharsets.UTF_8);
+
+        try {
+            // Parse the JSON payload
+            JSONObject requestJson = new JSONObject(requestBodyString);
+            JSONObject responseJson = new JSONObject();
+
+            if (requestJson.optBoolean("all", false)) {
+                responseJson.put("invalidated", responseCache.invalidateAll());
+            } else if (requestJson.has("prompt")) {
+                GenerationOptions options = GenerationOptions.fromJson(requestJson.optJSONObject("options"));
+                String key = ResponseCache.key(requestJson.optString("model", ResponseCache.DEFAULT_MODEL), requestJson.getString("prompt"), options);
+                responseJson.put("invalidated", responseCache.invalidate(key) ? 1 : 0);
+            } else {
+                throw new IllegalArgumentException("Das Feld 'prompt' oder 'all' ist erforderlich.");
+            }
+
+            sendResponse(exchange, responseJson.toString(), 200);
+
+        } catch (RuntimeException e) {
+            // Handle bad request
+            JSONObject errorResponse = new JSONObject();
+            errorResponse.put("error", e.getMessage());
+            sendResponse(exchange, errorResponse.toString(), 400);
+        }
+    }
+}
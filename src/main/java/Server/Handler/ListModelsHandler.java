@@ -1,6 +1,8 @@
 package Server.Handler;
 
 import LLM.LocalClient.Ollama;
+import Server.Backend.BackendRegistry;
+import Server.Cache.SnapshotCache;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import org.json.JSONObject;
@@ -8,30 +10,42 @@ import java.io.IOException;
 
 /**
  * The {@code ListModelsHandler} class handles HTTP GET requests to retrieve a list
- * of available models from the local {@link Ollama} client.
+ * of the models available on the {@link Ollama} nodes of the {@link BackendRegistry}.
+ * <p>
+ * The list is served from a {@link SnapshotCache} that is refreshed in the background, so that
+ * frequent polling does not reach Ollama every time. Responses carry an {@code ETag}; a request
+ * with a matching {@code If-None-Match} header is answered with {@code 304 Not Modified}.
  * <p>
  * This handler extends {@link ResponseSender} to simplify sending JSON responses.
  */
 public class ListModelsHandler extends ResponseSender implements HttpHandler {
 
     /**
-     * Instance of the {@link Ollama} client for interacting with local models.
+     * The registry holding the Ollama nodes.
+     */
+    private final BackendRegistry backendRegistry;
+
+    /**
+     * The cached response body.
      */
-    private final Ollama ollama;
+    private final SnapshotCache snapshotCache;
 
     /**
-     * Constructs a new {@code ListModelsHandler} and initializes the {@link Ollama} client.
+     * Constructs a new {@code ListModelsHandler}.
+     *
+     * @param backendRegistry the {@link BackendRegistry} holding the backend clients.
+     * @param refreshMillis   the age in milliseconds after which the cached list is refreshed.
      */
-    public ListModelsHandler() {
-        this.ollama = new Ollama();
+    public ListModelsHandler(BackendRegistry backendRegistry, long refreshMillis) {
+        this.backendRegistry = backendRegistry;
+        this.snapshotCache = new SnapshotCache(refreshMillis, this::loadModels);
     }
 
     /**
      * Handles incoming HTTP GET requests to retrieve the list of models.
      * <p>
      * If the request method is not GET, a 405 Method Not Allowed response is sent.
-     * Otherwise, the handler fetches the list of models from {@link Ollama}
-     * and returns it as a JSON response.
+     * Otherwise, the handler returns the cached list of models as a JSON response.
      *
      * @param exchange the {@link HttpExchange} object for the HTTP request and response.
      * @throws IOException if an error occurs while processing the request or response.
@@ -45,15 +59,8 @@ public class ListModelsHandler extends ResponseSender implements HttpHandler {
         }
 
         try {
-            // Retrieve the list of models
-            var models = ollama.listModels();
-
-            // Create the JSON response
-            JSONObject responseJson = new JSONObject();
-            responseJson.put("models", models);
-
-            // Send the successful response
-            sendResponse(exchange, responseJson.toString(), 200);
+            // Send the cached list of models
+            sendSnapshot(exchange, snapshotCache.get());
 
         } catch (IOException e) {
             // Handle errors during model retrieval
@@ -62,4 +69,16 @@ public class ListModelsHandler extends ResponseSender implements HttpHandler {
             sendResponse(exchange, errorResponse.toString(), 500);
         }
     }
+
+    /**
+     * Retrieves the list of models from {@link Ollama} and creates the JSON response body.
+     *
+     * @return the response body.
+     * @throws IOException if the models could not be retrieved.
+     */
+    private String loadModels() throws IOException {
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("models", backendRegistry.listModels());
+        return responseJson.toString();
+    }
 }
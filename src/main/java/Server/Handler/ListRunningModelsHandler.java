@@ -2,40 +2,56 @@ package Server.Handler;
 
 import LLM.LocalClient.Ollama;
 import LLM.LocalClient.Ollama.Model;
+import Server.Backend.BackendRegistry;
+import Server.Cache.SnapshotCache;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * The {@code ListRunningModelsHandler} class handles HTTP GET requests to retrieve a list
- * of currently running models from the {@link Ollama} client.
+ * of currently running models from the {@link Ollama} client. The result also refreshes the
+ * view of loaded models held by the {@link BackendRegistry}.
+ * <p>
+ * The list is served from a {@link SnapshotCache} that is refreshed in the background and
+ * invalidated whenever a model is loaded or unloaded through the registry. Responses carry an
+ * {@code ETag}; a request with a matching {@code If-None-Match} header is answered with
+ * {@code 304 Not Modified}.
  * <p>
  * This handler extends {@link ResponseSender} to simplify sending JSON responses.
  */
 public class ListRunningModelsHandler extends ResponseSender implements HttpHandler {
 
     /**
-     * Instance of the {@link Ollama} client for interacting with local models.
+     * The registry holding the {@link Ollama} client and the view of loaded models.
+     */
+    private final BackendRegistry backendRegistry;
+
+    /**
+     * The cached response body.
      */
-    private final Ollama ollama;
+    private final SnapshotCache snapshotCache;
 
     /**
-     * Constructs a new {@code ListRunningModelsHandler} and initializes the {@link Ollama} client.
+     * Constructs a new {@code ListRunningModelsHandler}.
+     *
+     * @param backendRegistry the {@link BackendRegistry} holding the backend clients.
+     * @param refreshMillis   the age in milliseconds after which the cached list is refreshed.
      */
-    public ListRunningModelsHandler() {
-        this.ollama = new Ollama();
+    public ListRunningModelsHandler(BackendRegistry backendRegistry, long refreshMillis) {
+        this.backendRegistry = backendRegistry;
+        this.snapshotCache = new SnapshotCache(refreshMillis, this::loadRunningModels);
+        backendRegistry.addModelChangeListener(snapshotCache::invalidate);
     }
 
     /**
      * Handles incoming HTTP GET requests to retrieve the list of running models.
      * <p>
      * If the request method is not GET, a 405 Method Not Allowed response is sent.
-     * Otherwise, the handler fetches the list of running models from {@link Ollama}
-     * and returns it as a JSON response.
+     * Otherwise, the handler returns the cached list of running models as a JSON response.
      *
      * @param exchange the {@link HttpExchange} object for the HTTP request and response.
      * @throws IOException if an error occurs while processing the request or response.
@@ -49,22 +65,8 @@ public class ListRunningModelsHandler extends ResponseSender implements HttpHand
         }
 
         try {
-            // Retrieve the list of running models
-            List<Model> runningModels = ollama.listRunningModels();
-
-            // Create the JSON response
-            JSONArray modelsArray = new JSONArray();
-            for (Model model : runningModels) {
-                JSONObject modelJson = new JSONObject();
-                modelJson.put("modelName", model.getModelName());
-                modelsArray.put(modelJson);
-            }
-
-            JSONObject responseJson = new JSONObject();
-            responseJson.put("runningModels", modelsArray);
-
-            // Send the successful response
-            sendResponse(exchange, responseJson.toString(), 200);
+            // Send the cached list of running models
+            sendSnapshot(exchange, snapshotCache.get());
 
         } catch (IOException e) {
             // Handle errors during model retrieval
@@ -73,4 +75,23 @@ public class ListRunningModelsHandler extends ResponseSender implements HttpHand
             sendResponse(exchange, errorResponse.toString(), 500);
         }
     }
+
+    /**
+     * Retrieves the running models from {@link Ollama} and creates the JSON response body.
+     *
+     * @return the response body.
+     * @throws IOException if the running models could not be retrieved.
+     */
+    private String loadRunningModels() throws IOException {
+        JSONArray modelsArray = new JSONArray();
+        for (Model model : backendRegistry.refreshLoadedModels()) {
+            JSONObject modelJson = new JSONObject();
+            modelJson.put("modelName", model.getModelName());
+            modelsArray.put(modelJson);
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("runningModels", modelsArray);
+        return responseJson.toString();
+    }
 }
@@ -2,6 +2,8 @@ package Server.Handler;
 
 import LLM.LocalClient.Ollama;
 import LLM.LocalClient.Ollama.Model;
+import Server.Backend.BackendRegistry;
+import Server.Backend.ModelCatalog;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import org.json.JSONObject;
@@ -12,22 +14,33 @@ import java.nio.charset.StandardCharsets;
 
 /**
  * The {@code LoadModelHandler} class handles HTTP POST requests to load a specified
- * model into the {@link Ollama} client.
+ * model into the {@link Ollama} client. The model name is resolved against the models installed
+ * on the Ollama nodes ({@link ModelCatalog}), and the model is loaded through the shared
+ * {@link BackendRegistry}, which keeps track of the loaded models.
  * <p>
  * This handler extends {@link ResponseSender} to simplify sending JSON responses.
  */
 public class LoadModelHandler extends ResponseSender implements HttpHandler {
 
     /**
-     * Instance of the {@link Ollama} client for interacting with local models.
+     * The registry through which models are loaded.
      */
-    private final Ollama ollama;
+    private final BackendRegistry backendRegistry;
 
     /**
-     * Constructs a new {@code LoadModelHandler} and initializes the {@link Ollama} client.
+     * The catalog resolving model names.
      */
-    public LoadModelHandler() {
-        this.ollama = new Ollama();
+    private final ModelCatalog modelCatalog;
+
+    /**
+     * Constructs a new {@code LoadModelHandler}.
+     *
+     * @param backendRegistry the {@link BackendRegistry} holding the backend clients.
+     * @param modelCatalog    the {@link ModelCatalog} resolving model names.
+     */
+    public LoadModelHandler(BackendRegistry backendRegistry, ModelCatalog modelCatalog) {
+        this.backendRegistry = backendRegistry;
+        this.modelCatalog = modelCatalog;
     }
 
     /**
@@ -61,14 +74,11 @@ public class LoadModelHandler extends ResponseSender implements HttpHandler {
 
             String modelName = requestJson.getString("modelName");
 
-            // Find the model in the enum
-            Model modelToLoad = getModelFromName(modelName);
-            if (modelToLoad == null) {
-                throw new IllegalArgumentException("Ungültiger Modellname: " + modelName);
-            }
+            // Find the model among the installed models
+            Model modelToLoad = modelCatalog.resolve(modelName);
 
             // Load the model
-            boolean isLoaded = ollama.loadModel(modelToLoad);
+            boolean isLoaded = backendRegistry.loadModel(modelToLoad);
 
             // Send success response
             JSONObject responseJson = new JSONObject();
@@ -89,19 +99,4 @@ public class LoadModelHandler extends ResponseSender implements HttpHandler {
             sendResponse(exchange, errorResponse.toString(), 500);
         }
     }
-
-    /**
-     * Retrieves the {@link Model} instance corresponding to the given model name.
-     *
-     * @param modelName the name of the model to retrieve.
-     * @return the {@link Model} instance if found, or {@code null} if not found.
-     */
-    private Model getModelFromName(String modelName) {
-        for (Model model : Model.values()) {
-            if (model.getModelName().equalsIgnoreCase(modelName)) {
-                return model;
-            }
-        }
-        return null; // Model not found in the enum
-    }
 }
@@ -0,0 +1,285 @@
+package Server.Handler;
+
+import LLM.Metrics.GenerationStats;
+import Server.Backend.OllamaNode;
+import Server.Backend.OllamaNodePool;
+import Server.Cache.ResponseCache;
+import Server.Execution.PriorityClass;
+import Server.Execution.RequestScheduler;
+import Server.Generation.GenerationService;
+import Server.Metrics.EndpointMetrics;
+import Server.Metrics.PrometheusWriter;
+import Server.Metrics.ServerMetrics;
+import Server.Resilience.RateLimiter;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code MetricsHandler} class handles HTTP GET requests to retrieve the metrics of the
+ * server in the Prometheus text exposition format.
+ * <p>
+ * The metrics are read from the components that record them when the endpoint is scraped:
+ * requests and durations per endpoint, the latency of the backends and Ollama nodes, the time
+ * to the first streamed token and the token throughput per backend, the prefill and decode
+ * speed, load time and queue time per Ollama node and model, the in-flight requests and
+ * queue depth of the {@link RequestScheduler}, the hit rate of the {@link ResponseCache} and the
+ * rejections of the {@link RateLimiter}. Nothing is computed on the request path.
+ */
+public class MetricsHandler implements HttpHandler {
+
+    /**
+     * The measurements of the endpoints and streams.
+     */
+    private final ServerMetrics serverMetrics;
+
+    /**
+     * The service providing the backends and their latencies.
+     */
+    private final GenerationService generationService;
+
+    /**
+     * The pool of Ollama nodes.
+     */
+    private final OllamaNodePool ollamaPool;
+
+    /**
+     * The scheduler of the generation endpoints, or {@code null} if admission control is disabled.
+     */
+    private final RequestScheduler scheduler;
+
+    /**
+     * The response cache.
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * The rate limits of clients and backends.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Constructs a new {@code MetricsHandler}.
+     *
+     * @param serverMetrics     the {@link ServerMetrics} of the endpoints and streams.
+     * @param generationService the {@link GenerationService} providing the backend latencies.
+     * @param ollamaPool        the {@link OllamaNodePool} providing the node latencies.
+     * @param scheduler         the {@link RequestScheduler}, or {@code null} if admission control is disabled.
+     * @param responseCache     the {@link ResponseCache} providing the hit rate.
+     * @param rateLimiter       the {@link RateLimiter} providing the rejections.
+     */
+    public MetricsHandler(ServerMetrics serverMetrics, GenerationService generationService, OllamaNodePool ollamaPool,
+                          RequestScheduler scheduler, ResponseCache responseCache, RateLimiter rateLimiter) {
+        this.serverMetrics = serverMetrics;
+        this.generationService = generationService;
+        this.ollamaPool = ollamaPool;
+        this.scheduler = scheduler;
+        this.responseCache = responseCache;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Handles incoming HTTP GET requests by returning all metrics.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        PrometheusWriter writer = new PrometheusWriter();
+        writeEndpoints(writer);
+        writeBackends(writer);
+        writeGenerations(writer);
+        writeScheduler(writer);
+        writeCache(writer);
+
+        byte[] body = writer.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", PrometheusWriter.CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Writes the requests, in-flight requests and durations per endpoint.
+     *
+     * @param writer the {@link PrometheusWriter} to write to.
+     */
+    private void writeEndpoints(PrometheusWriter writer) {
+        Map<String, EndpointMetrics> endpoints = serverMetrics.getEndpoints();
+
+        writer.family("http_requests_total", "counter", "Finished requests per endpoint and status code.");
+        endpoints.forEach((path, metrics) -> metrics.getRequestsByStatus().forEach((status, count) ->
+                writer.sample("http_requests_total", count, "endpoint", path, "code", String.valueOf(status))));
+
+        writer.family("http_requests_in_flight", "gauge", "Requests currently being processed per endpoint.");
+        endpoints.forEach((path, metrics) -> writer.sample("http_requests_in_flight", metrics.getInFlight(), "endpoint", path));
+
+        writer.family("http_request_duration_seconds", "histogram", "Duration of finished requests per endpoint.");
+        endpoints.forEach((path, metrics) -> writer.histogram("http_request_duration_seconds", metrics.getDuration(), "endpoint", path));
+    }
+
+    /**
+     * Writes the latencies, token throughput and rate limit rejections of the backends and the
+     * state of the Ollama nodes.
+     *
+     * @param writer the {@link PrometheusWriter} to write to.
+     */
+    private void writeBackends(PrometheusWriter writer) {
+        writer.family("llm_upstream_latency_seconds", "histogram", "Latency of successful non-streaming calls per backend.");
+        for (String backend : generationService.getBackendNames()) {
+            writer.histogram("llm_upstream_latency_seconds", generationService.getLatency(backend), "backend", backend);
+        }
+
+        writer.family("llm_node_latency_seconds", "histogram", "Latency of successful requests per Ollama node.");
+        for (OllamaNode node : ollamaPool.getNodes()) {
+            writer.histogram("llm_node_latency_seconds", node.getLatency(), "node", node.getUrl());
+        }
+        writer.family("llm_node_in_flight", "gauge", "Requests currently outstanding per Ollama node.");
+        for (OllamaNode node : ollamaPool.getNodes()) {
+            writer.sample("llm_node_in_flight", node.getInFlight(), "node", node.getUrl());
+        }
+        writer.family("llm_node_healthy", "gauge", "Whether an Ollama node passes its health checks.");
+        for (OllamaNode node : ollamaPool.getNodes()) {
+            writer.sample("llm_node_healthy", node.isHealthy() ? 1 : 0, "node", node.getUrl());
+        }
+
+        writer.family("llm_time_to_first_token_seconds", "histogram", "Time from the request to the first streamed token per backend.");
+        serverMetrics.getTimeToFirstToken().forEach((backend, latency) ->
+                writer.histogram("llm_time_to_first_token_seconds", latency, "backend", backend));
+
+        Map<String, ServerMetrics.TokenCounters> tokens = serverMetrics.getTokens();
+        writer.family("llm_prompt_tokens_total", "counter", "Prompt tokens of streamed generations per backend.");
+        tokens.forEach((backend, counters) -> writer.sample("llm_prompt_tokens_total", counters.getPromptTokens(), "backend", backend));
+        writer.family("llm_generated_tokens_total", "counter", "Tokens of streamed generations per backend.");
+        tokens.forEach((backend, counters) -> writer.sample("llm_generated_tokens_total", counters.getGeneratedTokens(), "backend", backend));
+        writer.family("llm_generation_seconds_total", "counter", "Time spent generating the tokens of streamed generations per backend.");
+        tokens.forEach((backend, counters) -> writer.sample("llm_generation_seconds_total",
+                counters.getGenerationNanos() / (double) TimeUnit.SECONDS.toNanos(1), "backend", backend));
+        writer.family("llm_tokens_per_second", "gauge", "Average generation speed of streamed generations per backend.");
+        tokens.forEach((backend, counters) -> writer.sample("llm_tokens_per_second", counters.getGenerationNanos() == 0 ? 0
+                : counters.getGeneratedTokens() * (double) TimeUnit.SECONDS.toNanos(1) / counters.getGenerationNanos(), "backend", backend));
+
+        writer.family("llm_rate_limited_total", "counter", "Requests refused by the rate limits per scope.");
+        writer.sample("llm_rate_limited_total", rateLimiter.getClientRejections(), "scope", "client");
+        for (String backend : generationService.getBackendNames()) {
+            writer.sample("llm_rate_limited_total", rateLimiter.getBackendRejections(backend), "scope", backend);
+        }
+    }
+
+    /**
+     * Writes the timings Ollama reported for the generations of every node and model.
+     *
+     * @param writer the {@link PrometheusWriter} to write to.
+     */
+    private void writeGenerations(PrometheusWriter writer) {
+        double nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+
+        writer.family("llm_ollama_prefill_tokens_total", "counter", "Prompt tokens evaluated per Ollama node and model.");
+        forEachModel((node, model, stats) -> writer.sample("llm_ollama_prefill_tokens_total", stats.getPromptTokens(), "node", node, "model", model));
+        writer.family("llm_ollama_prefill_seconds_total", "counter", "Time spent evaluating prompts per Ollama node and model.");
+        forEachModel((node, model, stats) -> writer.sample("llm_ollama_prefill_seconds_total",
+                stats.getPromptEvalNanos() / nanosPerSecond, "node", node, "model", model));
+        writer.family("llm_ollama_prefill_tokens_per_second", "gauge", "Average prompt evaluation speed per Ollama node and model.");
+        forEachModel((node, model, stats) -> writer.sample("llm_ollama_prefill_tokens_per_second",
+                stats.getPrefillTokensPerSecond(), "node", node, "model", model));
+
+        writer.family("llm_ollama_decode_tokens_total", "counter", "Tokens generated per Ollama node and model.");
+        forEachModel((node, model, stats) -> writer.sample("llm_ollama_decode_tokens_total", stats.getGeneratedTokens(), "node", node, "model", model));
+        writer.family("llm_ollama_decode_seconds_total", "counter", "Time spent generating tokens per Ollama node and model.");
+        forEachModel((node, model, stats) -> writer.sample("llm_ollama_decode_seconds_total",
+                stats.getEvalNanos() / nanosPerSecond, "node", node, "model", model));
+        writer.family("llm_ollama_decode_tokens_per_second", "gauge", "Average generation speed per Ollama node and model.");
+        forEachModel((node, model, stats) -> writer.sample("llm_ollama_decode_tokens_per_second",
+                stats.getDecodeTokensPerSecond(), "node", node, "model", model));
+
+        writer.family("llm_ollama_load_seconds", "histogram", "Time Ollama spent loading the model per generation.");
+        forEachModel((node, model, stats) -> writer.histogram("llm_ollama_load_seconds", stats.getLoadTime(), "node", node, "model", model));
+        writer.family("llm_ollama_queue_seconds", "histogram", "Wall time per generation not reported by Ollama.");
+        forEachModel((node, model, stats) -> writer.histogram("llm_ollama_queue_seconds", stats.getQueueTime(), "node", node, "model", model));
+    }
+
+    /**
+     * Passes the generation timings of every model on every Ollama node to a consumer.
+     *
+     * @param consumer the consumer receiving the node URL, the model name and its timings.
+     */
+    private void forEachModel(ModelStatsConsumer consumer) {
+        for (OllamaNode node : ollamaPool.getNodes()) {
+            node.getClient().getGenerationStats().getModels().forEach((model, stats) -> consumer.accept(node.getUrl(), model, stats));
+        }
+    }
+
+    /**
+     * Receives the generation timings of one model on one node.
+     */
+    @FunctionalInterface
+    private interface ModelStatsConsumer {
+
+        /**
+         * Receives the timings.
+         *
+         * @param node  the URL of the node.
+         * @param model the model name.
+         * @param stats the {@link GenerationStats.ModelStats} of the model on the node.
+         */
+        void accept(String node, String model, GenerationStats.ModelStats stats);
+    }
+
+    /**
+     * Writes the in-flight requests, queue depth and waiting times of the scheduler.
+     *
+     * @param writer the {@link PrometheusWriter} to write to.
+     */
+    private void writeScheduler(PrometheusWriter writer) {
+        if (scheduler == null) {
+            return;
+        }
+
+        writer.family("scheduler_in_flight", "gauge", "Generation requests holding a slot.");
+        writer.sample("scheduler_in_flight", scheduler.getInFlight());
+        writer.family("scheduler_queue_depth", "gauge", "Generation requests waiting for a slot per priority class.");
+        for (PriorityClass priority : PriorityClass.values()) {
+            writer.sample("scheduler_queue_depth", scheduler.getQueued(priority), "priority", priority.name().toLowerCase());
+        }
+        writer.family("scheduler_rejected_total", "counter", "Generation requests rejected by the scheduler per priority class.");
+        for (PriorityClass priority : PriorityClass.values()) {
+            writer.sample("scheduler_rejected_total", scheduler.getRejected(priority), "priority", priority.name().toLowerCase());
+        }
+        writer.family("scheduler_wait_seconds", "histogram", "Time generation requests waited for a slot per priority class.");
+        for (PriorityClass priority : PriorityClass.values()) {
+            writer.histogram("scheduler_wait_seconds", scheduler.getWaitTime(priority), "priority", priority.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Writes the counters and hit rate of the response cache.
+     *
+     * @param writer the {@link PrometheusWriter} to write to.
+     */
+    private void writeCache(PrometheusWriter writer) {
+        long hits = responseCache.getHits();
+        long misses = responseCache.getMisses();
+
+        writer.family("cache_hits_total", "counter", "Response cache hits.");
+        writer.sample("cache_hits_total", hits);
+        writer.family("cache_misses_total", "counter", "Response cache misses.");
+        writer.sample("cache_misses_total", misses);
+        writer.family("cache_hit_ratio", "gauge", "Share of response cache lookups that were hits.");
+        writer.sample("cache_hit_ratio", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        writer.family("cache_bytes", "gauge", "Estimated bytes held by the response cache.");
+        writer.sample("cache_bytes", responseCache.getBytes());
+    }
+}
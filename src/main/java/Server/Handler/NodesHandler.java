@@ -0,0 +1,137 @@
+package Server.Handler;
+
+import LLM.LocalClient.Ollama.Model;
+import LLM.Metrics.GenerationStats;
+import LLM.Metrics.LatencyHistogram;
+import Server.Backend.OllamaNode;
+import Server.Backend.OllamaNodePool;
+import Server.Backend.ResidencyManager;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code NodesHandler} class handles HTTP GET requests to retrieve the state of the Ollama
+ * nodes: whether they are in rotation, their weight, the number of outstanding requests and the
+ * latency of their successful requests, the models loaded on them with the memory they occupy,
+ * the prefill and decode speed, load time and queue time of the generations per model, how many
+ * requests found their model warm and how many models were evicted to stay within the memory
+ * budget.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class NodesHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * The pool whose nodes are reported.
+     */
+    private final OllamaNodePool ollamaPool;
+
+    /**
+     * Constructs a new {@code NodesHandler}.
+     *
+     * @param ollamaPool the {@link OllamaNodePool} to report on.
+     */
+    public NodesHandler(OllamaNodePool ollamaPool) {
+        this.ollamaPool = ollamaPool;
+    }
+
+    /**
+     * Handles incoming HTTP GET requests by returning the state of every node.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        ResidencyManager residencyManager = ollamaPool.getResidencyManager();
+
+        JSONArray nodesArray = new JSONArray();
+        for (OllamaNode node : ollamaPool.getNodes()) {
+            LatencyHistogram latency = node.getLatency();
+
+            JSONObject latencyJson = new JSONObject();
+            latencyJson.put("count", latency.getCount());
+            latencyJson.put("meanMillis", latency.getMeanNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+            latencyJson.put("p50Millis", TimeUnit.NANOSECONDS.toMillis(latency.getPercentileNanos(50)));
+            latencyJson.put("p95Millis", TimeUnit.NANOSECONDS.toMillis(latency.getPercentileNanos(95)));
+            latencyJson.put("p99Millis", TimeUnit.NANOSECONDS.toMillis(latency.getPercentileNanos(99)));
+
+            JSONArray modelsArray = new JSONArray();
+            for (Model model : node.getLoadedModels()) {
+                JSONObject modelJson = new JSONObject();
+                modelJson.put("name", model.getModelName());
+                modelJson.put("sizeBytes", residencyManager.getModelBytes(node, model));
+                modelsArray.put(modelJson);
+            }
+
+            JSONObject generationsJson = new JSONObject();
+            node.getClient().getGenerationStats().getModels().forEach((model, stats) ->
+                    generationsJson.put(model, toJson(stats)));
+
+            JSONObject nodeJson = new JSONObject();
+            nodeJson.put("url", node.getUrl());
+            nodeJson.put("weight", node.getWeight());
+            nodeJson.put("healthy", node.isHealthy());
+            nodeJson.put("inFlight", node.getInFlight());
+            nodeJson.put("requests", node.getRequests());
+            nodeJson.put("failures", node.getFailures());
+            nodeJson.put("latency", latencyJson);
+            nodeJson.put("loadedModels", modelsArray);
+            nodeJson.put("generations", generationsJson);
+            nodeJson.put("usedBytes", residencyManager.getUsedBytes(node));
+            nodesArray.put(nodeJson);
+        }
+
+        JSONObject affinityJson = new JSONObject();
+        affinityJson.put("warmRoutes", ollamaPool.getWarmRoutes());
+        affinityJson.put("coldRoutes", ollamaPool.getColdRoutes());
+
+        JSONArray pinnedArray = new JSONArray();
+        for (Model model : residencyManager.getPinnedModels()) {
+            pinnedArray.put(model.getModelName());
+        }
+
+        JSONObject residencyJson = new JSONObject();
+        residencyJson.put("maxBytes", residencyManager.getMaxBytes());
+        residencyJson.put("pinnedModels", pinnedArray);
+        residencyJson.put("keepAlive", residencyManager.getKeepAlive() != null ? residencyManager.getKeepAlive() : JSONObject.NULL);
+        residencyJson.put("evictions", residencyManager.getEvictions());
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("nodes", nodesArray);
+        responseJson.put("affinity", affinityJson);
+        responseJson.put("residency", residencyJson);
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+
+    /**
+     * Converts the generation timings of a model to JSON.
+     *
+     * @param stats the {@link GenerationStats.ModelStats} of the model.
+     * @return the timings as {@link JSONObject}.
+     */
+    private static JSONObject toJson(GenerationStats.ModelStats stats) {
+        JSONObject json = new JSONObject();
+        json.put("generations", stats.getGenerations());
+        json.put("promptTokens", stats.getPromptTokens());
+        json.put("prefillTokensPerSecond", stats.getPrefillTokensPerSecond());
+        json.put("generatedTokens", stats.getGeneratedTokens());
+        json.put("decodeTokensPerSecond", stats.getDecodeTokensPerSecond());
+        json.put("meanLoadMillis", stats.getLoadTime().getMeanNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+        json.put("maxLoadMillis", TimeUnit.NANOSECONDS.toMillis(stats.getLoadTime().getMaxNanos()));
+        json.put("p50QueueMillis", TimeUnit.NANOSECONDS.toMillis(stats.getQueueTime().getPercentileNanos(50)));
+        json.put("p95QueueMillis", TimeUnit.NANOSECONDS.toMillis(stats.getQueueTime().getPercentileNanos(95)));
+        return json;
+    }
+}
@@ -1,5 +1,6 @@
 package Server.Handler;
 
+import Server.Cache.SnapshotCache;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.IOException;
@@ -34,4 +35,48 @@ public class ResponseSender {
             os.write(response.getBytes(StandardCharsets.UTF_8));
         }
     }
+
+    /**
+     * Sends a cached snapshot with its {@code ETag} and {@code Age} headers. If the
+     * {@code If-None-Match} request header names the entity tag of the snapshot, only
+     * {@code 304 Not Modified} is sent.
+     *
+     * @param exchange the {@link HttpExchange} object representing the HTTP request and response.
+     * @param snapshot the {@link SnapshotCache.Snapshot} to send.
+     * @throws IOException if an I/O error occurs while sending the response.
+     */
+    public void sendSnapshot(HttpExchange exchange, SnapshotCache.Snapshot snapshot) throws IOException {
+        exchange.getResponseHeaders().set("ETag", snapshot.etag());
+        exchange.getResponseHeaders().set("Age", Long.toString(snapshot.getAgeSeconds()));
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && matchesEtag(ifNoneMatch, snapshot.etag())) {
+            exchange.sendResponseHeaders(304, -1); // Not Modified
+            exchange.close();
+            return;
+        }
+        sendResponse(exchange, snapshot.body(), 200);
+    }
+
+    /**
+     * Checks whether an {@code If-None-Match} header matches an entity tag. Weak tags are
+     * compared by their value.
+     *
+     * @param ifNoneMatch the header value, e.g. {@code "a", W/"b"} or {@code *}.
+     * @param etag        the quoted entity tag.
+     * @return {@code true} if the header matches the entity tag.
+     */
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
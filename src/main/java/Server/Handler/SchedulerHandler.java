@@ -0,0 +1,86 @@
+package Server.Handler;
+
+import LLM.Metrics.LatencyHistogram;
+import Server.Execution.PriorityClass;
+import Server.Execution.RequestScheduler;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code SchedulerHandler} class handles HTTP GET requests to retrieve the state of the
+ * {@link RequestScheduler}: the occupied slots and, per priority class, the queue depth, the
+ * admitted, rejected and aged requests and the time requests waited for a slot.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class SchedulerHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * The scheduler whose state is reported, or {@code null} if admission control is disabled.
+     */
+    private final RequestScheduler scheduler;
+
+    /**
+     * Constructs a new {@code SchedulerHandler}.
+     *
+     * @param scheduler the {@link RequestScheduler} to report on, or {@code null} if admission
+     *                  control is disabled.
+     */
+    public SchedulerHandler(RequestScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Handles incoming HTTP GET requests by returning the state of the scheduler.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("enabled", scheduler != null);
+        if (scheduler == null) {
+            sendResponse(exchange, responseJson.toString(), 200);
+            return;
+        }
+
+        JSONObject classes = new JSONObject();
+        for (PriorityClass priority : PriorityClass.values()) {
+            LatencyHistogram waitTime = scheduler.getWaitTime(priority);
+
+            JSONObject waitJson = new JSONObject();
+            waitJson.put("meanMillis", waitTime.getMeanNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+            waitJson.put("p50Millis", TimeUnit.NANOSECONDS.toMillis(waitTime.getPercentileNanos(50)));
+            waitJson.put("p95Millis", TimeUnit.NANOSECONDS.toMillis(waitTime.getPercentileNanos(95)));
+            waitJson.put("p99Millis", TimeUnit.NANOSECONDS.toMillis(waitTime.getPercentileNanos(99)));
+            waitJson.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(waitTime.getMaxNanos()));
+
+            JSONObject classJson = new JSONObject();
+            classJson.put("queued", scheduler.getQueued(priority));
+            classJson.put("admitted", scheduler.getAdmitted(priority));
+            classJson.put("rejected", scheduler.getRejected(priority));
+            classJson.put("aged", scheduler.getAged(priority));
+            classJson.put("wait", waitJson);
+            classes.put(priority.name().toLowerCase(), classJson);
+        }
+
+        responseJson.put("inFlight", scheduler.getInFlight());
+        responseJson.put("maxConcurrent", scheduler.getMaxConcurrent());
+        responseJson.put("maxQueued", scheduler.getMaxQueued());
+        responseJson.put("agingMillis", scheduler.getAgingMillis());
+        responseJson.put("classes", classes);
+
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+}
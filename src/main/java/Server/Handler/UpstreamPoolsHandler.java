@@ -0,0 +1,50 @@
+package Server.Handler;
+
+import LLM.Transport.HostPool;
+import LLM.Transport.UpstreamTransport;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * The {@code UpstreamPoolsHandler} class handles HTTP GET requests to retrieve the connection
+ * pool statistics of the shared {@link UpstreamTransport}.
+ * <p>
+ * This handler extends {@link ResponseSender} to simplify sending JSON responses.
+ */
+public class UpstreamPoolsHandler extends ResponseSender implements HttpHandler {
+
+    /**
+     * Handles incoming HTTP GET requests by returning the number of active, idle and pending
+     * connections for every upstream host.
+     *
+     * @param exchange the {@link HttpExchange} object for the HTTP request and response.
+     * @throws IOException if an error occurs while processing the request or response.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Check if the request method is GET
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            exchange.sendResponseHeaders(405, -1); // Method Not Allowed
+            return;
+        }
+
+        JSONArray poolsArray = new JSONArray();
+        for (HostPool pool : UpstreamTransport.shared().getPools()) {
+            JSONObject poolJson = new JSONObject();
+            poolJson.put("host", pool.getHost());
+            poolJson.put("active", pool.getActive());
+            poolJson.put("idle", pool.getIdle());
+            poolJson.put("pending", pool.getPending());
+            poolJson.put("http2", pool.isHttp2());
+            poolsArray.put(poolJson);
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("pools", poolsArray);
+        sendResponse(exchange, responseJson.toString(), 200);
+    }
+}
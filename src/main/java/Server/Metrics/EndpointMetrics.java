@@ -0,0 +1,79 @@
+package Server.Metrics;
+
+import LLM.Metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code EndpointMetrics} class counts the requests of one endpoint by status code and
+ * records how long they took. Recording a request only increments counters and a
+ * {@link LatencyHistogram}, so concurrent requests never wait for each other.
+ */
+public class EndpointMetrics {
+
+    /**
+     * The number of finished requests per status code.
+     */
+    private final Map<Integer, LongAdder> requestsByStatus = new ConcurrentHashMap<>();
+
+    /**
+     * The number of requests currently being processed.
+     */
+    private final LongAdder inFlight = new LongAdder();
+
+    /**
+     * The durations of finished requests.
+     */
+    private final LatencyHistogram duration = new LatencyHistogram();
+
+    /**
+     * Records that a request was started.
+     */
+    public void onStarted() {
+        inFlight.increment();
+    }
+
+    /**
+     * Records that a request finished.
+     *
+     * @param status        the status code sent.
+     * @param durationNanos the duration of the request in nanoseconds.
+     */
+    public void onFinished(int status, long durationNanos) {
+        inFlight.decrement();
+        requestsByStatus.computeIfAbsent(status, key -> new LongAdder()).increment();
+        duration.record(durationNanos);
+    }
+
+    /**
+     * Retrieves the number of finished requests per status code.
+     *
+     * @return the request counts, ordered by status code.
+     */
+    public Map<Integer, Long> getRequestsByStatus() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        requestsByStatus.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Retrieves the number of requests currently being processed.
+     *
+     * @return the in-flight count.
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Retrieves the durations of finished requests.
+     *
+     * @return the {@link LatencyHistogram} of the request durations.
+     */
+    public LatencyHistogram getDuration() {
+        return duration;
+    }
+}
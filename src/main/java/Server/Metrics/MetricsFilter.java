@@ -0,0 +1,60 @@
+package Server.Metrics;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * The {@code MetricsFilter} class records the status code and duration of every exchange of
+ * the context it is attached to in the {@link EndpointMetrics} of that context.
+ * <p>
+ * The duration covers the whole exchange including any filters added after this one, so for
+ * streaming endpoints it is the time until the stream has ended. Exchanges whose handler fails
+ * before sending a response are counted with status {@code 500}.
+ */
+public class MetricsFilter extends Filter {
+
+    /**
+     * The metrics of the endpoint.
+     */
+    private final EndpointMetrics metrics;
+
+    /**
+     * Constructs a {@code MetricsFilter}.
+     *
+     * @param metrics the {@link EndpointMetrics} of the endpoint.
+     */
+    public MetricsFilter(EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Passes the exchange on and records its outcome.
+     *
+     * @param exchange the {@link HttpExchange} to be filtered.
+     * @param chain    the remaining filters and the handler.
+     * @throws IOException if an I/O error occurs while processing the exchange.
+     */
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        metrics.onStarted();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            int status = exchange.getResponseCode();
+            metrics.onFinished(status > 0 ? status : 500, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns a short description of this filter.
+     *
+     * @return the description.
+     */
+    @Override
+    public String description() {
+        return "Request metrics";
+    }
+}
@@ -0,0 +1,162 @@
+package Server.Metrics;
+
+import LLM.Metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code PrometheusWriter} class builds a response in the Prometheus text exposition format.
+ * <p>
+ * A metric family is started with {@link #family(String, String, String)}, which writes its
+ * {@code HELP} and {@code TYPE} lines; all samples of the family must follow before the next
+ * family is started. Labels are passed as alternating names and values. Latencies are written
+ * as histograms in seconds with the fixed bucket bounds in {@link #BUCKET_SECONDS}, derived from
+ * the {@link LatencyHistogram}s the components record.
+ */
+public class PrometheusWriter {
+
+    /**
+     * The content type of the text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * The upper bounds in seconds of the histogram buckets, excluding {@code +Inf}.
+     */
+    static final double[] BUCKET_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    /**
+     * The response being built.
+     */
+    private final StringBuilder out = new StringBuilder(8192);
+
+    /**
+     * Starts a metric family.
+     *
+     * @param name the metric name.
+     * @param type the metric type: {@code counter}, {@code gauge} or {@code histogram}.
+     * @param help the description of the metric.
+     * @return this writer.
+     */
+    public PrometheusWriter family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes a sample of the current family.
+     *
+     * @param name   the metric name.
+     * @param value  the value.
+     * @param labels the label names and values, alternating.
+     * @return this writer.
+     */
+    public PrometheusWriter sample(String name, double value, String... labels) {
+        out.append(name);
+        appendLabels(labels, null);
+        out.append(' ').append(format(value)).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes the buckets, sum and count of a latency histogram of the current family.
+     *
+     * @param name      the metric name, without the {@code _bucket}, {@code _sum} and
+     *                  {@code _count} suffixes.
+     * @param histogram the {@link LatencyHistogram} to write.
+     * @param labels    the label names and values, alternating.
+     * @return this writer.
+     */
+    public PrometheusWriter histogram(String name, LatencyHistogram histogram, String... labels) {
+        long count = histogram.getCount();
+        for (double bound : BUCKET_SECONDS) {
+            long boundNanos = (long) (bound * TimeUnit.SECONDS.toNanos(1));
+            out.append(name).append("_bucket");
+            appendLabels(labels, format(bound));
+            out.append(' ').append(Math.min(count, histogram.getCountAtOrBelow(boundNanos))).append('\n');
+        }
+        out.append(name).append("_bucket");
+        appendLabels(labels, "+Inf");
+        out.append(' ').append(count).append('\n');
+
+        out.append(name).append("_sum");
+        appendLabels(labels, null);
+        out.append(' ').append(format(histogram.getSumNanos() / (double) TimeUnit.SECONDS.toNanos(1))).append('\n');
+        out.append(name).append("_count");
+        appendLabels(labels, null);
+        out.append(' ').append(count).append('\n');
+        return this;
+    }
+
+    /**
+     * Appends a label set.
+     *
+     * @param labels the label names and values, alternating.
+     * @param le     the value of the {@code le} label of a bucket, or {@code null}.
+     */
+    private void appendLabels(String[] labels, String le) {
+        if (labels.length == 0 && le == null) {
+            return;
+        }
+        out.append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"");
+            escape(labels[i + 1]);
+            out.append('"');
+        }
+        if (le != null) {
+            if (labels.length > 0) {
+                out.append(',');
+            }
+            out.append("le=\"").append(le).append('"');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Appends a label value, escaping backslashes, quotes and line breaks.
+     *
+     * @param value the label value.
+     */
+    private void escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Formats a value, writing integral values without a fraction.
+     *
+     * @param value the value.
+     * @return the formatted value.
+     */
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Returns the response built so far.
+     *
+     * @return the text exposition.
+     */
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
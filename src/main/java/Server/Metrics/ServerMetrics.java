@@ -0,0 +1,144 @@
+package Server.Metrics;
+
+import LLM.GenerationMetrics;
+import LLM.Metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ServerMetrics} class collects the measurements of the server that no other
+ * component keeps: the requests per endpoint, the time to the first streamed token and the
+ * token counts of streamed generations per backend.
+ * <p>
+ * Every endpoint gets its {@link EndpointMetrics} when its context is created, so that
+ * recording a request needs no lookup. All counters are {@link LongAdder}s and all latencies
+ * are {@link LatencyHistogram}s, which keeps recording off the critical path of the handlers.
+ */
+public class ServerMetrics {
+
+    /**
+     * The token counters of one backend.
+     */
+    public static final class TokenCounters {
+
+        /**
+         * The number of prompt tokens evaluated.
+         */
+        private final LongAdder promptTokens = new LongAdder();
+
+        /**
+         * The number of tokens generated.
+         */
+        private final LongAdder generatedTokens = new LongAdder();
+
+        /**
+         * The time spent generating tokens, in nanoseconds.
+         */
+        private final LongAdder generationNanos = new LongAdder();
+
+        /**
+         * Retrieves the number of prompt tokens evaluated.
+         *
+         * @return the prompt token count.
+         */
+        public long getPromptTokens() {
+            return promptTokens.sum();
+        }
+
+        /**
+         * Retrieves the number of tokens generated.
+         *
+         * @return the generated token count.
+         */
+        public long getGeneratedTokens() {
+            return generatedTokens.sum();
+        }
+
+        /**
+         * Retrieves the time spent generating tokens.
+         *
+         * @return the generation time in nanoseconds.
+         */
+        public long getGenerationNanos() {
+            return generationNanos.sum();
+        }
+    }
+
+    /**
+     * The metrics of the endpoints, keyed by path.
+     */
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<>();
+
+    /**
+     * The time from the start of a streaming request to its first token, per backend.
+     */
+    private final Map<String, LatencyHistogram> timeToFirstToken = new ConcurrentSkipListMap<>();
+
+    /**
+     * The token counters of streamed generations, per backend.
+     */
+    private final Map<String, TokenCounters> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * Retrieves the metrics of an endpoint, creating them on first access.
+     *
+     * @param path the path of the endpoint, e.g. {@code /api/ping}.
+     * @return the {@link EndpointMetrics} of the endpoint.
+     */
+    public EndpointMetrics endpoint(String path) {
+        return endpoints.computeIfAbsent(path, key -> new EndpointMetrics());
+    }
+
+    /**
+     * Records the time from the start of a streaming request to its first token.
+     *
+     * @param backend the backend that generated the token.
+     * @param nanos   the time to the first token in nanoseconds.
+     */
+    public void recordTimeToFirstToken(String backend, long nanos) {
+        timeToFirstToken.computeIfAbsent(backend, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Records the token counts and timings of a finished generation.
+     *
+     * @param backend the backend that generated the response.
+     * @param metrics the {@link GenerationMetrics} reported by the backend.
+     */
+    public void recordGeneration(String backend, GenerationMetrics metrics) {
+        TokenCounters counters = tokens.computeIfAbsent(backend, key -> new TokenCounters());
+        counters.promptTokens.add(metrics.getPromptEvalCount());
+        counters.generatedTokens.add(metrics.getEvalCount());
+        counters.generationNanos.add(metrics.getEvalDurationNanos());
+    }
+
+    /**
+     * Retrieves the metrics of all endpoints.
+     *
+     * @return the {@link EndpointMetrics}, keyed by path in ascending order.
+     */
+    public Map<String, EndpointMetrics> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Retrieves the time to the first streamed token per backend.
+     *
+     * @return the {@link LatencyHistogram}s, keyed by backend name in ascending order.
+     */
+    public Map<String, LatencyHistogram> getTimeToFirstToken() {
+        return timeToFirstToken;
+    }
+
+    /**
+     * Retrieves the token counters per backend.
+     *
+     * @return the {@link TokenCounters}, keyed by backend name.
+     */
+    public Map<String, TokenCounters> getTokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,375 @@
+package Server.Resilience;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code CircuitBreaker} class protects a single backend from being called while it is
+ * failing or too slow.
+ * <p>
+ * While {@link CircuitState#CLOSED}, the outcomes of the last calls are kept in a sliding window.
+ * Once the window holds at least the minimum number of calls and either the failure rate or the
+ * rate of calls slower than the slow-call threshold reaches its limit, the breaker opens. While
+ * {@link CircuitState#OPEN}, {@link #tryAcquire()} rejects all calls. After the open duration
+ * the breaker becomes {@link CircuitState#HALF_OPEN} and lets a limited number of probe calls
+ * through: if all of them succeed in time the breaker closes, otherwise it opens again.
+ * <p>
+ * Every caller that obtained permission through {@link #tryAcquire()} must report the outcome
+ * with {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored()}.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The maximum number of transitions kept in the history.
+     */
+    private static final int MAX_TRANSITIONS = 20;
+
+    /**
+     * A state change of the breaker.
+     *
+     * @param timestampMillis the time of the change in milliseconds since the epoch.
+     * @param from            the previous state.
+     * @param to              the new state.
+     * @param reason          a human-readable reason for the change.
+     */
+    public record Transition(long timestampMillis, CircuitState from, CircuitState to, String reason) {
+    }
+
+    /**
+     * The name of the protected backend.
+     */
+    private final String name;
+
+    /**
+     * The number of calls kept in the sliding window.
+     */
+    private final int windowSize;
+
+    /**
+     * The number of calls the window must hold before the rates are evaluated.
+     */
+    private final int minimumCalls;
+
+    /**
+     * The failure rate (0-1) at which the breaker opens.
+     */
+    private final double failureRateThreshold;
+
+    /**
+     * The duration from which a call counts as slow, in nanoseconds.
+     */
+    private final long slowCallThresholdNanos;
+
+    /**
+     * The slow-call rate (0-1) at which the breaker opens.
+     */
+    private final double slowCallRateThreshold;
+
+    /**
+     * The time the breaker stays open before probing, in nanoseconds.
+     */
+    private final long openDurationNanos;
+
+    /**
+     * The number of successful probes required to close the breaker again.
+     */
+    private final int halfOpenProbes;
+
+    /**
+     * The outcomes in the sliding window; {@code true} marks a failed call.
+     */
+    private final boolean[] failedCalls;
+
+    /**
+     * The durations in the sliding window; {@code true} marks a slow call.
+     */
+    private final boolean[] slowCalls;
+
+    /**
+     * The position at which the next outcome is written.
+     */
+    private int windowIndex;
+
+    /**
+     * The number of outcomes in the window.
+     */
+    private int windowCount;
+
+    /**
+     * The number of failed calls in the window.
+     */
+    private int failureCount;
+
+    /**
+     * The number of slow calls in the window.
+     */
+    private int slowCount;
+
+    /**
+     * The current state.
+     */
+    private CircuitState state = CircuitState.CLOSED;
+
+    /**
+     * The time at which the breaker opened, as returned by {@link System#nanoTime()}.
+     */
+    private long openedAtNanos;
+
+    /**
+     * The number of probe calls currently running in half-open state.
+     */
+    private int probesInFlight;
+
+    /**
+     * The number of successful probe calls in the current half-open phase.
+     */
+    private int probeSuccesses;
+
+    /**
+     * The number of calls rejected since the breaker was created.
+     */
+    private long rejectedCalls;
+
+    /**
+     * The most recent state changes, oldest first.
+     */
+    private final Deque<Transition> transitions = new ArrayDeque<>();
+
+    /**
+     * Constructs a {@code CircuitBreaker}.
+     *
+     * @param name                    the name of the protected backend.
+     * @param windowSize              the number of calls kept in the sliding window.
+     * @param minimumCalls            the number of calls required before the rates are evaluated.
+     * @param failureRateThreshold    the failure rate (0-1) at which the breaker opens.
+     * @param slowCallThresholdMillis the duration in milliseconds from which a call counts as slow.
+     * @param slowCallRateThreshold   the slow-call rate (0-1) at which the breaker opens.
+     * @param openDurationMillis      the time in milliseconds the breaker stays open before probing.
+     * @param halfOpenProbes          the number of successful probes required to close again.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          long slowCallThresholdMillis, double slowCallRateThreshold,
+                          long openDurationMillis, int halfOpenProbes) {
+        if (windowSize < 1 || halfOpenProbes < 1) {
+            throw new IllegalArgumentException("windowSize and halfOpenProbes must be at least 1");
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMillis);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenProbes = halfOpenProbes;
+        this.failedCalls = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Asks for permission to call the backend. In half-open state, a granted permission makes
+     * the call one of the probes.
+     *
+     * @return {@code true} if the backend may be called; otherwise, {@code false}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == CircuitState.CLOSED) {
+            return true;
+        }
+
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                rejectedCalls++;
+                return false;
+            }
+            transition(CircuitState.HALF_OPEN, "Open duration elapsed, probing");
+        }
+
+        if (probesInFlight < halfOpenProbes - probeSuccesses) {
+            probesInFlight++;
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    /**
+     * Checks without side effects whether a call would currently be permitted.
+     *
+     * @return {@code true} if the breaker is closed, or open long enough to start probing.
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAtNanos >= openDurationNanos;
+            case HALF_OPEN -> probesInFlight < halfOpenProbes - probeSuccesses;
+        };
+    }
+
+    /**
+     * Records a successful call.
+     *
+     * @param durationNanos the duration of the call in nanoseconds.
+     */
+    public synchronized void onSuccess(long durationNanos) {
+        record(false, durationNanos >= slowCallThresholdNanos);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param durationNanos the duration of the call in nanoseconds.
+     */
+    public synchronized void onFailure(long durationNanos) {
+        record(true, durationNanos >= slowCallThresholdNanos);
+    }
+
+    /**
+     * Releases a permission without recording an outcome, e.g. because the call was cancelled.
+     */
+    public synchronized void onIgnored() {
+        if (state == CircuitState.HALF_OPEN && probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    /**
+     * Records the outcome of a call and changes the state if a threshold is reached.
+     *
+     * @param failed whether the call failed.
+     * @param slow   whether the call was slower than the slow-call threshold.
+     */
+    private void record(boolean failed, boolean slow) {
+        if (state == CircuitState.HALF_OPEN) {
+            if (probesInFlight > 0) {
+                probesInFlight--;
+            }
+            if (failed || slow) {
+                transition(CircuitState.OPEN, failed ? "Probe failed" : "Probe exceeded the slow-call threshold");
+            } else if (++probeSuccesses >= halfOpenProbes) {
+                transition(CircuitState.CLOSED, "All probes succeeded");
+            }
+            return;
+        }
+
+        if (state == CircuitState.OPEN) {
+            // Late outcome of a call that started before the breaker opened
+            return;
+        }
+
+        if (windowCount == windowSize) {
+            failureCount -= failedCalls[windowIndex] ? 1 : 0;
+            slowCount -= slowCalls[windowIndex] ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        failedCalls[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        failureCount += failed ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        windowIndex = (windowIndex + 1) % windowSize;
+
+        if (windowCount < minimumCalls) {
+            return;
+        }
+        double failureRate = (double) failureCount / windowCount;
+        double slowCallRate = (double) slowCount / windowCount;
+        if (failureRate >= failureRateThreshold) {
+            transition(CircuitState.OPEN, String.format("Failure rate %.0f%% of the last %d calls", failureRate * 100, windowCount));
+        } else if (slowCallRate >= slowCallRateThreshold) {
+            transition(CircuitState.OPEN, String.format("Slow-call rate %.0f%% of the last %d calls", slowCallRate * 100, windowCount));
+        }
+    }
+
+    /**
+     * Changes the state and records the transition.
+     *
+     * @param to     the new state.
+     * @param reason the reason for the change.
+     */
+    private void transition(CircuitState to, String reason) {
+        if (transitions.size() == MAX_TRANSITIONS) {
+            transitions.removeFirst();
+        }
+        transitions.addLast(new Transition(System.currentTimeMillis(), state, to, reason));
+        System.out.println("Circuit Breaker " + name + ": " + state + " -> " + to + " (" + reason + ")");
+
+        state = to;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (to == CircuitState.OPEN) {
+            openedAtNanos = System.nanoTime();
+        }
+        if (to != CircuitState.HALF_OPEN) {
+            windowIndex = 0;
+            windowCount = 0;
+            failureCount = 0;
+            slowCount = 0;
+        }
+    }
+
+    /**
+     * Retrieves the name of the protected backend.
+     *
+     * @return the backend name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the current state.
+     *
+     * @return the {@link CircuitState}.
+     */
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * Retrieves the failure rate of the calls in the sliding window.
+     *
+     * @return the failure rate between 0 and 1.
+     */
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0.0 : (double) failureCount / windowCount;
+    }
+
+    /**
+     * Retrieves the slow-call rate of the calls in the sliding window.
+     *
+     * @return the slow-call rate between 0 and 1.
+     */
+    public synchronized double getSlowCallRate() {
+        return windowCount == 0 ? 0.0 : (double) slowCount / windowCount;
+    }
+
+    /**
+     * Retrieves the number of calls in the sliding window.
+     *
+     * @return the number of recorded calls.
+     */
+    public synchronized int getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * Retrieves the number of calls rejected so far.
+     *
+     * @return the rejection count.
+     */
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    /**
+     * Retrieves the most recent state changes.
+     *
+     * @return the transitions, oldest first.
+     */
+    public synchronized List<Transition> getTransitions() {
+        return new ArrayList<>(transitions);
+    }
+}
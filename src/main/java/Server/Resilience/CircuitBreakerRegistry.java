@@ -0,0 +1,73 @@
+package Server.Resilience;
+
+import Server.ServerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code CircuitBreakerRegistry} class holds one {@link CircuitBreaker} per backend, so that
+ * all components calling a backend share its health state.
+ * <p>
+ * All breakers are created with the same settings, read from the following {@link ServerConfig}
+ * keys:
+ * <ul>
+ *     <li><b>circuitBreaker.windowSize:</b> the number of calls in the sliding window.</li>
+ *     <li><b>circuitBreaker.minimumCalls:</b> the number of calls required before evaluating the rates.</li>
+ *     <li><b>circuitBreaker.failureRateThreshold:</b> the failure rate (0-1) that opens the breaker.</li>
+ *     <li><b>circuitBreaker.slowCallThresholdMillis:</b> the duration from which a call counts as slow.</li>
+ *     <li><b>circuitBreaker.slowCallRateThreshold:</b> the slow-call rate (0-1) that opens the breaker.</li>
+ *     <li><b>circuitBreaker.openDurationMillis:</b> the time the breaker stays open before probing.</li>
+ *     <li><b>circuitBreaker.halfOpenProbes:</b> the number of successful probes that close the breaker.</li>
+ * </ul>
+ */
+public class CircuitBreakerRegistry {
+
+    /**
+     * The breakers, keyed by backend name.
+     */
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * The configuration the breakers are created from.
+     */
+    private final ServerConfig config;
+
+    /**
+     * Constructs a {@code CircuitBreakerRegistry}.
+     *
+     * @param config the {@link ServerConfig} to read the breaker settings from.
+     */
+    public CircuitBreakerRegistry(ServerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Retrieves the breaker of a backend, creating it on first access.
+     *
+     * @param name the backend name.
+     * @return the {@link CircuitBreaker} of the backend.
+     */
+    public CircuitBreaker get(String name) {
+        return breakers.computeIfAbsent(name, key -> new CircuitBreaker(
+                key,
+                config.getInt("circuitBreaker.windowSize", 20),
+                config.getInt("circuitBreaker.minimumCalls", 5),
+                config.getDouble("circuitBreaker.failureRateThreshold", 0.5),
+                config.getLong("circuitBreaker.slowCallThresholdMillis", 60_000),
+                config.getDouble("circuitBreaker.slowCallRateThreshold", 0.8),
+                config.getLong("circuitBreaker.openDurationMillis", 30_000),
+                config.getInt("circuitBreaker.halfOpenProbes", 2)));
+    }
+
+    /**
+     * Retrieves all breakers created so far.
+     *
+     * @return the list of {@link CircuitBreaker} instances.
+     */
+    public List<CircuitBreaker> getAll() {
+        return new ArrayList<>(breakers.values());
+    }
+}
@@ -0,0 +1,23 @@
+package Server.Resilience;
+
+/**
+ * Enum representing the states of a {@link CircuitBreaker}.
+ */
+public enum CircuitState {
+
+    /**
+     * Requests pass through; outcomes are recorded to detect failures.
+     */
+    CLOSED,
+
+    /**
+     * Requests are rejected without calling the backend until the open duration has elapsed.
+     */
+    OPEN,
+
+    /**
+     * A limited number of probe requests is let through to decide whether the backend
+     * has recovered.
+     */
+    HALF_OPEN
+}
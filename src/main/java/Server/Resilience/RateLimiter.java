@@ -0,0 +1,316 @@
+package Server.Resilience;
+
+import Server.ServerConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code RateLimiter} class limits how fast each client may send generation requests and how
+ * fast the server may call each backend, so that a single client cannot exhaust the GPU nodes or
+ * the Groq quota for everyone.
+ * <p>
+ * Every client and every backend may have two {@link TokenBucket}s: one for requests per second
+ * and one for language model tokens per minute. Before a request is served, one request and the
+ * estimated tokens of its prompt are taken; the tokens of the response are charged once it has
+ * been generated, so a client that caused long responses has to wait accordingly. Token counts
+ * are estimated as one token per {@value #CHARS_PER_TOKEN} characters where the exact count is
+ * not known.
+ * <p>
+ * The buckets are lock-free and clients are kept in a {@link ConcurrentHashMap}, so checking a
+ * limit does not contend with other clients. Once more than the configured number of clients are
+ * tracked, the buckets of clients that have fully recovered are dropped.
+ * <p>
+ * The following {@link ServerConfig} keys are used, where a rate of {@code 0} disables the bucket:
+ * <ul>
+ *     <li><b>rateLimit.client.requestsPerSecond:</b> the requests per second of every client.</li>
+ *     <li><b>rateLimit.client.burst:</b> the number of requests a client may send at once.</li>
+ *     <li><b>rateLimit.client.tokensPerMinute:</b> the tokens per minute of every client.</li>
+ *     <li><b>rateLimit.client.maxTracked:</b> the number of tracked clients above which idle
+ *     clients are dropped.</li>
+ *     <li><b>rateLimit.&lt;backend&gt;.requestsPerSecond</b>, <b>rateLimit.&lt;backend&gt;.burst</b>
+ *     and <b>rateLimit.&lt;backend&gt;.tokensPerMinute:</b> the same limits for all calls to a
+ *     backend, e.g. {@code rateLimit.groq.tokensPerMinute}.</li>
+ * </ul>
+ */
+public class RateLimiter {
+
+    /**
+     * The number of characters assumed per token when estimating token counts.
+     */
+    public static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * The limits of a client or backend.
+     *
+     * @param requestsPerSecond the requests per second; {@code 0} disables the request bucket.
+     * @param burst             the number of requests that may be sent at once.
+     * @param tokensPerMinute   the tokens per minute; {@code 0} disables the token bucket.
+     */
+    public record Limits(double requestsPerSecond, long burst, long tokensPerMinute) {
+
+        /**
+         * Reads the limits with the given key prefix from the configuration.
+         *
+         * @param config the {@link ServerConfig} to read the limits from.
+         * @param prefix the key prefix, e.g. {@code rateLimit.client}.
+         * @return the configured {@code Limits}.
+         */
+        static Limits fromConfig(ServerConfig config, String prefix) {
+            double requestsPerSecond = config.getDouble(prefix + ".requestsPerSecond", 0);
+            return new Limits(requestsPerSecond,
+                    config.getLong(prefix + ".burst", Math.max(1, (long) Math.ceil(requestsPerSecond))),
+                    config.getLong(prefix + ".tokensPerMinute", 0));
+        }
+
+        /**
+         * Checks whether any limit is set.
+         *
+         * @return {@code true} if requests or tokens are limited.
+         */
+        public boolean isEnabled() {
+            return requestsPerSecond > 0 || tokensPerMinute > 0;
+        }
+    }
+
+    /**
+     * The buckets of a client or backend.
+     */
+    private static final class Buckets {
+
+        /**
+         * The request bucket, or {@code null} if requests are not limited.
+         */
+        private final TokenBucket requests;
+
+        /**
+         * The token bucket, or {@code null} if tokens are not limited.
+         */
+        private final TokenBucket tokens;
+
+        /**
+         * The number of requests rejected by these buckets.
+         */
+        private final LongAdder rejected = new LongAdder();
+
+        /**
+         * Constructs the buckets for the given limits.
+         *
+         * @param limits the {@link Limits} to enforce.
+         */
+        private Buckets(Limits limits) {
+            this.requests = limits.requestsPerSecond() > 0
+                    ? new TokenBucket(Math.max(1, limits.burst()), limits.requestsPerSecond())
+                    : null;
+            this.tokens = limits.tokensPerMinute() > 0
+                    ? new TokenBucket(limits.tokensPerMinute(), limits.tokensPerMinute() / 60.0)
+                    : null;
+        }
+
+        /**
+         * Takes one request and the given tokens if both are available.
+         *
+         * @param tokenCount the estimated tokens of the request.
+         * @return {@code 0} if the request may proceed; otherwise, the wait in nanoseconds.
+         */
+        private long tryAcquire(long tokenCount) {
+            long wait = requests != null ? requests.tryAcquire(1) : 0;
+            if (wait == 0 && tokens != null) {
+                wait = tokens.tryAcquire(tokenCount);
+                if (wait > 0 && requests != null) {
+                    // The request is not served, so it must not count against the request rate
+                    requests.refund(1);
+                }
+            }
+            if (wait > 0) {
+                rejected.increment();
+            }
+            return wait;
+        }
+
+        /**
+         * Charges tokens after the fact.
+         *
+         * @param tokenCount the tokens to charge.
+         */
+        private void charge(long tokenCount) {
+            if (tokens != null) {
+                tokens.consume(tokenCount);
+            }
+        }
+
+        /**
+         * Checks whether all buckets are full, so that dropping them changes nothing.
+         *
+         * @return {@code true} if the buckets are idle.
+         */
+        private boolean isIdle() {
+            return (requests == null || requests.isFull()) && (tokens == null || tokens.isFull());
+        }
+    }
+
+    /**
+     * The limits of every client.
+     */
+    private final Limits clientLimits;
+
+    /**
+     * The number of tracked clients above which idle clients are dropped.
+     */
+    private final int maxTrackedClients;
+
+    /**
+     * The configuration the backend limits are read from.
+     */
+    private final ServerConfig config;
+
+    /**
+     * The buckets of the clients, keyed by client identity.
+     */
+    private final Map<String, Buckets> clients = new ConcurrentHashMap<>();
+
+    /**
+     * The buckets of the backends, keyed by backend name.
+     */
+    private final Map<String, Buckets> backends = new ConcurrentHashMap<>();
+
+    /**
+     * The number of client requests rejected.
+     */
+    private final LongAdder clientRejections = new LongAdder();
+
+    /**
+     * Constructs a {@code RateLimiter}.
+     *
+     * @param config the {@link ServerConfig} to read the limits from.
+     */
+    public RateLimiter(ServerConfig config) {
+        this.config = config;
+        this.clientLimits = Limits.fromConfig(config, "rateLimit.client");
+        this.maxTrackedClients = config.getInt("rateLimit.client.maxTracked", 10_000);
+    }
+
+    /**
+     * Estimates the number of tokens of a text.
+     *
+     * @param chars the number of characters of the text.
+     * @return the estimated token count.
+     */
+    public static long estimateTokens(long chars) {
+        return (chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * Converts a wait into the value of a {@code Retry-After} header.
+     *
+     * @param waitNanos the wait in nanoseconds.
+     * @return the wait in whole seconds, at least {@code 1}.
+     */
+    public static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Checks whether clients are limited.
+     *
+     * @return {@code true} if a client limit is configured.
+     */
+    public boolean isClientLimited() {
+        return clientLimits.isEnabled();
+    }
+
+    /**
+     * Takes one request and the estimated prompt tokens from the buckets of a client.
+     *
+     * @param client       the identity of the client.
+     * @param promptTokens the estimated tokens of the prompt.
+     * @return {@code 0} if the request may proceed; otherwise, the wait in nanoseconds.
+     */
+    public long tryAcquireClient(String client, long promptTokens) {
+        if (!clientLimits.isEnabled()) {
+            return 0;
+        }
+        if (clients.size() > maxTrackedClients) {
+            clients.values().removeIf(Buckets::isIdle);
+        }
+        long wait = clients.computeIfAbsent(client, key -> new Buckets(clientLimits)).tryAcquire(promptTokens);
+        if (wait > 0) {
+            clientRejections.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Charges the tokens of a response to a client.
+     *
+     * @param client           the identity of the client.
+     * @param completionTokens the tokens of the response.
+     */
+    public void chargeClient(String client, long completionTokens) {
+        Buckets buckets = clients.get(client);
+        if (buckets != null) {
+            buckets.charge(completionTokens);
+        }
+    }
+
+    /**
+     * Takes one request and the estimated prompt tokens from the buckets of a backend.
+     *
+     * @param backend      the backend name.
+     * @param promptTokens the estimated tokens of the prompt.
+     * @return {@code 0} if the backend may be called; otherwise, the wait in nanoseconds.
+     */
+    public long tryAcquireBackend(String backend, long promptTokens) {
+        return backendBuckets(backend).tryAcquire(promptTokens);
+    }
+
+    /**
+     * Charges the tokens of a response to a backend.
+     *
+     * @param backend          the backend name.
+     * @param completionTokens the tokens of the response.
+     */
+    public void chargeBackend(String backend, long completionTokens) {
+        backendBuckets(backend).charge(completionTokens);
+    }
+
+    /**
+     * Retrieves the buckets of a backend, creating them on first access.
+     *
+     * @param backend the backend name.
+     * @return the {@link Buckets} of the backend.
+     */
+    private Buckets backendBuckets(String backend) {
+        return backends.computeIfAbsent(backend, key -> new Buckets(Limits.fromConfig(config, "rateLimit." + key)));
+    }
+
+    /**
+     * Retrieves the number of client requests rejected so far.
+     *
+     * @return the rejection count.
+     */
+    public long getClientRejections() {
+        return clientRejections.sum();
+    }
+
+    /**
+     * Retrieves the number of calls to a backend refused so far.
+     *
+     * @param backend the backend name.
+     * @return the rejection count.
+     */
+    public long getBackendRejections(String backend) {
+        return backendBuckets(backend).rejected.sum();
+    }
+
+    /**
+     * Retrieves the number of tracked clients.
+     *
+     * @return the number of clients with buckets.
+     */
+    public int getTrackedClients() {
+        return clients.size();
+    }
+}
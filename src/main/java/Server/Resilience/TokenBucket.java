@@ -0,0 +1,125 @@
+package Server.Resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code TokenBucket} class limits the rate at which tokens are taken, allowing bursts up to
+ * the capacity of the bucket.
+ * <p>
+ * The bucket is implemented as a generic cell rate algorithm: instead of a token count and a
+ * refill time, it stores a single "theoretical arrival time", the point at which the bucket
+ * would be full again. Taking tokens moves this time forward by the refill time of the tokens,
+ * and is refused if it would move more than the refill time of a full bucket into the future.
+ * Since the whole state is one {@link AtomicLong}, taking tokens is a single compare-and-set
+ * without a lock, and the wait until enough tokens are available follows directly from it.
+ */
+public class TokenBucket {
+
+    /**
+     * The maximum number of tokens in the bucket.
+     */
+    private final long capacity;
+
+    /**
+     * The time in nanoseconds it takes to refill one token.
+     */
+    private final long nanosPerToken;
+
+    /**
+     * The {@link System#nanoTime()} at which the bucket is full again.
+     */
+    private final AtomicLong fullAtNanos;
+
+    /**
+     * Constructs a full {@code TokenBucket}.
+     *
+     * @param capacity        the maximum number of tokens in the bucket.
+     * @param tokensPerSecond the rate at which tokens are refilled.
+     */
+    public TokenBucket(long capacity, double tokensPerSecond) {
+        if (capacity < 1 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and tokensPerSecond must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        this.fullAtNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes tokens from the bucket if enough are available. Requests for more tokens than the
+     * bucket can hold are treated as requests for a full bucket.
+     *
+     * @param tokens the number of tokens to take.
+     * @return {@code 0} if the tokens were taken; otherwise, the time in nanoseconds until
+     *         enough tokens are available.
+     */
+    public long tryAcquire(long tokens) {
+        long cost = Math.min(tokens, capacity) * nanosPerToken;
+        long tolerance = capacity * nanosPerToken;
+        while (true) {
+            long now = System.nanoTime();
+            long fullAt = fullAtNanos.get();
+            long newFullAt = Math.max(fullAt, now) + cost;
+            long excess = newFullAt - now - tolerance;
+            if (excess > 0) {
+                return excess;
+            }
+            if (fullAtNanos.compareAndSet(fullAt, newFullAt)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Takes tokens from the bucket regardless of how many are available, e.g. to charge for
+     * work whose cost is only known after it has been done. The bucket may go into debt, which
+     * delays later requests until it has been refilled.
+     *
+     * @param tokens the number of tokens to take.
+     */
+    public void consume(long tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+        long cost = tokens * nanosPerToken;
+        fullAtNanos.updateAndGet(fullAt -> Math.max(fullAt, System.nanoTime()) + cost);
+    }
+
+    /**
+     * Returns tokens that were taken but not used.
+     *
+     * @param tokens the number of tokens to return.
+     */
+    public void refund(long tokens) {
+        fullAtNanos.addAndGet(-Math.min(tokens, capacity) * nanosPerToken);
+    }
+
+    /**
+     * Checks whether the bucket is full, i.e. has not been used within its refill time.
+     *
+     * @return {@code true} if the bucket is full.
+     */
+    public boolean isFull() {
+        return fullAtNanos.get() - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Retrieves the number of tokens currently available.
+     *
+     * @return the available tokens; negative if the bucket is in debt.
+     */
+    public long getAvailableTokens() {
+        long pending = Math.max(0, fullAtNanos.get() - System.nanoTime());
+        return capacity - (pending + nanosPerToken - 1) / nanosPerToken;
+    }
+
+    /**
+     * Retrieves the maximum number of tokens in the bucket.
+     *
+     * @return the capacity.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+}
@@ -1,7 +1,24 @@
 package Server;
 
+import LLM.Transport.UpstreamTransport;
+import Server.Backend.BackendRegistry;
+import Server.Backend.ModelCatalog;
+import Server.Cache.ResponseCache;
+import Server.Execution.ExecutionEngine;
+import Server.Execution.PriorityClass;
+import Server.Execution.RateLimitFilter;
+import Server.Generation.BatchGenerator;
+import Server.Generation.GenerationService;
+import Server.Generation.HedgingPolicy;
+import Server.Generation.ModelRouter;
+import Server.Metrics.MetricsFilter;
+import Server.Metrics.ServerMetrics;
+import Server.Resilience.CircuitBreakerRegistry;
+import Server.Resilience.RateLimiter;
+import Server.Streaming.FlushCoalescer;
 import Server.Handler.*;
 
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
@@ -16,10 +33,26 @@ import java.net.InetSocketAddress;
  * <ul>
  *     <li><b>/api/ping:</b> Checks the server's availability.</li>
  *     <li><b>/api/generateResponse:</b> Generates a response using AI models.</li>
+ *     <li><b>/api/generateResponseStreaming:</b> Streams a response while it is being generated.</li>
+ *     <li><b>/api/generateBatch:</b> Generates the responses of many prompts in parallel.</li>
  *     <li><b>/api/listModels:</b> Retrieves a list of available models.</li>
  *     <li><b>/api/listRunningModels:</b> Retrieves a list of running models.</li>
  *     <li><b>/api/loadModel:</b> Loads a specified model.</li>
+ *     <li><b>/api/upstreamPools:</b> Retrieves the connection pool statistics of the upstream transport.</li>
+ *     <li><b>/api/cacheStats:</b> Retrieves the statistics of the response cache.</li>
+ *     <li><b>/api/invalidateCache:</b> Removes entries from the response cache.</li>
+ *     <li><b>/api/circuitBreakers:</b> Retrieves the state of the circuit breakers guarding the backends.</li>
+ *     <li><b>/api/hedgingStats:</b> Retrieves the counters and current delays of request hedging.</li>
+ *     <li><b>/api/nodes:</b> Retrieves the health, load and latency of the Ollama nodes.</li>
+ *     <li><b>/api/scheduler:</b> Retrieves the queue depth and waiting times per priority class.</li>
+ *     <li><b>/api/metrics:</b> Exposes the metrics of the server in the Prometheus text format.</li>
  * </ul>
+ * <p>
+ * Exchanges are executed by an {@link ExecutionEngine}. Generation endpoints are placed under
+ * its admission control, so that slow model calls cannot block the remaining endpoints, and
+ * behind the client rate limits of the {@link RateLimiter}. Batch
+ * requests are admitted as {@link PriorityClass#BATCH} unless they ask for another class.
+ * Every endpoint records its requests in the {@link ServerMetrics} exposed by {@code /api/metrics}.
  */
 public class RestApiServer {
 
@@ -29,13 +62,136 @@ public class RestApiServer {
     private HttpServer server;
 
     /**
-     * Constructs a {@code RestApiServer}, initializes the server, configures API endpoints,
-     * and starts the server.
+     * The {@link ExecutionEngine} that runs the exchanges of the server.
+     */
+    private final ExecutionEngine executionEngine;
+
+    /**
+     * The {@link BackendRegistry} holding the backend clients shared by all handlers.
+     */
+    private final BackendRegistry backendRegistry;
+
+    /**
+     * The age in milliseconds after which the cached model lists are refreshed.
+     */
+    private final long snapshotRefreshMillis;
+
+    /**
+     * The {@link ModelCatalog} resolving the model names of requests.
+     */
+    private final ModelCatalog modelCatalog;
+
+    /**
+     * The {@link ModelRouter} determining the model of generation requests.
+     */
+    private final ModelRouter modelRouter;
+
+    /**
+     * The {@link ResponseCache} shared by the generation and cache endpoints.
+     */
+    private final ResponseCache responseCache;
+
+    /**
+     * The {@link CircuitBreakerRegistry} holding the health state of the backends.
+     */
+    private final CircuitBreakerRegistry circuitBreakers;
+
+    /**
+     * The {@link RateLimiter} holding the rate limits of clients and backends.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * The {@link HedgingPolicy} deciding when generation requests are hedged.
+     */
+    private final HedgingPolicy hedgingPolicy;
+
+    /**
+     * The {@link GenerationService} shared by the generation endpoints.
+     */
+    private final GenerationService generationService;
+
+    /**
+     * The {@link FlushCoalescer} shared by the streaming endpoints.
+     */
+    private final FlushCoalescer flushCoalescer;
+
+    /**
+     * The {@link BatchGenerator} fanning batch requests out to the backends.
+     */
+    private final BatchGenerator batchGenerator;
+
+    /**
+     * The {@link ServerMetrics} recording the requests of all endpoints.
+     */
+    private final ServerMetrics serverMetrics = new ServerMetrics();
+
+    /**
+     * Constructs a {@code RestApiServer} using the configuration from {@link ServerConfig#load()},
+     * initializes the server, configures API endpoints, and starts the server.
      *
      * @throws IOException if an error occurs during server initialization.
      */
     public RestApiServer() throws IOException {
-        server = HttpServer.create(new InetSocketAddress("0.0.0.0", 9191), 0);
+        this(ServerConfig.load());
+    }
+
+    /**
+     * Constructs a {@code RestApiServer} using the given configuration, initializes the server,
+     * configures API endpoints, and starts the server.
+     * <p>
+     * The keys {@code server.host}, {@code server.port} and {@code server.backlog} (the maximum
+     * number of pending TCP connections) configure the listening socket. See
+     * {@link ExecutionEngine} for the keys controlling request execution. The keys
+     * {@code upstream.connectTimeoutMillis}, {@code upstream.readTimeoutMillis} (time to the
+     * response headers), {@code upstream.idleTimeoutMillis} (longest blocked read of a response
+     * body, {@code 0} = none), {@code upstream.maxConnectionsPerHost} and {@code upstream.keepAliveSeconds}
+     * configure the {@link UpstreamTransport} shared by all model clients. See
+     * {@link BackendRegistry} and {@link Server.Backend.OllamaNodePool} for the keys selecting
+     * the model and the Ollama nodes. The key
+     * {@code snapshot.refreshMillis} sets the age after which the cached model lists are
+     * refreshed in the background (see {@link Server.Cache.SnapshotCache}). See
+     * {@link ResponseCache} for the keys controlling response caching,
+     * {@link CircuitBreakerRegistry} for the keys controlling failover between backends,
+     * {@link RateLimiter} for the keys limiting the request and token rates and
+     * {@link HedgingPolicy} for the keys controlling request hedging. See {@link FlushCoalescer}
+     * for the keys controlling how streamed responses are flushed and {@link BatchGenerator}
+     * for the keys limiting batch requests.
+     *
+     * @param config the {@link ServerConfig} to use.
+     * @throws IOException if an error occurs during server initialization.
+     */
+    public RestApiServer(ServerConfig config) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(
+                config.getString("server.host", "0.0.0.0"),
+                config.getInt("server.port", 9191));
+        server = HttpServer.create(address, config.getInt("server.backlog", 128));
+
+        executionEngine = ExecutionEngine.fromConfig(config);
+        executionEngine.install(server);
+
+        UpstreamTransport.configure(
+                config.getInt("upstream.connectTimeoutMillis", UpstreamTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                config.getInt("upstream.readTimeoutMillis", UpstreamTransport.DEFAULT_READ_TIMEOUT_MILLIS),
+                config.getInt("upstream.idleTimeoutMillis", UpstreamTransport.DEFAULT_IDLE_TIMEOUT_MILLIS),
+                config.getInt("upstream.maxConnectionsPerHost", UpstreamTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                config.getInt("upstream.keepAliveSeconds", UpstreamTransport.DEFAULT_KEEP_ALIVE_SECONDS));
+
+        backendRegistry = BackendRegistry.fromConfig(config);
+        backendRegistry.initialize();
+        snapshotRefreshMillis = config.getLong("snapshot.refreshMillis", 5000);
+        modelCatalog = ModelCatalog.fromConfig(config, backendRegistry);
+        modelRouter = ModelRouter.fromConfig(config, modelCatalog, backendRegistry.getOllamaPool());
+
+        responseCache = ResponseCache.fromConfig(config);
+        circuitBreakers = new CircuitBreakerRegistry(config);
+        rateLimiter = new RateLimiter(config);
+        hedgingPolicy = HedgingPolicy.fromConfig(config);
+        generationService = new GenerationService(backendRegistry, circuitBreakers, hedgingPolicy, rateLimiter);
+        flushCoalescer = FlushCoalescer.fromConfig(config);
+        batchGenerator = BatchGenerator.fromConfig(config, generationService, responseCache, modelRouter,
+                executionEngine, rateLimiter);
+
         configureEndpoints();
         start();
     }
@@ -45,20 +201,54 @@ public class RestApiServer {
      */
     private void configureEndpoints() {
         createContext("/ping", new PingHandler());
-        createContext("/generateResponse", new GenerateHandler());
-        createContext("/listModels", new ListModelsHandler());
-        createContext("/listRunningModels", new ListRunningModelsHandler());
-        createContext("/loadModel", new LoadModelHandler());
+        createGenerationContext("/generateResponse", new GenerateHandler(generationService, responseCache, hedgingPolicy, modelRouter),
+                PriorityClass.INTERACTIVE);
+        createGenerationContext("/generateResponseStreaming", new GenerateResponseStreamingHandler(backendRegistry, modelRouter, rateLimiter, flushCoalescer, serverMetrics),
+                PriorityClass.INTERACTIVE);
+        createGenerationContext("/generateBatch", new GenerateBatchHandler(batchGenerator, hedgingPolicy, flushCoalescer,
+                        executionEngine.getClientIdentifier()),
+                PriorityClass.BATCH);
+        createContext("/listModels", new ListModelsHandler(backendRegistry, snapshotRefreshMillis));
+        createContext("/listRunningModels", new ListRunningModelsHandler(backendRegistry, snapshotRefreshMillis));
+        createContext("/loadModel", new LoadModelHandler(backendRegistry, modelCatalog));
+        createContext("/upstreamPools", new UpstreamPoolsHandler());
+        createContext("/cacheStats", new CacheStatsHandler(responseCache));
+        createContext("/invalidateCache", new InvalidateCacheHandler(responseCache));
+        createContext("/circuitBreakers", new CircuitBreakerHandler(circuitBreakers));
+        createContext("/hedgingStats", new HedgingStatsHandler(hedgingPolicy, generationService));
+        createContext("/nodes", new NodesHandler(backendRegistry.getOllamaPool()));
+        createContext("/scheduler", new SchedulerHandler(executionEngine.getScheduler()));
+        createContext("/metrics", new MetricsHandler(serverMetrics, generationService, backendRegistry.getOllamaPool(),
+                executionEngine.getScheduler(), responseCache, rateLimiter));
     }
 
     /**
-     * Creates a new context for a specific API endpoint.
+     * Creates a new context for a specific API endpoint whose requests are recorded in the
+     * {@link ServerMetrics}.
      *
      * @param endpoint the API endpoint relative to the base path (e.g., "/ping").
      * @param handler  the {@link HttpHandler} responsible for processing requests to the endpoint.
+     * @return the created {@link HttpContext}.
+     */
+    private HttpContext createContext(String endpoint, HttpHandler handler) {
+        HttpContext context = server.createContext("/api" + endpoint, handler);
+        context.getFilters().add(new MetricsFilter(serverMetrics.endpoint("/api" + endpoint)));
+        return context;
+    }
+
+    /**
+     * Creates a new context for an endpoint that calls a language model and places it behind
+     * the client rate limits and under the admission control of the {@link ExecutionEngine}.
+     *
+     * @param endpoint        the API endpoint relative to the base path (e.g., "/generateResponse").
+     * @param handler         the {@link HttpHandler} responsible for processing requests to the endpoint.
+     * @param defaultPriority the {@link PriorityClass} of requests without a priority header.
      */
-    private void createContext(String endpoint, HttpHandler handler) {
-        server.createContext("/api" + endpoint, handler);
+    private void createGenerationContext(String endpoint, HttpHandler handler, PriorityClass defaultPriority) {
+        HttpContext context = createContext(endpoint, handler);
+        // Rate limits come first, so that rejected requests never wait for a slot
+        context.getFilters().add(new RateLimitFilter(rateLimiter, executionEngine.getClientIdentifier()));
+        executionEngine.applyAdmissionControl(context, defaultPriority);
     }
 
     /**
@@ -66,7 +256,8 @@ public class RestApiServer {
      */
     public void start() {
         server.start();
-        System.out.println("Server läuft auf: http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        System.out.println("Server läuft auf: http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                + " (Ausführungsmodus: " + executionEngine.getMode() + ")");
     }
 
     /**
@@ -74,6 +265,10 @@ public class RestApiServer {
      */
     public void stop() {
         server.stop(0);
+        executionEngine.shutdown();
+        generationService.shutdown();
+        flushCoalescer.shutdown();
+        backendRegistry.getOllamaPool().shutdown();
         System.out.println("Server wurde gestoppt.");
     }
 }
@@ -0,0 +1,181 @@
+package Server;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * The {@code ServerConfig} class holds the tunable settings of the REST API server.
+ * <p>
+ * Settings are read from a {@code server.ini} file located in the same directory as the
+ * {@code .jar} file (analogous to {@code groqAPIKey.ini}). Every key can be overridden with a
+ * JVM system property of the same name, e.g. {@code -Dserver.port=8080}. Keys that are missing
+ * in both places fall back to the default value supplied by the caller.
+ */
+public class ServerConfig {
+
+    /**
+     * The name of the configuration file that is looked up next to the jar file.
+     */
+    public static final String FILE_NAME = "server.ini";
+
+    /**
+     * The {@link Properties} read from the configuration file.
+     */
+    private final Properties properties;
+
+    /**
+     * Constructs a {@code ServerConfig} backed by the given properties.
+     *
+     * @param properties the configuration values.
+     */
+    public ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Loads the configuration from the {@code server.ini} file next to the jar file.
+     * If the file does not exist, a configuration containing only defaults is returned.
+     *
+     * @return the loaded {@code ServerConfig}.
+     */
+    public static ServerConfig load() {
+        String jarPath = new File(ServerConfig.class.getProtectionDomain().getCodeSource().getLocation().getPath())
+                .getParentFile()
+                .getPath();
+
+        Path filePath = Paths.get(jarPath, FILE_NAME);
+        return load(filePath.toString());
+    }
+
+    /**
+     * Loads the configuration from the specified file. If the file cannot be read,
+     * a configuration containing only defaults is returned.
+     *
+     * @param filePath the path to the configuration file.
+     * @return the loaded {@code ServerConfig}.
+     */
+    public static ServerConfig load(String filePath) {
+        Properties properties = new Properties();
+        File file = new File(filePath);
+        if (file.isFile()) {
+            try (FileReader reader = new FileReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                System.err.println("File " + filePath + " could not be loaded, using defaults");
+            }
+        }
+        return new ServerConfig(properties);
+    }
+
+    /**
+     * Retrieves a string value.
+     *
+     * @param key          the configuration key.
+     * @param defaultValue the value returned if the key is not set.
+     * @return the configured value or {@code defaultValue}.
+     */
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Retrieves an integer value.
+     *
+     * @param key          the configuration key.
+     * @param defaultValue the value returned if the key is not set.
+     * @return the configured value or {@code defaultValue}.
+     * @throws IllegalArgumentException if the value is not a valid integer.
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for '" + key + "': " + value, e);
+        }
+    }
+
+    /**
+     * Retrieves a long value.
+     *
+     * @param key          the configuration key.
+     * @param defaultValue the value returned if the key is not set.
+     * @return the configured value or {@code defaultValue}.
+     * @throws IllegalArgumentException if the value is not a valid long.
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for '" + key + "': " + value, e);
+        }
+    }
+
+    /**
+     * Retrieves a floating point value.
+     *
+     * @param key          the configuration key.
+     * @param defaultValue the value returned if the key is not set.
+     * @return the configured value or {@code defaultValue}.
+     * @throws IllegalArgumentException if the value is not a valid number.
+     */
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for '" + key + "': " + value, e);
+        }
+    }
+
+    /**
+     * Retrieves a boolean value.
+     *
+     * @param key          the configuration key.
+     * @param defaultValue the value returned if the key is not set.
+     * @return the configured value or {@code defaultValue}.
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Retrieves an enum constant. The configured value is matched case-insensitively
+     * against the constant names.
+     *
+     * @param key          the configuration key.
+     * @param type         the enum class.
+     * @param defaultValue the value returned if the key is not set.
+     * @param <E>          the enum type.
+     * @return the configured constant or {@code defaultValue}.
+     * @throws IllegalArgumentException if the value does not name a constant of {@code type}.
+     */
+    public <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("Invalid value for '" + key + "': " + value);
+    }
+}
@@ -0,0 +1,92 @@
+package Server.Streaming;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The {@code BufferPool} class keeps byte arrays of a fixed size for reuse, so that relaying
+ * streamed responses does not allocate a new buffer for every request.
+ * <p>
+ * Buffers are handed out with {@link #acquire()} and returned with {@link #release(byte[])}.
+ * If the pool is empty a new buffer is allocated; if it is full a returned buffer is left to
+ * the garbage collector.
+ */
+public class BufferPool {
+
+    /**
+     * The default size of a buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The default maximum number of idle buffers kept in the pool.
+     */
+    public static final int DEFAULT_MAX_POOLED = 256;
+
+    /**
+     * The size of the buffers in bytes.
+     */
+    private final int bufferSize;
+
+    /**
+     * The idle buffers.
+     */
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * Constructs a {@code BufferPool} with the default settings.
+     */
+    public BufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * Constructs a {@code BufferPool}.
+     *
+     * @param bufferSize the size of the buffers in bytes.
+     * @param maxPooled  the maximum number of idle buffers kept in the pool.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if the pool is empty.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes.
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used by the caller afterwards.
+     *
+     * @param buffer the buffer obtained from {@link #acquire()}.
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Retrieves the size of the buffers.
+     *
+     * @return the buffer size in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Retrieves the number of idle buffers in the pool.
+     *
+     * @return the number of pooled buffers.
+     */
+    public int getPooled() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,331 @@
+package Server.Streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code CoalescingOutputStream} class buffers the data of a streamed response and sends it
+ * in fewer, larger pieces.
+ * <p>
+ * A call to {@link #flush()} is treated as a hint that the written data should reach the client
+ * soon. If nothing was sent within the last flush interval, e.g. for the first token, the data
+ * is sent right away. Otherwise it is sent as soon as the flush threshold in bytes is reached,
+ * or when the flush interval since the last send has passed, whichever comes first. Tokens
+ * arriving in quick succession are thereby combined into one write, while a single token is
+ * never delayed by more than the flush interval. Closing the stream sends all remaining data.
+ * <p>
+ * The shared scheduler thread only signals that a delayed flush is due; the write itself runs
+ * on a virtual thread, so that a client that stops reading cannot hold up the delayed flushes
+ * of other streams. If the writing thread is using the stream at that moment, the virtual
+ * thread gives up and the writing thread sends the data when it releases the stream. An error
+ * of a delayed flush is thrown by the next call of the writing thread.
+ */
+public class CoalescingOutputStream extends OutputStream {
+
+    /**
+     * The stream the data is sent to.
+     */
+    private final OutputStream out;
+
+    /**
+     * The scheduler signalling delayed flushes.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The maximum time data stays unsent, in nanoseconds; {@code 0} sends every flush.
+     */
+    private final long flushIntervalNanos;
+
+    /**
+     * The lock guarding the stream, a {@link ReentrantLock} so that waiting virtual threads do
+     * not pin their carrier.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Whether a delayed flush is due but has not been performed yet.
+     */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /**
+     * The buffered data.
+     */
+    private final byte[] buffer;
+
+    /**
+     * The number of buffered bytes.
+     */
+    private int count;
+
+    /**
+     * The time of the last flush sent, as returned by {@link System#nanoTime()}.
+     */
+    private long lastFlushNanos;
+
+    /**
+     * The scheduled signal of the pending delayed flush, or {@code null}.
+     */
+    private ScheduledFuture<?> pendingFlush;
+
+    /**
+     * The error of a delayed flush that has not been reported yet.
+     */
+    private IOException pendingError;
+
+    /**
+     * Whether the stream is closed.
+     */
+    private boolean closed;
+
+    /**
+     * The number of flushes sent to the underlying stream.
+     */
+    private long flushes;
+
+    /**
+     * The time of the first flush sent, as returned by {@link System#nanoTime()}; only valid
+     * once {@link #flushes} is positive.
+     */
+    private long firstFlushNanos;
+
+    /**
+     * Constructs a {@code CoalescingOutputStream}.
+     *
+     * @param out                 the stream the data is sent to.
+     * @param scheduler           the scheduler signalling delayed flushes.
+     * @param flushIntervalMillis the maximum time data stays unsent; {@code 0} sends every flush.
+     * @param flushBytes          the number of buffered bytes from which a flush is sent at once.
+     */
+    public CoalescingOutputStream(OutputStream out, ScheduledExecutorService scheduler, long flushIntervalMillis, int flushBytes) {
+        this.out = out;
+        this.scheduler = scheduler;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.buffer = new byte[Math.max(1, flushBytes)];
+        this.lastFlushNanos = System.nanoTime() - flushIntervalNanos;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (count == buffer.length) {
+                send(false);
+            }
+            buffer[count++] = (byte) b;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            while (length > 0) {
+                if (count == buffer.length) {
+                    send(false);
+                }
+                int chunk = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Requests that the written data is sent. The data is sent right away if nothing was sent
+     * within the flush interval or the flush threshold is reached; otherwise a delayed flush is
+     * scheduled for the end of the interval.
+     *
+     * @throws IOException if sending fails or a delayed flush has failed.
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (count == 0) {
+                return;
+            }
+            long sinceLastFlush = System.nanoTime() - lastFlushNanos;
+            if (sinceLastFlush >= flushIntervalNanos || count >= buffer.length) {
+                send(true);
+            } else if (pendingFlush == null) {
+                pendingFlush = scheduler.schedule(this::requestFlush, flushIntervalNanos - sinceLastFlush, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends all remaining data and closes the underlying stream.
+     *
+     * @throws IOException if sending or closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                if (pendingError == null && count > 0) {
+                    send(true);
+                }
+            } finally {
+                closed = true;
+                cancelPendingFlush();
+                out.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of flushes sent to the underlying stream.
+     *
+     * @return the flush count.
+     */
+    public long getFlushes() {
+        lock.lock();
+        try {
+            return flushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the time at which data first reached the client, e.g. to measure the time to
+     * the first token.
+     *
+     * @return the {@link System#nanoTime()} of the first flush, or {@code -1} if nothing has
+     *         been flushed yet.
+     */
+    public long getFirstFlushNanos() {
+        lock.lock();
+        try {
+            return flushes > 0 ? firstFlushNanos : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signals on the scheduler thread that the delayed flush is due and hands the write to a
+     * virtual thread, so that the scheduler thread never blocks on a socket.
+     */
+    private void requestFlush() {
+        flushRequested.set(true);
+        Thread.startVirtualThread(this::flushDelayed);
+    }
+
+    /**
+     * Performs the requested delayed flush, unless another thread is using the stream. That
+     * thread then performs the flush when it releases the stream (see {@link #unlock()}).
+     */
+    private void flushDelayed() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            performRequestedFlush();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends the buffered data if a delayed flush has been requested. Must be called with the
+     * lock held.
+     */
+    private void performRequestedFlush() {
+        if (!flushRequested.getAndSet(false)) {
+            return;
+        }
+        pendingFlush = null;
+        if (closed || pendingError != null || count == 0) {
+            return;
+        }
+        try {
+            send(true);
+        } catch (IOException e) {
+            pendingError = e;
+        }
+    }
+
+    /**
+     * Releases the lock and performs a delayed flush that was requested while it was held.
+     * The flag is checked after releasing, so a request is never lost between a failed
+     * {@code tryLock} of the virtual thread and the release by the holder.
+     */
+    private void unlock() {
+        lock.unlock();
+        while (flushRequested.get() && lock.tryLock()) {
+            try {
+                performRequestedFlush();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered data to the underlying stream.
+     *
+     * @param flush whether the underlying stream is flushed as well.
+     * @throws IOException if writing fails.
+     */
+    private void send(boolean flush) throws IOException {
+        cancelPendingFlush();
+        flushRequested.set(false);
+        out.write(buffer, 0, count);
+        count = 0;
+        if (flush) {
+            out.flush();
+            lastFlushNanos = System.nanoTime();
+            if (flushes++ == 0) {
+                firstFlushNanos = lastFlushNanos;
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending delayed flush, if any.
+     */
+    private void cancelPendingFlush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+    }
+
+    /**
+     * Checks that the stream can be written to.
+     *
+     * @throws IOException if the stream is closed or a delayed flush has failed.
+     */
+    private void ensureOpen() throws IOException {
+        if (pendingError != null) {
+            throw pendingError;
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package Server.Streaming;
+
+import Server.ServerConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code FlushCoalescer} class creates the output streams of streaming responses and owns
+ * the scheduler thread shared by all of them. The scheduler thread never writes to a socket
+ * itself; it only starts virtual threads for due flushes and heartbeats, so a client that stops
+ * reading does not delay the other streams.
+ * <p>
+ * Flushing every token separately costs one system call and usually one TCP segment per token.
+ * The streams created by {@link #wrap(OutputStream)} coalesce flushes instead (see
+ * {@link CoalescingOutputStream}); the first token is still sent right away. For Server-Sent
+ * Events, {@link #startHeartbeat(SseOutputStream)} keeps idle connections alive.
+ * <p>
+ * The following {@link ServerConfig} keys are used:
+ * <ul>
+ *     <li><b>streaming.flushIntervalMillis:</b> the maximum time data stays unsent; {@code 0} flushes every token.</li>
+ *     <li><b>streaming.flushBytes:</b> the number of buffered bytes from which data is sent at once.</li>
+ *     <li><b>streaming.heartbeatSeconds:</b> the idle time after which an SSE heartbeat is sent; {@code 0} disables heartbeats.</li>
+ * </ul>
+ */
+public class FlushCoalescer {
+
+    /**
+     * The scheduler signalling delayed flushes and heartbeats.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The maximum time data stays unsent, in milliseconds.
+     */
+    private final long flushIntervalMillis;
+
+    /**
+     * The number of buffered bytes from which data is sent at once.
+     */
+    private final int flushBytes;
+
+    /**
+     * The idle time after which a heartbeat is sent, in seconds.
+     */
+    private final long heartbeatSeconds;
+
+    /**
+     * Constructs a {@code FlushCoalescer}.
+     *
+     * @param flushIntervalMillis the maximum time data stays unsent; {@code 0} flushes every token.
+     * @param flushBytes          the number of buffered bytes from which data is sent at once.
+     * @param heartbeatSeconds    the idle time after which an SSE heartbeat is sent; {@code 0} disables heartbeats.
+     */
+    public FlushCoalescer(long flushIntervalMillis, int flushBytes, long heartbeatSeconds) {
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushBytes = flushBytes;
+        this.heartbeatSeconds = heartbeatSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stream-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a {@code FlushCoalescer} from the given configuration.
+     *
+     * @param config the {@link ServerConfig} to read the settings from.
+     * @return the configured {@code FlushCoalescer}.
+     */
+    public static FlushCoalescer fromConfig(ServerConfig config) {
+        return new FlushCoalescer(
+                config.getLong("streaming.flushIntervalMillis", 20),
+                config.getInt("streaming.flushBytes", 8192),
+                config.getLong("streaming.heartbeatSeconds", 15));
+    }
+
+    /**
+     * Wraps the response stream of a streaming response.
+     *
+     * @param out the response stream.
+     * @return a {@link CoalescingOutputStream} writing to the response stream.
+     */
+    public CoalescingOutputStream wrap(OutputStream out) {
+        return new CoalescingOutputStream(out, scheduler, flushIntervalMillis, flushBytes);
+    }
+
+    /**
+     * Starts sending heartbeats to an SSE stream whenever it has been idle for the heartbeat
+     * interval. The returned task must be cancelled once the response is finished.
+     *
+     * @param events the SSE stream.
+     * @return the heartbeat task, or {@code null} if heartbeats are disabled.
+     */
+    public ScheduledFuture<?> startHeartbeat(SseOutputStream events) {
+        if (heartbeatSeconds <= 0) {
+            return null;
+        }
+        long idleNanos = TimeUnit.SECONDS.toNanos(heartbeatSeconds);
+        long periodMillis = Math.max(1, TimeUnit.SECONDS.toMillis(heartbeatSeconds) / 2);
+        return scheduler.scheduleWithFixedDelay(() -> Thread.startVirtualThread(() -> {
+            try {
+                events.writeHeartbeat(idleNanos);
+            } catch (IOException e) {
+                // Client disconnected, the writing thread will notice on its next write
+            }
+        }), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the scheduler thread.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+package Server.Streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code SseOutputStream} class turns a newline-delimited stream into Server-Sent Events
+ * ({@code text/event-stream}).
+ * <p>
+ * Every non-empty line written to the stream becomes the {@code data} field of one event; empty
+ * lines are dropped. The conversion works on the bytes, so the lines are not decoded or parsed.
+ * Events with a name, e.g. for errors, and comments used as heartbeats can be written between
+ * lines. All methods hold the lock of the stream, so a heartbeat sent by another thread never
+ * ends up in the middle of an event; the heartbeat is skipped instead of waiting while the
+ * stream is in use.
+ */
+public class SseOutputStream extends OutputStream {
+
+    /**
+     * The prefix of a data line.
+     */
+    private static final byte[] DATA_PREFIX = "data: ".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The end of an event.
+     */
+    private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The stream the events are written to.
+     */
+    private final OutputStream out;
+
+    /**
+     * The lock guarding the stream, a {@link ReentrantLock} so that waiting virtual threads do
+     * not pin their carrier.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Whether the next byte starts a new line.
+     */
+    private boolean atLineStart = true;
+
+    /**
+     * The time of the last write, as returned by {@link System#nanoTime()}.
+     */
+    private long lastWriteNanos = System.nanoTime();
+
+    /**
+     * Constructs an {@code SseOutputStream}.
+     *
+     * @param out the stream the events are written to.
+     */
+    public SseOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            int end = offset + length;
+            int segmentStart = offset;
+            for (int i = offset; i < end; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                writeSegment(data, segmentStart, i);
+                if (!atLineStart) {
+                    out.write(EVENT_END);
+                    atLineStart = true;
+                }
+                segmentStart = i + 1;
+            }
+            writeSegment(data, segmentStart, end);
+            lastWriteNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a named event. If a line is still incomplete, it is ended first.
+     *
+     * @param event the event name, e.g. {@code error}.
+     * @param data  the event data, which must not contain line breaks.
+     * @throws IOException if writing fails.
+     */
+    public void writeEvent(String event, String data) throws IOException {
+        lock.lock();
+        try {
+            endLine();
+            out.write(("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+            lastWriteNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a comment and flushes it, if nothing was written for the given time and no line
+     * is incomplete. Clients ignore comments, but they keep idle connections and proxies open.
+     * The heartbeat is skipped if another thread is using the stream, as the stream is not idle
+     * then and a stalled write must not be waited for.
+     *
+     * @param idleNanos the time without writes after which the comment is sent.
+     * @throws IOException if writing fails.
+     */
+    public void writeHeartbeat(long idleNanos) throws IOException {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (!atLineStart || System.nanoTime() - lastWriteNanos < idleNanos) {
+                return;
+            }
+            out.write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            lastWriteNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            endLine();
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the bytes of a line segment, starting a data line if necessary.
+     *
+     * @param data the data.
+     * @param from the start of the segment, inclusive.
+     * @param to   the end of the segment, exclusive.
+     * @throws IOException if writing fails.
+     */
+    private void writeSegment(byte[] data, int from, int to) throws IOException {
+        if (from < to && data[to - 1] == '\r') {
+            to--;
+        }
+        if (from >= to) {
+            return;
+        }
+        if (atLineStart) {
+            out.write(DATA_PREFIX);
+            atLineStart = false;
+        }
+        out.write(data, from, to - from);
+    }
+
+    /**
+     * Ends an incomplete line, so that the next output starts a new event.
+     *
+     * @throws IOException if writing fails.
+     */
+    private void endLine() throws IOException {
+        if (!atLineStart) {
+            out.write(EVENT_END);
+            atLineStart = true;
+        }
+    }
+}
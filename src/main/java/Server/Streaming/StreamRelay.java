@@ -0,0 +1,155 @@
+package Server.Streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The {@code StreamRelay} class copies a newline-delimited upstream response to a client
+ * unchanged, using buffers from a {@link BufferPool}.
+ * <p>
+ * The bytes are neither decoded nor parsed. Only the last line of the stream is kept aside,
+ * because that is where Ollama reports the outcome and the timings of a generation. After every
+ * read from the upstream the client stream is flushed, so data is forwarded as soon as it
+ * arrives; the client stream decides whether the flush is sent right away.
+ */
+public class StreamRelay {
+
+    /**
+     * The maximum length of the last line kept aside; longer lines are not reported.
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * The pool providing the copy buffers.
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * Constructs a {@code StreamRelay}.
+     *
+     * @param bufferPool the {@link BufferPool} providing the copy buffers.
+     */
+    public StreamRelay(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Copies the upstream stream to the client until the upstream ends.
+     *
+     * @param upstream the stream to read from.
+     * @param client   the stream to write to.
+     * @return the last non-empty line of the stream, or {@code null} if there was none.
+     * @throws IOException if reading from the upstream or writing to the client fails.
+     */
+    public String relay(InputStream upstream, OutputStream client) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        LastLine lastLine = new LastLine();
+        try {
+            int read;
+            while ((read = upstream.read(buffer)) != -1) {
+                client.write(buffer, 0, read);
+                client.flush();
+                lastLine.update(buffer, read);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return lastLine.get();
+    }
+
+    /**
+     * Tracks the last non-empty line of a byte stream without keeping the stream itself.
+     * Per chunk, only the bytes after the previous line break are copied.
+     */
+    private static class LastLine {
+        private byte[] current = new byte[512];
+        private int currentLength;
+        private byte[] completed = new byte[512];
+        private int completedLength = -1;
+        private boolean overflow;
+
+        void update(byte[] chunk, int length) {
+            int end = lastIndexOf(chunk, length - 1);
+            if (end < 0) {
+                append(chunk, 0, length);
+                return;
+            }
+
+            // Walk back over the lines completed by this chunk until a non-empty one is found
+            int lineEnd = end;
+            while (true) {
+                int lineStart = lastIndexOf(chunk, lineEnd - 1) + 1;
+                if (lineStart == 0) {
+                    // The line started in an earlier chunk
+                    append(chunk, 0, lineEnd);
+                    promoteIfNotBlank();
+                    break;
+                }
+                if (!isBlank(chunk, lineStart, lineEnd)) {
+                    currentLength = 0;
+                    overflow = false;
+                    append(chunk, lineStart, lineEnd - lineStart);
+                    promoteIfNotBlank();
+                    break;
+                }
+                lineEnd = lineStart - 1;
+            }
+
+            currentLength = 0;
+            overflow = false;
+            append(chunk, end + 1, length - end - 1);
+        }
+
+        private void promoteIfNotBlank() {
+            if (!overflow && !isBlank(current, 0, currentLength)) {
+                byte[] swap = completed;
+                completed = current;
+                completedLength = currentLength;
+                current = swap;
+            }
+        }
+
+        String get() {
+            if (!overflow && !isBlank(current, 0, currentLength)) {
+                return new String(current, 0, currentLength, StandardCharsets.UTF_8);
+            }
+            return completedLength < 0 ? null : new String(completed, 0, completedLength, StandardCharsets.UTF_8);
+        }
+
+        private void append(byte[] chunk, int offset, int length) {
+            if (overflow || length == 0) {
+                return;
+            }
+            if (currentLength + length > MAX_LINE_LENGTH) {
+                overflow = true;
+                return;
+            }
+            if (currentLength + length > current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, currentLength + length));
+            }
+            System.arraycopy(chunk, offset, current, currentLength, length);
+            currentLength += length;
+        }
+
+        private static int lastIndexOf(byte[] chunk, int from) {
+            for (int i = from; i >= 0; i--) {
+                if (chunk[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean isBlank(byte[] line, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (line[i] != ' ' && line[i] != '\r' && line[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,769 @@
+package LoadTest;
+
+import Server.ServerConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code FakeBackend} class is a stand-in for Ollama and the Groq API, so that the server
+ * can be load-tested end to end on one machine without GPUs or an API quota.
+ * <p>
+ * It implements the part of both APIs the clients use:
+ * <ul>
+ *     <li><b>POST /api/generate:</b> streaming and non-streaming generations, loading a model
+ *     (no prompt) and unloading it ({@code keep_alive} of {@code 0}).</li>
+ *     <li><b>GET /api/tags, /api/ps, /api/version:</b> the installed models, the loaded models
+ *     and the version.</li>
+ *     <li><b>POST /openai/v1/chat/completions:</b> chat completions of the Groq API, streamed
+ *     as Server-Sent Events or not.</li>
+ * </ul>
+ * Generations wait {@link Profile#firstTokenMillis()} for the first token and then emit tokens
+ * at {@link Profile#tokensPerSecond()}; a model that is not loaded first takes
+ * {@link Profile#loadMillis()} to load, one model at a time, and stays loaded for its
+ * {@code keep_alive}. At most {@link Profile#maxConcurrent()} generations run at once, up to
+ * {@link Profile#maxQueued()} more wait and the rest are rejected with {@code 503}, as Ollama
+ * does. A share of {@link Profile#errorRate()} generations fails with {@code 500}. The final
+ * chunks report the simulated timings in the fields of the real APIs.
+ * <p>
+ * The backend can be embedded in a test or started on its own with {@link #main(String[])}.
+ */
+public class FakeBackend {
+
+    /**
+     * The behavior of the fake backend.
+     * <p>
+     * {@link #fromConfig(ServerConfig)} reads it from the following keys, which can also be set
+     * as system properties:
+     * <ul>
+     *     <li><b>fake.tokensPerSecond:</b> the generation speed (default: 50).</li>
+     *     <li><b>fake.firstTokenMillis:</b> the time until the first token (default: 100).</li>
+     *     <li><b>fake.loadMillis:</b> the time to load a model (default: 2000).</li>
+     *     <li><b>fake.keepAliveMillis:</b> how long a model stays loaded without {@code keep_alive}
+     *     (default: 300000, {@code -1} keeps it forever).</li>
+     *     <li><b>fake.responseTokens:</b> the tokens per response unless the request asks for
+     *     fewer (default: 64).</li>
+     *     <li><b>fake.errorRate:</b> the share of generations failing with {@code 500} (default: 0).</li>
+     *     <li><b>fake.maxConcurrent:</b> the generations running at once (default: 4, {@code 0} = unlimited).</li>
+     *     <li><b>fake.maxQueued:</b> the generations waiting for a slot (default: 512).</li>
+     *     <li><b>fake.models:</b> the installed models, comma-separated (default: {@code llama3.2:3b,tinyllama}).</li>
+     * </ul>
+     *
+     * @param tokensPerSecond  the generation speed.
+     * @param firstTokenMillis the time from the start of a generation to its first token.
+     * @param loadMillis       the time to load a model.
+     * @param keepAliveMillis  how long a model stays loaded after a request without {@code keep_alive}.
+     * @param responseTokens   the tokens per response unless the request asks for fewer.
+     * @param errorRate        the share of generations failing with {@code 500}, between 0 and 1.
+     * @param maxConcurrent    the generations running at once, or {@code 0} for no limit.
+     * @param maxQueued        the generations waiting for a slot.
+     * @param models           the names of the installed models.
+     */
+    public record Profile(double tokensPerSecond, long firstTokenMillis, long loadMillis, long keepAliveMillis,
+                          int responseTokens, double errorRate, int maxConcurrent, int maxQueued, List<String> models) {
+
+        /**
+         * The behavior used if nothing is configured.
+         */
+        public static final Profile DEFAULT = new Profile(50, 100, 2000, 300_000, 64, 0, 4, 512,
+                List.of("llama3.2:3b", "tinyllama"));
+
+        /**
+         * Reads the behavior from the configuration.
+         *
+         * @param config the {@link ServerConfig} to read the settings from.
+         * @return the configured {@code Profile}.
+         */
+        public static Profile fromConfig(ServerConfig config) {
+            return new Profile(
+                    config.getDouble("fake.tokensPerSecond", DEFAULT.tokensPerSecond),
+                    config.getLong("fake.firstTokenMillis", DEFAULT.firstTokenMillis),
+                    config.getLong("fake.loadMillis", DEFAULT.loadMillis),
+                    config.getLong("fake.keepAliveMillis", DEFAULT.keepAliveMillis),
+                    config.getInt("fake.responseTokens", DEFAULT.responseTokens),
+                    config.getDouble("fake.errorRate", DEFAULT.errorRate),
+                    config.getInt("fake.maxConcurrent", DEFAULT.maxConcurrent),
+                    config.getInt("fake.maxQueued", DEFAULT.maxQueued),
+                    Arrays.stream(config.getString("fake.models", String.join(",", DEFAULT.models)).split(","))
+                            .map(String::trim)
+                            .filter(name -> !name.isEmpty())
+                            .toList());
+        }
+    }
+
+    /**
+     * The simulated memory a loaded model occupies.
+     */
+    private static final long MODEL_BYTES = 2L << 30;
+
+    /**
+     * The tokens generated responses are made of; every line ends with a line break.
+     */
+    private static final String[] TOKENS = {
+            "Die", " Antwort", " des", " Modells", " mit", " \"Zitaten\"", ",", " Umlauten", " wie", " äöü",
+            " und", " Code", ":", " x", " =", " {", "y", "};", " über", " mehrere", " Zeilen", ".\n"
+    };
+
+    /**
+     * The server answering the requests.
+     */
+    private final HttpServer server;
+
+    /**
+     * The executor running one virtual thread per request.
+     */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * The behavior of the backend.
+     */
+    private final Profile profile;
+
+    /**
+     * The generation slots, or {@code null} if the concurrency is not limited.
+     */
+    private final Semaphore slots;
+
+    /**
+     * The generations waiting for a slot.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The loaded models with the {@link System#currentTimeMillis()} at which they are unloaded.
+     */
+    private final Map<String, Long> loadedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes model loads, as Ollama loads one model at a time.
+     */
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    /**
+     * The number of generations started.
+     */
+    private final LongAdder generations = new LongAdder();
+
+    /**
+     * The number of generations failed on purpose.
+     */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * The number of generations rejected because the queue was full.
+     */
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * The number of model loads.
+     */
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * Constructs a {@code FakeBackend} listening on the given port. Nothing is served until
+     * {@link #start()} is called.
+     *
+     * @param port    the port to listen on, or {@code 0} for any free port.
+     * @param profile the {@link Profile} of the simulated backend.
+     * @throws IOException if the port cannot be bound.
+     */
+    public FakeBackend(int port, Profile profile) throws IOException {
+        this.profile = profile;
+        this.slots = profile.maxConcurrent() > 0 ? new Semaphore(profile.maxConcurrent(), true) : null;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/api/generate", this::handleGenerate);
+        server.createContext("/api/tags", this::handleTags);
+        server.createContext("/api/ps", this::handlePs);
+        server.createContext("/api/version", exchange -> send(exchange, 200, new JSONObject().put("version", "0.0.0-fake")));
+        server.createContext("/openai/v1/chat/completions", this::handleChatCompletion);
+    }
+
+    /**
+     * Starts the fake backend on its own. The first argument is the port (default: 11434); the
+     * behavior is read from {@code server.ini} and system properties (see {@link Profile}).
+     *
+     * @param args the command line arguments.
+     * @throws IOException if the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 11434;
+        FakeBackend backend = new FakeBackend(port, Profile.fromConfig(ServerConfig.load()));
+        backend.start();
+        System.out.println("Fake-Backend läuft auf: " + backend.getUrl() + " " + backend.profile);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops serving requests and aborts running generations.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Retrieves the URL to configure as Ollama node or Groq URL.
+     *
+     * @return the base URL, e.g. {@code http://127.0.0.1:11434}.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Retrieves the number of generations started, including failed ones.
+     *
+     * @return the generation count.
+     */
+    public long getGenerations() {
+        return generations.sum();
+    }
+
+    /**
+     * Retrieves the number of generations failed on purpose.
+     *
+     * @return the failure count.
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Retrieves the number of generations rejected because the queue was full.
+     *
+     * @return the rejection count.
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Retrieves the number of model loads.
+     *
+     * @return the load count.
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * Handles {@code /api/generate}: loads or unloads a model if there is no prompt, otherwise
+     * generates a response.
+     *
+     * @param exchange the {@link HttpExchange} of the request.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handleGenerate(HttpExchange exchange) throws IOException {
+        JSONObject request = readRequest(exchange);
+        if (request == null) {
+            return;
+        }
+        String model = request.optString("model", "");
+        if (!profile.models().contains(model)) {
+            send(exchange, 404, new JSONObject().put("error", "model '" + model + "' not found, try pulling it first"));
+            return;
+        }
+        long keepAliveMillis = parseKeepAlive(request.opt("keep_alive"));
+
+        String prompt = request.optString("prompt", "");
+        if (prompt.isEmpty()) {
+            String doneReason;
+            if (keepAliveMillis == 0) {
+                loadedUntil.remove(model);
+                doneReason = "unload";
+            } else {
+                ensureLoaded(model);
+                keepLoaded(model, keepAliveMillis);
+                doneReason = "load";
+            }
+            send(exchange, 200, new JSONObject().put("model", model).put("created_at", Instant.now().toString())
+                    .put("response", "").put("done", true).put("done_reason", doneReason));
+            return;
+        }
+
+        JSONObject options = request.optJSONObject("options", new JSONObject());
+        int tokens = responseTokens(options.optInt("num_predict", -1));
+        if (!acquireSlot(exchange, false)) {
+            return;
+        }
+        try {
+            long startNanos = System.nanoTime();
+            if (fails()) {
+                send(exchange, 500, new JSONObject().put("error", "simulated failure"));
+                return;
+            }
+            long loadNanos = ensureLoaded(model);
+            boolean stream = request.optBoolean("stream", true);
+            if (stream) {
+                exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                exchange.sendResponseHeaders(200, 0);
+            }
+
+            StringBuilder text = stream ? null : new StringBuilder();
+            try (OutputStream out = exchange.getResponseBody()) {
+                long evalStartNanos = generate(tokens, token -> {
+                    if (stream) {
+                        JSONObject chunk = new JSONObject().put("model", model).put("created_at", Instant.now().toString())
+                                .put("response", token).put("done", false);
+                        out.write((chunk + "\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    } else {
+                        text.append(token);
+                    }
+                });
+                long endNanos = System.nanoTime();
+
+                JSONObject done = new JSONObject()
+                        .put("model", model)
+                        .put("created_at", Instant.now().toString())
+                        .put("response", stream ? "" : text.toString())
+                        .put("done", true)
+                        .put("done_reason", tokens < profile.responseTokens() ? "length" : "stop")
+                        .put("total_duration", endNanos - startNanos)
+                        .put("load_duration", loadNanos)
+                        .put("prompt_eval_count", Math.max(1, prompt.length() / 4))
+                        .put("prompt_eval_duration", evalStartNanos - startNanos - loadNanos)
+                        .put("eval_count", tokens)
+                        .put("eval_duration", endNanos - evalStartNanos);
+                byte[] body = (done + "\n").getBytes(StandardCharsets.UTF_8);
+                if (!stream) {
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                }
+                out.write(body);
+            } catch (IOException e) {
+                // The client went away, which ends the generation as it does in Ollama
+            }
+            keepLoaded(model, keepAliveMillis);
+        } finally {
+            releaseSlot();
+        }
+    }
+
+    /**
+     * Handles {@code /openai/v1/chat/completions} of the Groq API.
+     *
+     * @param exchange the {@link HttpExchange} of the request.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handleChatCompletion(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+            send(exchange, 401, groqError("Invalid API Key", "invalid_request_error"));
+            return;
+        }
+        JSONObject request = readRequest(exchange);
+        if (request == null) {
+            return;
+        }
+        String model = request.optString("model", "llama-3.3-70b-versatile");
+        int promptTokens = 0;
+        JSONArray messages = request.optJSONArray("messages", new JSONArray());
+        for (int i = 0; i < messages.length(); i++) {
+            promptTokens += Math.max(1, messages.getJSONObject(i).optString("content", "").length() / 4);
+        }
+        int tokens = responseTokens(request.optInt("max_tokens", -1));
+        if (!acquireSlot(exchange, true)) {
+            return;
+        }
+        try {
+            long startNanos = System.nanoTime();
+            if (fails()) {
+                send(exchange, 500, groqError("simulated failure", "internal_server_error"));
+                return;
+            }
+            String id = "chatcmpl-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            long created = Instant.now().getEpochSecond();
+            boolean stream = request.optBoolean("stream", false);
+            if (stream) {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+            }
+
+            StringBuilder text = stream ? null : new StringBuilder();
+            try (OutputStream out = exchange.getResponseBody()) {
+                long evalStartNanos = generate(tokens, token -> {
+                    if (stream) {
+                        JSONObject delta = new JSONObject().put("content", token);
+                        writeEvent(out, chatChunk(id, created, model, delta, null));
+                    } else {
+                        text.append(token);
+                    }
+                });
+                long endNanos = System.nanoTime();
+
+                String finishReason = tokens < profile.responseTokens() ? "length" : "stop";
+                JSONObject usage = new JSONObject()
+                        .put("prompt_tokens", promptTokens)
+                        .put("prompt_time", (evalStartNanos - startNanos) / 1e9)
+                        .put("completion_tokens", tokens)
+                        .put("completion_time", (endNanos - evalStartNanos) / 1e9)
+                        .put("total_tokens", promptTokens + tokens)
+                        .put("total_time", (endNanos - startNanos) / 1e9);
+                if (stream) {
+                    JSONObject last = chatChunk(id, created, model, new JSONObject(), finishReason);
+                    last.put("x_groq", new JSONObject().put("id", id).put("usage", usage));
+                    writeEvent(out, last);
+                    out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    JSONObject choice = new JSONObject()
+                            .put("index", 0)
+                            .put("message", new JSONObject().put("role", "assistant").put("content", text.toString()))
+                            .put("finish_reason", finishReason);
+                    JSONObject completion = new JSONObject()
+                            .put("id", id)
+                            .put("object", "chat.completion")
+                            .put("created", created)
+                            .put("model", model)
+                            .put("choices", new JSONArray().put(choice))
+                            .put("usage", usage);
+                    byte[] body = completion.toString().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    out.write(body);
+                }
+            } catch (IOException e) {
+                // The client went away
+            }
+        } finally {
+            releaseSlot();
+        }
+    }
+
+    /**
+     * Handles {@code /api/tags} by listing the installed models.
+     *
+     * @param exchange the {@link HttpExchange} of the request.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handleTags(HttpExchange exchange) throws IOException {
+        JSONArray models = new JSONArray();
+        for (String model : profile.models()) {
+            models.put(new JSONObject().put("name", model).put("model", model).put("size", MODEL_BYTES));
+        }
+        send(exchange, 200, new JSONObject().put("models", models));
+    }
+
+    /**
+     * Handles {@code /api/ps} by listing the loaded models.
+     *
+     * @param exchange the {@link HttpExchange} of the request.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handlePs(HttpExchange exchange) throws IOException {
+        JSONArray models = new JSONArray();
+        long now = System.currentTimeMillis();
+        loadedUntil.forEach((model, until) -> {
+            if (until > now) {
+                models.put(new JSONObject()
+                        .put("name", model)
+                        .put("model", model)
+                        .put("size", MODEL_BYTES)
+                        .put("size_vram", MODEL_BYTES)
+                        .put("expires_at", until == Long.MAX_VALUE ? "2318-01-01T00:00:00Z" : Instant.ofEpochMilli(until).toString()));
+            }
+        });
+        send(exchange, 200, new JSONObject().put("models", models));
+    }
+
+    /**
+     * Receives the tokens of a generation.
+     */
+    @FunctionalInterface
+    private interface TokenSink {
+
+        /**
+         * Receives a token.
+         *
+         * @param token the text of the token.
+         * @throws IOException if the token cannot be passed on.
+         */
+        void accept(String token) throws IOException;
+    }
+
+    /**
+     * Emits the tokens of a generation at the configured pace. The pace is kept against the
+     * start of the generation, so slow sinks do not slow down the following tokens.
+     *
+     * @param tokens the number of tokens.
+     * @param sink   the {@link TokenSink} receiving the tokens.
+     * @return the {@link System#nanoTime()} at which the first token was emitted.
+     * @throws IOException if the sink fails.
+     */
+    private long generate(int tokens, TokenSink sink) throws IOException {
+        sleepNanos(TimeUnit.MILLISECONDS.toNanos(profile.firstTokenMillis()));
+        long evalStartNanos = System.nanoTime();
+        long intervalNanos = profile.tokensPerSecond() > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / profile.tokensPerSecond()) : 0;
+        for (int i = 0; i < tokens; i++) {
+            long due = evalStartNanos + i * intervalNanos;
+            sleepNanos(due - System.nanoTime());
+            sink.accept(TOKENS[i % TOKENS.length]);
+        }
+        return evalStartNanos;
+    }
+
+    /**
+     * Loads a model unless it is loaded.
+     *
+     * @param model the model name.
+     * @return the time spent loading in nanoseconds, including waiting for other loads.
+     */
+    private long ensureLoaded(String model) {
+        long start = System.nanoTime();
+        if (isLoaded(model)) {
+            return 0;
+        }
+        loadLock.lock();
+        try {
+            if (!isLoaded(model)) {
+                sleepNanos(TimeUnit.MILLISECONDS.toNanos(profile.loadMillis()));
+                loadedUntil.put(model, Long.MAX_VALUE);
+                loads.increment();
+            }
+        } finally {
+            loadLock.unlock();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Checks whether a model is loaded.
+     *
+     * @param model the model name.
+     * @return {@code true} if the model is loaded and has not expired.
+     */
+    private boolean isLoaded(String model) {
+        Long until = loadedUntil.get(model);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    /**
+     * Keeps a model loaded for its keep-alive after a request.
+     *
+     * @param model           the model name.
+     * @param keepAliveMillis the keep-alive in milliseconds, negative for forever.
+     */
+    private void keepLoaded(String model, long keepAliveMillis) {
+        if (keepAliveMillis == 0) {
+            loadedUntil.remove(model);
+        } else {
+            loadedUntil.put(model, keepAliveMillis < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + keepAliveMillis);
+        }
+    }
+
+    /**
+     * Parses a {@code keep_alive} value: a number of seconds or a duration such as {@code 30s},
+     * {@code 5m} or {@code 1h}.
+     *
+     * @param value the value of the request, or {@code null}.
+     * @return the keep-alive in milliseconds, negative for forever.
+     */
+    private long parseKeepAlive(Object value) {
+        if (value == null) {
+            return profile.keepAliveMillis();
+        }
+        if (value instanceof Number number) {
+            return number.longValue() < 0 ? -1 : TimeUnit.SECONDS.toMillis(number.longValue());
+        }
+        String text = value.toString().trim();
+        try {
+            if (text.endsWith("ms")) {
+                return Long.parseLong(text.substring(0, text.length() - 2));
+            }
+            long amount = Long.parseLong(text.substring(0, text.length() - 1));
+            return switch (text.charAt(text.length() - 1)) {
+                case 's' -> TimeUnit.SECONDS.toMillis(amount);
+                case 'm' -> TimeUnit.MINUTES.toMillis(amount);
+                case 'h' -> TimeUnit.HOURS.toMillis(amount);
+                default -> TimeUnit.SECONDS.toMillis(Long.parseLong(text));
+            };
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            return profile.keepAliveMillis();
+        }
+    }
+
+    /**
+     * Determines the number of tokens of a response.
+     *
+     * @param requested the maximum requested, or a negative value if none was requested.
+     * @return the number of tokens to generate.
+     */
+    private int responseTokens(int requested) {
+        return requested > 0 ? Math.min(requested, profile.responseTokens()) : profile.responseTokens();
+    }
+
+    /**
+     * Decides whether a generation fails on purpose.
+     *
+     * @return {@code true} if the generation fails.
+     */
+    private boolean fails() {
+        generations.increment();
+        if (profile.errorRate() > 0 && ThreadLocalRandom.current().nextDouble() < profile.errorRate()) {
+            failures.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a generation slot, or rejects the request with {@code 503} if too many are
+     * already waiting.
+     *
+     * @param exchange the {@link HttpExchange} of the request.
+     * @param groq     whether to answer in the error format of the Groq API.
+     * @return {@code true} if a slot was acquired and must be released.
+     * @throws IOException if the rejection cannot be sent.
+     */
+    private boolean acquireSlot(HttpExchange exchange, boolean groq) throws IOException {
+        if (slots == null || slots.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > profile.maxQueued()) {
+            queued.decrementAndGet();
+            rejections.increment();
+            String message = "server busy, please try again.  maximum pending requests exceeded";
+            send(exchange, 503, groq ? groqError(message, "service_unavailable") : new JSONObject().put("error", message));
+            return false;
+        }
+        try {
+            slots.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases a generation slot acquired with {@link #acquireSlot(HttpExchange, boolean)}.
+     */
+    private void releaseSlot() {
+        if (slots != null) {
+            slots.release();
+        }
+    }
+
+    /**
+     * Reads the JSON body of a request, answering {@code 400} if it is not valid JSON.
+     *
+     * @param exchange the {@link HttpExchange} of the request.
+     * @return the request, or {@code null} if an error was sent.
+     * @throws IOException if the body cannot be read.
+     */
+    private static JSONObject readRequest(HttpExchange exchange) throws IOException {
+        try {
+            return new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            send(exchange, 400, new JSONObject().put("error", e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Builds a chunk of a streamed chat completion.
+     *
+     * @param id           the completion id.
+     * @param created      the creation time in epoch seconds.
+     * @param model        the model name.
+     * @param delta        the delta of the chunk.
+     * @param finishReason the finish reason of the last chunk, or {@code null}.
+     * @return the chunk.
+     */
+    private static JSONObject chatChunk(String id, long created, String model, JSONObject delta, String finishReason) {
+        JSONObject choice = new JSONObject()
+                .put("index", 0)
+                .put("delta", delta)
+                .put("finish_reason", finishReason != null ? finishReason : JSONObject.NULL);
+        return new JSONObject()
+                .put("id", id)
+                .put("object", "chat.completion.chunk")
+                .put("created", created)
+                .put("model", model)
+                .put("choices", new JSONArray().put(choice));
+    }
+
+    /**
+     * Builds an error in the format of the Groq API.
+     *
+     * @param message the error message.
+     * @param type    the error type.
+     * @return the error response.
+     */
+    private static JSONObject groqError(String message, String type) {
+        return new JSONObject().put("error", new JSONObject().put("message", message).put("type", type));
+    }
+
+    /**
+     * Writes a Server-Sent Event and flushes it.
+     *
+     * @param out  the response body.
+     * @param data the data of the event.
+     * @throws IOException if writing fails.
+     */
+    private static void writeEvent(OutputStream out, JSONObject data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Sends a complete JSON response.
+     *
+     * @param exchange   the {@link HttpExchange} of the request.
+     * @param statusCode the status code.
+     * @param body       the response body.
+     * @throws IOException if the response cannot be sent.
+     */
+    private static void send(HttpExchange exchange, int statusCode, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Sleeps for the given time or until the thread is interrupted.
+     *
+     * @param nanos the time to sleep in nanoseconds; values below zero return immediately.
+     */
+    private static void sleepNanos(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
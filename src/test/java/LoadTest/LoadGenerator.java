@@ -0,0 +1,402 @@
+package LoadTest;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The {@code LoadGenerator} class replays a JSONL {@link Trace} against a running server with an
+ * open-loop arrival process and writes a {@link LoadReport} as JSON.
+ * <p>
+ * Open loop means that requests are sent at their scheduled times regardless of how many are
+ * still outstanding, as independent users would send them; every request runs on its own
+ * virtual thread. The arrival times are either drawn from a Poisson process with the given
+ * rate, cycling through the trace until the duration is over, or taken from the
+ * {@code offsetMillis} recorded in the trace, scaled by the speed factor. Requests without an
+ * endpoint are assigned one from the endpoint mix. Latencies are measured from the scheduled
+ * send time (see {@link LoadReport}).
+ * <p>
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ *     <li><b>--url:</b> the base URL of the server (default: {@code http://127.0.0.1:9191}).</li>
+ *     <li><b>--trace:</b> the JSONL trace (default: {@code requests.jsonl}).</li>
+ *     <li><b>--arrival:</b> {@code poisson} or {@code recorded} (default: {@code recorded} if
+ *     every request has {@code offsetMillis}, otherwise {@code poisson}).</li>
+ *     <li><b>--rate:</b> the requests per second of the Poisson process (default: 10).</li>
+ *     <li><b>--duration:</b> the seconds to send requests for (default: 60).</li>
+ *     <li><b>--speed:</b> the factor by which recorded arrivals are sped up (default: 1).</li>
+ *     <li><b>--mix:</b> the endpoints for requests without one, with weights, e.g.
+ *     {@code generateResponse=3,generateResponseStreaming=1} (default: {@code generateResponse}).</li>
+ *     <li><b>--noCache:</b> {@code true} to bypass the response cache of the server (default: {@code false}).</li>
+ *     <li><b>--timeout:</b> the seconds after which a request counts as failed (default: 120).</li>
+ *     <li><b>--seed:</b> the seed of the arrival times and endpoint choices (default: 1).</li>
+ *     <li><b>--out:</b> the file to write the report to (default: standard output).</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    /**
+     * The arrival process of the requests.
+     */
+    public enum Arrival {
+
+        /**
+         * Exponentially distributed inter-arrival times with a fixed mean rate.
+         */
+        POISSON,
+
+        /**
+         * The arrival times recorded in the trace.
+         */
+        RECORDED
+    }
+
+    /**
+     * The settings of a load test.
+     *
+     * @param url             the base URL of the server.
+     * @param trace           the path of the trace.
+     * @param arrival         the {@link Arrival} process, or {@code null} to choose by the trace.
+     * @param rate            the requests per second of the Poisson process.
+     * @param durationSeconds the seconds to send requests for.
+     * @param speed           the factor by which recorded arrivals are sped up.
+     * @param mix             the endpoints for requests without one, with their weights.
+     * @param noCache         whether to bypass the response cache of the server.
+     * @param timeoutSeconds  the seconds after which a request counts as failed.
+     * @param seed            the seed of the arrival times and endpoint choices.
+     * @param out             the file to write the report to, or {@code null} for standard output.
+     */
+    public record Options(String url, Path trace, Arrival arrival, double rate, double durationSeconds, double speed,
+                          Map<String, Double> mix, boolean noCache, long timeoutSeconds, long seed, Path out) {
+
+        /**
+         * Parses the command line arguments.
+         *
+         * @param args the arguments in the form {@code --name=value}.
+         * @return the {@code Options}.
+         * @throws IllegalArgumentException if an argument is unknown or malformed.
+         */
+        public static Options fromArgs(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (!arg.startsWith("--") || separator < 0) {
+                    throw new IllegalArgumentException("Ungültiges Argument: " + arg + " (erwartet --name=wert)");
+                }
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+
+            Options options = new Options(
+                    values.getOrDefault("url", "http://127.0.0.1:9191"),
+                    Path.of(values.getOrDefault("trace", "requests.jsonl")),
+                    values.containsKey("arrival") ? Arrival.valueOf(values.get("arrival").toUpperCase()) : null,
+                    Double.parseDouble(values.getOrDefault("rate", "10")),
+                    Double.parseDouble(values.getOrDefault("duration", "60")),
+                    Double.parseDouble(values.getOrDefault("speed", "1")),
+                    parseMix(values.getOrDefault("mix", "generateResponse")),
+                    Boolean.parseBoolean(values.getOrDefault("noCache", "false")),
+                    Long.parseLong(values.getOrDefault("timeout", "120")),
+                    Long.parseLong(values.getOrDefault("seed", "1")),
+                    values.containsKey("out") ? Path.of(values.get("out")) : null);
+
+            values.keySet().removeAll(List.of("url", "trace", "arrival", "rate", "duration", "speed", "mix", "noCache", "timeout", "seed", "out"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unbekannte Optionen: " + values.keySet());
+            }
+            if (options.rate <= 0 || options.durationSeconds <= 0 || options.speed <= 0) {
+                throw new IllegalArgumentException("rate, duration und speed müssen größer als 0 sein.");
+            }
+            return options;
+        }
+
+        /**
+         * Parses an endpoint mix such as {@code generateResponse=3,generateResponseStreaming=1}.
+         * Endpoints without a weight get the weight 1.
+         *
+         * @param value the mix.
+         * @return the endpoint paths with their weights.
+         */
+        private static Map<String, Double> parseMix(String value) {
+            Map<String, Double> mix = new LinkedHashMap<>();
+            for (String part : value.split(",")) {
+                String[] endpointAndWeight = part.trim().split("=", 2);
+                String endpoint = endpointAndWeight[0].startsWith("/") ? endpointAndWeight[0] : "/api/" + endpointAndWeight[0];
+                mix.put(endpoint, endpointAndWeight.length > 1 ? Double.parseDouble(endpointAndWeight[1]) : 1.0);
+            }
+            return mix;
+        }
+
+        /**
+         * Converts the settings to JSON for the report.
+         *
+         * @param arrival the arrival process actually used.
+         * @return the settings as {@link JSONObject}.
+         */
+        JSONObject toJson(Arrival arrival) {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            json.put("trace", trace.toString());
+            json.put("arrival", arrival.name().toLowerCase());
+            if (arrival == Arrival.POISSON) {
+                json.put("rate", rate);
+            } else {
+                json.put("speed", speed);
+            }
+            json.put("durationSeconds", durationSeconds);
+            json.put("mix", mix);
+            json.put("noCache", noCache);
+            json.put("timeoutSeconds", timeoutSeconds);
+            json.put("seed", seed);
+            return json;
+        }
+    }
+
+    /**
+     * A request with its scheduled send time.
+     *
+     * @param entry       the {@link Trace.Entry} to send.
+     * @param endpoint    the path of the endpoint.
+     * @param offsetNanos the scheduled send time relative to the start of the test.
+     */
+    private record Scheduled(Trace.Entry entry, String endpoint, long offsetNanos) {
+    }
+
+    /**
+     * The settings of the load test.
+     */
+    private final Options options;
+
+    /**
+     * The requests to replay.
+     */
+    private final Trace trace;
+
+    /**
+     * The client sending the requests.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * The outcomes of the requests.
+     */
+    private final LoadReport report = new LoadReport();
+
+    /**
+     * Constructs a {@code LoadGenerator}.
+     *
+     * @param options the {@link Options} of the load test.
+     * @param trace   the {@link Trace} to replay.
+     */
+    public LoadGenerator(Options options, Trace trace) {
+        this.options = options;
+        this.trace = trace;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * Runs a load test and writes the report.
+     *
+     * @param args the options in the form {@code --name=value}.
+     * @throws IOException          if the trace cannot be read or the report cannot be written.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.fromArgs(args);
+        Trace trace = Trace.read(options.trace());
+        LoadGenerator generator = new LoadGenerator(options, trace);
+        Arrival arrival = generator.getArrival();
+
+        System.err.println("Lasttest gegen " + options.url() + ": " + trace.getEntries().size() + " Anfragen im Trace, Ankünfte "
+                + arrival.name().toLowerCase() + (arrival == Arrival.POISSON ? " mit " + options.rate() + "/s" : "")
+                + " für " + options.durationSeconds() + " s");
+        JSONObject result = generator.run();
+
+        JSONObject total = result.getJSONObject("result");
+        System.err.printf("Fertig: %d erfolgreich, %d fehlgeschlagen, %.1f Anfragen/s, p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms%n",
+                total.getLong("succeeded"), total.getLong("failed"), total.getDouble("throughputPerSecond"),
+                total.getJSONObject("latencyMillis").getDouble("p50"),
+                total.getJSONObject("latencyMillis").getDouble("p99"),
+                total.getJSONObject("latencyMillis").getDouble("p999"));
+
+        if (options.out() != null) {
+            Files.writeString(options.out(), result.toString(2), StandardCharsets.UTF_8);
+        } else {
+            System.out.println(result.toString(2));
+        }
+    }
+
+    /**
+     * Determines the arrival process: the configured one, otherwise the recorded arrival times
+     * if the trace has them for every request.
+     *
+     * @return the {@link Arrival} process.
+     */
+    public Arrival getArrival() {
+        if (options.arrival() != null) {
+            return options.arrival();
+        }
+        return trace.hasArrivalTimes() ? Arrival.RECORDED : Arrival.POISSON;
+    }
+
+    /**
+     * Sends all requests at their scheduled times and waits for the last response.
+     *
+     * @return the report with the settings ({@code config}) and the outcomes ({@code result}).
+     * @throws IOException          if the recorded arrival times are requested but missing.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    public JSONObject run() throws IOException, InterruptedException {
+        Arrival arrival = getArrival();
+        List<Scheduled> schedule = schedule(arrival);
+        Instant startedAt = Instant.now();
+
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Scheduled scheduled : schedule) {
+                long intendedNanos = startNanos + scheduled.offsetNanos();
+                long delay = intendedNanos - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                executor.execute(() -> send(scheduled, intendedNanos));
+            }
+        } // Waits for the outstanding requests
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        JSONObject json = new JSONObject();
+        json.put("startedAt", startedAt.toString());
+        json.put("elapsedSeconds", elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        json.put("config", options.toJson(arrival));
+        json.put("result", report.toJson(elapsedNanos));
+        return json;
+    }
+
+    /**
+     * Computes the send times of all requests.
+     *
+     * @param arrival the {@link Arrival} process.
+     * @return the requests in the order of their send times.
+     * @throws IOException if the recorded arrival times are requested but missing.
+     */
+    private List<Scheduled> schedule(Arrival arrival) throws IOException {
+        Random random = new Random(options.seed());
+        long durationNanos = (long) (options.durationSeconds() * TimeUnit.SECONDS.toNanos(1));
+        List<Trace.Entry> entries = trace.getEntries();
+        List<Scheduled> schedule = new ArrayList<>();
+
+        if (arrival == Arrival.RECORDED) {
+            if (!trace.hasArrivalTimes()) {
+                throw new IOException("Nicht jede Anfrage im Trace hat offsetMillis.");
+            }
+            long firstOffset = entries.stream().mapToLong(Trace.Entry::offsetNanos).min().orElse(0);
+            for (Trace.Entry entry : entries) {
+                long offset = (long) ((entry.offsetNanos() - firstOffset) / options.speed());
+                if (offset <= durationNanos) {
+                    schedule.add(new Scheduled(entry, endpointOf(entry, random), offset));
+                }
+            }
+            schedule.sort((a, b) -> Long.compare(a.offsetNanos(), b.offsetNanos()));
+        } else {
+            double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+            double offset = 0;
+            for (int i = 0; ; i++) {
+                offset += -Math.log(1 - random.nextDouble()) * meanGapNanos;
+                if (offset > durationNanos) {
+                    break;
+                }
+                Trace.Entry entry = entries.get(i % entries.size());
+                schedule.add(new Scheduled(entry, endpointOf(entry, random), (long) offset));
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Determines the endpoint of a request: the one of the trace, otherwise one drawn from the
+     * mix by weight.
+     *
+     * @param entry  the {@link Trace.Entry}.
+     * @param random the source of randomness.
+     * @return the path of the endpoint.
+     */
+    private String endpointOf(Trace.Entry entry, Random random) {
+        if (entry.endpoint() != null) {
+            return entry.endpoint();
+        }
+        double totalWeight = options.mix().values().stream().mapToDouble(Double::doubleValue).sum();
+        double pick = random.nextDouble() * totalWeight;
+        String last = null;
+        for (Map.Entry<String, Double> candidate : options.mix().entrySet()) {
+            last = candidate.getKey();
+            pick -= candidate.getValue();
+            if (pick < 0) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Sends one request and records its outcome. The body is read to its end; for streamed
+     * responses, the time of its first byte is recorded as the time to the first token. Other
+     * responses arrive in one piece, so their first byte says nothing beyond the latency.
+     *
+     * @param scheduled     the request.
+     * @param intendedNanos the {@link System#nanoTime()} at which the request was scheduled.
+     */
+    private void send(Scheduled scheduled, long intendedNanos) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(options.url() + scheduled.endpoint()))
+                .timeout(Duration.ofSeconds(options.timeoutSeconds()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(scheduled.entry().bodyFor(scheduled.endpoint(), options.noCache())));
+        scheduled.entry().headers().forEach(builder::header);
+
+        long sentNanos = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            boolean streaming = scheduled.entry().isStreaming(scheduled.endpoint());
+            long firstByteNanos = -1;
+            try (InputStream body = response.body()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                    if (streaming && read > 0 && firstByteNanos < 0) {
+                        firstByteNanos = System.nanoTime() - intendedNanos;
+                    }
+                }
+            }
+            long endNanos = System.nanoTime();
+            report.record(scheduled.endpoint(), response.statusCode(), endNanos - intendedNanos, endNanos - sentNanos, firstByteNanos);
+        } catch (IOException e) {
+            long endNanos = System.nanoTime();
+            report.recordError(scheduled.endpoint(), endNanos - intendedNanos, endNanos - sentNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            long endNanos = System.nanoTime();
+            report.recordError(scheduled.endpoint(), endNanos - intendedNanos, endNanos - sentNanos);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package LoadTest;
+
+import LLM.Metrics.LatencyHistogram;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LoadReport} class collects the outcomes of the requests of a load test, overall
+ * and per endpoint, and converts them to JSON.
+ * <p>
+ * Latency and time to first byte are measured from the time a request was <em>scheduled</em>
+ * to be sent, not from the time it was actually sent. If the load generator or the server
+ * falls behind, the waiting time therefore counts against the server, which corrects for
+ * coordinated omission. The service time, measured from the actual send, is reported as well,
+ * so the difference between both shows how far the generator fell behind.
+ * <p>
+ * Latency and service time include every request, whether it succeeded, failed with an error
+ * status or failed without a response, since leaving out slow failures such as timeouts would
+ * flatter the tail. The latencies of the successful requests and their time to first byte are
+ * reported as separate series.
+ */
+public class LoadReport {
+
+    /**
+     * The outcomes of the requests to one endpoint, or of all requests.
+     */
+    public static final class Stats {
+
+        /**
+         * The time from the scheduled send to the end of the response or the failure, of all requests.
+         */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * The time from the actual send to the end of the response or the failure, of all requests.
+         */
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+        /**
+         * The time from the scheduled send to the end of the response, of the successful requests.
+         */
+        private final LatencyHistogram successLatency = new LatencyHistogram();
+
+        /**
+         * The time from the scheduled send to the first byte of the response body, of the
+         * successful streamed requests.
+         */
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+
+        /**
+         * The number of responses per status code.
+         */
+        private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+        /**
+         * The number of requests that failed without a response.
+         */
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * The number of requests with a status below 400.
+         */
+        private final LongAdder succeeded = new LongAdder();
+
+        /**
+         * Records a response.
+         *
+         * @param status         the status code.
+         * @param latencyNanos   the time from the scheduled send to the end of the response.
+         * @param serviceNanos   the time from the actual send to the end of the response.
+         * @param firstByteNanos the time from the scheduled send to the first body byte, or
+         *                       {@code -1} if the body was empty or not streamed.
+         */
+        void record(int status, long latencyNanos, long serviceNanos, long firstByteNanos) {
+            statusCodes.computeIfAbsent(status, key -> new LongAdder()).increment();
+            latency.record(latencyNanos);
+            serviceTime.record(serviceNanos);
+            if (status >= 400) {
+                return;
+            }
+            succeeded.increment();
+            successLatency.record(latencyNanos);
+            if (firstByteNanos >= 0) {
+                timeToFirstByte.record(firstByteNanos);
+            }
+        }
+
+        /**
+         * Records a request that failed without a response.
+         *
+         * @param latencyNanos the time from the scheduled send to the failure.
+         * @param serviceNanos the time from the actual send to the failure.
+         */
+        void recordError(long latencyNanos, long serviceNanos) {
+            errors.increment();
+            latency.record(latencyNanos);
+            serviceTime.record(serviceNanos);
+        }
+
+        /**
+         * Retrieves the number of requests with a status below 400.
+         *
+         * @return the success count.
+         */
+        public long getSucceeded() {
+            return succeeded.sum();
+        }
+
+        /**
+         * Retrieves the number of requests that failed with a status of 400 or above or
+         * without a response.
+         *
+         * @return the failure count.
+         */
+        public long getFailed() {
+            long failed = errors.sum();
+            for (Map.Entry<Integer, LongAdder> entry : statusCodes.entrySet()) {
+                if (entry.getKey() >= 400) {
+                    failed += entry.getValue().sum();
+                }
+            }
+            return failed;
+        }
+
+        /**
+         * Retrieves the latencies of all requests, including failed ones.
+         *
+         * @return the {@link LatencyHistogram} of the latencies.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * Retrieves the latencies of the successful requests.
+         *
+         * @return the {@link LatencyHistogram} of the successful latencies.
+         */
+        public LatencyHistogram getSuccessLatency() {
+            return successLatency;
+        }
+
+        /**
+         * Retrieves the times to the first byte of the successful streamed requests.
+         *
+         * @return the {@link LatencyHistogram} of the times to the first byte.
+         */
+        public LatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        /**
+         * Converts the outcomes to JSON.
+         *
+         * @param elapsedNanos the duration of the load test, for the throughput.
+         * @return the outcomes as {@link JSONObject}.
+         */
+        public JSONObject toJson(long elapsedNanos) {
+            Map<String, Long> codes = new TreeMap<>();
+            statusCodes.forEach((status, count) -> codes.put(String.valueOf(status), count.sum()));
+
+            JSONObject json = new JSONObject();
+            json.put("requests", getSucceeded() + getFailed());
+            json.put("succeeded", getSucceeded());
+            json.put("failed", getFailed());
+            json.put("errors", errors.sum());
+            json.put("throughputPerSecond", elapsedNanos > 0 ? getSucceeded() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0.0);
+            json.put("statusCodes", codes);
+            json.put("latencyMillis", toJson(latency));
+            json.put("serviceTimeMillis", toJson(serviceTime));
+            json.put("successLatencyMillis", toJson(successLatency));
+            json.put("timeToFirstTokenMillis", toJson(timeToFirstByte));
+            return json;
+        }
+
+        /**
+         * Converts a histogram to its percentiles in milliseconds.
+         *
+         * @param histogram the {@link LatencyHistogram}.
+         * @return the percentiles as {@link JSONObject}.
+         */
+        private static JSONObject toJson(LatencyHistogram histogram) {
+            JSONObject json = new JSONObject();
+            json.put("count", histogram.getCount());
+            json.put("mean", Math.round(histogram.getMeanNanos() / 1_000.0) / 1_000.0);
+            json.put("p50", toMillis(histogram.getPercentileNanos(50)));
+            json.put("p90", toMillis(histogram.getPercentileNanos(90)));
+            json.put("p99", toMillis(histogram.getPercentileNanos(99)));
+            json.put("p999", toMillis(histogram.getPercentileNanos(99.9)));
+            json.put("max", toMillis(histogram.getMaxNanos()));
+            return json;
+        }
+
+        /**
+         * Converts nanoseconds to milliseconds with microsecond precision.
+         *
+         * @param nanos the duration in nanoseconds.
+         * @return the duration in milliseconds.
+         */
+        private static double toMillis(long nanos) {
+            return Math.round(nanos / 1_000.0) / 1_000.0;
+        }
+    }
+
+    /**
+     * The outcomes of all requests.
+     */
+    private final Stats total = new Stats();
+
+    /**
+     * The outcomes per endpoint, keyed by path.
+     */
+    private final Map<String, Stats> endpoints = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records a response.
+     *
+     * @param endpoint       the path of the endpoint.
+     * @param status         the status code.
+     * @param latencyNanos   the time from the scheduled send to the end of the response.
+     * @param serviceNanos   the time from the actual send to the end of the response.
+     * @param firstByteNanos the time from the scheduled send to the first body byte, or
+     *                       {@code -1} if the body was empty or not streamed.
+     */
+    public void record(String endpoint, int status, long latencyNanos, long serviceNanos, long firstByteNanos) {
+        total.record(status, latencyNanos, serviceNanos, firstByteNanos);
+        endpoint(endpoint).record(status, latencyNanos, serviceNanos, firstByteNanos);
+    }
+
+    /**
+     * Records a request that failed without a response.
+     *
+     * @param endpoint     the path of the endpoint.
+     * @param latencyNanos the time from the scheduled send to the failure.
+     * @param serviceNanos the time from the actual send to the failure.
+     */
+    public void recordError(String endpoint, long latencyNanos, long serviceNanos) {
+        total.recordError(latencyNanos, serviceNanos);
+        endpoint(endpoint).recordError(latencyNanos, serviceNanos);
+    }
+
+    /**
+     * Retrieves the outcomes of all requests.
+     *
+     * @return the {@link Stats} of all requests.
+     */
+    public Stats getTotal() {
+        return total;
+    }
+
+    /**
+     * Converts the report to JSON.
+     *
+     * @param elapsedNanos the duration of the load test, for the throughput.
+     * @return the report as {@link JSONObject}, with the totals and an {@code endpoints} object.
+     */
+    public JSONObject toJson(long elapsedNanos) {
+        JSONObject json = total.toJson(elapsedNanos);
+        JSONObject endpointsJson = new JSONObject();
+        endpoints.forEach((path, stats) -> endpointsJson.put(path, stats.toJson(elapsedNanos)));
+        json.put("endpoints", endpointsJson);
+        return json;
+    }
+
+    /**
+     * Retrieves the outcomes of an endpoint, creating them on first access.
+     *
+     * @param endpoint the path of the endpoint.
+     * @return the {@link Stats} of the endpoint.
+     */
+    private Stats endpoint(String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, key -> new Stats());
+    }
+}
@@ -0,0 +1,180 @@
+package LoadTest;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code Trace} class holds the requests of a JSONL trace replayed by the
+ * {@link LoadGenerator}.
+ * <p>
+ * Every non-empty line is a JSON object describing one request:
+ * <ul>
+ *     <li><b>endpoint:</b> the path, e.g. {@code /api/generateResponseStreaming} or just
+ *     {@code generateResponseStreaming}; missing endpoints are drawn from the mix of the
+ *     load generator.</li>
+ *     <li><b>body:</b> the request body as object. A string is taken as the prompt, so that
+ *     plain text corpora such as a backlog of issues can be replayed directly.</li>
+ *     <li><b>prompt, model, options:</b> the fields of the request body, used if there is no
+ *     body object.</li>
+ *     <li><b>headers:</b> additional request headers, e.g. {@code X-Priority} or {@code X-API-Key}.</li>
+ *     <li><b>offsetMillis:</b> the recorded arrival time relative to the start of the trace.</li>
+ * </ul>
+ * All other fields are ignored.
+ */
+public class Trace {
+
+    /**
+     * One request of a trace.
+     *
+     * @param endpoint    the path of the endpoint, or {@code null} to draw it from the mix.
+     * @param body        the request body.
+     * @param headers     additional request headers.
+     * @param offsetNanos the recorded arrival time relative to the start of the trace, or
+     *                    {@code -1} if none was recorded.
+     */
+    public record Entry(String endpoint, JSONObject body, Map<String, String> headers, long offsetNanos) {
+
+        /**
+         * Builds the request body for an endpoint. Batch requests get the prompt as their only
+         * item unless the body has items.
+         *
+         * @param endpoint the path of the endpoint the request is sent to.
+         * @param noCache  whether to ask the server not to answer from its response cache.
+         * @return the request body.
+         */
+        public String bodyFor(String endpoint, boolean noCache) {
+            JSONObject request = new JSONObject(body.toMap());
+            if (endpoint.endsWith("/generateBatch") && !request.has("items") && request.has("prompt")) {
+                request.put("items", new JSONArray().put(request.remove("prompt")));
+            }
+            if (noCache && endpoint.endsWith("/generateResponse")) {
+                request.put("cache", false);
+            }
+            return request.toString();
+        }
+
+        /**
+         * Checks whether the response to this request is streamed, so that its first byte
+         * arrives with the first generated token.
+         *
+         * @param endpoint the path of the endpoint the request is sent to.
+         * @return {@code true} for the streaming endpoint and for requests asking for {@code stream}.
+         */
+        public boolean isStreaming(String endpoint) {
+            return endpoint.endsWith("/generateResponseStreaming") || body.optBoolean("stream", false);
+        }
+    }
+
+    /**
+     * The requests in the order of the trace file.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Constructs a {@code Trace} from the given requests.
+     *
+     * @param entries the requests.
+     */
+    public Trace(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Reads a trace from a JSONL file.
+     *
+     * @param file the path of the file.
+     * @return the {@code Trace}.
+     * @throws IOException if the file cannot be read or contains no requests.
+     */
+    public static Trace read(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    entries.add(parse(new JSONObject(line)));
+                } catch (JSONException e) {
+                    throw new IOException("Zeile " + lineNumber + " von " + file + " ist kein gültiges JSON: " + e.getMessage());
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new IOException("Der Trace " + file + " enthält keine Anfragen.");
+        }
+        return new Trace(entries);
+    }
+
+    /**
+     * Parses one line of a trace.
+     *
+     * @param json the line.
+     * @return the {@link Entry}.
+     */
+    private static Entry parse(JSONObject json) {
+        String endpoint = json.optString("endpoint", null);
+        if (endpoint != null && !endpoint.startsWith("/")) {
+            endpoint = "/api/" + endpoint;
+        }
+
+        JSONObject body = json.optJSONObject("body");
+        if (body == null) {
+            body = new JSONObject();
+            String prompt = json.has("prompt") ? json.optString("prompt") : json.optString("body", "");
+            body.put("prompt", prompt);
+            for (String key : new String[]{"model", "options", "stream", "format", "backend"}) {
+                if (json.has(key)) {
+                    body.put(key, json.get(key));
+                }
+            }
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        JSONObject headersJson = json.optJSONObject("headers");
+        if (headersJson != null) {
+            for (String name : headersJson.keySet()) {
+                headers.put(name, headersJson.get(name).toString());
+            }
+        }
+
+        long offsetNanos = json.has("offsetMillis")
+                ? Math.round(json.getDouble("offsetMillis") * TimeUnit.MILLISECONDS.toNanos(1))
+                : -1;
+        return new Entry(endpoint, body, headers, offsetNanos);
+    }
+
+    /**
+     * Retrieves the requests of the trace.
+     *
+     * @return the requests in the order of the trace file.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Checks whether every request of the trace has a recorded arrival time.
+     *
+     * @return {@code true} if the trace can be replayed with its recorded timing.
+     */
+    public boolean hasArrivalTimes() {
+        return entries.stream().allMatch(entry -> entry.offsetNanos() >= 0);
+    }
+}